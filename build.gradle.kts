@@ -74,6 +74,18 @@ tasks.test {
     useJUnitPlatform()
 }
 
+// Rendering benchmark on the headless platform and software pipeline, see RenderBenchmark.
+// Pass a scenario filter with --args, e.g. ./gradlew renderBenchmark --args="s1p"
+tasks.register<JavaExec>("renderBenchmark") {
+    group = "verification"
+    description = "Benchmarks the Smith chart and circuit renderers on offscreen canvases."
+    classpath = sourceSets["test"].runtimeClasspath
+    mainClass.set("heig.tb.jsmithfx.view.RenderBenchmark")
+    systemProperty("glass.platform", "Headless")
+    systemProperty("prism.order", "sw")
+    maxHeapSize = "4g"
+}
+
 jlink {
     launcher {
         name = "Launcher"
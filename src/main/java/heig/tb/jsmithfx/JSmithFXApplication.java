@@ -34,8 +34,11 @@ public class JSmithFXApplication extends Application {
         Application.setUserAgentStylesheet(new NordDark().getUserAgentStylesheet());
         ThemeWindowManager themeWindowManager = ThemeWindowManagerFactory.create();
 
+        // The main window works on the shared view model, its controller is created on it by default
+        SmithChartViewModel viewModel = SmithChartViewModel.getInstance();
         FXMLLoader fxmlLoader = new FXMLLoader(JSmithFXApplication.class.getResource("hello-view.fxml"));
         Parent root = fxmlLoader.load();
+        MainController controller = fxmlLoader.getController();
 
         Rectangle2D screenBounds = Screen.getPrimary().getVisualBounds();
 
@@ -49,14 +52,14 @@ public class JSmithFXApplication extends Application {
         stage.setMinHeight(600);
 
         // Start running the stage controller for proper stage name change
-        StageController sc = new StageController(stage);
+        StageController sc = new StageController(stage, viewModel);
 
         stage.show();
         themeWindowManager.setDarkModeForWindowFrame(stage, true);
 
         stage.setOnCloseRequest(event -> {
             // Prevent closing if there are unsaved changes
-            if (SmithChartViewModel.getInstance().isModifiedProperty().get()){
+            if (viewModel.isModifiedProperty().get()){
                 if (DialogUtils.areYouSureDialog(
                         "Exit Application",
                         "Are you sure you want to exit JSmithFX? Unsaved changes will be lost.",
@@ -67,9 +70,11 @@ public class JSmithFXApplication extends Application {
             }
         });
 
+        stage.setOnHidden(_ -> controller.dispose());
+
         // Add CTRL+S shortcut for saving
         scene.getAccelerators().put(
                 new KeyCodeCombination(KeyCode.S, KeyCombination.CONTROL_DOWN),
-                () -> SmithChartViewModel.getInstance().save());
+                () -> viewModel.save());
     }
 }
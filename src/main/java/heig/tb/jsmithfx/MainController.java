@@ -1,20 +1,25 @@
 package heig.tb.jsmithfx;
 
 import heig.tb.jsmithfx.controller.SmithChartInteractionController;
+import heig.tb.jsmithfx.logic.MarkerEngine;
 import heig.tb.jsmithfx.logic.SmithCalculator;
 import heig.tb.jsmithfx.model.CircuitElement;
 import heig.tb.jsmithfx.model.DataPoint;
 import heig.tb.jsmithfx.model.Element.Line;
 import heig.tb.jsmithfx.model.Element.TypicalUnit.*;
+import heig.tb.jsmithfx.model.FrequencyBand;
 import heig.tb.jsmithfx.model.TouchstoneS1P;
-import heig.tb.jsmithfx.utilities.Complex;
 import heig.tb.jsmithfx.utilities.DialogUtils;
 import heig.tb.jsmithfx.utilities.SmithUtilities;
 import heig.tb.jsmithfx.utilities.dialogs.*;
+import heig.tb.jsmithfx.view.BandColors;
 import heig.tb.jsmithfx.view.CircuitRenderer;
+import heig.tb.jsmithfx.view.DataPointTableModel;
+import heig.tb.jsmithfx.view.PulseBatch;
 import heig.tb.jsmithfx.view.S1PPlotterWindow;
 import javafx.application.Platform;
 import javafx.beans.InvalidationListener;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.ListChangeListener;
@@ -26,6 +31,7 @@ import javafx.scene.control.*;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
@@ -34,8 +40,11 @@ import javafx.util.Pair;
 import org.controlsfx.control.RangeSlider;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -43,6 +52,14 @@ import java.util.stream.Collectors;
 
 public class MainController {
 
+    // VSWR under which the S1P points of a band count as matched, for the bandwidth read-out
+    private static final double BANDWIDTH_VSWR = 2.0;
+
+    /**
+     * Controls of a frequency band in the S1P pane.
+     */
+    private record BandRow(VBox box, Label name, RangeSlider slider, CheckBox asLoad, Label stats) {}
+
     @FXML
     private Label qTuneLabel;
     @FXML
@@ -114,7 +131,8 @@ public class MainController {
     @FXML
     private Canvas circuitCanvas;
     @FXML
-    private TableView<DataPoint> dataPointsTable;
+    private TableView<DataPointTableModel.Row> dataPointsTable;
+    private DataPointTableModel dataPointsModel;
     @FXML
     private ComboBox<CircuitElement.ElementType> typeComboBox;
     @FXML
@@ -126,15 +144,15 @@ public class MainController {
     @FXML
     private Button addButton;
     @FXML
-    private TableColumn<DataPoint, String> labelColumn;
+    private TableColumn<DataPointTableModel.Row, String> labelColumn;
     @FXML
-    private TableColumn<DataPoint, Void> deleteColumn;
+    private TableColumn<DataPointTableModel.Row, Void> deleteColumn;
     @FXML
-    private TableColumn<DataPoint, Complex> impedanceColumn;
+    private TableColumn<DataPointTableModel.Row, String> impedanceColumn;
     @FXML
-    private TableColumn<DataPoint, Number> vswrColumn;
+    private TableColumn<DataPointTableModel.Row, String> vswrColumn;
     @FXML
-    private TableColumn<DataPoint, Number> returnLossColumn;
+    private TableColumn<DataPointTableModel.Row, String> returnLossColumn;
     @FXML
     private Label z0Label;
     @FXML
@@ -150,7 +168,7 @@ public class MainController {
     @FXML
     private ComboBox<Line.StubType> stubComboBox;
     @FXML
-    private TableColumn<DataPoint, String> frequencyColumn;
+    private TableColumn<DataPointTableModel.Row, String> frequencyColumn;
     @FXML
     private MenuItem importS1PButton;
     @FXML
@@ -166,20 +184,8 @@ public class MainController {
     @FXML
     private TextField s1pFileNameField;
     @FXML
-    private CheckBox useS1PAsLoadCheckBoxF1;
-    @FXML
-    private CheckBox useS1PAsLoadCheckBoxF2;
-    @FXML
-    private CheckBox useS1PAsLoadCheckBoxF3;
-
-    @FXML
-    private CheckMenuItem toggle1FilterButton, toggle2FilterButton, toggle3FilterButton;
-    @FXML
-    private VBox filter1Box, filter2Box, filter3Box;
-    @FXML
-    private TextField minFreqTextField1, maxFreqTextField1, minFreqTextField2, maxFreqTextField2, minFreqTextField3, maxFreqTextField3;
-    @FXML
-    private RangeSlider frequencyRangeSlider1, frequencyRangeSlider2, frequencyRangeSlider3;
+    private VBox frequencyBandsBox;
+    private final Map<FrequencyBand, BandRow> bandRows = new HashMap<>();
     @FXML
     private MenuItem setDisplayCirclesOptionsButton;
     @FXML
@@ -189,6 +195,12 @@ public class MainController {
     @FXML
     private CheckMenuItem toggleS1PInDataPointsButton;
     @FXML
+    private CheckMenuItem togglePerformanceHudButton;
+    @FXML
+    private CheckMenuItem toggleS1PDensityButton;
+    @FXML
+    private CheckMenuItem toggleS1PTrailsButton;
+    @FXML
     private Button clearSweepButton;
     @FXML
     private TextField sweepPointsCountText;
@@ -231,25 +243,41 @@ public class MainController {
     @FXML
     private Button cancelTuningButton;
     @FXML
-    private TableColumn<DataPoint, Number> qualityFactorColumn;
+    private TableColumn<DataPointTableModel.Row, String> qualityFactorColumn;
     @FXML
     private ComboBox<Integer> circuitComboBox;
 
     //Viewmodel
-    private SmithChartViewModel viewModel;
+    private final SmithChartViewModel viewModel;
 
     //Renderer
     private CircuitRenderer circuitRenderer;
     private SmithChartInteractionController smithInteractionController;
     private boolean isUpdatingLength = false;
+    // Slider events come faster than frames, the tuned circuit is recomputed once per pulse
+    private PulseBatch tuningBatch;
+
+    /**
+     * Controller of the main window, on the shared view model.
+     */
+    public MainController() {
+        this(SmithChartViewModel.getInstance());
+    }
+
+    /**
+     * Controller of a window on its own view model, to be created by the controller factory of the FXMLLoader.
+     */
+    public MainController(SmithChartViewModel viewModel) {
+        this.viewModel = viewModel;
+    }
 
     /**
      * This method is called by the FXMLLoader after the FXML file has been loaded.
      */
     @FXML
     public void initialize() {
-        this.viewModel = SmithChartViewModel.getInstance();
-        circuitRenderer = new CircuitRenderer(circuitCanvas);
+        circuitRenderer = CircuitRenderer.of(circuitCanvas, viewModel);
+        tuningBatch = new PulseBatch(viewModel::beginUpdate, viewModel::endUpdate);
 
         smithInteractionController = new SmithChartInteractionController(
                 smithChartPane,
@@ -274,27 +302,6 @@ public class MainController {
                 }
         );
 
-        // filter enabled bindings
-        viewModel.filter1EnabledProperty().bind(
-                toggle1FilterButton.selectedProperty()
-                        .or(toggle2FilterButton.selectedProperty())
-                        .or(toggle3FilterButton.selectedProperty())
-        );
-
-        viewModel.filter2EnabledProperty().bind(
-                toggle2FilterButton.selectedProperty()
-                        .or(toggle3FilterButton.selectedProperty())
-        );
-
-        viewModel.filter3EnabledProperty().bind(
-                toggle3FilterButton.selectedProperty()
-        );
-
-        // Force a redraw when the user switches between filters (Filter 1 -> Filter 2)
-        viewModel.filter1EnabledProperty().addListener((obs, oldVal, newVal) -> smithInteractionController.redrawSmithCanvas());
-        viewModel.filter2EnabledProperty().addListener((obs, oldVal, newVal) -> smithInteractionController.redrawSmithCanvas());
-        viewModel.filter3EnabledProperty().addListener((obs, oldVal, newVal) -> smithInteractionController.redrawSmithCanvas());
-
 
         setupResizableCanvas();
         setupControls();
@@ -302,18 +309,19 @@ public class MainController {
         setupLineLengthListeners();
 
         // Whenever the circuit elements change, re-render the circuit diagram
-        viewModel.circuitElements.addListener((ListChangeListener<CircuitElement>) _ -> circuitRenderer.render(viewModel));
+        viewModel.circuitElements.addListener((ListChangeListener<CircuitElement>) _ -> circuitRenderer.redraw());
 
         // Initial render
-        circuitRenderer.render(viewModel);
+        circuitRenderer.redraw();
 
         dataPointsTable.getSelectionModel().selectedItemProperty().addListener((_, _, _) -> {
-            viewModel.setDpTableSelIndex(dataPointsTable.getSelectionModel().getSelectedIndex());
+            int selectedIndex = dataPointsTable.getSelectionModel().getSelectedIndex();
+            viewModel.setDpTableSelIndex(selectedIndex < 0 ? -1 : dataPointsModel.getSourceIndex(selectedIndex));
         });
 
         viewModel.getDpTableSelIndex().addListener((obs, oldVal, newVal) -> {
             if (newVal != null && newVal.intValue() >= 0 && newVal.intValue() < dataPointsTable.getItems().size()) {
-                dataPointsTable.getSelectionModel().select(newVal.intValue());
+                dataPointsTable.getSelectionModel().select(dataPointsModel.getViewIndex(newVal.intValue()));
             } else {
                 dataPointsTable.getSelectionModel().clearSelection();
             }
@@ -333,6 +341,8 @@ public class MainController {
         dataPointsTable.setOnMouseClicked(event -> {
             if (event.getClickCount() == 2) {
                 int selectedIndex = dataPointsTable.getSelectionModel().getSelectedIndex();
+                if (selectedIndex < 0) return;
+                selectedIndex = dataPointsModel.getSourceIndex(selectedIndex);
                 // if index > 0 (skipping Load), edit the element
                 if (selectedIndex > 0 && selectedIndex <= viewModel.circuitElements.size()) {
                     CircuitElement component = viewModel.circuitElements.get(selectedIndex - 1);
@@ -345,7 +355,15 @@ public class MainController {
         circuitCanvas.setOnMouseMoved(event -> {
             CircuitElement hoveredElement = circuitRenderer.getElementAt(event.getX(), event.getY());
             viewModel.setHoveredElement(hoveredElement);
-            circuitRenderer.render(viewModel);
+            circuitRenderer.redraw();
+        });
+
+        // Long circuits are wider than the canvas, the wheel scrolls them horizontally
+        circuitCanvas.setOnScroll(event -> {
+            double delta = event.getDeltaX() != 0 ? event.getDeltaX() : event.getDeltaY();
+            circuitRenderer.scrollBy(-delta);
+            circuitRenderer.redraw();
+            event.consume();
         });
 
         // Circuit Diagram Editing
@@ -369,7 +387,7 @@ public class MainController {
             }
         });
 
-        viewModel.getSelectedInsertionIndexProperty().addListener(_ -> circuitRenderer.render(viewModel));
+        viewModel.getSelectedInsertionIndexProperty().addListener(_ -> circuitRenderer.redraw());
 
         viewModel.selectedElementProperty().addListener((_, _, selectedElement) -> {
             if (selectedElement != null) {
@@ -386,13 +404,15 @@ public class MainController {
                 tuningTitledPane.setManaged(false);
                 setupAddElement();
             }
-            circuitRenderer.render(viewModel);
+            circuitRenderer.reveal(selectedElement);
+            circuitRenderer.redraw();
         });
 
         tuningSlider.valueProperty().addListener((_1, _2, newValue) -> {
             var toDisplay = SmithUtilities.getBestUnitAndFormattedValue((Double) newValue, (ElectronicUnit[]) viewModel.selectedElementProperty().get().getType().getUnitClass().getEnumConstants());
             tuningValueField.setText(toDisplay.getValue());
             tuningUnitLabel.setText(toDisplay.getKey().toString());
+            tuningBatch.join();
             viewModel.updateTunedElementValue(newValue.doubleValue());
         });
 
@@ -416,6 +436,7 @@ public class MainController {
             if (!tuningQValueField.isFocused()) {
                 tuningQValueField.setText(String.format("%.2f", newValue.doubleValue()));
             }
+            tuningBatch.join();
             viewModel.updateTunedElementQualityFactor(newValue.doubleValue());
         });
 
@@ -453,9 +474,10 @@ public class MainController {
 
             {
                 deleteButton.setOnAction(_ -> {
+                    int sourceIndex = dataPointsModel.getSourceIndex(getIndex());
                     dataPointsTable.getSelectionModel().clearSelection();
-                    if (getIndex() - 1 < viewModel.circuitElements.size()) {
-                        viewModel.removeComponentAt(getIndex() - 1);
+                    if (sourceIndex - 1 < viewModel.circuitElements.size()) {
+                        viewModel.removeComponentAt(sourceIndex - 1);
                     }
                 });
             }
@@ -465,8 +487,9 @@ public class MainController {
                 super.updateItem(item, empty);
                 int componentCount = viewModel.circuitElements.size();
 
-                // The first few elements are the circuits elements, editable
-                if (empty || getIndex() < 1 || getIndex() > componentCount) {
+                // The first few elements are the circuits elements, editable, wherever the table sorted them
+                int sourceIndex = empty ? -1 : dataPointsModel.getSourceIndex(getIndex());
+                if (empty || sourceIndex < 1 || sourceIndex > componentCount) {
                     setGraphic(null);
                 } else {
                     setGraphic(deleteButton);
@@ -475,22 +498,22 @@ public class MainController {
             }
         });
 
-        setupFilterControl(
-                frequencyRangeSlider1, minFreqTextField1, maxFreqTextField1,
-                viewModel::setFrequencyRangeMinF1, viewModel::setFrequencyRangeMaxF1
-        );
-
-        // Filter 2
-        setupFilterControl(
-                frequencyRangeSlider2, minFreqTextField2, maxFreqTextField2,
-                viewModel::setFrequencyRangeMinF2, viewModel::setFrequencyRangeMaxF2
-        );
-
-        // Filter 3
-        setupFilterControl(
-                frequencyRangeSlider3, minFreqTextField3, maxFreqTextField3,
-                viewModel::setFrequencyRangeMinF3, viewModel::setFrequencyRangeMaxF3
-        );
+        // One row of controls per frequency band, following the bands of the view model
+        viewModel.getFrequencyBands().forEach(this::addBandRow);
+        updateBandColors();
+        viewModel.getFrequencyBands().addListener((ListChangeListener<FrequencyBand>) change -> {
+            boolean structural = false;
+            while (change.next()) {
+                // Moved bounds are already handled by the sliders
+                if (change.wasUpdated() || change.wasPermutated()) continue;
+                change.getRemoved().forEach(band -> frequencyBandsBox.getChildren().remove(bandRows.remove(band).box()));
+                change.getAddedSubList().forEach(this::addBandRow);
+                structural = true;
+            }
+            if (!structural) return;
+            updateBandColors();
+            smithInteractionController.redrawSmithCanvas();
+        });
 
         s1pPointSizeSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
             viewModel.setS1PPointSize(newVal.doubleValue());
@@ -503,6 +526,8 @@ public class MainController {
             sweepStartFreqField.setText(SmithUtilities.displayBestUnitAndFormattedValue(freqRange.getKey(), FrequencyUnit.values()));
             sweepEndFreqField.setText(SmithUtilities.displayBestUnitAndFormattedValue(freqRange.getValue(), FrequencyUnit.values()));
             sweepPointsCountText.setText(String.valueOf(sdp.size()));
+            // The sweep has its own markers in the stats of the bands
+            bandRows.values().forEach(row -> updateBandStats(row.slider(), row.stats()));
             smithInteractionController.redrawSmithCanvas();
         });
 
@@ -546,32 +571,9 @@ public class MainController {
             if (!newVal) updateSweepFromTextFields.run();
         });
 
-        // Tells the renderer to use the S1P data as load
-        useS1PAsLoadCheckBoxF1.selectedProperty().addListener((obs, oldVal, newVal) -> {
-            viewModel.setUseS1PAsLoadF1(newVal);
-            smithInteractionController.redrawSmithCanvas();
-        });
-
-        useS1PAsLoadCheckBoxF2.selectedProperty().addListener((obs, oldVal, newVal) -> {
-            viewModel.setUseS1PAsLoadF2(newVal);
-            smithInteractionController.redrawSmithCanvas();
-        });
-
-        useS1PAsLoadCheckBoxF3.selectedProperty().addListener((obs, oldVal, newVal) -> {
-            viewModel.setUseS1PAsLoadF3(newVal);
-            smithInteractionController.redrawSmithCanvas();
-        });
-
-        // Update checkboxes depending on viewmodel changes
-        viewModel.useS1PAsLoadF1Property().addListener((obs, oldVal, newVal) -> {
-            useS1PAsLoadCheckBoxF1.setSelected(newVal);
-        });
-        viewModel.useS1PAsLoadF2Property().addListener((obs, oldVal, newVal) -> {
-            useS1PAsLoadCheckBoxF2.setSelected(newVal);
-        });
-        viewModel.useS1PAsLoadF3Property().addListener((obs, oldVal, newVal) -> {
-            useS1PAsLoadCheckBoxF3.setSelected(newVal);
-        });
+        // Update checkboxes depending on viewmodel changes, only one band is used as the load
+        viewModel.s1pLoadBandProperty().addListener((obs, oldVal, newVal) ->
+                bandRows.forEach((band, row) -> row.asLoad().setSelected(band == newVal)));
 
         useQualityFactorCheckBox.selectedProperty().addListener((obs, oldVal, newVal) -> {
             viewModel.setUseQualityFactor(newVal);
@@ -590,10 +592,12 @@ public class MainController {
                 if (event.isControlDown()) {
                     if (event.getCode() == KeyCode.Z) {
                         // Undo logic
+                        flushPendingUpdates();
                         viewModel.undo();
                         event.consume();
                     } else if (event.getCode() == KeyCode.Y) {
                         // Redo logic
+                        flushPendingUpdates();
                         viewModel.redo();
                         event.consume();
                     }
@@ -696,10 +700,64 @@ public class MainController {
         }
     }
 
+    /**
+     * Builds the controls of a frequency band: its name, its range slider with the frequency fields,
+     * the "As Load" check box and the markers of its S1P points.
+     */
+    private void addBandRow(FrequencyBand band) {
+        Label nameLabel = new Label("Frequency Band " + band.getName() + ":");
+
+        List<DataPoint> s1pPoints = viewModel.s1pDataPointsProperty();
+        RangeSlider slider = s1pPoints.isEmpty()
+                ? new RangeSlider(0, 10, band.getMinFrequency(), band.getMaxFrequency())
+                : new RangeSlider(s1pPoints.getFirst().getFrequency(), s1pPoints.getLast().getFrequency(),
+                        band.getMinFrequency(), band.getMaxFrequency());
+        HBox.setHgrow(slider, Priority.ALWAYS);
+        TextField minField = new TextField();
+        minField.setPrefWidth(100);
+        minField.setPromptText("Min");
+        TextField maxField = new TextField();
+        maxField.setPrefWidth(100);
+        maxField.setPromptText("Max");
+        CheckBox asLoad = new CheckBox();
+        asLoad.setSelected(viewModel.s1pLoadBandProperty().get() == band);
+
+        HBox controls = new HBox(10.0, minField, slider, maxField, new Label("As Load"), asLoad);
+        controls.setAlignment(Pos.CENTER_LEFT);
+        Label statsLabel = new Label("-");
+        VBox box = new VBox(5.0, nameLabel, controls, statsLabel);
+
+        setupFilterControl(slider, minField, maxField, statsLabel, band::setMinFrequency, band::setMaxFrequency);
+
+        // Tells the renderer to use the S1P data of this band as load
+        asLoad.selectedProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal) {
+                viewModel.setS1PLoadBand(band);
+            } else if (viewModel.s1pLoadBandProperty().get() == band) {
+                viewModel.setS1PLoadBand(null);
+            }
+            smithInteractionController.redrawSmithCanvas();
+        });
+
+        updateBandStats(slider, statsLabel);
+        bandRows.put(band, new BandRow(box, nameLabel, slider, asLoad, statsLabel));
+        frequencyBandsBox.getChildren().add(box);
+    }
+
+    /**
+     * Colors the name of each band as its points are drawn, the colors following the positions of the bands.
+     */
+    private void updateBandColors() {
+        List<FrequencyBand> bands = viewModel.getFrequencyBands();
+        for (int i = 0; i < bands.size(); i++) {
+            bandRows.get(bands.get(i)).name().setTextFill(BandColors.of(i));
+        }
+    }
+
     /**
      * Helper to wire up a Slider, its TextFields, and the ViewModel
      */
-    private void setupFilterControl(RangeSlider slider, TextField minField, TextField maxField,
+    private void setupFilterControl(RangeSlider slider, TextField minField, TextField maxField, Label statsLabel,
                                     java.util.function.Consumer<Double> minSetter,
                                     java.util.function.Consumer<Double> maxSetter) {
 
@@ -708,6 +766,7 @@ public class MainController {
             minSetter.accept(newVal.doubleValue());
             var toDisplay = SmithUtilities.getBestUnitAndFormattedValue(newVal.doubleValue(), FrequencyUnit.values());
             minField.setText(toDisplay.getValue() + " " + toDisplay.getKey().toString());
+            updateBandStats(slider, statsLabel);
             viewModel.updateMiddleRangePoint();
             smithInteractionController.redrawSmithCanvas();
         });
@@ -716,6 +775,7 @@ public class MainController {
             maxSetter.accept(newVal.doubleValue());
             var toDisplay = SmithUtilities.getBestUnitAndFormattedValue(newVal.doubleValue(), FrequencyUnit.values());
             maxField.setText(toDisplay.getValue() + " " + toDisplay.getKey().toString());
+            updateBandStats(slider, statsLabel);
             viewModel.updateMiddleRangePoint();
             smithInteractionController.redrawSmithCanvas();
         });
@@ -725,6 +785,52 @@ public class MainController {
         setupFrequencyField(maxField, (val) -> slider.setHighValue(val));
     }
 
+    /**
+     * Shows the markers of the S1P and sweep points within the range of a band, and the delta marker from the
+     * best match of the measures to the one of the sweep. The queries are O(log n), they follow every tick of
+     * the slider.
+     */
+    private void updateBandStats(RangeSlider slider, Label statsLabel) {
+        MarkerEngine s1pMarkers = viewModel.getS1PMarkers();
+        MarkerEngine sweepMarkers = viewModel.getSweepMarkers();
+        double min = slider.getLowValue();
+        double max = slider.getHighValue();
+        if (s1pMarkers.isEmpty() && sweepMarkers.isEmpty()) {
+            statsLabel.setText("-");
+            return;
+        }
+
+        StringBuilder text = new StringBuilder();
+        if (!s1pMarkers.isEmpty()) appendMarkers(text.append("S1P:  "), s1pMarkers, min, max);
+        if (!sweepMarkers.isEmpty()) {
+            if (!text.isEmpty()) text.append('\n');
+            appendMarkers(text.append("Sweep:  "), sweepMarkers, min, max);
+            s1pMarkers.bestReturnLoss(min, max).ifPresent(measured -> sweepMarkers.bestReturnLoss(min, max).ifPresent(swept -> {
+                MarkerEngine.Delta delta = measured.deltaTo(swept);
+                text.append(String.format("\nΔ Best RL, sweep - S1P: %+.2f dB @ %s%s", delta.value(),
+                        delta.frequency() < 0 ? "-" : "+",
+                        SmithUtilities.displayBestUnitAndFormattedValue(Math.abs(delta.frequency()), FrequencyUnit.values())));
+            }));
+        }
+        statsLabel.setText(text.toString());
+    }
+
+    private static void appendMarkers(StringBuilder text, MarkerEngine markers, double min, double max) {
+        markers.bestReturnLoss(min, max).ifPresent(best -> text.append(String.format("Best RL: %.2f dB @ %s",
+                best.value(), SmithUtilities.displayBestUnitAndFormattedValue(best.frequency(), FrequencyUnit.values()))));
+        markers.worstVswr(min, max).ifPresent(worst -> text.append(String.format("   Worst VSWR: %.2f @ %s",
+                worst.value(), SmithUtilities.displayBestUnitAndFormattedValue(worst.frequency(), FrequencyUnit.values()))));
+        text.append(String.format("   VSWR < %.1f: ", BANDWIDTH_VSWR));
+        markers.bandwidth(min, max, BANDWIDTH_VSWR).ifPresentOrElse(
+                band -> text.append(SmithUtilities.displayBestUnitAndFormattedValue(band.width(), FrequencyUnit.values()))
+                        .append(" (")
+                        .append(SmithUtilities.displayBestUnitAndFormattedValue(band.lowFrequency(), FrequencyUnit.values()))
+                        .append(" - ")
+                        .append(SmithUtilities.displayBestUnitAndFormattedValue(band.highFrequency(), FrequencyUnit.values()))
+                        .append(")"),
+                () -> text.append("none"));
+    }
+
     /**
      * Helper to parse text input and update the slider
      */
@@ -823,14 +929,32 @@ public class MainController {
         }
     }
 
+    /**
+     * Releases the render tasks of the chart and the schematic, for when the window is closed.
+     */
+    public void dispose() {
+        tuningBatch.dispose();
+        smithInteractionController.dispose();
+        circuitRenderer.dispose();
+    }
+
+    /**
+     * Applies the updates deferred by the tuning sliders and the mouse placement, so undo and the dialogs
+     * see the circuit as shown.
+     */
+    private void flushPendingUpdates() {
+        tuningBatch.close();
+        smithInteractionController.flushPendingUpdates();
+    }
+
     private void setupResizableCanvas() {
         circuitPane.setMinSize(0, 0);
 
         circuitCanvas.widthProperty().bind(circuitPane.widthProperty());
         circuitCanvas.heightProperty().bind(circuitPane.heightProperty());
 
-        circuitCanvas.widthProperty().addListener(_ -> circuitRenderer.render(viewModel));
-        circuitCanvas.heightProperty().addListener(_ -> circuitRenderer.render(viewModel));
+        circuitCanvas.widthProperty().addListener(_ -> circuitRenderer.redraw());
+        circuitCanvas.heightProperty().addListener(_ -> circuitRenderer.redraw());
     }
 
     /**
@@ -914,70 +1038,36 @@ public class MainController {
      * Creates the data-bindings between the View (FXML controls) and the ViewModel.
      */
     private void bindViewModel() {
-        dataPointsTable.itemsProperty().bind(viewModel.dataPointsProperty());
-
-        labelColumn.setCellValueFactory(cellData -> cellData.getValue().labelProperty());
-        impedanceColumn.setCellValueFactory(cellData -> cellData.getValue().impedanceProperty());
-        vswrColumn.setCellValueFactory(cellData -> cellData.getValue().vswrProperty());
-        returnLossColumn.setCellValueFactory(cellData -> cellData.getValue().returnLossProperty());
-        frequencyColumn.setCellValueFactory(cellData -> {
-            double freq = cellData.getValue().frequencyProperty().get();
-            var toDisplay = SmithUtilities.getBestUnitAndFormattedValue(
-                    freq,
-                    FrequencyUnit.values()
-            );
-            String display = toDisplay.getValue() + " " + toDisplay.getKey().toString();
-            return new javafx.beans.property.SimpleStringProperty(display);
-        });
-        qualityFactorColumn.setCellValueFactory(cellData -> cellData.getValue().qualityFactorProperty());
-
-        qualityFactorColumn.setCellFactory(_ -> new TableCell<>() {
-            @Override
-            protected void updateItem(Number item, boolean empty) {
-                super.updateItem(item, empty);
-                if (empty || item == null) {
-                    setText(null);
-                } else {
-                    setText(String.format("%.2f", item.doubleValue()));
-                }
-            }
-        });
-
-        impedanceColumn.setCellFactory(column -> new TableCell<>() {
-            @Override
-            protected void updateItem(Complex item, boolean empty) {
-                super.updateItem(item, empty);
-                if (empty || item == null) {
-                    setText(null);
-                } else {
-                    setText(String.format("%.2f + j%.2f Ω", item.real(), item.imag()));
-                }
-            }
-        });
-
-        vswrColumn.setCellFactory(_ -> new TableCell<>() {
-            @Override
-            protected void updateItem(Number item, boolean empty) {
-                super.updateItem(item, empty);
-                if (empty || item == null) {
-                    setText(null);
-                } else {
-                    setText(String.format("%.2f", item.doubleValue()));
-                }
+        // The table reads its rows from a columnar copy of the points, and sorts them itself
+        dataPointsModel = new DataPointTableModel(viewModel.dataPointsProperty());
+        dataPointsTable.setItems(dataPointsModel);
+        dataPointsTable.setSortPolicy(table -> {
+            var sortOrder = table.getSortOrder();
+            if (sortOrder.isEmpty()) {
+                dataPointsModel.sort(null, true);
+            } else {
+                // Only the first column of the sort order is used
+                var column = sortOrder.getFirst();
+                dataPointsModel.sort((DataPointTableModel.Column) column.getUserData(),
+                        column.getSortType() == TableColumn.SortType.ASCENDING);
             }
+            return true;
         });
 
-        returnLossColumn.setCellFactory(column -> new TableCell<>() {
-            @Override
-            protected void updateItem(Number item, boolean empty) {
-                super.updateItem(item, empty);
-                if (empty || item == null) {
-                    setText(null);
-                } else {
-                    setText(String.format("%.2f", item.doubleValue()));
-                }
-            }
-        });
+        labelColumn.setUserData(DataPointTableModel.Column.LABEL);
+        impedanceColumn.setUserData(DataPointTableModel.Column.IMPEDANCE);
+        vswrColumn.setUserData(DataPointTableModel.Column.VSWR);
+        returnLossColumn.setUserData(DataPointTableModel.Column.RETURN_LOSS);
+        frequencyColumn.setUserData(DataPointTableModel.Column.FREQUENCY);
+        qualityFactorColumn.setUserData(DataPointTableModel.Column.QUALITY_FACTOR);
+
+        // The texts are formatted once per row, when the row is first shown
+        labelColumn.setCellValueFactory(cellData -> new ReadOnlyStringWrapper(cellData.getValue().getLabel()));
+        impedanceColumn.setCellValueFactory(cellData -> new ReadOnlyStringWrapper(cellData.getValue().getImpedanceText()));
+        vswrColumn.setCellValueFactory(cellData -> new ReadOnlyStringWrapper(cellData.getValue().getVswrText()));
+        returnLossColumn.setCellValueFactory(cellData -> new ReadOnlyStringWrapper(cellData.getValue().getReturnLossText()));
+        frequencyColumn.setCellValueFactory(cellData -> new ReadOnlyStringWrapper(cellData.getValue().getFrequencyText()));
+        qualityFactorColumn.setCellValueFactory(cellData -> new ReadOnlyStringWrapper(cellData.getValue().getQualityFactorText()));
 
         loadImpedanceLabel.textProperty().bind(viewModel.loadImpedance.asString());
         generalFreqLabel.textProperty().bind(viewModel.frequencyTextProperty());
@@ -1039,6 +1129,7 @@ public class MainController {
      * Set what will be the center point of the chart
      */
     public void setCharacteristicImpedance() {
+        flushPendingUpdates();
         var stage = smithCanvas.getScene().getWindow();
         DialogUtils.showDoubleInputDialog("Characteristic Impedance", "Enter Zo (Ohms):", viewModel.zo.get(), stage)
                 .ifPresent(zo -> {
@@ -1053,6 +1144,7 @@ public class MainController {
 
     @FXML
     private void onChangeLoad() {
+        flushPendingUpdates();
         var stage = smithCanvas.getScene().getWindow();
         ComplexInputDialog dialog = new ComplexInputDialog("Change Load", viewModel.loadImpedance.get());
         dialog.initOwner(stage);
@@ -1069,6 +1161,7 @@ public class MainController {
 
     @FXML
     private void onChangeFreq() {
+        flushPendingUpdates();
         var stage = smithCanvas.getScene().getWindow();
         FrequencyInputDialog dialog = new FrequencyInputDialog("Change Frequency", viewModel.frequencyProperty().get());
         dialog.initOwner(stage);
@@ -1110,6 +1203,7 @@ public class MainController {
     }
 
     public void importS1P() {
+        flushPendingUpdates();
         FileChooser fileChooser = new FileChooser();
         fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Touchstone S1P Files", "*.s1p"));
         File selectedFile = fileChooser.showOpenDialog(smithCanvas.getScene().getWindow());
@@ -1132,19 +1226,17 @@ public class MainController {
                 double minFreq = minMax.getKey();
                 double maxFreq = minMax.getValue();
 
-                updateSliderBounds(frequencyRangeSlider1, minFreq, maxFreq);
-                updateSliderBounds(frequencyRangeSlider2, minFreq, maxFreq);
-                updateSliderBounds(frequencyRangeSlider3, minFreq, maxFreq);
+                for (BandRow row : bandRows.values()) {
+                    updateSliderBounds(row.slider(), minFreq, maxFreq);
+                    // The bounds may not have changed, the markers of the new points are shown anyway
+                    updateBandStats(row.slider(), row.stats());
+                }
 
                 //Display the S1P controls
                 s1pTitledPane.setVisible(true);
                 s1pTitledPane.setExpanded(true);
                 s1pTitledPane.setManaged(true);
 
-                viewModel.setUseS1PAsLoadF1(useS1PAsLoadCheckBoxF1.isSelected());
-                viewModel.setUseS1PAsLoadF2(useS1PAsLoadCheckBoxF2.isSelected());
-                viewModel.setUseS1PAsLoadF3(useS1PAsLoadCheckBoxF3.isSelected());
-
                 smithInteractionController.redrawSmithCanvas();
             } catch (IllegalArgumentException e) {
                 DialogUtils.showErrorAlert("Can't open file", "Invalid S1P file: " + e.getMessage(), smithCanvas.getScene().getWindow());
@@ -1162,6 +1254,31 @@ public class MainController {
     public void exportS1P() {
     }
 
+    public void exportChartSvg() {
+        flushPendingUpdates();
+        Window stage = smithCanvas.getScene().getWindow();
+        DialogUtils.showSvgExportDialog("Export Smith chart as SVG", stage).ifPresent(export -> {
+            try {
+                smithInteractionController.exportChartSvg(export.getKey(), export.getValue());
+            } catch (IOException e) {
+                Logger.getLogger("Error").log(Level.SEVERE, "Error exporting the chart: " + e.getMessage());
+                DialogUtils.showErrorAlert("Export failed", e.getMessage(), stage);
+            }
+        });
+    }
+
+    public void exportChartPng() {
+        flushPendingUpdates();
+        Window stage = smithCanvas.getScene().getWindow();
+        DialogUtils.showPngExportDialog("Export Smith chart as PNG", 8192, stage).ifPresent(export ->
+                smithInteractionController.exportChartPng(export.getKey(), export.getValue())
+                        .whenComplete((_, error) -> {
+                            if (error == null) return;
+                            Logger.getLogger("Error").log(Level.SEVERE, "Error exporting the chart: " + error.getMessage());
+                            Platform.runLater(() -> DialogUtils.showErrorAlert("Export failed", error.getMessage(), stage));
+                        }));
+    }
+
     public void changeS1P() {
         importS1P();
     }
@@ -1174,23 +1291,25 @@ public class MainController {
         s1pTitledPane.setVisible(false);
         s1pTitledPane.setManaged(false);
 
-        viewModel.setUseS1PAsLoadF1(false); // Doesn't matter which one we disable, will disable the others too
+        viewModel.setS1PLoadBand(null);
 
         smithInteractionController.redrawSmithCanvas();
     }
 
     private void promptEditForComponent(CircuitElement component) {
+        flushPendingUpdates();
         var stage = smithCanvas.getScene().getWindow();
         ComponentEditDialog dialog = new ComponentEditDialog(component);
         dialog.initOwner(stage);
         dialog.showAndWait().ifPresent(newValue -> {
             component.setRealWorldValue(newValue);
             smithInteractionController.redrawSmithCanvas();
-            circuitRenderer.render(viewModel);
+            circuitRenderer.redraw();
         });
     }
 
     public void onSweep() {
+        flushPendingUpdates();
         var stage = smithCanvas.getScene().getWindow();
 
         var lastDataPoint = viewModel.getLastDataPoint();
@@ -1213,6 +1332,7 @@ public class MainController {
     }
 
     public void setDisplayCirclesOptions() {
+        flushPendingUpdates();
         var stage = smithCanvas.getScene().getWindow();
         CircleDialog dialog = CircleDialog.getInstance();
         dialog.initOwner(stage);
@@ -1229,6 +1349,19 @@ public class MainController {
         viewModel.setShowS1PDataPoints(toggleS1PInDataPointsButton.isSelected());
     }
 
+    public void toggleS1PDensity() {
+        viewModel.showS1PAsDensityProperty().set(toggleS1PDensityButton.isSelected());
+    }
+
+    public void toggleS1PTrails() {
+        viewModel.showS1PTrailsProperty().set(toggleS1PTrailsButton.isSelected());
+    }
+
+    public void togglePerformanceHud() {
+        viewModel.getPerformanceMonitor().setEnabled(togglePerformanceHudButton.isSelected());
+        smithInteractionController.redrawSmithCanvas();
+    }
+
     public void onClearSweep() {
         viewModel.clearSweepPoints();
         sweepManagementTitledPane.setVisible(false);
@@ -1237,6 +1370,7 @@ public class MainController {
     }
 
     public void onExportSweepToS1P() {
+        flushPendingUpdates();
         if (viewModel.sweepDataPointsProperty().isEmpty()) {
             DialogUtils.showErrorAlert("Export error", "No sweep data points to export.", smithCanvas.getScene().getWindow());
             return;
@@ -1266,50 +1400,24 @@ public class MainController {
     }
 
     public void onApplyTuning() {
+        tuningBatch.close();
         viewModel.applyTuningAdjustments();
     }
 
     public void onCancelTuning() {
+        tuningBatch.close();
         viewModel.cancelTuningAdjustments();
     }
 
     @FXML
-    public void toggle1Filter() {
-        boolean selected = toggle1FilterButton.isSelected();
-        toggle2FilterButton.setSelected(false);
-        toggle3FilterButton.setSelected(false);
-        filter1Box.setVisible(selected);
-        filter1Box.setManaged(selected);
-        filter2Box.setVisible(false);
-        filter2Box.setManaged(false);
-        filter3Box.setVisible(false);
-        filter3Box.setManaged(false);
-    }
-
-    @FXML
-    private void toggle2Filter() {
-        boolean selected = toggle2FilterButton.isSelected();
-        toggle1FilterButton.setSelected(false);
-        toggle3FilterButton.setSelected(false);
-        filter1Box.setVisible(selected);
-        filter1Box.setManaged(selected);
-        filter2Box.setVisible(selected);
-        filter2Box.setManaged(selected);
-        filter3Box.setVisible(false);
-        filter3Box.setManaged(false);
+    private void addFrequencyBand() {
+        viewModel.addFrequencyBand();
     }
 
     @FXML
-    private void toggle3Filter() {
-        boolean selected = toggle3FilterButton.isSelected();
-        toggle1FilterButton.setSelected(false);
-        toggle2FilterButton.setSelected(false);
-        filter1Box.setVisible(selected);
-        filter1Box.setManaged(selected);
-        filter2Box.setVisible(selected);
-        filter2Box.setManaged(selected);
-        filter3Box.setVisible(selected);
-        filter3Box.setManaged(selected);
+    private void removeFrequencyBand() {
+        List<FrequencyBand> bands = viewModel.getFrequencyBands();
+        if (!bands.isEmpty()) viewModel.removeFrequencyBand(bands.getLast());
     }
 
     @FXML
@@ -1319,6 +1427,7 @@ public class MainController {
 
     @FXML
     private void onConfigureDiscreteComponents() {
+        flushPendingUpdates();
         var stage = smithCanvas.getScene().getWindow();
         DiscreteComponentConfigDialog dialog = new DiscreteComponentConfigDialog();
         dialog.initOwner(stage);
@@ -1329,8 +1438,9 @@ public class MainController {
 
     @FXML
     private void onCreateNewProject() {
+        flushPendingUpdates();
         var stage = smithCanvas.getScene().getWindow();
-        if (SmithChartViewModel.getInstance().isModifiedProperty().get()) {
+        if (viewModel.isModifiedProperty().get()) {
             if (DialogUtils.areYouSureDialog(
                     "New Project",
                     "Are you sure you want to create a new project? Unsaved changes will be lost.",
@@ -1388,8 +1498,9 @@ public class MainController {
 
     @FXML
     private void onOpenProject() {
+        flushPendingUpdates();
         var stage = smithCanvas.getScene().getWindow();
-        if (SmithChartViewModel.getInstance().isModifiedProperty().get()) {
+        if (viewModel.isModifiedProperty().get()) {
             if (DialogUtils.areYouSureDialog(
                     "Load Project",
                     "Are you sure you want to load another project? Unsaved changes will be lost.",
@@ -1415,8 +1526,9 @@ public class MainController {
 
     @FXML
     private void onExitApp() {
+        flushPendingUpdates();
         var stage = smithCanvas.getScene().getWindow();
-        if (SmithChartViewModel.getInstance().isModifiedProperty().get()) {
+        if (viewModel.isModifiedProperty().get()) {
             if (DialogUtils.areYouSureDialog(
                     "Exit Application",
                     "Are you sure you want to exit JSmithFX? Unsaved changes will be lost.",
@@ -1457,7 +1569,9 @@ public class MainController {
 
     @FXML
     private void handleOpenS1PChart() {
-        S1PPlotterWindow.getInstance().show();
+        S1PPlotterWindow plotter = S1PPlotterWindow.of(viewModel);
+        plotter.followChart(smithInteractionController.getChartRenderHandle());
+        plotter.show();
     }
 }
 
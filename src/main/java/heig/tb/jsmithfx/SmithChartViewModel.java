@@ -1,8 +1,13 @@
 package heig.tb.jsmithfx;
 
 import heig.tb.jsmithfx.logic.CircuitSimulator;
+import heig.tb.jsmithfx.logic.DependencyGraph;
+import heig.tb.jsmithfx.logic.FrequencyBandIndex;
 import heig.tb.jsmithfx.logic.HistoryManager;
+import heig.tb.jsmithfx.logic.MarkerEngine;
+import heig.tb.jsmithfx.logic.MouseReadout;
 import heig.tb.jsmithfx.logic.ProjectManager;
+import heig.tb.jsmithfx.logic.SimulationResult;
 import heig.tb.jsmithfx.logic.SmithCalculator;
 import heig.tb.jsmithfx.model.CircuitElement;
 import heig.tb.jsmithfx.model.DataPoint;
@@ -11,9 +16,12 @@ import heig.tb.jsmithfx.model.Element.Inductor;
 import heig.tb.jsmithfx.model.Element.Line;
 import heig.tb.jsmithfx.model.Element.Resistor;
 import heig.tb.jsmithfx.model.Element.TypicalUnit.FrequencyUnit;
+import heig.tb.jsmithfx.model.FrequencyBand;
 import heig.tb.jsmithfx.model.TouchstoneS1P;
 import heig.tb.jsmithfx.utilities.Complex;
 import heig.tb.jsmithfx.utilities.ComponentEntry;
+import heig.tb.jsmithfx.utilities.ConcatenatedObservableList;
+import heig.tb.jsmithfx.utilities.PerformanceMonitor;
 import heig.tb.jsmithfx.utilities.SmithUtilities;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.*;
@@ -25,6 +33,8 @@ import javafx.util.Pair;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -36,8 +46,11 @@ import static org.controlsfx.tools.Utils.getWindow;
  * <p>
  * This class manages the state of the circuit, handles impedance calculations,
  * manages frequency sweeps, handles S1P data, and provides properties for UI binding.
- * It follows the Singleton pattern.
+ * The main window uses the shared instance, {@link #getInstance()}. Each other instance is independent, with
+ * its own circuits, simulator, history and caches, for another window or a headless job.
  * </p>
+ * An instance is not thread-safe, it is confined to the thread using it: the FX thread for a window,
+ * any thread for a headless job.
  */
 public final class SmithChartViewModel {
 
@@ -110,34 +123,72 @@ public final class SmithChartViewModel {
     private final ReadOnlyListWrapper<DataPoint> sweepDataPoints = new ReadOnlyListWrapper<>(FXCollections.observableArrayList());
     private final SimpleListProperty<Double> pointToSweep = new SimpleListProperty<>(FXCollections.observableArrayList());
 
-    /** Aggregated list of all points (Main + S1P + Sweep) for rendering. */
-    private final ReadOnlyListWrapper<DataPoint> combinedDataPoints = new ReadOnlyListWrapper<>(FXCollections.observableArrayList());
+    /** Markers of the S1P and sweep points, built on first use after a change. */
+    private MarkerEngine s1pMarkers;
+    private MarkerEngine sweepMarkers;
+
+    /** Aggregated list of all points (Main + S1P + Sweep) for the data points table, a view of the three lists. */
+    private final ConcatenatedObservableList<DataPoint> combinedView =
+            new ConcatenatedObservableList<>(List.of(dataPoints, s1pDataPoints, sweepDataPoints));
+    private static final int COMBINED_S1P = 1;
+    private static final int COMBINED_SWEEP = 2;
+    private final ReadOnlyListWrapper<DataPoint> combinedDataPoints = new ReadOnlyListWrapper<>(combinedView);
 
     /** A read-only list of the calculated gammas for drawing on the canvas. */
     private final ReadOnlyListWrapper<Complex> measuresGamma = new ReadOnlyListWrapper<>(FXCollections.observableArrayList());
 
+    // =============================================================================================
+    // Derived State Graph
+    // =============================================================================================
+
+    // Derived lists above, each computed once per change of the sources it depends on
+    private final DependencyGraph derivedState = new DependencyGraph();
+    private final DependencyGraph.Node zoSource = derivedState.source("zo");
+    private final DependencyGraph.Node frequencySource = derivedState.source("frequency");
+    private final DependencyGraph.Node loadSource = derivedState.source("load");
+    private final DependencyGraph.Node circuitSource = derivedState.source("circuit");
+    private final DependencyGraph.Node s1pSource = derivedState.source("S1P points");
+    // Use of the S1P as load, and the element previewed on it
+    private final DependencyGraph.Node s1pLoadSource = derivedState.source("S1P as load");
+    private final DependencyGraph.Node sweepFrequenciesSource = derivedState.source("sweep frequencies");
+
+    private final DependencyGraph.Node chainNode = derivedState.derived("impedance chain", this::computeImpedanceChain,
+            loadSource, frequencySource, zoSource, circuitSource);
+    private final DependencyGraph.Node gammasNode = derivedState.derived("gammas", this::recalculateAllGammas,
+            chainNode);
+    private final DependencyGraph.Node s1pChainNode = derivedState.derived("transformed S1P", this::recalculateS1PChain,
+            s1pSource, s1pLoadSource, zoSource, circuitSource);
+    private final DependencyGraph.Node sweepNode = derivedState.derived("sweep", this::computeFrequencySweep,
+            sweepFrequenciesSource, loadSource, zoSource, circuitSource);
+    private final DependencyGraph.Node resultNode = derivedState.derived("simulation result", this::publishSimulationResult,
+            chainNode, s1pChainNode, sweepNode);
+
+    /** Last published simulation result, read from any thread. */
+    private final AtomicReference<SimulationResult> simulationResult = new AtomicReference<>(SimulationResult.empty());
+    // Columns written by the computations, published as they are
+    private SimulationResult.Series chainColumns = SimulationResult.Series.empty();
+    private SimulationResult.Series transformedS1PColumns = SimulationResult.Series.empty();
+    private SimulationResult.Series sweepColumns = SimulationResult.Series.empty();
+    // Columns of the imported S1P points, null once they changed
+    private SimulationResult.Series s1pColumns;
+
     // =============================================================================================
     // UI & Mouse Interaction Properties
     // =============================================================================================
 
-    // Mouse info (Raw values)
-    public final DoubleProperty mouseReturnLoss = new SimpleDoubleProperty(0);
-    public final DoubleProperty mouseVSWR = new SimpleDoubleProperty(0);
-    public final DoubleProperty mouseQualityFactor = new SimpleDoubleProperty(0);
-    public final ObjectProperty<Complex> mouseGamma = new SimpleObjectProperty<>(new Complex(0.0, 0.0));
-    public final ObjectProperty<Complex> mouseAdmittanceY = new SimpleObjectProperty<>(new Complex(0.0, 0.0));
-    public final ObjectProperty<Complex> mouseImpedanceZ = new SimpleObjectProperty<>(new Complex(0.0, 0.0));
+    // Mouse info, computed in place for each sample of the mouse position
+    private final MouseReadout mouseReadout = new MouseReadout();
 
     // Formatted Text Wrappers for UI Binding
     private final ReadOnlyStringWrapper frequencyText = new ReadOnlyStringWrapper("-");
     private final ReadOnlyStringWrapper pulseFrequencyText = new ReadOnlyStringWrapper("-");
     private final ReadOnlyStringWrapper zoText = new ReadOnlyStringWrapper("-");
-    private final ReadOnlyStringWrapper mouseReturnLossText = new ReadOnlyStringWrapper("- dB");
-    private final ReadOnlyStringWrapper mouseVSWRText = new ReadOnlyStringWrapper("-");
-    private final ReadOnlyStringWrapper mouseQualityFactorText = new ReadOnlyStringWrapper("-");
-    private final ReadOnlyStringWrapper mouseGammaText = new ReadOnlyStringWrapper("-");
-    private final ReadOnlyStringWrapper mouseAdmittanceYText = new ReadOnlyStringWrapper("Y: -");
-    private final ReadOnlyStringWrapper mouseImpedanceZText = new ReadOnlyStringWrapper("Z: -");
+    private final ReadoutText mouseReturnLossText = new ReadoutText("- dB");
+    private final ReadoutText mouseVSWRText = new ReadoutText("-");
+    private final ReadoutText mouseQualityFactorText = new ReadoutText("-");
+    private final ReadoutText mouseGammaText = new ReadoutText("-");
+    private final ReadoutText mouseAdmittanceYText = new ReadoutText("Y: -");
+    private final ReadoutText mouseImpedanceZText = new ReadoutText("Z: -");
 
     // Cursor & Selection
     public final ObjectProperty<Complex> ghostCursorGamma = new SimpleObjectProperty<>();
@@ -156,9 +207,9 @@ public final class SmithChartViewModel {
     // Display Options
     private final ReadOnlyListWrapper<Double> vswrCircles = new ReadOnlyListWrapper<>(FXCollections.observableArrayList());
     private final ReadOnlyDoubleWrapper s1pPointSize = new ReadOnlyDoubleWrapper(4.0);
-    private boolean showSweepInDataPoints = false;
-    private boolean showS1PInDataPoints = false;
-    public BooleanProperty isRedrawing = new SimpleBooleanProperty(false);
+    private final BooleanProperty showS1PAsDensity = new SimpleBooleanProperty(false);
+    private final BooleanProperty showS1PTrails = new SimpleBooleanProperty(false);
+    private final PerformanceMonitor performanceMonitor = new PerformanceMonitor();
 
     // =============================================================================================
     // Application State (Project, Undo/Redo, Modification)
@@ -181,18 +232,14 @@ public final class SmithChartViewModel {
     // Advanced Configuration (Filters, S1P Load, Discrete, Q-Factor)
     // =============================================================================================
 
-    // S1P Load option for each filters
-    private final BooleanProperty useS1PAsLoadF1 = new SimpleBooleanProperty(false);
-    private final BooleanProperty useS1PAsLoadF2 = new SimpleBooleanProperty(false);
-    private final BooleanProperty useS1PAsLoadF3 = new SimpleBooleanProperty(false);
-    private final BooleanProperty filter1Enabled = new SimpleBooleanProperty(true);
-    private final BooleanProperty filter2Enabled = new SimpleBooleanProperty(false);
-    private final BooleanProperty filter3Enabled = new SimpleBooleanProperty(false);
-
-    // RangeSlider private properties
-    private double freqRangeMinF1, freqRangeMaxF1;
-    private double freqRangeMinF2, freqRangeMaxF2;
-    private double freqRangeMinF3, freqRangeMaxF3;
+    /** Frequency bands filtering the S1P points, the list notifies when a bound moves. */
+    private final ObservableList<FrequencyBand> frequencyBands = FXCollections.observableArrayList(
+            band -> new javafx.beans.Observable[]{band.minFrequencyProperty(), band.maxFrequencyProperty()});
+    private final ObservableList<FrequencyBand> frequencyBandsView = FXCollections.unmodifiableObservableList(frequencyBands);
+    /** Index of the band bounds, rebuilt on first use after a change. */
+    private FrequencyBandIndex frequencyBandIndex;
+    // Band whose range of S1P points is used as the load, null if none
+    private final ObjectProperty<FrequencyBand> s1pLoadBand = new SimpleObjectProperty<>();
 
     // Quality factor stuff
     private final BooleanProperty isUsingQualityFactor = new SimpleBooleanProperty(false);
@@ -213,7 +260,19 @@ public final class SmithChartViewModel {
     // Constructor & Initialization
     // =============================================================================================
 
-    private SmithChartViewModel() {
+    /**
+     * Creates an independent view model, with a new project.
+     */
+    public SmithChartViewModel() {
+        // The derived state is computed once, when the initial sources are all set
+        derivedState.hold();
+        // A flush follows a change or a batch of changes, the recalculations of one user action
+        derivedState.setOnFlushed(performanceMonitor::endAction);
+
+        // The table only shows the points of the circuit until asked otherwise
+        combinedView.setVisible(COMBINED_S1P, false);
+        combinedView.setVisible(COMBINED_SWEEP, false);
+
         // Initialize with one default circuit containing the extractor for updates
         addCircuit();
 
@@ -229,10 +288,10 @@ public final class SmithChartViewModel {
             cancelTuningAdjustments();
         });
 
-        // When any sources change, trigger a full recalculation.
+        // When any sources change, recompute the state derived from it
         zo.addListener((_, _, _) -> {
             zoText.set(zo.get() + " Ω");
-            recalculateImpedanceChain();
+            derivedState.changed(zoSource);
             markAsModified();
         });
         frequency.addListener((_, _, _) -> {
@@ -241,21 +300,19 @@ public final class SmithChartViewModel {
             String newFreqText = SmithUtilities.displayBestUnitAndFormattedValue(freq, FrequencyUnit.values());
             frequencyText.set(newFreqText);
             pulseFrequencyText.set(String.format("%.2e rad/s", 2 * Math.PI * freq));
-            recalculateImpedanceChain();
+            derivedState.changed(frequencySource);
             markAsModified();
         });
 
         circuitElements.addListener((ListChangeListener<CircuitElement>) change -> {
+            boolean modified = false;
             while (change.next()) {
-                if (change.wasUpdated()) {
-                    recalculateImpedanceChain();
-                    // Sweep is handled within recalculateImpedanceChain (delegated below)
-                    markAsModified();
-                }
-                if (change.wasAdded() || change.wasRemoved()) {
-                    recalculateImpedanceChain();
-                    markAsModified();
-                }
+                modified |= change.wasUpdated() || change.wasAdded() || change.wasRemoved();
+            }
+            // Once for the whole change, whatever the number of elements it touches
+            if (modified) {
+                derivedState.changed(circuitSource);
+                markAsModified();
             }
         });
 
@@ -267,44 +324,41 @@ public final class SmithChartViewModel {
         loadImpedance.set(new Complex(zo.get() * 2, zo.get() * 3));
 
         loadImpedance.addListener((_, _, _) -> {
-            recalculateImpedanceChain();
+            derivedState.changed(loadSource);
             markAsModified();
         });
 
-        // When the list of derived impedances changes, automatically update the gamma values.
-        dataPoints.addListener((ListChangeListener<DataPoint>) _ -> {
-            if (isAnyUseS1PAsLoad()) recalculateS1PChain();
-            recalculateAllGammas();
-        });
-
         s1pDataPoints.addListener((ListChangeListener<DataPoint>) _ -> {
-            recalculateS1PChain();
+            s1pMarkers = null;
+            s1pColumns = null;
+            derivedState.changed(s1pSource);
             markAsModified();
         });
 
+        sweepDataPoints.addListener((ListChangeListener<DataPoint>) _ -> sweepMarkers = null);
+
         previewElementS1P.addListener((_, _, _) -> {
             if (previewElementS1P.get() == null) {
                 previewTransformedS1PPoints.clear();
                 cachedS1PPoints.clear();
                 return;
             }
-            recalculateS1PChain();
+            derivedState.changed(s1pLoadSource);
         });
+        s1pLoadBand.addListener(_ -> derivedState.changed(s1pLoadSource));
 
-        // Listen for changes in the main data points and update combined points
-        dataPoints.addListener((ListChangeListener<DataPoint>) _ -> updateCombinedDataPoints());
-        s1pDataPoints.addListener((ListChangeListener<DataPoint>) _ -> updateCombinedDataPoints());
-        sweepDataPoints.addListener((ListChangeListener<DataPoint>) _ -> updateCombinedDataPoints());
+        frequencyBands.addListener((ListChangeListener<FrequencyBand>) _ -> frequencyBandIndex = null);
+        addFrequencyBand();
 
         // Perform the initial calculation when the view model is created.
-        recalculateImpedanceChain();
+        derivedState.release();
 
         suppressModificationEvents = false;
     }
 
     /**
-     * Singleton instance accessor.
-     * @return The single instance of SmithChartViewModel.
+     * Shared instance accessor.
+     * @return The instance of SmithChartViewModel used by the main window.
      */
     public static SmithChartViewModel getInstance() {
         return Holder.INSTANCE;
@@ -314,35 +368,77 @@ public final class SmithChartViewModel {
     // Core Calculation Logic (Delegated)
     // =============================================================================================
 
+    /**
+     * Starts a batch of updates. Until the matching {@link #endUpdate()}, the changed sources only
+     * invalidate the state derived from them, so the derived points are computed once for the whole batch.
+     * Batches can be nested, the outermost one runs the recalculations.
+     */
+    public void beginUpdate() {
+        derivedState.hold();
+    }
+
+    /**
+     * Ends a batch of updates started by {@link #beginUpdate()}. When it is the outermost one,
+     * computes each derived state invalidated during the batch, once.
+     */
+    public void endUpdate() {
+        derivedState.release();
+    }
+
+    /**
+     * Runs the given updates as a single batch, see {@link #beginUpdate()}.
+     */
+    public void runBatched(Runnable updates) {
+        beginUpdate();
+        try {
+            updates.run();
+        } finally {
+            endUpdate();
+        }
+    }
+
     /**
      * Delegates the main circuit calculation to the Simulator Service.
-     * Also triggers S1P and Sweep updates.
      */
-    private void recalculateImpedanceChain() {
+    private void computeImpedanceChain() {
         Complex currentImpedance = loadImpedance.get();
         if (currentImpedance == null) return;
 
+        performanceMonitor.countRecalculation();
+        long start = performanceMonitor.start();
+
         // Calculate Main Chain
-        List<DataPoint> mainPoints = simulator.calculateChain(
+        chainColumns = simulator.calculateChain(
                 loadImpedance.get(),
                 frequency.get(),
                 zo.get(),
                 circuitElements.get()
         );
-        dataPoints.setAll(mainPoints);
-
-        // Trigger Secondary Calculations
-        recalculateS1PChain();
-        performFrequencySweep();
+        dataPoints.setAll(pointsOf(chainColumns, index -> index == 0 ? "LD" : "DP" + index));
+        performanceMonitor.stop(PerformanceMonitor.Metric.IMPEDANCE_CHAIN, start);
     }
 
     /**
      * Delegates S1P transformation to the Simulator Service.
      */
     private void recalculateS1PChain() {
+        long start = performanceMonitor.start();
+        try {
+            computeS1PChain();
+        } finally {
+            performanceMonitor.stop(PerformanceMonitor.Metric.S1P_CHAIN, start);
+        }
+    }
+
+    private void computeS1PChain() {
         if (!isAnyUseS1PAsLoad() || s1pDataPoints.isEmpty()) {
             transformedS1PPoints.clear();
-            if (!isAnyUseS1PAsLoad()) transformedS1PPoints.setAll(s1pDataPoints);
+            transformedS1PColumns = SimulationResult.Series.empty();
+            if (!isAnyUseS1PAsLoad()) {
+                if (s1pColumns == null) s1pColumns = SimulationResult.Series.of(s1pDataPoints);
+                transformedS1PColumns = s1pColumns;
+                transformedS1PPoints.setAll(s1pDataPoints);
+            }
             cachedS1PPoints.clear();
             return;
         }
@@ -358,9 +454,10 @@ public final class SmithChartViewModel {
                 List.of(previewElementS1P.get()) : circuitElements.get();
 
         // Calculate
-        List<DataPoint> newTransformedPoints = simulator.calculateTransformedS1P(
+        transformedS1PColumns = simulator.calculateTransformedS1P(
                 sourcePoints, elementsToApply, zo.get()
         );
+        List<DataPoint> newTransformedPoints = pointsOf(transformedS1PColumns, index -> sourcePoints.get(index).getLabel());
 
         transformedS1PPoints.setAll(newTransformedPoints);
 
@@ -373,70 +470,108 @@ public final class SmithChartViewModel {
 
     /**
      * Updates the UI-bound properties based on the mouse cursor position on the chart.
-     * Delegates math to SmithCalculator.
+     * A label is only formatted again when the digits it shows change.
      *
      * @param gammaX The X component of Gamma (Real part).
      * @param gammaY The Y component of Gamma (Imaginary part).
      */
     public void calculateMouseInformations(double gammaX, double gammaY) {
-        Complex gamma = new Complex(gammaX, gammaY);
-        this.mouseGamma.set(gamma);
-
-        // Only perform calculations for points within the Smith Chart (|Gamma| <= 1)
-        if (gamma.magnitude() > 1.0) {
-            setMouseInfoToDefault();
-            return;
+        switch (mouseReadout.update(gammaX, gammaY, zo.get())) {
+            case OUTSIDE -> setMouseInfoToDefault();
+            case OPEN_CIRCUIT -> setMouseInfoToOpenCircuit();
+            case INSIDE -> setMouseInfo();
         }
+    }
 
-        // Use SmithCalculator for transformations
-        // Z = Gamma -> Impedance
-        Complex impedanceZ = SmithCalculator.gammaToImpedance(gamma, zo.get());
+    /**
+     * @return the impedance last pointed at by the mouse inside the chart
+     */
+    public Complex getMouseImpedanceZ() {
+        return new Complex(mouseReadout.getResistance(), mouseReadout.getReactance());
+    }
 
-        // Handle singularity (Gamma ~ 1)
-        if (impedanceZ.real() > 1e9) { // Extremely high resistance
-            setMouseInfoToOpenCircuit(gamma);
-            return;
+    private void setMouseInfo() {
+        double returnLoss = mouseReadout.getReturnLoss();
+        if (mouseReturnLossText.changed(digits(returnLoss, 1e3), 0)) {
+            mouseReturnLossText.set(String.format("%.3f dB", returnLoss));
+        }
+        double vswr = mouseReadout.getVswr();
+        if (mouseVSWRText.changed(digits(vswr, 1e3), 0)) {
+            mouseVSWRText.set(String.format("%.3f", vswr));
         }
+        double qFactor = mouseReadout.getQualityFactor();
+        if (mouseQualityFactorText.changed(digits(qFactor, 1e3), 0)) {
+            mouseQualityFactorText.set(String.format("%.3f", qFactor));
+        }
+        setMouseGammaText();
 
-        Complex admittanceY = impedanceZ.inverse();
+        double r = mouseReadout.getResistance();
+        double x = mouseReadout.getReactance();
+        if (mouseImpedanceZText.changed(digits(r, 1e2), digits(x, 1e2))) {
+            mouseImpedanceZText.set(new Complex(r, x).toString());
+        }
+        double g = mouseReadout.getConductance();
+        double b = mouseReadout.getSusceptance();
+        // Shown in mS
+        if (mouseAdmittanceYText.changed(digits(g, 1e5), digits(b, 1e5))) {
+            mouseAdmittanceYText.set(new Complex(g, b).toStringmS());
+        }
+    }
 
-        // Calculate derived RF values
-        double returnLoss = (gamma.magnitude() < 1e-9) ? Double.POSITIVE_INFINITY : -20 * Math.log10(gamma.magnitude());
-        double vswr = (gamma.magnitude() < 1e-9) ? Double.POSITIVE_INFINITY : (1 + gamma.magnitude()) / (1 - gamma.magnitude());
-        double qFactor = (impedanceZ.real() < 1e-9) ? Double.POSITIVE_INFINITY : Math.abs(impedanceZ.imag()) / impedanceZ.real();
+    private void setMouseGammaText() {
+        double magnitude = mouseReadout.getGammaMagnitude();
+        double angle = mouseReadout.getGammaAngle();
+        if (mouseGammaText.changed(digits(magnitude, 1e3), digits(angle, 1e3))) {
+            mouseGammaText.set(String.format("%.3f ∠ %.3f°", magnitude, angle));
+        }
+    }
 
-        //Update properties
-        mouseReturnLoss.set(returnLoss);
-        mouseVSWR.set(vswr);
-        mouseImpedanceZ.set(impedanceZ);
-        mouseAdmittanceY.set(admittanceY);
-        mouseQualityFactor.set(qFactor);
+    private void setMouseInfoToDefault() {
+        mouseReturnLossText.setFixed("- dB");
+        mouseVSWRText.setFixed("∞");
+        mouseQualityFactorText.setFixed("-");
+        mouseGammaText.setFixed("-");
+        mouseAdmittanceYText.setFixed("-");
+        mouseImpedanceZText.setFixed("-");
+    }
 
-        //Format strings for controller
-        mouseReturnLossText.set(String.format("%.3f dB", returnLoss));
-        mouseVSWRText.set(String.format("%.3f", vswr));
-        mouseGammaText.set(String.format("%.3f ∠ %.3f°", gamma.magnitude(), Math.toDegrees(gamma.angle())));
-        mouseImpedanceZText.set(impedanceZ.toString());
-        mouseAdmittanceYText.set(admittanceY.toStringmS());
-        mouseQualityFactorText.set(String.format("%.3f", qFactor));
+    private void setMouseInfoToOpenCircuit() {
+        mouseReturnLossText.setFixed("0.00 dB");
+        mouseVSWRText.setFixed("∞");
+        mouseQualityFactorText.setFixed("∞");
+        setMouseGammaText();
+        mouseAdmittanceYText.setFixed("0.00 + j0.00 mS");
+        mouseImpedanceZText.setFixed("∞");
     }
 
-    private void setMouseInfoToDefault() {
-        mouseReturnLossText.set("- dB");
-        mouseVSWRText.set("∞");
-        mouseQualityFactorText.set("-");
-        mouseGammaText.set("-");
-        mouseAdmittanceYText.set("-");
-        mouseImpedanceZText.set("-");
+    /**
+     * Key of a value as shown with a number of decimals, the same for every value showing the same digits.
+     *
+     * @param scale 10 to the number of decimals shown
+     */
+    private static long digits(double value, double scale) {
+        if (Double.isNaN(value)) return Long.MIN_VALUE + 1;
+        // A negative value shows its sign even when it rounds to zero
+        return value < 0 ? -1 - Math.round(-value * scale) : Math.round(value * scale);
     }
 
-    private void setMouseInfoToOpenCircuit(Complex gamma) {
-        mouseReturnLossText.set("0.00 dB");
-        mouseVSWRText.set("∞");
-        mouseQualityFactorText.set("∞");
-        mouseGammaText.set(String.format("%.3f ∠ %.3f°", gamma.magnitude(), Math.toDegrees(gamma.angle())));
-        mouseAdmittanceYText.set("0.00 + j0.00 mS");
-        mouseImpedanceZText.set("∞");
+    /**
+     * Builds the points shown in the UI from computed columns.
+     */
+    private static List<DataPoint> pointsOf(SimulationResult.Series columns, IntFunction<String> labelOf) {
+        List<DataPoint> points = new ArrayList<>(columns.size());
+        for (int i = 0; i < columns.size(); i++) points.add(columns.point(i, labelOf.apply(i)));
+        return points;
+    }
+
+    /**
+     * Publishes the columns of the last computations as a new simulation result, without a copy:
+     * a series not computed again since the previous result is shared with it.
+     */
+    private void publishSimulationResult() {
+        // This instance is the only writer, the reference only has to make the new result visible to the readers
+        long generation = simulationResult.get().getGeneration() + 1;
+        simulationResult.set(new SimulationResult(generation, zo.get(), chainColumns, transformedS1PColumns, sweepColumns));
     }
 
     /**
@@ -446,14 +581,8 @@ public final class SmithChartViewModel {
         List<Complex> newGammas = dataPoints.stream()
                 .map(dp -> dp.gammaProperty().get())
                 .collect(Collectors.toList());
-        measuresGamma.setAll(newGammas);
-    }
-
-    private void updateCombinedDataPoints() {
-        var combined = FXCollections.observableArrayList(dataPoints);
-        if (showS1PInDataPoints) combined.addAll(s1pDataPoints);
-        if (showSweepInDataPoints) combined.addAll(sweepDataPoints);
-        combinedDataPoints.setAll(combined);
+        // The chain is often recomputed to the same points, the path isn't redrawn for nothing
+        if (!newGammas.equals(measuresGamma.get())) measuresGamma.setAll(newGammas);
     }
 
     // =============================================================================================
@@ -568,7 +697,6 @@ public final class SmithChartViewModel {
 
         selectedElement.set(null);
         selectedInsertionIndex.set(circuitElements.size());
-        recalculateImpedanceChain();
     }
 
     /**
@@ -586,7 +714,6 @@ public final class SmithChartViewModel {
             }
 
             historyManager.push(new UndoRedoEntry(Operation.REMOVE, index, new Pair<>(circuitElementIndex.get(),removed)));
-            recalculateImpedanceChain();
         } catch (ArrayIndexOutOfBoundsException e) {
             Logger.getLogger("Error").log(Level.SEVERE, e.getMessage());
         }
@@ -718,13 +845,9 @@ public final class SmithChartViewModel {
                 int index = targetList.indexOf(current);
 
                 // Only proceed if we found the element in that specific circuit
+                // Reverting the active circuit recomputes the chain through its listener
                 if (index != -1) {
                     targetList.set(index, originalElement.getValue());
-
-                    // Only trigger recalculation if we just reverted the ACTIVE circuit.
-                    if (circuitElementIndex.get() == originalCircuitIndex) {
-                        recalculateImpedanceChain();
-                    }
                 }
             }
         }
@@ -800,8 +923,6 @@ public final class SmithChartViewModel {
                 historyManager.pushUndo(entry);
             }
         }
-
-        recalculateImpedanceChain();
     }
 
 
@@ -818,8 +939,8 @@ public final class SmithChartViewModel {
     }
 
     public void clearSweepPoints() {
-        sweepDataPoints.clear();
         pointToSweep.clear();
+        derivedState.changed(sweepFrequenciesSource);
     }
 
     public void exportSweepToS1P(File file, String fileName) {
@@ -843,8 +964,22 @@ public final class SmithChartViewModel {
         }
     }
 
-    private void performFrequencySweep() {
-        performFrequencySweep(new ArrayList<>(pointToSweep));
+    private void computeFrequencySweep() {
+        if (pointToSweep.isEmpty()) {
+            sweepColumns = SimulationResult.Series.empty();
+            sweepDataPoints.clear();
+            return;
+        }
+
+        long start = performanceMonitor.start();
+        sweepColumns = simulator.performSweep(
+                loadImpedance.get(),
+                new ArrayList<>(pointToSweep),
+                circuitElements.get(),
+                zo.get()
+        );
+        sweepDataPoints.setAll(pointsOf(sweepColumns, _ -> "SWEEP"));
+        performanceMonitor.stop(PerformanceMonitor.Metric.FREQUENCY_SWEEP, start);
     }
 
     public void performFrequencySweep(List<Double> frequencies) {
@@ -855,14 +990,7 @@ public final class SmithChartViewModel {
         this.currentSweepMax = frequencies.getLast();
         this.currentSweepCount = frequencies.size();
         this.pointToSweep.setAll(frequencies);
-
-        List<DataPoint> results = simulator.performSweep(
-                loadImpedance.get(),
-                frequencies,
-                circuitElements.get(),
-                zo.get()
-        );
-        sweepDataPoints.setAll(results);
+        derivedState.changed(sweepFrequenciesSource);
     }
 
     public void updateSweepConfiguration(double minFreq, double maxFreq, int count) {
@@ -934,7 +1062,7 @@ public final class SmithChartViewModel {
         previewElementS1P.set(null);
         previewElement.set(null);
         cachedS1PPoints.clear();
-        recalculateS1PChain();
+        derivedState.changed(s1pLoadSource);
     }
 
     public Complex getPreviewElementGamma() {
@@ -1041,6 +1169,29 @@ public final class SmithChartViewModel {
     public ReadOnlyStringProperty zoProperty() { return zoText.getReadOnlyProperty(); }
     public ReadOnlyListProperty<DataPoint> dataPointsProperty() { return combinedDataPoints.getReadOnlyProperty(); }
     public ReadOnlyListProperty<DataPoint> sweepDataPointsProperty() { return sweepDataPoints.getReadOnlyProperty(); }
+
+    /**
+     * @return the last simulation result, a consistent snapshot of the points. Can be called from any thread.
+     */
+    public SimulationResult getSimulationResult() {
+        return simulationResult.get();
+    }
+
+    /**
+     * @return the markers of the imported S1P points, empty when there are none
+     */
+    public MarkerEngine getS1PMarkers() {
+        if (s1pMarkers == null) s1pMarkers = MarkerEngine.of(s1pDataPoints);
+        return s1pMarkers;
+    }
+
+    /**
+     * @return the markers of the frequency sweep points, empty when there are none
+     */
+    public MarkerEngine getSweepMarkers() {
+        if (sweepMarkers == null) sweepMarkers = MarkerEngine.of(sweepDataPoints);
+        return sweepMarkers;
+    }
     public ReadOnlyListProperty<DataPoint> s1pDataPointsProperty() { return s1pDataPoints.getReadOnlyProperty(); }
     public ReadOnlyListProperty<DataPoint> transformedS1PPointsProperty() { return transformedS1PPoints.getReadOnlyProperty(); }
     public ReadOnlyListProperty<DataPoint> previewTransformedS1PPointsProperty() { return previewTransformedS1PPoints.getReadOnlyProperty(); }
@@ -1106,34 +1257,26 @@ public final class SmithChartViewModel {
     public void setCircleDisplayOptions(List<Double> options) { vswrCircles.setAll(options); }
     public ReadOnlyDoubleProperty s1pPointSizeProperty() { return s1pPointSize.getReadOnlyProperty(); }
     public void setS1PPointSize(double v) { s1pPointSize.set(v); }
+    public BooleanProperty showS1PAsDensityProperty() { return showS1PAsDensity; }
+    public BooleanProperty showS1PTrailsProperty() { return showS1PTrails; }
+    public PerformanceMonitor getPerformanceMonitor() { return performanceMonitor; }
 
     public void setShowSweepDataPoints(boolean selected) {
-        if (this.showSweepInDataPoints != selected) {
-            this.showSweepInDataPoints = selected;
-            updateCombinedDataPoints();
-        }
+        combinedView.setVisible(COMBINED_SWEEP, selected);
     }
 
     public void setShowS1PDataPoints(boolean selected) {
-        if (this.showS1PInDataPoints != selected) {
-            this.showS1PInDataPoints = selected;
-            updateCombinedDataPoints();
-        }
+        combinedView.setVisible(COMBINED_S1P, selected);
     }
 
     // =============================================================================================
     // Configuration & Settings Accessors
     // =============================================================================================
 
-    public BooleanProperty useS1PAsLoadF1Property() { return useS1PAsLoadF1; }
-    public BooleanProperty useS1PAsLoadF2Property() { return useS1PAsLoadF2; }
-    public BooleanProperty useS1PAsLoadF3Property() { return useS1PAsLoadF3; }
-    public BooleanProperty filter1EnabledProperty() { return filter1Enabled; }
-    public BooleanProperty filter2EnabledProperty() { return filter2Enabled; }
-    public BooleanProperty filter3EnabledProperty() { return filter3Enabled; }
+    public ReadOnlyObjectProperty<FrequencyBand> s1pLoadBandProperty() { return s1pLoadBand; }
     public ReadOnlyBooleanProperty isUsingQualityFactorProperty() { return isUsingQualityFactor; }
     public void setUseQualityFactor(Boolean newVal) { this.isUsingQualityFactor.set(newVal); }
-    public boolean isAnyUseS1PAsLoad() { return useS1PAsLoadF1.get() || useS1PAsLoadF2.get() || useS1PAsLoadF3.get(); }
+    public boolean isAnyUseS1PAsLoad() { return s1pLoadBand.get() != null; }
     public boolean isShowS1PAsLoad() { return isAnyUseS1PAsLoad(); }
     public ReadOnlyListProperty<ComponentEntry> discreteComponentConfigProperty() { return discreteComponentConfig; }
     public void setDiscreteComponentConfig(List<ComponentEntry> config) { this.discreteComponentConfig.set((ObservableList<ComponentEntry>) config); }
@@ -1203,11 +1346,15 @@ public final class SmithChartViewModel {
         measuresGamma.clear();
         s1pDataPoints.clear();
         sweepDataPoints.clear();
-        combinedDataPoints.clear();
         selectedElement.set(null);
         selectedInsertionIndex.set(-1);
         historyManager.clear();
         projectManager.resetProject();
+        // The points were cleared outside of the derived state
+        chainColumns = SimulationResult.Series.empty();
+        transformedS1PColumns = SimulationResult.Series.empty();
+        sweepColumns = SimulationResult.Series.empty();
+        publishSimulationResult();
         suppressModificationEvents = false;
     }
 
@@ -1254,26 +1401,60 @@ public final class SmithChartViewModel {
         suppressModificationEvents = false;
     }
 
-    // Frequency Range Filter Helpers
-    public void setFrequencyRangeMinF1(double v) { this.freqRangeMinF1 = v; }
-    public void setFrequencyRangeMaxF1(double v) { this.freqRangeMaxF1 = v; }
-    public void setFrequencyRangeMinF2(double v) { this.freqRangeMinF2 = v; }
-    public void setFrequencyRangeMaxF2(double v) { this.freqRangeMaxF2 = v; }
-    public void setFrequencyRangeMinF3(double v) { this.freqRangeMinF3 = v; }
-    public void setFrequencyRangeMaxF3(double v) { this.freqRangeMaxF3 = v; }
+    // Frequency Bands
+
+    /**
+     * @return the frequency bands, in the order they are numbered and colored
+     */
+    public ObservableList<FrequencyBand> getFrequencyBands() {
+        return frequencyBandsView;
+    }
+
+    /**
+     * Adds a band under the first free name, over the whole S1P file if one is loaded.
+     */
+    public FrequencyBand addFrequencyBand() {
+        Set<String> names = frequencyBands.stream().map(FrequencyBand::getName).collect(Collectors.toSet());
+        int number = 1;
+        while (names.contains("F" + number)) number++;
+
+        double min = s1pDataPoints.isEmpty() ? 0 : s1pDataPoints.getFirst().getFrequency();
+        double max = s1pDataPoints.isEmpty() ? 0 : s1pDataPoints.getLast().getFrequency();
+        FrequencyBand band = new FrequencyBand("F" + number, min, max);
+        frequencyBands.add(band);
+        return band;
+    }
+
+    /**
+     * Removes a band, restoring the previous load if the band was used as the load.
+     */
+    public void removeFrequencyBand(FrequencyBand band) {
+        if (band == s1pLoadBand.get()) setS1PLoadBand(null);
+        frequencyBands.remove(band);
+    }
+
+    /**
+     * @return the index of the current band bounds, a band number being its position in {@link #getFrequencyBands()}
+     */
+    public FrequencyBandIndex getFrequencyBandIndex() {
+        if (frequencyBandIndex == null) frequencyBandIndex = FrequencyBandIndex.of(frequencyBands);
+        return frequencyBandIndex;
+    }
 
     public boolean isFrequencyInRange(double freq) {
-        boolean inF1 = filter1Enabled.get() && isFrequencyInRangeF1(freq);
-        boolean inF2 = filter2Enabled.get() && isFrequencyInRangeF2(freq);
-        boolean inF3 = filter3Enabled.get() && isFrequencyInRangeF3(freq);
-        return inF1 || inF2 || inF3;
+        return getFrequencyBandIndex().bandOf(freq) >= 0;
     }
 
-    public int whichFrequencyRange(double freq) {
-        if (filter1Enabled.get() && isFrequencyInRangeF1(freq)) return 1;
-        if (filter2Enabled.get() && isFrequencyInRangeF2(freq)) return 2;
-        if (filter3Enabled.get() && isFrequencyInRangeF3(freq)) return 3;
-        return -1;
+    /**
+     * @return a hash of the bands and their bounds, changes whenever the coloring by frequency band changes
+     */
+    public int frequencyBandsHash() {
+        int hash = frequencyBands.size();
+        for (FrequencyBand band : frequencyBands) {
+            hash = 31 * hash + Double.hashCode(band.getMinFrequency());
+            hash = 31 * hash + Double.hashCode(band.getMaxFrequency());
+        }
+        return hash;
     }
 
     public FrequencyUnit getProperFrequencyUnitS1P(){
@@ -1285,32 +1466,20 @@ public final class SmithChartViewModel {
         ).getKey();
     }
 
-    public boolean isFrequencyInRangeF1(double freq) { return freq >= freqRangeMinF1 && freq <= freqRangeMaxF1; }
-    public boolean isFrequencyInRangeF2(double freq) { return freq >= freqRangeMinF2 && freq <= freqRangeMaxF2; }
-    public boolean isFrequencyInRangeF3(double freq) { return freq >= freqRangeMinF3 && freq <= freqRangeMaxF3; }
-
-    public void setUseS1PAsLoadF1(Boolean newVal) {
-        if (newVal == null || newVal == useS1PAsLoadF1.get()) return;
-        setUseS1PAsLoad(newVal, 1);
-    }
-
-    public void setUseS1PAsLoadF2(Boolean newVal) {
-        if (newVal == null || newVal == useS1PAsLoadF2.get()) return;
-        setUseS1PAsLoad(newVal, 2);
-    }
-
-    public void setUseS1PAsLoadF3(Boolean newVal) {
-        if (newVal == null || newVal == useS1PAsLoadF3.get()) return;
-        setUseS1PAsLoad(newVal, 3);
+    /**
+     * Uses the S1P points of a band as the load, the middle point being applied. The load and the frequency
+     * in use before are restored once no band is used anymore.
+     *
+     * @param band the band, null to stop using the S1P points as the load
+     */
+    public void setS1PLoadBand(FrequencyBand band) {
+        if (band == s1pLoadBand.get()) return;
+        // The load, the frequency and the S1P transform change together, they are computed once
+        runBatched(() -> applyS1PLoadBand(band));
     }
 
-    private void setUseS1PAsLoad(Boolean newVal, int filterNumber) {
-        switch (filterNumber) {
-            case 1: useS1PAsLoadF1.set(newVal); useS1PAsLoadF2.set(false); useS1PAsLoadF3.set(false); break;
-            case 2: useS1PAsLoadF1.set(false); useS1PAsLoadF2.set(newVal); useS1PAsLoadF3.set(false); break;
-            case 3: useS1PAsLoadF1.set(false); useS1PAsLoadF2.set(false); useS1PAsLoadF3.set(newVal); break;
-            default: return;
-        }
+    private void applyS1PLoadBand(FrequencyBand band) {
+        s1pLoadBand.set(band);
 
         if (savedFrequency == -1 && savedLoadImpedance == null) {
             savedFrequency = frequency.get();
@@ -1329,40 +1498,37 @@ public final class SmithChartViewModel {
         if (!isAnyUseS1PAsLoad()) return;
         if (s1pDataPoints.isEmpty()) return;
         DataPoint targetPoint = s1pDataPoints.get(getS1PIndexAtRange(newValue));
-        loadImpedance.set(targetPoint.getImpedance());
-        frequency.set(targetPoint.getFrequency());
-    }
-
-    private int whichFilterIsUsingS1PAsLoad() {
-        if (useS1PAsLoadF1.get()) return 1;
-        if (useS1PAsLoadF2.get()) return 2;
-        if (useS1PAsLoadF3.get()) return 3;
-        return -1;
+        runBatched(() -> {
+            loadImpedance.set(targetPoint.getImpedance());
+            frequency.set(targetPoint.getFrequency());
+        });
     }
 
     public void updateMiddleRangePoint() {
-        if (!isAnyUseS1PAsLoad() || s1pDataPoints.isEmpty()) return;
-        int s1pIndexMin;
-        int s1pIndexMax;
-
-        switch (whichFilterIsUsingS1PAsLoad()) {
-            case 1: s1pIndexMin = getS1PIndexAtRange(freqRangeMinF1); s1pIndexMax = getS1PIndexAtRange(freqRangeMaxF1); break;
-            case 2: s1pIndexMin = getS1PIndexAtRange(freqRangeMinF2); s1pIndexMax = getS1PIndexAtRange(freqRangeMaxF2); break;
-            case 3: s1pIndexMin = getS1PIndexAtRange(freqRangeMinF3); s1pIndexMax = getS1PIndexAtRange(freqRangeMaxF3); break;
-            default: return;
-        }
+        FrequencyBand band = s1pLoadBand.get();
+        if (band == null || s1pDataPoints.isEmpty()) return;
+        int s1pIndexMin = getS1PIndexAtRange(band.getMinFrequency());
+        int s1pIndexMax = getS1PIndexAtRange(band.getMaxFrequency());
 
         if (s1pIndexMin > s1pIndexMax) return;
         DataPoint middlePoint = s1pDataPoints.get((s1pIndexMin + s1pIndexMax) / 2);
-        loadImpedance.set(middlePoint.getImpedance());
-        frequency.set(middlePoint.getFrequency());
+        runBatched(() -> {
+            loadImpedance.set(middlePoint.getImpedance());
+            frequency.set(middlePoint.getFrequency());
+        });
     }
 
+    // First S1P point whose frequency is at least the given one, the last point past the end. The points
+    // are sorted by frequency, as the markers assume, so this is a binary search: it follows every slider tick.
     private int getS1PIndexAtRange(double freq) {
-        for (int i = 0; i < s1pDataPoints.size(); i++) {
-            if (s1pDataPoints.get(i).getFrequency() >= freq) return i;
+        int low = 0;
+        int high = s1pDataPoints.size() - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (s1pDataPoints.get(mid).getFrequency() < freq) low = mid + 1;
+            else high = mid;
         }
-        return s1pDataPoints.size() - 1;
+        return low;
     }
 
     // =============================================================================================
@@ -1371,6 +1537,48 @@ public final class SmithChartViewModel {
 
     public enum Operation {ADD, REMOVE, MODIFY}
 
+    /**
+     * Text of a read-out label, with the digits it shows as keys so it is only formatted when they change.
+     */
+    private static final class ReadoutText {
+        private static final long UNSET = Long.MIN_VALUE;
+
+        private final ReadOnlyStringWrapper text;
+        private long first = UNSET;
+        private long second = UNSET;
+
+        ReadoutText(String initial) {
+            this.text = new ReadOnlyStringWrapper(initial);
+        }
+
+        /**
+         * Whether the keys differ from the ones shown, in which case they are kept as the shown ones.
+         */
+        boolean changed(long first, long second) {
+            if (first == this.first && second == this.second) return false;
+            this.first = first;
+            this.second = second;
+            return true;
+        }
+
+        void set(String value) {
+            text.set(value);
+        }
+
+        /**
+         * Shows a text that isn't a value, the next value is formatted whatever its digits.
+         */
+        void setFixed(String value) {
+            first = UNSET;
+            second = UNSET;
+            text.set(value);
+        }
+
+        ReadOnlyStringProperty getReadOnlyProperty() {
+            return text.getReadOnlyProperty();
+        }
+    }
+
     private static class Holder {
         private static final SmithChartViewModel INSTANCE = new SmithChartViewModel();
     }
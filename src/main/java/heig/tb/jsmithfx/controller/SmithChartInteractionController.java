@@ -14,21 +14,36 @@ import heig.tb.jsmithfx.utilities.ComponentEntry;
 import heig.tb.jsmithfx.utilities.DialogUtils;
 import heig.tb.jsmithfx.utilities.SmithUtilities;
 import heig.tb.jsmithfx.view.ChartPoint;
+import heig.tb.jsmithfx.view.PulseBatch;
+import heig.tb.jsmithfx.view.RenderScheduler;
 import heig.tb.jsmithfx.view.SmithChartRenderer;
+import heig.tb.jsmithfx.view.TiledPngExporter;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.collections.ListChangeListener;
 import javafx.geometry.Point2D;
 import javafx.scene.Cursor;
+import javafx.scene.Parent;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.MenuItem;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.MouseButton;
+import javafx.scene.layout.Background;
 import javafx.scene.layout.Pane;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
 import javafx.scene.robot.Robot;
+import javafx.util.Duration;
 import javafx.util.Pair;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -41,6 +56,9 @@ public class SmithChartInteractionController {
     // View model and Renderer
     private final SmithChartViewModel viewModel;
     private final SmithChartRenderer renderer;
+    private final RenderScheduler.Handle chartRender;
+    private final RenderScheduler.Handle cursorRender;
+    private int incompleteFrames = 0;
     // UI Callbacks
     private final Supplier<CircuitElement.ElementType> typeSupplier;
     private final Supplier<CircuitElement.ElementPosition> positionSupplier;
@@ -53,12 +71,19 @@ public class SmithChartInteractionController {
     private final Supplier<Optional<Double>> qualityFactorSupplier;
     private final Consumer<String> qualityValueUpdater;
 
+    private static final int MAX_INCOMPLETE_FRAMES = 3;
+    // Time without zoom or pan events after which the gesture is considered over
+    private static final Duration GESTURE_SETTLE_DELAY = Duration.millis(150);
+
     //View State for zooming and panning
     private double currentScale = 1.0;
     private double offsetX = 0.0;
     private double offsetY = 0.0;
     private double lastMouseX = 0.0;
     private double lastMouseY = 0.0;
+    // During a zoom or pan gesture the last frame is moved as a bitmap, then redrawn as a draft and refined
+    private final PauseTransition gestureSettle = new PauseTransition(GESTURE_SETTLE_DELAY);
+    private boolean draftPending = false;
     //Mouse Add related vars
     private Complex startGammaForMouseAdd;
     private Complex startImpedanceForMouseAdd;
@@ -74,6 +99,14 @@ public class SmithChartInteractionController {
     private double lastScreenXForAdd;
     private double lastScreenYForAdd;
     private boolean isProgrammaticallyMovingCursor = false;
+    // Mouse placement reports faster than frames, the chain is recomputed once per pulse
+    private final PulseBatch placementBatch;
+    // Last hovered position, handled on the next frame
+    private double hoverX = Double.NaN;
+    private double hoverY = Double.NaN;
+    private double hoverGammaX;
+    private double hoverGammaY;
+    private boolean readoutPending = false;
 
     public SmithChartInteractionController(
             Pane smithChartPane,
@@ -110,8 +143,13 @@ public class SmithChartInteractionController {
 
 
         this.renderer = new SmithChartRenderer(smithCanvas, cursorCanvas);
+        this.placementBatch = new PulseBatch(viewModel::beginUpdate, viewModel::endUpdate);
+        this.chartRender = RenderScheduler.getInstance().register(RenderScheduler.Priority.CONTENT, this::renderChartFrame);
+        this.cursorRender = RenderScheduler.getInstance().register(RenderScheduler.Priority.INTERACTIVE, this::renderCursorFrame);
 
         setupResizableCanvas(); // Logique de binding width/height
+        renderer.setOnRasterReady(this::redrawSmithCanvas);
+        gestureSettle.setOnFinished(_ -> settleViewGesture());
         setupListeners(); // Logique des listeners
     }
 
@@ -119,10 +157,13 @@ public class SmithChartInteractionController {
         // Whenever the preview element changes, re-render the chart
         viewModel.previewElementS1PProperty().addListener(_ -> redrawSmithCanvas());
         viewModel.previewElementProperty().addListener(_ -> redrawSmithCanvas());
-        viewModel.sweepDataPointsProperty().addListener((ListChangeListener<DataPoint>) _ -> {
+        viewModel.sweepDataPointsProperty().addListener((ListChangeListener<DataPoint>) _ -> redrawSmithCanvas());
+        viewModel.vswrCirclesProperty().addListener((ListChangeListener<Double>) _ -> {
             redrawSmithCanvas();
         });
-        viewModel.vswrCirclesProperty().addListener((ListChangeListener<Double>) _ -> {
+        viewModel.showS1PAsDensityProperty().addListener(_ -> redrawSmithCanvas());
+        viewModel.showS1PTrailsProperty().addListener(_ -> {
+            renderer.clearS1PTrail();
             redrawSmithCanvas();
         });
 
@@ -160,6 +201,7 @@ public class SmithChartInteractionController {
             double deltaX = event.getX() - lastMouseX;
             double deltaY = event.getY() - lastMouseY;
 
+            beginViewGesture();
             offsetX += deltaX;
             offsetY += deltaY;
 
@@ -175,7 +217,10 @@ public class SmithChartInteractionController {
 
             if (viewModel.isSettingLoadInputByMouseProperty().get() && event.getButton() == MouseButton.PRIMARY){
                 viewModel.setLoadInputByMouse(false);
-                viewModel.loadImpedance.setValue(viewModel.mouseImpedanceZ.getValue());
+                placementBatch.close();
+                // The read-out may still wait for the next frame, the load must be the point under the click
+                updateReadout();
+                viewModel.loadImpedance.setValue(viewModel.getMouseImpedanceZ());
 
                 event.consume();
             }
@@ -206,6 +251,7 @@ public class SmithChartInteractionController {
 
             if (event.getClickCount() == 2 && event.getButton() == MouseButton.PRIMARY) {
                 // Reset view on double-click
+                cancelViewGesture();
                 currentScale = 1.0;
                 offsetX = 0.0;
                 offsetY = 0.0;
@@ -256,19 +302,16 @@ public class SmithChartInteractionController {
 
                 handleMouseMagnetization(dx, dy);
             } else {
-                renderer.handleTooltip(mouseX, mouseY, currentScale);
+                // The tooltip follows on the next frame
+                hoverX = mouseX;
+                hoverY = mouseY;
             }
 
-            // Pass the correct Gamma coordinates to the ViewModel or if close enough to a component, "lock" onto it
-            var gamma = renderer.getCurrentSelectedGamma();
-
-            if (gamma != null) {
-                gammaX = gamma.real();
-                gammaY = gamma.imag();
-            }
-
-            viewModel.calculateMouseInformations(gammaX, gammaY);
-
+            // The read-out is sampled once per frame, with the last position
+            hoverGammaX = gammaX;
+            hoverGammaY = gammaY;
+            readoutPending = true;
+            cursorRender.markDirty();
         });
 
         smithCanvas.setOnKeyPressed(event -> {
@@ -283,41 +326,176 @@ public class SmithChartInteractionController {
         });
 
         viewModel.transformedS1PPointsProperty().addListener((ListChangeListener<DataPoint>) _ -> {
+            if (viewModel.showS1PTrailsProperty().get()) {
+                renderer.addS1PTrailFrame(viewModel.transformedS1PPointsProperty());
+            }
             redrawSmithCanvas();
         });
     }
 
     /**
      * Schedules a redraw of the canvas.
-     * Uses Platform.runLater to merge multiple update events into a single render frame.
+     * Every request made before the next pulse results in a single render frame.
      */
     public void redrawSmithCanvas() {
-        if (viewModel.isRedrawing.get()) {
+        chartRender.markDirty();
+    }
+
+    /**
+     * Exports the chart, as currently shown, to a PNG image rendered in tiles.
+     * The background is the one the chart is shown on.
+     *
+     * @param destination the PNG file to write
+     * @param width       the width of the image in pixels, the height keeps the aspect of the canvas
+     * @return completed once the file is written
+     */
+    public CompletableFuture<Void> exportChartPng(File destination, int width) {
+        double canvasWidth = smithCanvas.getWidth();
+        double canvasHeight = smithCanvas.getHeight();
+        return TiledPngExporter.export(canvasWidth, canvasHeight, width, chartBackground(),
+                SmithChartRenderer.exportTiles(viewModel, canvasWidth, canvasHeight, currentScale, offsetX, offsetY),
+                destination);
+    }
+
+    /**
+     * Writes the chart, as currently shown, to an SVG document.
+     *
+     * @param destination the SVG file to write
+     * @param maxMarkers  the maximum number of S1P and sweep markers per layer, the others are evenly skipped
+     */
+    public void exportChartSvg(File destination, int maxMarkers) throws IOException {
+        try (Writer out = Files.newBufferedWriter(destination.toPath(), StandardCharsets.UTF_8)) {
+            SmithChartRenderer.exportSvg(viewModel, smithCanvas.getWidth(), smithCanvas.getHeight(),
+                    currentScale, offsetX, offsetY, chartBackground(), maxMarkers, out);
+        }
+    }
+
+    // First solid background color behind the chart, null if there is none (transparent image)
+    private Color chartBackground() {
+        for (Parent node = smithChartPane; node != null; node = node.getParent()) {
+            if (node instanceof Region region) {
+                Background background = region.getBackground();
+                if (background != null && !background.getFills().isEmpty()
+                        && background.getFills().getFirst().getFill() instanceof Color color && color.isOpaque()) {
+                    return color;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the render task of the chart, for views that must be refreshed along with it
+     */
+    public RenderScheduler.Handle getChartRenderHandle() {
+        return chartRender;
+    }
+
+    /**
+     * Releases the render tasks of the chart and its cursor, for when its window is closed.
+     */
+    public void dispose() {
+        gestureSettle.stop();
+        chartRender.dispose();
+        cursorRender.dispose();
+        placementBatch.dispose();
+    }
+
+    /**
+     * Applies the updates deferred by a placement in progress, for actions that read or replace the circuit.
+     */
+    public void flushPendingUpdates() {
+        placementBatch.close();
+    }
+
+    /**
+     * Called before the view is moved by a zoom or pan event. The first event of a gesture keeps the
+     * frame currently shown, the following frames of the gesture only move that bitmap around.
+     */
+    private void beginViewGesture() {
+        if (!renderer.hasGestureFrame()) {
+            renderer.captureGestureFrame(currentScale, offsetX, offsetY);
+        }
+        gestureSettle.playFromStart();
+    }
+
+    /**
+     * The gesture is over: the chart is redrawn as a draft first, then refined on the next frame.
+     */
+    private void settleViewGesture() {
+        renderer.releaseGestureFrame();
+        draftPending = true;
+        redrawSmithCanvas();
+    }
+
+    /**
+     * Drops the gesture bitmap, for jumps of the view that the bitmap can't show (reset).
+     */
+    private void cancelViewGesture() {
+        gestureSettle.stop();
+        renderer.releaseGestureFrame();
+    }
+
+    private void renderChartFrame(long deadline) {
+        if (renderer == null) return;
+
+        // Fast path during a gesture, falls back to a full render if the bitmap can't be used
+        if (renderer.hasGestureFrame() && renderer.renderGestureFrame(viewModel, currentScale, offsetX, offsetY)) {
             return;
         }
 
-        viewModel.isRedrawing.set(true);
+        int selectedIndex = -1;
+        // Safety check in case the property is unbound or null during teardown
+        if (viewModel.getDpTableSelIndex() != null) {
+            selectedIndex = viewModel.getDpTableSelIndex().get();
+        }
 
-        Platform.runLater(() -> {
-                    // Perform the actual drawing
-                    if (renderer != null) {
-                        int selectedIndex = -1;
-                        // Safety check in case the property is unbound or null during teardown
-                        if (viewModel.getDpTableSelIndex() != null) {
-                            selectedIndex = viewModel.getDpTableSelIndex().get();
-                        }
-                        renderer.render(viewModel, currentScale, offsetX, offsetY, selectedIndex);
-                    }
+        // Expensive layers may be skipped when late, but not for too many frames in a row
+        long effectiveDeadline = incompleteFrames >= MAX_INCOMPLETE_FRAMES ? Long.MAX_VALUE : deadline;
+        boolean draft = draftPending;
+        draftPending = false;
+        boolean complete = renderer.render(viewModel, currentScale, offsetX, offsetY, selectedIndex, effectiveDeadline, draft);
 
-                    // Reset the flag so future updates can trigger a new draw
-                    viewModel.isRedrawing.set(false);
-        });
+        if (complete) {
+            incompleteFrames = 0;
+        } else {
+            incompleteFrames++;
+        }
+        // A draft or an incomplete frame is refined on the next pulse
+        if (draft || !complete) chartRender.markDirty();
+    }
+
+    private void renderCursorFrame(long deadline) {
+        if (isAddingMouseComponent) {
+            renderer.renderCursor(viewModel, currentScale, offsetX, offsetY);
+            updateReadout();
+            return;
+        }
+        if (!Double.isNaN(hoverX)) {
+            renderer.handleTooltip(hoverX, hoverY, currentScale);
+            hoverX = Double.NaN;
+        }
+        updateReadout();
+    }
+
+    private void updateReadout() {
+        if (!readoutPending) return;
+        readoutPending = false;
+
+        // Pass the correct Gamma coordinates to the ViewModel or if close enough to a component, "lock" onto it
+        var gamma = renderer.getCurrentSelectedGamma();
+        if (gamma != null) {
+            viewModel.calculateMouseInformations(gamma.real(), gamma.imag());
+        } else {
+            viewModel.calculateMouseInformations(hoverGammaX, hoverGammaY);
+        }
     }
 
     /**
      * Resets every variable and elements related to the mouse add component event
      */
     private void resetMouseAddComponentState() {
+        placementBatch.close();
         viewModel.showGhostCursor.set(false);
         smithCanvas.setCursor(javafx.scene.Cursor.DEFAULT);
         renderer.clearCursor(cursorCanvas.getGraphicsContext2D());
@@ -341,6 +519,7 @@ public class SmithChartInteractionController {
      * Calculates the final component value and adds it to the ViewModel.
      */
     private void finalizeMouseAddComponent() {
+        placementBatch.close();
         double z0 = viewModel.zo.get();
         double freq = viewModel.frequencyProperty().get();
 
@@ -523,6 +702,7 @@ public class SmithChartInteractionController {
             valueUpdater.accept(result.getValue(), (Enum<?>) result.getKey());
 
             // Update the live preview element
+            placementBatch.join();
             if (typeSupplier.get() == CircuitElement.ElementType.LINE) {
                 if (zoLineSupplier.get().isPresent() && permittivitySupplier.get().isPresent()) {
                     viewModel.addLiveComponentPreview(liveValue, zoLineSupplier.get().get(), permittivitySupplier.get().get(), stubTypeSupplier.get(), qualityFactorSupplier.get());
@@ -565,7 +745,7 @@ public class SmithChartInteractionController {
         }
 
         viewModel.ghostCursorGamma.set(snappedGammaForMouseAdd); // Update the ghost cursor position
-        renderer.renderCursor(viewModel, currentScale, offsetX, offsetY);
+        cursorRender.markDirty();
         moveCursorToGamma(snappedGammaForMouseAdd);
     }
 
@@ -701,6 +881,7 @@ public class SmithChartInteractionController {
 
         if (newScale < 0.1) return;
 
+        beginViewGesture();
         currentScale = newScale;
         offsetX = pivotX - (pivotX - offsetX) * factor;
         offsetY = pivotY - (pivotY - offsetY) * factor;
@@ -761,6 +942,7 @@ public class SmithChartInteractionController {
     }
 
     public void onReset() {
+        cancelViewGesture();
         currentScale = 1.0;
         offsetX = 0.0;
         offsetY = 0.0;
@@ -5,12 +5,11 @@ import heig.tb.jsmithfx.model.DataPoint;
 import heig.tb.jsmithfx.model.Element.Line;
 import heig.tb.jsmithfx.utilities.Complex;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Stateless service responsible for simulating the circuit behavior.
- * Transforms Input Impedance + Elements -> List of DataPoints.
+ * Transforms Input Impedance + Elements -> columns of the points, published as they are in a {@link SimulationResult}.
  */
 public class CircuitSimulator {
 
@@ -20,30 +19,34 @@ public class CircuitSimulator {
      * @param frequency the frequency of operation
      * @param z0 the characteristic impedance
      * @param elements the list of circuit elements
-     * @return the list of DataPoints representing the impedance at each stage
+     * @return the impedance at each stage, the load first
      */
-    public List<DataPoint> calculateChain(Complex loadImpedance, double frequency, double z0, List<CircuitElement> elements) {
-        List<DataPoint> dataPoints = new ArrayList<>();
-        if (loadImpedance == null) return dataPoints;
+    public SimulationResult.Series calculateChain(Complex loadImpedance, double frequency, double z0, List<CircuitElement> elements) {
+        if (loadImpedance == null) return SimulationResult.Series.empty();
 
+        Columns columns = new Columns(elements.size() + 1);
         Complex currentImpedance = loadImpedance;
 
         // Add Load Point
-        addDataPoint(dataPoints, frequency, "LD", currentImpedance, z0);
+        columns.set(0, frequency, currentImpedance, z0);
 
         // Process Elements
         int index = 1;
         for (CircuitElement element : elements) {
             currentImpedance = propagateOne(currentImpedance, element, frequency);
-            addDataPoint(dataPoints, frequency, "DP" + index++, currentImpedance, z0);
+            columns.set(index++, frequency, currentImpedance, z0);
         }
-        return dataPoints;
+        return columns.toSeries();
     }
 
-    public List<DataPoint> calculateTransformedS1P(List<DataPoint> originalS1P, List<CircuitElement> elements, double z0) {
-        List<DataPoint> transformed = new ArrayList<>();
+    /**
+     * @return the impedance of each S1P point seen through the elements, in the order of the points
+     */
+    public SimulationResult.Series calculateTransformedS1P(List<DataPoint> originalS1P, List<CircuitElement> elements, double z0) {
+        Columns columns = new Columns(originalS1P.size());
 
-        for (DataPoint point : originalS1P) {
+        for (int i = 0; i < originalS1P.size(); i++) {
+            DataPoint point = originalS1P.get(i);
             double freq = point.getFrequency();
             Complex currentZ = point.getImpedance();
 
@@ -52,21 +55,23 @@ public class CircuitSimulator {
                 currentZ = propagateOne(currentZ, element, freq);
             }
 
-            // Create new point with transformed impedance
-            Complex gamma = SmithCalculator.impedanceToGamma(currentZ, z0);
-            transformed.add(new DataPoint(freq, point.getLabel(), currentZ, gamma, SmithCalculator.calculateVswr(gamma), SmithCalculator.calculateReturnLoss(gamma)));
+            columns.set(i, freq, currentZ, z0);
         }
-        return transformed;
+        return columns.toSeries();
     }
 
     // =============================================================================================
     // Frequency Sweep Logic
     // =============================================================================================
 
-    public List<DataPoint> performSweep(Complex startLoad, List<Double> frequencies, List<CircuitElement> elements, double z0) {
-        List<DataPoint> sweepPoints = new ArrayList<>();
+    /**
+     * @return the impedance at the end of the circuit for each frequency, in the order of the frequencies
+     */
+    public SimulationResult.Series performSweep(Complex startLoad, List<Double> frequencies, List<CircuitElement> elements, double z0) {
+        Columns columns = new Columns(frequencies.size());
 
-        for (Double freq : frequencies) {
+        for (int i = 0; i < frequencies.size(); i++) {
+            double freq = frequencies.get(i);
             Complex currentZ = startLoad;
 
             // Propagate through all elements for this frequency
@@ -74,10 +79,9 @@ public class CircuitSimulator {
                 currentZ = propagateOne(currentZ, element, freq);
             }
 
-            Complex gamma = SmithCalculator.impedanceToGamma(currentZ, z0);
-            sweepPoints.add(new DataPoint(freq, "SWEEP", currentZ, gamma, SmithCalculator.calculateVswr(gamma), SmithCalculator.calculateReturnLoss(gamma)));
+            columns.set(i, freq, currentZ, z0);
         }
-        return sweepPoints;
+        return columns.toSeries();
     }
 
     // =============================================================================================
@@ -101,18 +105,41 @@ public class CircuitSimulator {
     }
 
     /**
-     * Add a data point to the list.
-     * @param list the list to add to
-     * @param freq the frequency
-     * @param label the label
-     * @param z the impedance
-     * @param z0 the characteristic impedance
+     * Columns of the computed points, filled in place and handed over to the result without a copy.
      */
-    private void addDataPoint(List<DataPoint> list, double freq, String label, Complex z, double z0) {
-        Complex gamma = SmithCalculator.impedanceToGamma(z, z0);
-        double vswr = SmithCalculator.calculateVswr(gamma);
-        double rl = SmithCalculator.calculateReturnLoss(gamma);
-        list.add(new DataPoint(freq, label, z, gamma, vswr, rl));
+    private static final class Columns {
+        private final double[] frequencies;
+        private final double[] gammaReal;
+        private final double[] gammaImag;
+        private final double[] resistance;
+        private final double[] reactance;
+
+        private Columns(int size) {
+            frequencies = new double[size];
+            gammaReal = new double[size];
+            gammaImag = new double[size];
+            resistance = new double[size];
+            reactance = new double[size];
+        }
+
+        /**
+         * Sets the point at the index.
+         * @param freq the frequency
+         * @param z the impedance
+         * @param z0 the characteristic impedance
+         */
+        private void set(int index, double freq, Complex z, double z0) {
+            Complex gamma = SmithCalculator.impedanceToGamma(z, z0);
+            frequencies[index] = freq;
+            gammaReal[index] = gamma.real();
+            gammaImag[index] = gamma.imag();
+            resistance[index] = z.real();
+            reactance[index] = z.imag();
+        }
+
+        private SimulationResult.Series toSeries() {
+            return SimulationResult.Series.of(frequencies, gammaReal, gammaImag, resistance, reactance);
+        }
     }
 
     /**
@@ -0,0 +1,155 @@
+package heig.tb.jsmithfx.logic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Graph of derived state, each derived node being computed from the nodes it depends on.
+ * <p>
+ * A change of a source only invalidates the nodes depending on it, transitively. The invalid nodes are
+ * computed on the next flush, after their inputs, so a state depending on several changed sources is
+ * computed once. A flush runs after each change, or after the outermost {@link #hold()} / {@link #release()}
+ * pair when the changes are batched.
+ * </p>
+ * <p>
+ * The evaluation is eager, not pulled on access: the derived states are published to observable properties
+ * the view listens to, so nothing would read them to trigger a computation. The laziness is in what is
+ * computed, only the invalid nodes, and when, once per batch. A node is computed more than once by a flush
+ * only when the listeners of a state it fed change one of its sources again: the node is then invalid again
+ * and the next pass computes it with the new value, for a bounded number of passes.
+ * </p>
+ * Not thread-safe, meant to be used from the FX thread.
+ */
+public final class DependencyGraph {
+
+    // A computed state can notify listeners that change a source again, bounds these cascades
+    private static final int MAX_FLUSH_PASSES = 8;
+
+    /**
+     * A source of the graph, or a state derived from other nodes.
+     */
+    public static final class Node {
+        private final String name;
+        private final Runnable compute;
+        private final List<Node> dependents = new ArrayList<>();
+        private boolean valid;
+
+        private Node(String name, Runnable compute) {
+            this.name = name;
+            this.compute = compute;
+            // Sources have nothing to compute, derived nodes start unset
+            this.valid = compute == null;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        private void invalidateDependents() {
+            for (Node dependent : dependents) {
+                if (!dependent.valid) continue;
+                dependent.valid = false;
+                dependent.invalidateDependents();
+            }
+        }
+    }
+
+    // In creation order, which is a topological order since a node is created after its inputs
+    private final List<Node> nodes = new ArrayList<>();
+    private int holdDepth = 0;
+    private boolean flushing = false;
+    private Runnable onFlushed = () -> {};
+
+    /**
+     * Creates a source, a node set from outside the graph and signaled with {@link #changed(Node)}.
+     */
+    public Node source(String name) {
+        Node node = new Node(name, null);
+        nodes.add(node);
+        return node;
+    }
+
+    /**
+     * Creates a derived node.
+     *
+     * @param compute publishes the state of the node from its inputs, run on flush when the node is invalid
+     * @param inputs  the nodes the state is computed from, created before it
+     */
+    public Node derived(String name, Runnable compute, Node... inputs) {
+        Node node = new Node(name, compute);
+        for (Node input : inputs) {
+            if (!nodes.contains(input)) throw new IllegalArgumentException("Unknown input " + input.name + " for " + name);
+            input.dependents.add(node);
+        }
+        nodes.add(node);
+        return node;
+    }
+
+    /**
+     * Sets the action run after each flush that ran, once per change or per outermost batch.
+     */
+    public void setOnFlushed(Runnable onFlushed) {
+        this.onFlushed = onFlushed;
+    }
+
+    /**
+     * Signals that a source changed, its dependents are computed again on the next flush.
+     * Flushes right away unless the graph is held.
+     */
+    public void changed(Node source) {
+        source.invalidateDependents();
+        flush();
+    }
+
+    /**
+     * Defers the flushes until the matching {@link #release()}. Can be nested.
+     */
+    public void hold() {
+        holdDepth++;
+    }
+
+    /**
+     * Ends a {@link #hold()}, flushes when it was the outermost one.
+     *
+     * @throws IllegalStateException if the graph isn't held
+     */
+    public void release() {
+        if (holdDepth == 0) throw new IllegalStateException("release() without a matching hold()");
+        if (--holdDepth == 0) flush();
+    }
+
+    /**
+     * Computes every invalid node, inputs first. Nodes invalidated by the listeners of a computed state
+     * are computed by the same flush.
+     */
+    public void flush() {
+        if (holdDepth > 0 || flushing) return;
+        flushing = true;
+        try {
+            for (int pass = 0; hasInvalidNodes(); pass++) {
+                if (pass == MAX_FLUSH_PASSES) {
+                    Logger.getLogger("Error").log(Level.SEVERE, "Derived state still changing after " + pass + " passes, giving up");
+                    return;
+                }
+                for (Node node : nodes) {
+                    if (node.valid) continue;
+                    // Valid before computing, so a change made by the computation itself is seen by the next pass
+                    node.valid = true;
+                    node.compute.run();
+                }
+            }
+        } finally {
+            flushing = false;
+        }
+        onFlushed.run();
+    }
+
+    private boolean hasInvalidNodes() {
+        for (Node node : nodes) {
+            if (!node.valid) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,128 @@
+package heig.tb.jsmithfx.logic;
+
+import heig.tb.jsmithfx.model.FrequencyBand;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interval index of the frequency bands, telling which band a frequency falls into.
+ * <p>
+ * The bounds of all the bands split the frequency axis into slots: each bound itself, and the open gaps
+ * between consecutive bounds. A band covers whole slots only, so the band of every slot is resolved once,
+ * the first band of the list winning where several overlap. A frequency is then classified by a binary search
+ * over the bounds, O(log n) for n bands, or in O(1) amortized by a {@link Cursor} walking sorted frequencies.
+ * </p>
+ * A snapshot of the bounds, it must be rebuilt when a band changes.
+ */
+public final class FrequencyBandIndex {
+
+    private static final FrequencyBandIndex EMPTY = new FrequencyBandIndex(new double[0], new int[]{-1});
+
+    // Sorted distinct bounds
+    private final double[] edges;
+    // Band of each slot, -1 if none: slot 2i is the gap before edges[i], slot 2i + 1 is edges[i]
+    private final int[] slots;
+
+    private FrequencyBandIndex(double[] edges, int[] slots) {
+        this.edges = edges;
+        this.slots = slots;
+    }
+
+    public static FrequencyBandIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Indexes the current bounds of the bands. Bands whose minimum is above their maximum cover nothing.
+     */
+    public static FrequencyBandIndex of(List<FrequencyBand> bands) {
+        int n = bands.size();
+        double[] mins = new double[n];
+        double[] maxs = new double[n];
+        double[] bounds = new double[2 * n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            // Adding zero turns -0.0 into 0.0, which the binary search would tell apart
+            mins[i] = bands.get(i).getMinFrequency() + 0.0;
+            maxs[i] = bands.get(i).getMaxFrequency() + 0.0;
+            if (!(mins[i] <= maxs[i])) continue;
+            bounds[count++] = mins[i];
+            bounds[count++] = maxs[i];
+        }
+        if (count == 0) return EMPTY;
+
+        Arrays.sort(bounds, 0, count);
+        int distinct = 1;
+        for (int i = 1; i < count; i++) {
+            if (bounds[i] != bounds[distinct - 1]) bounds[distinct++] = bounds[i];
+        }
+        double[] edges = Arrays.copyOf(bounds, distinct);
+
+        int[] slots = new int[2 * distinct + 1];
+        Arrays.fill(slots, -1);
+        // Last band first, so the first one of the list is the one left on overlaps
+        for (int band = n - 1; band >= 0; band--) {
+            if (!(mins[band] <= maxs[band])) continue;
+            int from = 2 * Arrays.binarySearch(edges, mins[band]) + 1;
+            int to = 2 * Arrays.binarySearch(edges, maxs[band]) + 1;
+            Arrays.fill(slots, from, to + 1, band);
+        }
+        return new FrequencyBandIndex(edges, slots);
+    }
+
+    public boolean isEmpty() {
+        return edges.length == 0;
+    }
+
+    /**
+     * @return the index of the first band containing the frequency, -1 if none does
+     */
+    public int bandOf(double frequency) {
+        if (Double.isNaN(frequency)) return -1;
+        int index = search(frequency);
+        return slots[index >= 0 ? 2 * index + 1 : 2 * (-index - 1)];
+    }
+
+    /**
+     * Binary search of the frequency over the bounds, as {@link Arrays#binarySearch(double[], double)}.
+     */
+    private int search(double frequency) {
+        // Adding zero turns -0.0 into 0.0, as for the bounds
+        return Arrays.binarySearch(edges, frequency + 0.0);
+    }
+
+    /**
+     * @return a cursor for frequencies classified in increasing order
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Merge walk over the bounds for increasing frequencies, each call only moves past the bounds
+     * below the new frequency. A frequency lower than the previous one restarts with a binary search,
+     * so unsorted input is still classified right, only slower.
+     * Not thread-safe, a cursor is meant for a single pass.
+     */
+    public final class Cursor {
+        // Number of bounds below the last frequency
+        private int position;
+        private double last = Double.NEGATIVE_INFINITY;
+
+        private Cursor() {
+        }
+
+        public int bandOf(double frequency) {
+            if (Double.isNaN(frequency)) return -1;
+            if (frequency < last) {
+                int index = search(frequency);
+                position = index >= 0 ? index : -index - 1;
+            }
+            last = frequency;
+            while (position < edges.length && edges[position] < frequency) position++;
+            boolean onEdge = position < edges.length && edges[position] == frequency;
+            return slots[onEdge ? 2 * position + 1 : 2 * position];
+        }
+    }
+}
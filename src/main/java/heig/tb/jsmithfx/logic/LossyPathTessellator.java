@@ -0,0 +1,304 @@
+package heig.tb.jsmithfx.logic;
+
+import heig.tb.jsmithfx.model.CircuitElement;
+import heig.tb.jsmithfx.model.Element.Line;
+import heig.tb.jsmithfx.utilities.Complex;
+
+import java.util.Arrays;
+
+/**
+ * Samples the path drawn on the Smith chart when a lossy component is added.
+ * <p>
+ * Instead of a fixed number of points, the path is subdivided adaptively: a segment is split
+ * only while its midpoint deviates from the chord by more than the given tolerance (in gamma units).
+ * Nearly straight stretches therefore get very few points while tight arcs and wound lines get more.
+ * </p>
+ * <p>
+ * The evaluation is done with primitive arithmetic on a reusable stepper, so no element copy or
+ * intermediate {@link Complex} is created per sample. The output buffers are reused between calls,
+ * one instance should be kept per renderer and used from a single thread.
+ * </p>
+ */
+public final class LossyPathTessellator {
+
+    private static final int MAX_DEPTH = 12;
+    private static final int MIN_SEGMENTS = 4;
+    private static final int SEGMENTS_PER_TURN = 16;
+    private static final int MAX_INITIAL_SEGMENTS = 4096;
+    private static final double EPS = 1e-12;
+
+    private enum Mode {SERIES_Z, PARALLEL_Y, LINE_SERIES, LINE_SHORT_STUB, LINE_OPEN_STUB}
+
+    // Output buffers (gamma plane)
+    private double[] xs = new double[256];
+    private double[] ys = new double[256];
+    private int size;
+
+    // Stepper state
+    private Mode mode;
+    private double z0;
+    private double startRe, startIm;   // Start impedance (series modes) or admittance (parallel modes)
+    private double compRe, compIm;     // Full component impedance (series) or admittance (parallel)
+    private double zLine;              // Characteristic impedance of the line
+    private double gammaLRe, gammaLIm; // Total propagation γ·L of the line
+    private double outRe, outIm;       // Result of the last evaluation
+
+    /**
+     * Tessellates the path of a lossy component with a tolerance expressed in gamma units.
+     *
+     * @param startGamma the reflection coefficient before the element
+     * @param element    the lossy element
+     * @param z0         the characteristic impedance of the system
+     * @param frequency  the operating frequency
+     * @param tolerance  maximum allowed distance between the curve and its polyline (gamma units)
+     * @return the number of points written in the buffers
+     */
+    public int tessellate(Complex startGamma, CircuitElement element, double z0, double frequency, double tolerance) {
+        size = 0;
+        if (!prepare(startGamma, element, z0, frequency)) return 0;
+
+        double tol = Math.max(tolerance, EPS);
+        int segments = initialSegments();
+
+        evaluate(0.0);
+        double prevX = outRe, prevY = outIm;
+        double prevT = 0.0;
+        append(prevX, prevY);
+
+        for (int i = 1; i <= segments; i++) {
+            double t = (double) i / segments;
+            evaluate(t);
+            double x = outRe, y = outIm;
+            if (Double.isFinite(prevX) && Double.isFinite(x)) {
+                subdivide(prevT, prevX, prevY, t, x, y, tol, 0);
+            }
+            append(x, y);
+            prevT = t;
+            prevX = x;
+            prevY = y;
+        }
+        return size;
+    }
+
+    /**
+     * Samples the path uniformly with the given number of intervals.
+     *
+     * @return the number of points written in the buffers
+     */
+    public int sampleUniform(Complex startGamma, CircuitElement element, double z0, double frequency, int intervals) {
+        size = 0;
+        if (!prepare(startGamma, element, z0, frequency)) return 0;
+        for (int i = 0; i <= intervals; i++) {
+            evaluate((double) i / intervals);
+            append(outRe, outIm);
+        }
+        return size;
+    }
+
+    public double[] getXs() { return xs; }
+    public double[] getYs() { return ys; }
+    public int size() { return size; }
+
+    /**
+     * Recursively inserts points between (t0, p0) and (t1, p1) until the midpoint of the
+     * curve lies within the tolerance of the chord.
+     */
+    private void subdivide(double t0, double x0, double y0, double t1, double x1, double y1, double tol, int depth) {
+        if (depth >= MAX_DEPTH) return;
+
+        double tm = 0.5 * (t0 + t1);
+        evaluate(tm);
+        double xm = outRe, ym = outIm;
+        if (!Double.isFinite(xm) || !Double.isFinite(ym)) return;
+
+        if (distanceToSegment(xm, ym, x0, y0, x1, y1) <= tol) return;
+
+        subdivide(t0, x0, y0, tm, xm, ym, tol, depth + 1);
+        append(xm, ym);
+        subdivide(tm, xm, ym, t1, x1, y1, tol, depth + 1);
+    }
+
+    private static double distanceToSegment(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double len2 = dx * dx + dy * dy;
+        double u = (len2 < EPS) ? 0.0 : ((px - ax) * dx + (py - ay) * dy) / len2;
+        u = Math.max(0.0, Math.min(1.0, u));
+        double cx = ax + u * dx - px;
+        double cy = ay + u * dy - py;
+        return Math.sqrt(cx * cx + cy * cy);
+    }
+
+    /**
+     * Number of uniform segments to start from. Lines can wind several times around the chart,
+     * so we make sure every turn is seeded before the adaptive refinement.
+     */
+    private int initialSegments() {
+        if (mode == Mode.SERIES_Z || mode == Mode.PARALLEL_Y) return MIN_SEGMENTS;
+        // A series line rotates by 2βL, a stub's admittance by βL
+        double rotation = (mode == Mode.LINE_SERIES ? 2.0 : 1.0) * Math.abs(gammaLIm);
+        int segments = (int) Math.ceil(rotation / (2 * Math.PI) * SEGMENTS_PER_TURN);
+        return Math.clamp(segments, MIN_SEGMENTS, MAX_INITIAL_SEGMENTS);
+    }
+
+    private boolean prepare(Complex startGamma, CircuitElement element, double z0, double frequency) {
+        if (startGamma == null || element == null || !(z0 > 0)) return false;
+        this.z0 = z0;
+
+        // Z_start = z0 * (1 + Γ) / (1 - Γ)
+        double dRe = 1 - startGamma.real();
+        double dIm = -startGamma.imag();
+        double d2 = dRe * dRe + dIm * dIm;
+        if (d2 < EPS) return false;
+        double nRe = 1 + startGamma.real();
+        double nIm = startGamma.imag();
+        double zRe = z0 * (nRe * dRe + nIm * dIm) / d2;
+        double zIm = z0 * (nIm * dRe - nRe * dIm) / d2;
+
+        if (element instanceof Line line) {
+            double alpha = line.getQualityFactor().orElse(0.0) * SmithCalculator.getDbmToNeperConversionFactor();
+            double beta = Line.getBeta(frequency, line.getPermittivity());
+            double length = line.getRealWorldValue();
+            zLine = line.getCharacteristicImpedance();
+            gammaLRe = alpha * length;
+            gammaLIm = beta * length;
+
+            if (line.getStubType() == Line.StubType.NONE) {
+                mode = Mode.LINE_SERIES;
+                startRe = zRe;
+                startIm = zIm;
+            } else {
+                mode = line.getStubType() == Line.StubType.SHORT ? Mode.LINE_SHORT_STUB : Mode.LINE_OPEN_STUB;
+                double z2 = zRe * zRe + zIm * zIm;
+                if (z2 < EPS) return false;
+                startRe = zRe / z2;
+                startIm = -zIm / z2;
+            }
+            return true;
+        }
+
+        Complex comp = element.getImpedance(frequency);
+        if (element.getPosition() == CircuitElement.ElementPosition.SERIES) {
+            mode = Mode.SERIES_Z;
+            startRe = zRe;
+            startIm = zIm;
+            compRe = comp.real();
+            compIm = comp.imag();
+        } else {
+            mode = Mode.PARALLEL_Y;
+            double z2 = zRe * zRe + zIm * zIm;
+            double c2 = comp.real() * comp.real() + comp.imag() * comp.imag();
+            if (z2 < EPS || c2 < EPS) return false;
+            startRe = zRe / z2;
+            startIm = -zIm / z2;
+            compRe = comp.real() / c2;
+            compIm = -comp.imag() / c2;
+        }
+        return Double.isFinite(compRe) && Double.isFinite(compIm);
+    }
+
+    /**
+     * Evaluates the gamma at the given fraction of the component value and stores it in (outRe, outIm).
+     */
+    private void evaluate(double t) {
+        switch (mode) {
+            case SERIES_Z -> impedanceToGamma(startRe + compRe * t, startIm + compIm * t);
+            case PARALLEL_Y -> admittanceToGamma(startRe + compRe * t, startIm + compIm * t);
+            case LINE_SERIES -> {
+                tanh(gammaLRe * t, gammaLIm * t);
+                double tRe = outRe, tIm = outIm;
+                // Z_in = Z_L * (Z + Z_L * T) / (Z_L + Z * T)
+                double numRe = startRe + zLine * tRe;
+                double numIm = startIm + zLine * tIm;
+                double denRe = zLine + (startRe * tRe - startIm * tIm);
+                double denIm = startRe * tIm + startIm * tRe;
+                double den2 = denRe * denRe + denIm * denIm;
+                if (den2 < EPS) {
+                    outRe = 1.0; // Open circuit
+                    outIm = 0.0;
+                    return;
+                }
+                double qRe = (numRe * denRe + numIm * denIm) / den2;
+                double qIm = (numIm * denRe - numRe * denIm) / den2;
+                impedanceToGamma(zLine * qRe, zLine * qIm);
+            }
+            case LINE_SHORT_STUB, LINE_OPEN_STUB -> {
+                tanh(gammaLRe * t, gammaLIm * t);
+                double tRe = outRe, tIm = outIm;
+                double y0 = 1.0 / zLine;
+                double ysRe, ysIm;
+                if (mode == Mode.LINE_SHORT_STUB) {
+                    // Y_stub = Y_L / tanh(γl)
+                    double t2 = tRe * tRe + tIm * tIm;
+                    if (t2 < EPS) {
+                        outRe = -1.0; // Short circuit
+                        outIm = 0.0;
+                        return;
+                    }
+                    ysRe = y0 * tRe / t2;
+                    ysIm = -y0 * tIm / t2;
+                } else {
+                    // Y_stub = Y_L * tanh(γl)
+                    ysRe = y0 * tRe;
+                    ysIm = y0 * tIm;
+                }
+                admittanceToGamma(startRe + ysRe, startIm + ysIm);
+            }
+        }
+    }
+
+    private void impedanceToGamma(double re, double im) {
+        // Γ = (Z - z0) / (Z + z0)
+        double dRe = re + z0;
+        double d2 = dRe * dRe + im * im;
+        if (d2 < EPS) {
+            outRe = Double.NaN;
+            outIm = Double.NaN;
+            return;
+        }
+        double nRe = re - z0;
+        outRe = (nRe * dRe + im * im) / d2;
+        outIm = (im * dRe - nRe * im) / d2;
+    }
+
+    private void admittanceToGamma(double re, double im) {
+        // Γ = (Y0 - Y) / (Y0 + Y)
+        double y0 = 1.0 / z0;
+        double dRe = y0 + re;
+        double d2 = dRe * dRe + im * im;
+        if (d2 < EPS * EPS) {
+            outRe = Double.NaN;
+            outIm = Double.NaN;
+            return;
+        }
+        double nRe = y0 - re;
+        double nIm = -im;
+        outRe = (nRe * dRe + nIm * im) / d2;
+        outIm = (nIm * dRe - nRe * im) / d2;
+    }
+
+    /**
+     * tanh(x + jy) = (sinh(2x) + j sin(2y)) / (cosh(2x) + cos(2y)), result stored in (outRe, outIm).
+     */
+    private void tanh(double x, double y) {
+        double denominator = Math.cosh(2 * x) + Math.cos(2 * y);
+        if (Math.abs(denominator) < 1e-9) {
+            outRe = Double.NaN;
+            outIm = Double.NaN;
+            return;
+        }
+        outRe = Math.sinh(2 * x) / denominator;
+        outIm = Math.sin(2 * y) / denominator;
+    }
+
+    private void append(double x, double y) {
+        if (!Double.isFinite(x) || !Double.isFinite(y)) return;
+        if (size == xs.length) {
+            xs = Arrays.copyOf(xs, size * 2);
+            ys = Arrays.copyOf(ys, size * 2);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+}
@@ -0,0 +1,197 @@
+package heig.tb.jsmithfx.logic;
+
+import heig.tb.jsmithfx.model.DataPoint;
+import heig.tb.jsmithfx.utilities.Complex;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * Markers and band statistics of a series of measures, like an S1P file or a frequency sweep.
+ * <p>
+ * The measures are copied once into frequency-sorted columns, each with a {@link RangeExtremes} tree.
+ * A frequency range maps to an index range by binary search, so the extremes of a band, and the edges of
+ * the band where the VSWR stays under a threshold, are found in O(log n) whatever the number of points.
+ * They can be queried again on every tick of a range slider.
+ * </p>
+ * Immutable, it can be queried from any thread.
+ */
+public final class MarkerEngine {
+
+    /**
+     * The quantities markers can be placed on.
+     */
+    public enum Quantity {
+        /** Return loss, in dB, the larger the better matched */
+        RETURN_LOSS,
+        VSWR,
+        QUALITY_FACTOR
+    }
+
+    /**
+     * A point of the series.
+     */
+    public record Marker(double frequency, double value) {
+
+        /**
+         * Delta marker, from this marker as the reference to another one.
+         */
+        public Delta deltaTo(Marker other) {
+            return new Delta(other.frequency - frequency, other.value - value);
+        }
+    }
+
+    /**
+     * Difference between two markers.
+     */
+    public record Delta(double frequency, double value) {
+    }
+
+    /**
+     * A frequency band, bounds included.
+     */
+    public record Band(double lowFrequency, double highFrequency) {
+        public double width() {
+            return highFrequency - lowFrequency;
+        }
+    }
+
+    private static final MarkerEngine EMPTY = new MarkerEngine(new double[0], new EnumMap<>(Quantity.class));
+
+    private final double[] frequencies;
+    private final Map<Quantity, double[]> columns;
+    private final Map<Quantity, RangeExtremes> trees = new EnumMap<>(Quantity.class);
+
+    private MarkerEngine(double[] frequencies, Map<Quantity, double[]> columns) {
+        this.frequencies = frequencies;
+        this.columns = columns;
+        columns.forEach((quantity, column) -> trees.put(quantity, new RangeExtremes(column)));
+    }
+
+    public static MarkerEngine empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Copies the measures of the points, in any order. The values are derived from the reflection coefficients.
+     */
+    public static MarkerEngine of(List<DataPoint> points) {
+        int n = points.size();
+        if (n == 0) return EMPTY;
+
+        // Sorted files are the norm, the sort is only paid for the others
+        int[] order = null;
+        for (int i = 1; i < n; i++) {
+            if (points.get(i).getFrequency() < points.get(i - 1).getFrequency()) {
+                order = IntStream.range(0, n).boxed()
+                        .sorted(Comparator.comparingDouble(index -> points.get(index).getFrequency()))
+                        .mapToInt(Integer::intValue)
+                        .toArray();
+                break;
+            }
+        }
+
+        double[] frequencies = new double[n];
+        double[] returnLoss = new double[n];
+        double[] vswr = new double[n];
+        double[] qualityFactor = new double[n];
+        for (int i = 0; i < n; i++) {
+            DataPoint point = points.get(order == null ? i : order[i]);
+            Complex gamma = point.getGamma();
+            double magnitude = gamma == null ? Double.NaN : gamma.magnitude();
+            frequencies[i] = point.getFrequency();
+            returnLoss[i] = -20 * Math.log10(magnitude);
+            // A total reflection is an infinite VSWR, which ends any band
+            vswr[i] = magnitude >= 1 ? Double.POSITIVE_INFINITY : (1 + magnitude) / (1 - magnitude);
+            qualityFactor[i] = point.getQualityFactor();
+        }
+
+        Map<Quantity, double[]> columns = new EnumMap<>(Quantity.class);
+        columns.put(Quantity.RETURN_LOSS, returnLoss);
+        columns.put(Quantity.VSWR, vswr);
+        columns.put(Quantity.QUALITY_FACTOR, qualityFactor);
+        return new MarkerEngine(frequencies, columns);
+    }
+
+    public int size() {
+        return frequencies.length;
+    }
+
+    public boolean isEmpty() {
+        return frequencies.length == 0;
+    }
+
+    /**
+     * Marker on the largest value of a quantity within a frequency range, bounds included.
+     */
+    public Optional<Marker> max(Quantity quantity, double minFrequency, double maxFrequency) {
+        if (isEmpty()) return Optional.empty();
+        return marker(quantity, trees.get(quantity).argMax(fromIndex(minFrequency), toIndex(maxFrequency)));
+    }
+
+    /**
+     * Marker on the smallest value of a quantity within a frequency range, bounds included.
+     */
+    public Optional<Marker> min(Quantity quantity, double minFrequency, double maxFrequency) {
+        if (isEmpty()) return Optional.empty();
+        return marker(quantity, trees.get(quantity).argMin(fromIndex(minFrequency), toIndex(maxFrequency)));
+    }
+
+    /**
+     * Marker on the best match within a frequency range, the largest return loss.
+     */
+    public Optional<Marker> bestReturnLoss(double minFrequency, double maxFrequency) {
+        return max(Quantity.RETURN_LOSS, minFrequency, maxFrequency);
+    }
+
+    /**
+     * Marker on the worst match within a frequency range, the largest VSWR.
+     */
+    public Optional<Marker> worstVswr(double minFrequency, double maxFrequency) {
+        return max(Quantity.VSWR, minFrequency, maxFrequency);
+    }
+
+    /**
+     * Band around the best match of a frequency range where the VSWR stays under a threshold.
+     * The band can extend past the range, it ends where the VSWR reaches the threshold.
+     *
+     * @return the band between its first and last points, empty if even the best match reaches the threshold
+     */
+    public Optional<Band> bandwidth(double minFrequency, double maxFrequency, double vswrThreshold) {
+        if (isEmpty()) return Optional.empty();
+        RangeExtremes tree = trees.get(Quantity.VSWR);
+        int best = tree.argMin(fromIndex(minFrequency), toIndex(maxFrequency));
+        if (best < 0 || !(columns.get(Quantity.VSWR)[best] < vswrThreshold)) return Optional.empty();
+
+        int low = tree.lastAtLeast(best, vswrThreshold) + 1;
+        int high = tree.firstAtLeast(best, vswrThreshold);
+        high = (high < 0 ? frequencies.length : high) - 1;
+        return Optional.of(new Band(frequencies[low], frequencies[high]));
+    }
+
+    private Optional<Marker> marker(Quantity quantity, int index) {
+        if (index < 0) return Optional.empty();
+        return Optional.of(new Marker(frequencies[index], columns.get(quantity)[index]));
+    }
+
+    // First index whose frequency is at least the given one
+    private int fromIndex(double frequency) {
+        int index = Arrays.binarySearch(frequencies, frequency);
+        if (index < 0) return -index - 1;
+        while (index > 0 && frequencies[index - 1] == frequency) index--;
+        return index;
+    }
+
+    // Index after the last one whose frequency is at most the given one
+    private int toIndex(double frequency) {
+        int index = Arrays.binarySearch(frequencies, frequency);
+        if (index < 0) return -index - 1;
+        while (index < frequencies.length - 1 && frequencies[index + 1] == frequency) index++;
+        return index + 1;
+    }
+}
@@ -0,0 +1,80 @@
+package heig.tb.jsmithfx.logic;
+
+/**
+ * RF values at a point of the chart, computed in place so the read-out of the mouse position allocates nothing.
+ * <p>
+ * The same instance is updated for every sample. The impedance is only updated inside the chart, away from
+ * the open circuit, so it keeps the last value the mouse pointed at.
+ * </p>
+ */
+public final class MouseReadout {
+
+    /**
+     * Where the point lies on the chart.
+     */
+    public enum Region {
+        /** Outside of the unit circle, nothing is computed */
+        OUTSIDE,
+        /** At the open circuit, only the reflection coefficient is meaningful */
+        OPEN_CIRCUIT,
+        /** Inside of the chart, every value is computed */
+        INSIDE
+    }
+
+    // Resistance above which the point is taken as the open circuit
+    private static final double OPEN_CIRCUIT_RESISTANCE = 1e9;
+
+    private Region region = Region.OUTSIDE;
+    private double gammaMagnitude;
+    private double gammaAngle;
+    private double resistance;
+    private double reactance;
+    private double conductance;
+    private double susceptance;
+    private double returnLoss;
+    private double vswr;
+    private double qualityFactor;
+
+    /**
+     * Computes the values at a reflection coefficient.
+     *
+     * @param gammaX the real part of the reflection coefficient
+     * @param gammaY the imaginary part of the reflection coefficient
+     * @param z0     the reference impedance
+     * @return the region of the point
+     */
+    public Region update(double gammaX, double gammaY, double z0) {
+        gammaMagnitude = Math.sqrt(gammaX * gammaX + gammaY * gammaY);
+        gammaAngle = Math.toDegrees(Math.atan2(gammaY, gammaX));
+        if (gammaMagnitude > 1.0) return region = Region.OUTSIDE;
+
+        // Z = z0 (1 + gamma) / (1 - gamma)
+        double denominator = (1 - gammaX) * (1 - gammaX) + gammaY * gammaY;
+        double r = z0 * (1 - gammaX * gammaX - gammaY * gammaY) / denominator;
+        double x = z0 * 2 * gammaY / denominator;
+        if (r > OPEN_CIRCUIT_RESISTANCE) return region = Region.OPEN_CIRCUIT;
+
+        resistance = r;
+        reactance = x;
+        double squared = r * r + x * x;
+        conductance = r / squared;
+        susceptance = -x / squared;
+
+        returnLoss = (gammaMagnitude < 1e-9) ? Double.POSITIVE_INFINITY : -20 * Math.log10(gammaMagnitude);
+        vswr = (gammaMagnitude < 1e-9) ? Double.POSITIVE_INFINITY : (1 + gammaMagnitude) / (1 - gammaMagnitude);
+        qualityFactor = (r < 1e-9) ? Double.POSITIVE_INFINITY : Math.abs(x) / r;
+        return region = Region.INSIDE;
+    }
+
+    public Region getRegion() { return region; }
+    public double getGammaMagnitude() { return gammaMagnitude; }
+    /** The angle of the reflection coefficient, in degrees. */
+    public double getGammaAngle() { return gammaAngle; }
+    public double getResistance() { return resistance; }
+    public double getReactance() { return reactance; }
+    public double getConductance() { return conductance; }
+    public double getSusceptance() { return susceptance; }
+    public double getReturnLoss() { return returnLoss; }
+    public double getVswr() { return vswr; }
+    public double getQualityFactor() { return qualityFactor; }
+}
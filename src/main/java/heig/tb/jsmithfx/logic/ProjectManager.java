@@ -107,33 +107,36 @@ public class ProjectManager {
         try {
             SmithProjectData data = mapper.readValue(file, SmithProjectData.class);
 
-            viewModel.setProjectName(data.projectName);
-            viewModel.zo.set(data.zo);
-            viewModel.setFrequency(data.frequency);
-            viewModel.loadImpedance.set(data.loadImpedance);
-
-            // CLEAR existing circuits
-            viewModel.allCircuits.clear();
-
-            if (data.allCircuits != null) {
-                for (List<CircuitElement> rawCircuitList : data.allCircuits) {
-
-                    ObservableList<CircuitElement> observableCircuit = FXCollections.observableArrayList(
-                            element -> new javafx.beans.Observable[]{ element.realWorldValueProperty() }
-                    );
-
-                    observableCircuit.addAll(rawCircuitList);
-                    viewModel.allCircuits.add(observableCircuit);
+            // Every source of the chart changes, the derived points are computed once at the end
+            viewModel.runBatched(() -> {
+                viewModel.setProjectName(data.projectName);
+                viewModel.zo.set(data.zo);
+                viewModel.setFrequency(data.frequency);
+                viewModel.loadImpedance.set(data.loadImpedance);
+
+                // CLEAR existing circuits
+                viewModel.allCircuits.clear();
+
+                if (data.allCircuits != null) {
+                    for (List<CircuitElement> rawCircuitList : data.allCircuits) {
+
+                        ObservableList<CircuitElement> observableCircuit = FXCollections.observableArrayList(
+                                element -> new javafx.beans.Observable[]{ element.realWorldValueProperty() }
+                        );
+
+                        observableCircuit.addAll(rawCircuitList);
+                        viewModel.allCircuits.add(observableCircuit);
+                    }
                 }
-            }
 
-            // If the file happened to have 0 circuits, ensure at least one exists
-            if (viewModel.allCircuits.isEmpty()) {
-                viewModel.addCircuit();
-            }
+                // If the file happened to have 0 circuits, ensure at least one exists
+                if (viewModel.allCircuits.isEmpty()) {
+                    viewModel.addCircuit();
+                }
 
-            // Reset selection to the first circuit
-            viewModel.circuitElementIndex.set(0);
+                // Reset selection to the first circuit
+                viewModel.circuitElementIndex.set(0);
+            });
 
             viewModel.setHasBeenSaved(true);
             viewModel.setIsModified(false);
@@ -0,0 +1,120 @@
+package heig.tb.jsmithfx.logic;
+
+import java.util.Arrays;
+
+/**
+ * Segment tree of the positions of the smallest and largest values of a column, over any range of it.
+ * <p>
+ * Each node keeps the index of the extremes of the leaves below it, so a range query combines O(log n)
+ * nodes, and the first or last value over a threshold is found by one descent. NaN values are left out of
+ * every query. The column is read, not copied, and must not change afterwards.
+ * </p>
+ */
+final class RangeExtremes {
+
+    private final double[] values;
+    // Number of leaves, a power of two, leaf i being node leaves + i
+    private final int leaves;
+    private final int[] minIndex;
+    private final int[] maxIndex;
+
+    RangeExtremes(double[] values) {
+        this.values = values;
+        this.leaves = Integer.highestOneBit(Math.max(1, values.length - 1)) << 1;
+        this.minIndex = new int[2 * leaves];
+        this.maxIndex = new int[2 * leaves];
+
+        Arrays.fill(minIndex, -1);
+        Arrays.fill(maxIndex, -1);
+        for (int i = 0; i < values.length; i++) {
+            if (Double.isNaN(values[i])) continue;
+            minIndex[leaves + i] = i;
+            maxIndex[leaves + i] = i;
+        }
+        for (int node = leaves - 1; node > 0; node--) {
+            minIndex[node] = pickMin(minIndex[2 * node], minIndex[2 * node + 1]);
+            maxIndex[node] = pickMax(maxIndex[2 * node], maxIndex[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Index of the smallest value in [from, to), the first one on ties.
+     *
+     * @return the index, -1 if the range holds no value
+     */
+    int argMin(int from, int to) {
+        int best = -1;
+        for (int l = Math.max(from, 0) + leaves, r = Math.min(to, values.length) + leaves; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1) best = pickMin(best, minIndex[l++]);
+            if ((r & 1) == 1) best = pickMin(best, minIndex[--r]);
+        }
+        return best;
+    }
+
+    /**
+     * Index of the largest value in [from, to), the first one on ties.
+     *
+     * @return the index, -1 if the range holds no value
+     */
+    int argMax(int from, int to) {
+        int best = -1;
+        for (int l = Math.max(from, 0) + leaves, r = Math.min(to, values.length) + leaves; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1) best = pickMax(best, maxIndex[l++]);
+            if ((r & 1) == 1) best = pickMax(best, maxIndex[--r]);
+        }
+        return best;
+    }
+
+    /**
+     * First index at or after {@code from} whose value is at least the threshold.
+     *
+     * @return the index, -1 if there is none
+     */
+    int firstAtLeast(int from, double threshold) {
+        return firstAtLeast(1, 0, leaves, from, threshold);
+    }
+
+    /**
+     * Last index before {@code to} whose value is at least the threshold.
+     *
+     * @return the index, -1 if there is none
+     */
+    int lastAtLeast(int to, double threshold) {
+        return lastAtLeast(1, 0, leaves, to, threshold);
+    }
+
+    // A subtree is only entered when its largest value passes, so the descent visits O(log n) nodes
+    private int firstAtLeast(int node, int nodeFrom, int nodeTo, int from, double threshold) {
+        if (nodeTo <= from) return -1;
+        int max = maxIndex[node];
+        if (max < 0 || !(values[max] >= threshold)) return -1;
+        if (node >= leaves) return node - leaves;
+        int mid = (nodeFrom + nodeTo) >>> 1;
+        int found = firstAtLeast(2 * node, nodeFrom, mid, from, threshold);
+        return found >= 0 ? found : firstAtLeast(2 * node + 1, mid, nodeTo, from, threshold);
+    }
+
+    private int lastAtLeast(int node, int nodeFrom, int nodeTo, int to, double threshold) {
+        if (nodeFrom >= to) return -1;
+        int max = maxIndex[node];
+        if (max < 0 || !(values[max] >= threshold)) return -1;
+        if (node >= leaves) return node - leaves;
+        int mid = (nodeFrom + nodeTo) >>> 1;
+        int found = lastAtLeast(2 * node + 1, mid, nodeTo, to, threshold);
+        return found >= 0 ? found : lastAtLeast(2 * node, nodeFrom, mid, to, threshold);
+    }
+
+    private int pickMin(int a, int b) {
+        if (a < 0) return b;
+        if (b < 0) return a;
+        if (values[a] != values[b]) return values[a] < values[b] ? a : b;
+        return Math.min(a, b);
+    }
+
+    private int pickMax(int a, int b) {
+        if (a < 0) return b;
+        if (b < 0) return a;
+        if (values[a] != values[b]) return values[a] > values[b] ? a : b;
+        return Math.min(a, b);
+    }
+}
@@ -0,0 +1,132 @@
+package heig.tb.jsmithfx.logic;
+
+import heig.tb.jsmithfx.model.DataPoint;
+import heig.tb.jsmithfx.utilities.Complex;
+
+import java.util.List;
+
+/**
+ * Snapshot of the simulated points: the impedance chain, the transformed S1P points and the frequency sweep,
+ * each in primitive columns.
+ * <p>
+ * The view model publishes a new result after every computation, with the next generation number. A result
+ * never changes once published, so any thread can read it without locks or copies while the circuit keeps
+ * being edited, and knows it is outdated when a result of a later generation is published.
+ * </p>
+ */
+public final class SimulationResult {
+
+    /**
+     * Columns of a series of points, in the order of the points.
+     */
+    public static final class Series {
+
+        private static final Series EMPTY = new Series(new double[0], new double[0], new double[0], new double[0], new double[0]);
+
+        private final double[] frequencies;
+        private final double[] gammaReal;
+        private final double[] gammaImag;
+        private final double[] resistance;
+        private final double[] reactance;
+
+        private Series(double[] frequencies, double[] gammaReal, double[] gammaImag, double[] resistance, double[] reactance) {
+            this.frequencies = frequencies;
+            this.gammaReal = gammaReal;
+            this.gammaImag = gammaImag;
+            this.resistance = resistance;
+            this.reactance = reactance;
+        }
+
+        public static Series empty() {
+            return EMPTY;
+        }
+
+        /**
+         * Wraps computed columns without a copy, they must not be written afterwards.
+         * All of the same length, a missing value being NaN.
+         */
+        public static Series of(double[] frequencies, double[] gammaReal, double[] gammaImag,
+                                double[] resistance, double[] reactance) {
+            int n = frequencies.length;
+            if (gammaReal.length != n || gammaImag.length != n || resistance.length != n || reactance.length != n) {
+                throw new IllegalArgumentException("Columns of different lengths");
+            }
+            return n == 0 ? EMPTY : new Series(frequencies, gammaReal, gammaImag, resistance, reactance);
+        }
+
+        /**
+         * Copies the points into columns, a missing value being NaN.
+         */
+        public static Series of(List<DataPoint> points) {
+            int n = points.size();
+            if (n == 0) return EMPTY;
+
+            double[] frequencies = new double[n];
+            double[] gammaReal = new double[n];
+            double[] gammaImag = new double[n];
+            double[] resistance = new double[n];
+            double[] reactance = new double[n];
+            for (int i = 0; i < n; i++) {
+                DataPoint point = points.get(i);
+                Complex gamma = point.getGamma();
+                Complex impedance = point.getImpedance();
+                frequencies[i] = point.getFrequency();
+                gammaReal[i] = gamma == null ? Double.NaN : gamma.real();
+                gammaImag[i] = gamma == null ? Double.NaN : gamma.imag();
+                resistance[i] = impedance == null ? Double.NaN : impedance.real();
+                reactance[i] = impedance == null ? Double.NaN : impedance.imag();
+            }
+            return new Series(frequencies, gammaReal, gammaImag, resistance, reactance);
+        }
+
+        public int size() { return frequencies.length; }
+        public boolean isEmpty() { return frequencies.length == 0; }
+        public double frequency(int index) { return frequencies[index]; }
+        public double gammaReal(int index) { return gammaReal[index]; }
+        public double gammaImag(int index) { return gammaImag[index]; }
+        public double resistance(int index) { return resistance[index]; }
+        public double reactance(int index) { return reactance[index]; }
+
+        /**
+         * @return the point at the index, with its VSWR and return loss, for the lists shown in the UI
+         */
+        public DataPoint point(int index, String label) {
+            Complex gamma = new Complex(gammaReal[index], gammaImag[index]);
+            return new DataPoint(frequencies[index], label, new Complex(resistance[index], reactance[index]), gamma,
+                    SmithCalculator.calculateVswr(gamma), SmithCalculator.calculateReturnLoss(gamma));
+        }
+    }
+
+    private static final SimulationResult EMPTY = new SimulationResult(0, Double.NaN, Series.EMPTY, Series.EMPTY, Series.EMPTY);
+
+    private final long generation;
+    private final double z0;
+    private final Series chain;
+    private final Series transformedS1P;
+    private final Series sweep;
+
+    public SimulationResult(long generation, double z0, Series chain, Series transformedS1P, Series sweep) {
+        this.generation = generation;
+        this.z0 = z0;
+        this.chain = chain;
+        this.transformedS1P = transformedS1P;
+        this.sweep = sweep;
+    }
+
+    /**
+     * @return the result before any computation, of generation 0
+     */
+    public static SimulationResult empty() {
+        return EMPTY;
+    }
+
+    /** Number of the result, each published result having the next one. */
+    public long getGeneration() { return generation; }
+    /** The characteristic impedance the reflection coefficients are relative to. */
+    public double getZ0() { return z0; }
+    /** The impedance at each stage of the circuit, from the load. */
+    public Series getChain() { return chain; }
+    /** The S1P points seen through the circuit, or the raw points when they aren't used as the load. */
+    public Series getTransformedS1P() { return transformedS1P; }
+    public Series getSweep() { return sweep; }
+}
@@ -341,6 +341,7 @@ public class SmithCalculator {
 
     /**
      * Generates a list of points representing the path of adding a lossy component on the Smith chart.
+     * The path is sampled uniformly, see {@link LossyPathTessellator} for the adaptive version used when rendering.
      *
      * @param startGamma The starting reflection coefficient (Gamma).
      * @param element    The circuit element being added.
@@ -349,55 +350,14 @@ public class SmithCalculator {
      * @return A list of Complex numbers representing the path on the Smith chart.
      */
     public static List<Complex> getLossyComponentPath(Complex startGamma, CircuitElement element, double z0, double frequency) {
-        List<Complex> path = new ArrayList<>();
-
-        int points = 200;
-
-        Complex startImpedance = gammaToImpedance(startGamma, z0);
-        Complex startAdmittance = startImpedance.inverse(); // Used for parallel
-        Complex stepTotalZ;
-
-        if (element.getType() == CircuitElement.ElementType.LINE) {
-            Line originalLine = (Line) element;
-            double totalLength = originalLine.getRealWorldValue();
-
-            for (int i = 0; i <= points; i++) {
-                double fraction = (double) i / points;
-                double stepLength = totalLength * fraction;
-
-                Line stepLine = (Line) originalLine.copy();
-                stepLine.setRealWorldValue(stepLength);
-
-                stepTotalZ = stepLine.calculateImpedance(startImpedance, frequency);
-
-                // Convert to Gamma and add to path
-                path.add(impedanceToGamma(stepTotalZ, z0));
-            }
-
-        } else {
-            Complex finalComponentZ = element.getImpedance(frequency);
-
-            for (int i = 0; i <= points; i++) {
-                double fraction = (double) i / points;
-
-                if (element.getPosition() == CircuitElement.ElementPosition.SERIES) {
-                    // Z_step = Z_start + (Z_final_component * fraction)
-                    stepTotalZ = startImpedance.add(finalComponentZ.multiply(fraction));
-                } else {
-                    // PARALLEL
-                    // Y_final_component = 1 / Z_final_component
-                    Complex finalComponentY = finalComponentZ.inverse();
-
-                    // Y_step = Y_start + (Y_final_component * fraction)
-                    Complex stepTotalY = startAdmittance.add(finalComponentY.multiply(fraction));
-
-                    // Convert back to Z for gamma calculation
-                    stepTotalZ = stepTotalY.inverse();
-                }
-
-                // Convert to Gamma and add to path
-                path.add(impedanceToGamma(stepTotalZ, z0));
-            }
+        LossyPathTessellator tessellator = new LossyPathTessellator();
+        int count = tessellator.sampleUniform(startGamma, element, z0, frequency, 200);
+
+        List<Complex> path = new ArrayList<>(count);
+        double[] xs = tessellator.getXs();
+        double[] ys = tessellator.getYs();
+        for (int i = 0; i < count; i++) {
+            path.add(new Complex(xs[i], ys[i]));
         }
         return path;
     }
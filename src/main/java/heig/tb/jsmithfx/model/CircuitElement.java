@@ -1,5 +1,6 @@
 package heig.tb.jsmithfx.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import heig.tb.jsmithfx.model.Element.Capacitor;
@@ -102,6 +103,29 @@ public abstract class CircuitElement {
     protected ElementPosition elementPosition;
     protected ElementType elementType;
 
+    /**
+     * Modification counter, incremented every time a parameter that changes the element's path changes.
+     * Used by the renderer to know when cached geometry computed for this element is stale.
+     */
+    private int version;
+
+    {
+        realWorldValue.addListener(_ -> version++);
+        qualityFactor.addListener(_ -> version++);
+    }
+
+    @JsonIgnore
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Marks the element as modified, for parameters that are not backed by an observable property.
+     */
+    protected void markModified() {
+        version++;
+    }
+
     public DoubleProperty realWorldValueProperty() {
         return realWorldValue;
     }
@@ -120,10 +144,12 @@ public abstract class CircuitElement {
 
     public void setPosition(ElementPosition position) {
         this.elementPosition = position;
+        markModified();
     }
 
     public void setType(ElementType type) {
         this.elementType = type;
+        markModified();
     }
 
     public ElementPosition getPosition() {
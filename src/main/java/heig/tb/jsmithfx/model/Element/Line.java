@@ -119,14 +119,17 @@ public class Line extends CircuitElement {
 
     public void setStubType(StubType stubType) {
         this.stubType = stubType;
+        markModified();
     }
 
     public void setCharacteristicImpedance(double characteristicImpedance) {
         this.characteristicImpedance = characteristicImpedance;
+        markModified();
     }
 
     public void setPermittivity(double permittivity) {
         this.permittivity = permittivity;
+        markModified();
     }
 
     public static double getBeta(double frequency, double permittivity){
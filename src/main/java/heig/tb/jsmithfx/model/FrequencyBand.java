@@ -0,0 +1,41 @@
+package heig.tb.jsmithfx.model;
+
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleStringProperty;
+
+/**
+ * A named frequency band, bounds included, used to filter and color the points of an S1P file.
+ */
+public class FrequencyBand {
+
+    private final SimpleStringProperty name;
+    private final SimpleDoubleProperty minFrequency;
+    private final SimpleDoubleProperty maxFrequency;
+
+    public FrequencyBand(String name, double minFrequency, double maxFrequency) {
+        this.name = new SimpleStringProperty(name);
+        this.minFrequency = new SimpleDoubleProperty(minFrequency);
+        this.maxFrequency = new SimpleDoubleProperty(maxFrequency);
+    }
+
+    // JavaFX Property Accessors
+    public SimpleStringProperty nameProperty() { return name; }
+    public SimpleDoubleProperty minFrequencyProperty() { return minFrequency; }
+    public SimpleDoubleProperty maxFrequencyProperty() { return maxFrequency; }
+
+    // Standard Getters and Setters
+    public String getName() { return name.get(); }
+    public double getMinFrequency() { return minFrequency.get(); }
+    public double getMaxFrequency() { return maxFrequency.get(); }
+    public void setMinFrequency(double frequency) { minFrequency.set(frequency); }
+    public void setMaxFrequency(double frequency) { maxFrequency.set(frequency); }
+
+    public boolean contains(double frequency) {
+        return frequency >= getMinFrequency() && frequency <= getMaxFrequency();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %.2e - %.2e Hz", getName(), getMinFrequency(), getMaxFrequency());
+    }
+}
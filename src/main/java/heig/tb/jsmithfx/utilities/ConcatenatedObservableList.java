@@ -0,0 +1,234 @@
+package heig.tb.jsmithfx.utilities;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read-only view of several observable lists placed one after the other, without copying them.
+ * <p>
+ * Each source can be hidden from the view. The changes of a visible source are forwarded as they are,
+ * shifted by the size of the visible sources before it, so a listener such as a table only sees what
+ * actually changed. Showing or hiding a source is a single change covering its range, it doesn't copy
+ * the source either.
+ * </p>
+ * Must be used from the FX thread, like its sources.
+ *
+ * @param <E> the type of the elements
+ */
+public final class ConcatenatedObservableList<E> extends ObservableListBase<E> {
+
+    private final List<ObservableList<? extends E>> sources;
+    private final boolean[] visible;
+
+    /**
+     * Creates the view, every source visible.
+     */
+    public ConcatenatedObservableList(List<ObservableList<? extends E>> sources) {
+        this.sources = List.copyOf(sources);
+        this.visible = new boolean[this.sources.size()];
+        for (int i = 0; i < this.sources.size(); i++) {
+            int index = i;
+            visible[i] = true;
+            this.sources.get(i).addListener((ListChangeListener<E>) change -> forward(index, change));
+        }
+    }
+
+    /**
+     * Shows or hides a source in the view.
+     *
+     * @param sourceIndex the index of the source, in the order given to the constructor
+     */
+    public void setVisible(int sourceIndex, boolean visible) {
+        if (this.visible[sourceIndex] == visible) return;
+        ObservableList<? extends E> source = sources.get(sourceIndex);
+
+        if (visible) {
+            this.visible[sourceIndex] = true;
+            if (!source.isEmpty()) {
+                int from = offsetOf(sourceIndex);
+                modCount++;
+                fireChange(new RangeChange(from, from + source.size(), List.of()));
+            }
+        } else {
+            int from = offsetOf(sourceIndex);
+            this.visible[sourceIndex] = false;
+            // The source doesn't change, a view of it is a valid list of the removed elements
+            if (!source.isEmpty()) {
+                modCount++;
+                fireChange(new RangeChange(from, from, Collections.unmodifiableList(source)));
+            }
+        }
+    }
+
+    public boolean isVisible(int sourceIndex) {
+        return visible[sourceIndex];
+    }
+
+    @Override
+    public E get(int index) {
+        if (index < 0) throw new IndexOutOfBoundsException(index);
+        int remaining = index;
+        for (int i = 0; i < sources.size(); i++) {
+            if (!visible[i]) continue;
+            List<? extends E> source = sources.get(i);
+            if (remaining < source.size()) return source.get(remaining);
+            remaining -= source.size();
+        }
+        throw new IndexOutOfBoundsException(index);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < sources.size(); i++) {
+            if (visible[i]) size += sources.get(i).size();
+        }
+        return size;
+    }
+
+    private int offsetOf(int sourceIndex) {
+        int offset = 0;
+        for (int i = 0; i < sourceIndex; i++) {
+            if (visible[i]) offset += sources.get(i).size();
+        }
+        return offset;
+    }
+
+    private void forward(int sourceIndex, ListChangeListener.Change<? extends E> change) {
+        if (!visible[sourceIndex]) return;
+        // Iterators over the view fail fast like those over its sources
+        modCount++;
+        fireChange(new OffsetChange(change, offsetOf(sourceIndex)));
+    }
+
+    /**
+     * A single addition or removal of a range of the view.
+     */
+    private final class RangeChange extends ListChangeListener.Change<E> {
+        private final int from;
+        private final int to;
+        private final List<E> removed;
+        private boolean onChange = false;
+
+        RangeChange(int from, int to, List<E> removed) {
+            super(ConcatenatedObservableList.this);
+            this.from = from;
+            this.to = to;
+            this.removed = removed;
+        }
+
+        @Override
+        public boolean next() {
+            if (onChange) return false;
+            onChange = true;
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            onChange = false;
+        }
+
+        @Override
+        public int getFrom() {
+            checkState();
+            return from;
+        }
+
+        @Override
+        public int getTo() {
+            checkState();
+            return to;
+        }
+
+        @Override
+        public List<E> getRemoved() {
+            checkState();
+            return removed;
+        }
+
+        @Override
+        protected int[] getPermutation() {
+            checkState();
+            return new int[0];
+        }
+
+        private void checkState() {
+            if (!onChange) throw new IllegalStateException("Invalid Change state: next() must be called before inspecting the Change.");
+        }
+    }
+
+    /**
+     * A change of a source, as seen in the view. It reads through the change of the source.
+     */
+    private final class OffsetChange extends ListChangeListener.Change<E> {
+        private final ListChangeListener.Change<? extends E> change;
+        private final int offset;
+
+        OffsetChange(ListChangeListener.Change<? extends E> change, int offset) {
+            super(ConcatenatedObservableList.this);
+            this.change = change;
+            this.offset = offset;
+            change.reset();
+        }
+
+        @Override
+        public boolean next() {
+            return change.next();
+        }
+
+        @Override
+        public void reset() {
+            change.reset();
+        }
+
+        @Override
+        public int getFrom() {
+            return change.getFrom() + offset;
+        }
+
+        @Override
+        public int getTo() {
+            return change.getTo() + offset;
+        }
+
+        @Override
+        public List<E> getRemoved() {
+            return Collections.unmodifiableList(change.getRemoved());
+        }
+
+        @Override
+        public boolean wasPermutated() {
+            return change.wasPermutated();
+        }
+
+        @Override
+        public boolean wasAdded() {
+            return change.wasAdded();
+        }
+
+        @Override
+        public boolean wasRemoved() {
+            return change.wasRemoved();
+        }
+
+        @Override
+        public boolean wasUpdated() {
+            return change.wasUpdated();
+        }
+
+        @Override
+        protected int[] getPermutation() {
+            if (!change.wasPermutated()) return new int[0];
+            int[] permutation = new int[change.getTo() - change.getFrom()];
+            for (int i = 0; i < permutation.length; i++) {
+                permutation[i] = change.getPermutation(change.getFrom() + i) + offset;
+            }
+            return permutation;
+        }
+    }
+}
@@ -2,8 +2,11 @@ package heig.tb.jsmithfx.utilities;
 
 import javafx.scene.control.Alert;
 import javafx.scene.control.TextInputDialog;
+import javafx.stage.FileChooser;
 import javafx.stage.Window;
+import javafx.util.Pair;
 
+import java.io.File;
 import java.util.Optional;
 
 public class DialogUtils {
@@ -34,6 +37,51 @@ public class DialogUtils {
         return Optional.empty();
     }
 
+    /**
+     * Asks for the width of a PNG export, then for the file to write.
+     *
+     * @return the file and the width in pixels, empty if cancelled or invalid
+     */
+    public static Optional<Pair<File, Integer>> showPngExportDialog(String title, int defaultWidth, Window stage) {
+        Optional<Double> width = showDoubleInputDialog(title, "Width of the image in pixels", defaultWidth, stage);
+        if (width.isEmpty()) return Optional.empty();
+        if (!(width.get() >= 1 && width.get() <= 65536)) {
+            showErrorAlert("Error", "The width must be between 1 and 65536 pixels.", stage);
+            return Optional.empty();
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle(title);
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PNG Images", "*.png"));
+        File file = fileChooser.showSaveDialog(stage);
+        if (file == null) return Optional.empty();
+        return Optional.of(new Pair<>(file, (int) Math.round(width.get())));
+    }
+
+    /**
+     * Asks for the maximum number of markers per point layer of an SVG export, then for the file to write.
+     *
+     * @return the file and the maximum number of markers, empty if cancelled or invalid
+     */
+    public static Optional<Pair<File, Integer>> showSvgExportDialog(String title, Window stage) {
+        Optional<Double> maxMarkers = showDoubleInputDialog(title,
+                "Maximum number of markers per point layer (0 to keep them all)", 0, stage);
+        if (maxMarkers.isEmpty()) return Optional.empty();
+        if (!(maxMarkers.get() >= 0)) {
+            showErrorAlert("Error", "The number of markers can't be negative.", stage);
+            return Optional.empty();
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle(title);
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("SVG Images", "*.svg"));
+        File file = fileChooser.showSaveDialog(stage);
+        if (file == null) return Optional.empty();
+
+        int markers = maxMarkers.get() == 0 ? Integer.MAX_VALUE : (int) Math.min(Integer.MAX_VALUE, Math.round(maxMarkers.get()));
+        return Optional.of(new Pair<>(file, markers));
+    }
+
     public static Boolean areYouSureDialog(String title, String content, Window stage) {
         Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
         alert.initOwner(stage);
@@ -0,0 +1,219 @@
+package heig.tb.jsmithfx.utilities;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Collects render and computation timings for the performance overlay of the Smith chart.
+ * <p>
+ * Every metric keeps its last samples in a fixed size ring, so recording is a couple of array writes
+ * and nothing is allocated while the application runs. Percentiles are only computed when the overlay
+ * is drawn. Nothing is recorded while the monitor is disabled.
+ * </p>
+ * Must be used from a single thread, the FX thread for the monitor of a view model. A disabled monitor
+ * only reads its flag and can be shared by renderers of any thread.
+ */
+public final class PerformanceMonitor {
+
+    public enum Metric {
+        RENDER_TOTAL("Render"),
+        LAYER_GRID("  grid"),
+        LAYER_VSWR("  vswr"),
+        LAYER_S1P("  s1p"),
+        LAYER_PATH("  path"),
+        LAYER_POINTS("  points"),
+        LAYER_PREVIEWS("  previews"),
+        LAYER_SWEEP("  sweep"),
+        IMPEDANCE_CHAIN("Impedance chain"),
+        S1P_CHAIN("S1P chain"),
+        FREQUENCY_SWEEP("Frequency sweep"),
+        RECALCULATIONS_PER_ACTION("Recalcs/action");
+
+        private final String label;
+
+        Metric(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final int RING_CAPACITY = 240;
+
+    private final Map<Metric, SampleRing> rings = new EnumMap<>(Metric.class);
+    private final SampleRing frameTimestamps = new SampleRing(RING_CAPACITY);
+
+    private boolean enabled = false;
+
+    // Recalculations since the last action, recorded by endAction()
+    private int pendingRecalculations = 0;
+
+    // Point counts of the last frame
+    private int pointsDrawn = 0;
+    private int pointsCulled = 0;
+
+    public PerformanceMonitor() {
+        for (Metric metric : Metric.values()) {
+            rings.put(metric, new SampleRing(RING_CAPACITY));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) reset();
+    }
+
+    /**
+     * Starts a measure.
+     *
+     * @return the start timestamp to give back to {@link #stop(Metric, long)}, 0 when the monitor is disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Ends a measure started with {@link #start()} and records its duration.
+     */
+    public void stop(Metric metric, long startNanos) {
+        if (!enabled || startNanos == 0L) return;
+        rings.get(metric).add(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records the end of a frame, used for the frame rate.
+     */
+    public void frameRendered() {
+        if (!enabled) return;
+        frameTimestamps.add(System.nanoTime());
+    }
+
+    /**
+     * Counts a recalculation of the circuit. All the recalculations made by one user action, a change or a
+     * batch of changes of the view model, are grouped and recorded as one sample by {@link #endAction()}.
+     */
+    public void countRecalculation() {
+        if (!enabled) return;
+        pendingRecalculations++;
+    }
+
+    /**
+     * Records the recalculations counted since the last action. Called by the view model once the state
+     * derived from a change, or from a batch of changes, is computed.
+     */
+    public void endAction() {
+        if (pendingRecalculations == 0) return;
+        rings.get(Metric.RECALCULATIONS_PER_ACTION).add(pendingRecalculations);
+        pendingRecalculations = 0;
+    }
+
+    public void resetPointCounts() {
+        if (!enabled) return;
+        pointsDrawn = 0;
+        pointsCulled = 0;
+    }
+
+    public void addPointsDrawn(int count) {
+        if (!enabled) return;
+        pointsDrawn += count;
+    }
+
+    public void addPointsCulled(int count) {
+        if (!enabled) return;
+        pointsCulled += count;
+    }
+
+    public int getPointsDrawn() {
+        return pointsDrawn;
+    }
+
+    public int getPointsCulled() {
+        return pointsCulled;
+    }
+
+    /**
+     * @return the number of frames per second over the recorded frames, 0 if there aren't enough of them
+     */
+    public double getFramesPerSecond() {
+        int n = frameTimestamps.size();
+        if (n < 2) return 0;
+        long span = frameTimestamps.latest() - frameTimestamps.oldest();
+        return span > 0 ? (n - 1) * 1e9 / span : 0;
+    }
+
+    /**
+     * Returns the given percentile of the recorded samples of a metric.
+     *
+     * @param metric     the metric
+     * @param percentile the percentile, between 0 and 100
+     * @return the value (nanoseconds for timings, a count for the recalculations), NaN if nothing was recorded
+     */
+    public double percentile(Metric metric, double percentile) {
+        return rings.get(metric).percentile(percentile);
+    }
+
+    public int sampleCount(Metric metric) {
+        return rings.get(metric).size();
+    }
+
+    public void reset() {
+        rings.values().forEach(SampleRing::clear);
+        frameTimestamps.clear();
+        pendingRecalculations = 0;
+        pointsDrawn = 0;
+        pointsCulled = 0;
+    }
+
+    /**
+     * Fixed size ring of samples overwriting the oldest ones when full.
+     */
+    private static final class SampleRing {
+        private final long[] samples;
+        private final long[] sorted;
+        private int next = 0;
+        private int size = 0;
+
+        SampleRing(int capacity) {
+            samples = new long[capacity];
+            sorted = new long[capacity];
+        }
+
+        void add(long value) {
+            samples[next] = value;
+            next = (next + 1) % samples.length;
+            if (size < samples.length) size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long latest() {
+            return samples[(next - 1 + samples.length) % samples.length];
+        }
+
+        long oldest() {
+            return samples[(next - size + samples.length) % samples.length];
+        }
+
+        double percentile(double percentile) {
+            if (size == 0) return Double.NaN;
+            System.arraycopy(samples, 0, sorted, 0, size);
+            Arrays.sort(sorted, 0, size);
+            int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+            return sorted[Math.clamp(index, 0, size - 1)];
+        }
+
+        void clear() {
+            next = 0;
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package heig.tb.jsmithfx.utilities;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a PNG image row by row, so images far larger than the heap can be produced.
+ * <p>
+ * Only the previous scanline and one compressed chunk are kept in memory. Each row is filtered
+ * with whichever of the None, Sub and Up filters gives the smallest residuals, which suits the flat
+ * areas and thin lines of charts.
+ * </p>
+ */
+public final class PngStreamWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final int bytesPerPixel;
+    private final Deflater deflater = new Deflater(6);
+    private final CRC32 crc = new CRC32();
+
+    private byte[] previous;
+    private byte[] current;
+    private final byte[] filtered;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int chunkLength = 0;
+    private int rowsWritten = 0;
+
+    /**
+     * Writes the header of the image.
+     *
+     * @param out    the destination, closed with this writer
+     * @param width  the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @param alpha  true to keep the alpha channel (RGBA), false for an opaque RGB image
+     */
+    public PngStreamWriter(OutputStream out, int width, int height, boolean alpha) throws IOException {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid image size: " + width + "x" + height);
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.bytesPerPixel = alpha ? 4 : 3;
+
+        int rowBytes = width * bytesPerPixel;
+        previous = new byte[rowBytes];
+        current = new byte[rowBytes];
+        filtered = new byte[rowBytes + 1];
+
+        this.out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8;                      // Bits per channel
+        header[9] = (byte) (alpha ? 6 : 2); // Color type, RGBA or RGB
+        // Compression, filter and interlace methods are all 0
+        writeChunk("IHDR", header, header.length);
+    }
+
+    /**
+     * Appends rows of pixels to the image.
+     *
+     * @param argb   non-premultiplied ARGB pixels, {@code width} per row
+     * @param offset index of the first pixel of the first row
+     * @param rows   the number of rows to write
+     */
+    public void writeRows(int[] argb, int offset, int rows) throws IOException {
+        if (rowsWritten + rows > height) throw new IllegalStateException("More rows than the height of the image");
+
+        for (int row = 0; row < rows; row++) {
+            int start = offset + row * width;
+            int b = 0;
+            for (int x = 0; x < width; x++) {
+                int pixel = argb[start + x];
+                current[b++] = (byte) (pixel >> 16);
+                current[b++] = (byte) (pixel >> 8);
+                current[b++] = (byte) pixel;
+                if (bytesPerPixel == 4) current[b++] = (byte) (pixel >>> 24);
+            }
+            filterRow();
+            deflate(filtered, false);
+
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+            rowsWritten++;
+        }
+    }
+
+    /**
+     * Finishes the compressed data and writes the end of the image.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rowsWritten != height) throw new IOException("Only " + rowsWritten + " of " + height + " rows were written");
+            deflate(new byte[0], true);
+            if (chunkLength > 0) writeChunk("IDAT", chunk, chunkLength);
+            writeChunk("IEND", new byte[0], 0);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    /**
+     * Fills {@code filtered} with the filter type followed by the filtered row.
+     */
+    private void filterRow() {
+        long sumNone = 0, sumSub = 0, sumUp = 0;
+        for (int i = 0; i < current.length; i++) {
+            int value = current[i] & 0xFF;
+            int left = i >= bytesPerPixel ? current[i - bytesPerPixel] & 0xFF : 0;
+            int up = rowsWritten > 0 ? previous[i] & 0xFF : 0;
+            sumNone += residual(value);
+            sumSub += residual(value - left);
+            sumUp += residual(value - up);
+        }
+
+        int type = 0;
+        if (sumSub < sumNone && sumSub <= sumUp) type = 1;
+        else if (sumUp < sumNone) type = 2;
+
+        filtered[0] = (byte) type;
+        for (int i = 0; i < current.length; i++) {
+            int value = current[i] & 0xFF;
+            int predictor = switch (type) {
+                case 1 -> i >= bytesPerPixel ? current[i - bytesPerPixel] & 0xFF : 0;
+                case 2 -> rowsWritten > 0 ? previous[i] & 0xFF : 0;
+                default -> 0;
+            };
+            filtered[i + 1] = (byte) (value - predictor);
+        }
+    }
+
+    // Distance of a filtered byte from zero, seen as a signed value
+    private static int residual(int difference) {
+        int b = (byte) difference;
+        return Math.abs(b);
+    }
+
+    private void deflate(byte[] data, boolean finish) throws IOException {
+        deflater.setInput(data);
+        if (finish) deflater.finish();
+
+        while (finish ? !deflater.finished() : !deflater.needsInput()) {
+            int written = deflater.deflate(chunk, chunkLength, chunk.length - chunkLength);
+            chunkLength += written;
+            if (chunkLength == chunk.length) {
+                writeChunk("IDAT", chunk, chunkLength);
+                chunkLength = 0;
+            }
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void writeInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+}
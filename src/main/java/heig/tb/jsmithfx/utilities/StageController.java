@@ -9,7 +9,11 @@ public class StageController {
     private final Stage stage;
 
     public StageController(Stage stage){
-        this.viewModel = SmithChartViewModel.getInstance();
+        this(stage, SmithChartViewModel.getInstance());
+    }
+
+    public StageController(Stage stage, SmithChartViewModel viewModel){
+        this.viewModel = viewModel;
         this.stage = stage;
 
         updateTitle();
@@ -0,0 +1,77 @@
+package heig.tb.jsmithfx.view;
+
+import heig.tb.jsmithfx.model.CircuitElement;
+import heig.tb.jsmithfx.utilities.Complex;
+
+/**
+ * Geometry of the path drawn for one committed circuit element, expressed in gamma coordinates so it
+ * stays valid when the canvas is resized.
+ * <p>
+ * An entry is either an arc (center, radius and angles) or, for lossy components, a tessellated polyline.
+ * It is reused as long as the element version, the gammas around it, the system impedance and the
+ * frequency are the same as when it was computed.
+ * </p>
+ */
+final class ArcGeometry {
+
+    // Key
+    private boolean valid;
+    private int version;
+    private double startRe, startIm;
+    private double endRe, endIm;
+    private double z0;
+    private double frequency;
+
+    // Lossless arc
+    double centerRe, centerIm;
+    double radius;
+    double startAngle;
+    double arcExtent;
+
+    // Lossy polyline
+    boolean lossy;
+    double[] xs = new double[0];
+    double[] ys = new double[0];
+    int count;
+    double tolerance;
+
+    /**
+     * Checks whether this geometry was computed for the given inputs.
+     *
+     * @param tolerance the tessellation tolerance wanted for lossy paths, a cached polyline finer than
+     *                  requested is accepted as long as it isn't needlessly dense
+     */
+    boolean matches(CircuitElement element, Complex startGamma, Complex endGamma, double z0, double frequency,
+                    double tolerance) {
+        if (!valid || version != element.getVersion()
+                || startRe != startGamma.real() || startIm != startGamma.imag()
+                || endRe != endGamma.real() || endIm != endGamma.imag()
+                || this.z0 != z0 || this.frequency != frequency) {
+            return false;
+        }
+        return !lossy || (this.tolerance <= tolerance && this.tolerance * 4 >= tolerance);
+    }
+
+    void setKey(CircuitElement element, Complex startGamma, Complex endGamma, double z0, double frequency) {
+        this.valid = true;
+        this.version = element.getVersion();
+        this.startRe = startGamma.real();
+        this.startIm = startGamma.imag();
+        this.endRe = endGamma.real();
+        this.endIm = endGamma.imag();
+        this.z0 = z0;
+        this.frequency = frequency;
+    }
+
+    void setPolyline(double[] gammaX, double[] gammaY, int count, double tolerance) {
+        if (xs.length < count) {
+            xs = new double[count];
+            ys = new double[count];
+        }
+        System.arraycopy(gammaX, 0, xs, 0, count);
+        System.arraycopy(gammaY, 0, ys, 0, count);
+        this.count = count;
+        this.tolerance = tolerance;
+        this.lossy = true;
+    }
+}
@@ -0,0 +1,40 @@
+package heig.tb.jsmithfx.view;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Colors of the frequency bands, shared by the chart, the plots and the band controls so a band
+ * looks the same everywhere. The palette cycles past its last color.
+ */
+public final class BandColors {
+
+    /**
+     * Color of the S1P points outside of every band.
+     */
+    public static final Color OUT_OF_BAND = Color.DODGERBLUE;
+
+    private static final Color[] PALETTE = {
+            Color.INDIANRED, Color.DARKORANGE, Color.FORESTGREEN, Color.MEDIUMPURPLE,
+            Color.GOLDENROD, Color.TEAL, Color.DEEPPINK, Color.SADDLEBROWN
+    };
+    private static final int[] PALETTE_ARGB = new int[PALETTE.length];
+    private static final int OUT_OF_BAND_ARGB = PointCloudRasterizer.toArgb(OUT_OF_BAND);
+
+    static {
+        for (int i = 0; i < PALETTE.length; i++) PALETTE_ARGB[i] = PointCloudRasterizer.toArgb(PALETTE[i]);
+    }
+
+    private BandColors() {
+    }
+
+    /**
+     * @param band the index of the band, -1 for none
+     */
+    public static Color of(int band) {
+        return band < 0 ? OUT_OF_BAND : PALETTE[band % PALETTE.length];
+    }
+
+    static int argbOf(int band) {
+        return band < 0 ? OUT_OF_BAND_ARGB : PALETTE_ARGB[band % PALETTE.length];
+    }
+}
@@ -0,0 +1,82 @@
+package heig.tb.jsmithfx.view;
+
+import javafx.scene.image.Image;
+import javafx.scene.paint.Paint;
+import javafx.scene.shape.ArcType;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * The drawing operations used by the chart renderers, with the same signatures and semantics as
+ * {@link javafx.scene.canvas.GraphicsContext}.
+ * <p>
+ * The renderers draw through this interface so the same code can paint a canvas or be replayed
+ * into a vector document, see {@link FxChartGraphics} and {@link SvgChartGraphics}.
+ * </p>
+ */
+interface ChartGraphics {
+
+    void save();
+
+    void restore();
+
+    void translate(double x, double y);
+
+    void scale(double x, double y);
+
+    void rotate(double degrees);
+
+    void setTransform(double mxx, double myx, double mxy, double myy, double mxt, double myt);
+
+    void setStroke(Paint paint);
+
+    void setFill(Paint paint);
+
+    Paint getFill();
+
+    void setLineWidth(double width);
+
+    void setLineDashes(double... dashes);
+
+    void setFont(Font font);
+
+    void setTextAlign(TextAlignment align);
+
+    void setImageSmoothing(boolean smoothing);
+
+    void clearRect(double x, double y, double w, double h);
+
+    void beginPath();
+
+    void moveTo(double x, double y);
+
+    void lineTo(double x, double y);
+
+    void arc(double centerX, double centerY, double radiusX, double radiusY, double startAngle, double length);
+
+    void rect(double x, double y, double w, double h);
+
+    void closePath();
+
+    void stroke();
+
+    void clip();
+
+    void strokeLine(double x1, double y1, double x2, double y2);
+
+    void strokeOval(double x, double y, double w, double h);
+
+    void fillOval(double x, double y, double w, double h);
+
+    void strokeRect(double x, double y, double w, double h);
+
+    void fillRoundRect(double x, double y, double w, double h, double arcWidth, double arcHeight);
+
+    void strokeArc(double x, double y, double w, double h, double startAngle, double arcExtent, ArcType closure);
+
+    void strokePolyline(double[] xPoints, double[] yPoints, int nPoints);
+
+    void fillText(String text, double x, double y);
+
+    void drawImage(Image image, double x, double y, double w, double h);
+}
@@ -0,0 +1,91 @@
+package heig.tb.jsmithfx.view;
+
+import heig.tb.jsmithfx.SmithChartViewModel;
+import heig.tb.jsmithfx.logic.FrequencyBandIndex;
+import heig.tb.jsmithfx.logic.SimulationResult;
+import heig.tb.jsmithfx.model.CircuitElement;
+import heig.tb.jsmithfx.utilities.Complex;
+import heig.tb.jsmithfx.utilities.PerformanceMonitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What the chart renderer reads from the view model for one frame.
+ * <p>
+ * On screen it is taken at every frame and refers to the live lists, which don't change while the frame
+ * is drawn. An export takes a snapshot instead, with copies of the circuit and of the lists, so all of its
+ * tiles show the chart as it was when the export started whatever is edited in between.
+ * </p>
+ *
+ * @param elements           the committed circuit, from the load
+ * @param selectedElement    the element selected in the circuit, one of {@code elements}, or null
+ * @param gammas             the reflection coefficient at each stage of the circuit, from the load
+ * @param previewElement     the element being placed, or null
+ * @param previewGamma       the reflection coefficient after the element being placed, or null
+ * @param projectedGammas    the stages after the insertion point, as they would be with the element being placed
+ * @param discreteGammas     the reflection coefficients of the discrete component candidates, or null
+ * @param modifyingComponent whether the element being placed replaces the selected one
+ * @param insertionIndex     the stage after which elements are inserted
+ * @param z0                 the characteristic impedance
+ * @param frequency          the frequency of the circuit
+ * @param vswrCircles        the VSWR values to draw a circle for
+ * @param result             the S1P and sweep points
+ * @param bands              the frequency bands coloring the S1P points
+ * @param bandsHash          changes whenever the coloring by band changes
+ * @param s1pPointSize       the logical size of the S1P markers
+ * @param s1pAsDensity       whether the S1P points are drawn as a heatmap
+ * @param s1pTrails          whether the previous S1P traces fade under the current one, never for an export,
+ *                           which shows a single state of the chart
+ * @param monitor            where the frame reports its timings
+ */
+record ChartState(List<CircuitElement> elements, CircuitElement selectedElement, List<Complex> gammas,
+                  CircuitElement previewElement, Complex previewGamma, List<Complex> projectedGammas,
+                  List<Complex> discreteGammas, boolean modifyingComponent, int insertionIndex,
+                  double z0, double frequency, List<Double> vswrCircles, SimulationResult result,
+                  FrequencyBandIndex bands, int bandsHash, double s1pPointSize, boolean s1pAsDensity,
+                  boolean s1pTrails, PerformanceMonitor monitor) {
+
+    // Exports must not count in the metrics of the chart on screen, they report to a monitor that stays disabled
+    private static final PerformanceMonitor EXPORT_MONITOR = new PerformanceMonitor();
+
+    /**
+     * State of the chart on screen, referring to the lists of the view model. Only valid for the current frame.
+     */
+    static ChartState live(SmithChartViewModel viewModel) {
+        return new ChartState(viewModel.circuitElements.get(), viewModel.selectedElementProperty().get(),
+                viewModel.measuresGammaProperty().get(), viewModel.previewElementProperty().get(),
+                viewModel.getPreviewElementGamma(), viewModel.getProjectedGammas(),
+                viewModel.getDiscreteComponentGammas(), viewModel.isModifyingComponent.get(),
+                viewModel.getSelectedInsertionIndexProperty().get(), viewModel.zo.get(),
+                viewModel.frequencyProperty().get(), viewModel.vswrCirclesProperty().get(),
+                viewModel.getSimulationResult(), viewModel.getFrequencyBandIndex(), viewModel.frequencyBandsHash(),
+                viewModel.s1pPointSizeProperty().get(), viewModel.showS1PAsDensityProperty().get(),
+                viewModel.showS1PTrailsProperty().get(), viewModel.getPerformanceMonitor());
+    }
+
+    /**
+     * Copy of the current state of the chart, unaffected by later edits. The points need no copy,
+     * a published simulation result never changes, nor do the preview lists, computed anew on each call.
+     */
+    static ChartState snapshot(SmithChartViewModel viewModel) {
+        List<CircuitElement> elements = new ArrayList<>(viewModel.circuitElements.size());
+        CircuitElement selected = viewModel.selectedElementProperty().get();
+        CircuitElement selectedCopy = null;
+        for (CircuitElement element : viewModel.circuitElements) {
+            CircuitElement copy = element.copy();
+            if (element == selected) selectedCopy = copy;
+            elements.add(copy);
+        }
+        CircuitElement preview = viewModel.previewElementProperty().get();
+
+        return new ChartState(elements, selectedCopy, List.copyOf(viewModel.measuresGammaProperty().get()),
+                preview == null ? null : preview.copy(), viewModel.getPreviewElementGamma(),
+                viewModel.getProjectedGammas(), viewModel.getDiscreteComponentGammas(),
+                viewModel.isModifyingComponent.get(), viewModel.getSelectedInsertionIndexProperty().get(),
+                viewModel.zo.get(), viewModel.frequencyProperty().get(), List.copyOf(viewModel.vswrCirclesProperty().get()),
+                viewModel.getSimulationResult(), viewModel.getFrequencyBandIndex(), viewModel.frequencyBandsHash(),
+                viewModel.s1pPointSizeProperty().get(), viewModel.showS1PAsDensityProperty().get(), false,
+                EXPORT_MONITOR);
+    }
+}
@@ -5,9 +5,12 @@ import heig.tb.jsmithfx.model.CircuitElement;
 import heig.tb.jsmithfx.model.Element.Line;
 import heig.tb.jsmithfx.model.Element.TypicalUnit.*;
 import heig.tb.jsmithfx.utilities.SmithUtilities;
+import javafx.collections.ListChangeListener;
 import javafx.geometry.Rectangle2D;
+import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.TextAlignment;
@@ -31,13 +34,6 @@ public class CircuitRenderer {
     private static final Color HOVER_COLOR = Color.BLUEVIOLET;
 
 
-    private final Canvas circuitCanvas;
-    private final Font labelFont;
-
-    // Hitbox map for editing components
-    private final Map<CircuitElement, Rectangle2D> hitBoxes = new HashMap<>();
-    private final Map<Integer, Rectangle2D> insertionHitBoxes = new HashMap<>();
-
     private static final double INSERTION_HITBOX_SIZE = 20;
     private static final double INSERTION_DOT_RADIUS = 5;
     private static final Color INSERTION_DOT_COLOR = Color.rgb(150, 150, 150);
@@ -71,11 +67,77 @@ public class CircuitRenderer {
     private static final double MAX_COMPONENT_W = 50;
     private static final double MAX_COMPONENT_H = 30;
 
-    public CircuitRenderer(Canvas canvas) {
+    // Below this, the schematic gets wider than the canvas and scrolls horizontally
+    private static final double MIN_SLOT_WIDTH = 90;
+    private static final double SCROLLBAR_HEIGHT = 4;
+    private static final Color SCROLLBAR_COLOR = Color.rgb(150, 150, 150, 0.6);
+    // Large enough for every symbol in both orientations, line width included
+    private static final double SPRITE_SIZE = 70;
+
+    /**
+     * Pre-rendered symbol of a component, drawn centered on its slot.
+     *
+     * @param bodyWidth  width of the body, where the wire is erased before drawing the symbol
+     * @param bodyHeight height of the body
+     */
+    private record Sprite(Image image, double bodyWidth, double bodyHeight) {
+    }
+
+    private record SpriteKey(CircuitElement.ElementType type, boolean parallel, boolean openStub) {
+    }
+
+    private final Canvas circuitCanvas;
+    private final SmithChartViewModel viewModel;
+    private RenderScheduler.Handle renderHandle;
+    private final Font labelFont;
+
+    // Symbols are rendered once per type, orientation and stub type, for the current screen scale
+    private final Map<SpriteKey, Sprite> sprites = new HashMap<>();
+    private double spriteScale = 1.0;
+
+    // Geometry of the last render, hit testing is done by arithmetic on the slots
+    private List<CircuitElement> elements = List.of();
+    // The circuit is copied again on the next render only after it changed
+    private boolean elementsStale = true;
+    private final ListChangeListener<CircuitElement> elementsListener = _ -> elementsStale = true;
+    private double slotWidth = 1;
+    private double contentWidth = 0;
+    private double forkBottomY = 0;
+    private double scrollX = 0;
+
+    private CircuitRenderer(Canvas canvas, SmithChartViewModel viewModel) {
         this.circuitCanvas = canvas;
+        this.viewModel = viewModel;
         this.labelFont = new Font("Segoe UI", 16);
     }
 
+    /**
+     * Creates the renderer of the schematic of a view model on a canvas. It renders on the pulses of the
+     * scheduler and follows the circuit from now on, until {@link #dispose()}.
+     */
+    public static CircuitRenderer of(Canvas canvas, SmithChartViewModel viewModel) {
+        CircuitRenderer renderer = new CircuitRenderer(canvas, viewModel);
+        // Registered once constructed, so the scheduler and the list never see a partly built renderer
+        renderer.renderHandle = RenderScheduler.getInstance().register(RenderScheduler.Priority.CONTENT, _ -> renderer.render());
+        viewModel.circuitElements.addListener(renderer.elementsListener);
+        return renderer;
+    }
+
+    /**
+     * Asks for the schematic to be rendered on the next pulse, once however many times it is asked.
+     */
+    public void redraw() {
+        renderHandle.markDirty();
+    }
+
+    /**
+     * Stops the rendering of the schematic, for when its window is closed.
+     */
+    public void dispose() {
+        renderHandle.dispose();
+        viewModel.circuitElements.removeListener(elementsListener);
+    }
+
     /**
      * Checks if a user clicked on a specific circuit element.
      * @param x mouse X
@@ -83,12 +145,12 @@ public class CircuitRenderer {
      * @return The element clicked, or null.
      */
     public CircuitElement getElementAt(double x, double y) {
-        for (Map.Entry<CircuitElement, Rectangle2D> entry : hitBoxes.entrySet()) {
-            if (entry.getValue().contains(x, y)) {
-                return entry.getKey();
-            }
-        }
-        return null;
+        // Elements sit on the slot boundaries, (i + 1) * slotWidth
+        int index = (int) Math.round((x + scrollX) / slotWidth) - 1;
+        if (index < 0 || index >= elements.size()) return null;
+
+        CircuitElement element = elements.get(index);
+        return hitBoxOf(element, index).contains(x, y) ? element : null;
     }
 
     /**
@@ -98,70 +160,130 @@ public class CircuitRenderer {
      * @return The insertion index, or -1.
      */
     public int getInsertionIndexAt(double x, double y) {
-        for (Map.Entry<Integer, Rectangle2D> entry : insertionHitBoxes.entrySet()) {
-            if (entry.getValue().contains(x, y)) {
-                return entry.getKey();
-            }
+        // Insertion points sit in the middle of the slots, (i + 0.5) * slotWidth
+        int index = (int) Math.floor((x + scrollX) / slotWidth);
+        if (index < 0 || index > elements.size()) return -1;
+
+        double centerX = (index + 0.5) * slotWidth - scrollX;
+        double half = INSERTION_HITBOX_SIZE / 2;
+        return Math.abs(x - centerX) <= half && Math.abs(y - LINE_Y) <= half ? index : -1;
+    }
+
+    /**
+     * Scrolls the schematic horizontally, when it is wider than the canvas.
+     *
+     * @param dx the distance to scroll, positive to move towards the source
+     */
+    public void scrollBy(double dx) {
+        scrollX = clampScroll(scrollX + dx);
+    }
+
+    /**
+     * Scrolls the schematic so the given element is visible.
+     */
+    public void reveal(CircuitElement element) {
+        if (element == null) return;
+        // From the circuit itself, the element may have been added since the last render
+        int index = indexOf(viewModel.circuitElements, element);
+        if (index < 0) return;
+        double centerX = (index + 1) * slotWidth;
+        double width = circuitCanvas.getWidth();
+        if (centerX - slotWidth < scrollX) scrollX = clampScroll(centerX - slotWidth);
+        else if (centerX + slotWidth > scrollX + width) scrollX = clampScroll(centerX + slotWidth - width);
+    }
+
+    /**
+     * Position of the element in the circuit, compared by identity whatever equals the elements may define.
+     */
+    private static int indexOf(List<CircuitElement> circuit, CircuitElement element) {
+        for (int i = 0; i < circuit.size(); i++) {
+            if (circuit.get(i) == element) return i;
         }
         return -1;
     }
 
-    public void render(SmithChartViewModel viewModel) {
-        GraphicsContext gc = circuitCanvas.getGraphicsContext2D();
-        List<CircuitElement> elements = viewModel.circuitElements.get();
+    private double clampScroll(double value) {
+        return Math.clamp(value, 0, Math.max(0, contentWidth - circuitCanvas.getWidth()));
+    }
 
-        // Reset hitboxes
-        hitBoxes.clear();
+    /**
+     * Renders the schematic now, {@link #redraw()} should be preferred to render once per pulse.
+     */
+    public void render() {
+        GraphicsContext gc = circuitCanvas.getGraphicsContext2D();
+        if (elementsStale) {
+            elements = List.copyOf(viewModel.circuitElements.get());
+            elementsStale = false;
+        }
 
         double canvasWidth = circuitCanvas.getWidth();
         double canvasHeight = circuitCanvas.getHeight();
 
+        // Slots never get narrower than a component, the schematic scrolls instead
+        slotWidth = Math.max(MIN_SLOT_WIDTH, canvasWidth / (elements.size() + 1));
+        contentWidth = slotWidth * (elements.size() + 1);
+        scrollX = clampScroll(scrollX);
+        forkBottomY = canvasHeight / 2 + canvasHeight / 3;
+        updateSpriteScale();
+
         gc.clearRect(0, 0, canvasWidth, canvasHeight);
 
+        gc.save();
+        gc.translate(-scrollX, 0);
+
         gc.setStroke(WIRE_COLOR);
         gc.setLineWidth(DEFAULT_LINE_WIDTH);
         gc.setTextAlign(TextAlignment.CENTER);
         gc.setFont(labelFont);
 
-        double forkBottomY = canvasHeight / 2 + canvasHeight / 3;
         double lineY = LINE_Y;
+        double visibleLeft = scrollX;
+        double visibleRight = scrollX + canvasWidth;
+        double sourceX = contentWidth - PADDING;
 
-        // Draw the wire
-        gc.strokeLine(PADDING, lineY, canvasWidth - PADDING, lineY);
+        // Draw the wire, only its visible part
+        gc.strokeLine(Math.max(PADDING, visibleLeft), lineY, Math.min(sourceX, visibleRight), lineY);
         // Draw the forks down
-        // Left fork
-        drawForkDown(PADDING,lineY,forkBottomY,gc);
-        // Right fork
-        drawForkDown(canvasWidth - PADDING, lineY,forkBottomY,gc);
-        // Draw the source
-        drawSource(canvasWidth - PADDING, (forkBottomY - lineY)/2 + lineY, gc);
-        // Draw the load
-        drawLoad(PADDING, (forkBottomY - lineY)/2 + lineY, gc);
-
-        // Calculate component grid
-        double slotWidth = (canvasWidth) / (elements.size() + 1) ;
-        renderInsertionPoints(gc, elements.size(), slotWidth, lineY, viewModel);
+        if (PADDING >= visibleLeft - SOURCE_RADIUS) {
+            // Left fork and load
+            drawForkDown(PADDING, lineY, forkBottomY, gc);
+            drawLoad(PADDING, (forkBottomY - lineY) / 2 + lineY, gc);
+        }
+        if (sourceX <= visibleRight + SOURCE_RADIUS) {
+            // Right fork and source
+            drawForkDown(sourceX, lineY, forkBottomY, gc);
+            drawSource(sourceX, (forkBottomY - lineY) / 2 + lineY, gc);
+        }
+
+        // Only the slots in view, with some margin for the labels that overflow their slot
+        int first = Math.max(0, (int) Math.floor(visibleLeft / slotWidth) - 2);
+        int last = Math.min(elements.size() - 1, (int) Math.ceil(visibleRight / slotWidth));
+
+        renderInsertionPoints(gc, Math.max(0, first), Math.min(elements.size(), last + 1), slotWidth, lineY);
 
         // Draw elements in between
-        for (int i = 0; i < elements.size(); i++) {
+        for (int i = first; i <= last; i++) {
             CircuitElement element = elements.get(i);
             var type = element.getType();
             ElectronicUnit[] units = new ElectronicUnit[0];
             double x = (i + 1) * slotWidth;
             double y = lineY;
-            if (element.getPosition() == CircuitElement.ElementPosition.PARALLEL) {
-                if(type == CircuitElement.ElementType.LINE) drawForkDown(x,lineY,forkBottomY,gc,((Line)element).getStubType() == Line.StubType.OPEN );
-                else drawForkDown(x,lineY,forkBottomY,gc);
-                gc.save();
-                gc.translate(x, y + forkBottomY / 2);
-                gc.rotate(90);
+            boolean openStub = type == CircuitElement.ElementType.LINE && ((Line) element).getStubType() == Line.StubType.OPEN;
+            boolean parallel = element.getPosition() == CircuitElement.ElementPosition.PARALLEL;
 
-                registerHitBox(element, x, y + forkBottomY / 2, true);
+            if (parallel) {
+                drawForkDown(x, lineY, forkBottomY, gc, openStub);
+                y = lineY + forkBottomY / 2;
+            }
+            drawSprite(gc, sprite(type, parallel, openStub), x, y);
 
+            if (parallel) {
+                // The labels follow the rotated symbol
+                gc.save();
+                gc.translate(x, y);
+                gc.rotate(90);
                 x = 0;
                 y = 0;
-            } else {
-                registerHitBox(element, x, y, false);
             }
 
             // Draw a little Q or loss indicator if the element has a quality factor
@@ -177,22 +299,10 @@ public class CircuitRenderer {
             }
 
             switch (type) {
-                case RESISTOR -> {
-                    drawResistor(x, y, gc);
-                    units = ResistanceUnit.values();
-                }
-                case CAPACITOR ->  {
-                    drawCapacitor(x, y, gc);
-                    units = CapacitanceUnit.values();
-                }
-                case INDUCTOR ->  {
-                    drawInductor(x, y, gc);
-                    units = InductanceUnit.values();
-                }
-                case LINE -> {
-                    drawLine(x,y, ((Line)element).getStubType() == Line.StubType.OPEN, gc);
-                    units = DistanceUnit.values();
-                }
+                case RESISTOR -> units = ResistanceUnit.values();
+                case CAPACITOR -> units = CapacitanceUnit.values();
+                case INDUCTOR -> units = InductanceUnit.values();
+                case LINE -> units = DistanceUnit.values();
             }
             if (units.length > 0) {
 
@@ -204,10 +314,12 @@ public class CircuitRenderer {
                 gc.fillText(res.getValue() + " " + res.getKey(),x, labelFont.getSize() * 3);
             }
 
-            if (element.getPosition() == CircuitElement.ElementPosition.PARALLEL) gc.restore();
+            if (parallel) gc.restore();
 
         }
 
+        gc.restore();
+
         // Draw highlight for selected element
         CircuitElement selectedElement = viewModel.selectedElementProperty().get();
         CircuitElement hoveredElement = viewModel.hoveredElementProperty().get();
@@ -218,8 +330,9 @@ public class CircuitRenderer {
             } else {
                 gc.setFill(new Color(SELECTION_COLOR.getRed(), SELECTION_COLOR.getGreen(), SELECTION_COLOR.getBlue(), 0.4));
             }
-            Rectangle2D hitBox = hitBoxes.get(selectedElement);
-            if (hitBox != null) {
+            int index = indexOf(elements, selectedElement);
+            if (index >= 0) {
+                Rectangle2D hitBox = hitBoxOf(selectedElement, index);
                 double padding = 10;
                 gc.fillRect(
                         hitBox.getMinX() - padding / 2,
@@ -229,17 +342,21 @@ public class CircuitRenderer {
                 );
             }
         }
+
+        // Scrollbar, when the schematic doesn't fit
+        if (contentWidth > canvasWidth) {
+            double thumbWidth = canvasWidth * canvasWidth / contentWidth;
+            double thumbX = scrollX / contentWidth * canvasWidth;
+            gc.setFill(SCROLLBAR_COLOR);
+            gc.fillRoundRect(thumbX, canvasHeight - SCROLLBAR_HEIGHT - 1, thumbWidth, SCROLLBAR_HEIGHT, SCROLLBAR_HEIGHT, SCROLLBAR_HEIGHT);
+        }
     }
 
-    private void renderInsertionPoints(GraphicsContext gc, int numElements, double slotWidth, double y, SmithChartViewModel viewModel) {
-        // There are numElements + 1 insertion slots
-        for (int i = 0; i <= numElements; i++) {
+    private void renderInsertionPoints(GraphicsContext gc, int from, int to, double slotWidth, double y) {
+        // There are numElements + 1 insertion slots, only the ones in [from, to] are drawn
+        for (int i = from; i <= to; i++) {
             double x = (i + 0.5) * slotWidth;
 
-            // Register the hitbox for mouse detection
-            double hitSize = INSERTION_HITBOX_SIZE;
-            insertionHitBoxes.put(i, new Rectangle2D(x - hitSize/2, y - hitSize/2, hitSize, hitSize));
-
             // Determine visual style
             boolean isSelected = (i == viewModel.getSelectedInsertionIndexProperty().get());
 
@@ -252,11 +369,78 @@ public class CircuitRenderer {
         }
     }
 
-    private void registerHitBox(CircuitElement element, double centerX, double centerY, boolean isRotated) {
-        double w = isRotated ? MAX_COMPONENT_H : MAX_COMPONENT_W;
-        double h = isRotated ? MAX_COMPONENT_W : MAX_COMPONENT_H;
+    /**
+     * Hit box of the element at the given slot, in canvas coordinates.
+     */
+    private Rectangle2D hitBoxOf(CircuitElement element, int index) {
+        double centerX = (index + 1) * slotWidth - scrollX;
+        if (element.getPosition() == CircuitElement.ElementPosition.PARALLEL) {
+            double centerY = LINE_Y + forkBottomY / 2;
+            return new Rectangle2D(centerX - MAX_COMPONENT_H / 2, centerY - MAX_COMPONENT_W / 2, MAX_COMPONENT_H, MAX_COMPONENT_W);
+        }
+        return new Rectangle2D(centerX - MAX_COMPONENT_W / 2, LINE_Y - MAX_COMPONENT_H / 2, MAX_COMPONENT_W, MAX_COMPONENT_H);
+    }
+
+    private void drawSprite(GraphicsContext gc, Sprite sprite, double x, double y) {
+        // Erase the wire behind the body, like the vector symbols do
+        gc.clearRect(x - sprite.bodyWidth() / 2, y - sprite.bodyHeight() / 2, sprite.bodyWidth(), sprite.bodyHeight());
+        gc.drawImage(sprite.image(), x - SPRITE_SIZE / 2, y - SPRITE_SIZE / 2, SPRITE_SIZE, SPRITE_SIZE);
+    }
+
+    private Sprite sprite(CircuitElement.ElementType type, boolean parallel, boolean openStub) {
+        return sprites.computeIfAbsent(new SpriteKey(type, parallel, openStub), this::createSprite);
+    }
+
+    // Sprites are rendered at the resolution of the screen, they are redone when it changes
+    private void updateSpriteScale() {
+        double scale = circuitCanvas.getScene() != null && circuitCanvas.getScene().getWindow() != null
+                ? circuitCanvas.getScene().getWindow().getOutputScaleX() : 1.0;
+        if (scale != spriteScale) {
+            spriteScale = scale;
+            sprites.clear();
+        }
+    }
+
+    private Sprite createSprite(SpriteKey key) {
+        Canvas canvas = new Canvas(Math.ceil(SPRITE_SIZE * spriteScale), Math.ceil(SPRITE_SIZE * spriteScale));
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.scale(spriteScale, spriteScale);
+        gc.translate(SPRITE_SIZE / 2, SPRITE_SIZE / 2);
+        if (key.parallel()) gc.rotate(90);
+
+        double bodyWidth;
+        double bodyHeight;
+        switch (key.type()) {
+            case RESISTOR -> {
+                drawResistor(0, 0, gc);
+                bodyWidth = RESISTOR_WIDTH;
+                bodyHeight = RESISTOR_HEIGHT;
+            }
+            case CAPACITOR -> {
+                drawCapacitor(0, 0, gc);
+                bodyWidth = CAPACITOR_WIDTH;
+                bodyHeight = CAPACITOR_HEIGHT;
+            }
+            case INDUCTOR -> {
+                drawInductor(0, 0, gc);
+                bodyWidth = INDUCTOR_WIDTH;
+                bodyHeight = INDUCTOR_HEIGHT;
+            }
+            case LINE -> {
+                drawLine(0, 0, key.openStub(), gc);
+                bodyWidth = LINE_WIDTH;
+                bodyHeight = LINE_HEIGHT;
+            }
+            default -> {
+                bodyWidth = 0;
+                bodyHeight = 0;
+            }
+        }
 
-        hitBoxes.put(element, new Rectangle2D(centerX - w/2, centerY - h/2, w, h));
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        Image image = canvas.snapshot(parameters, null);
+        return key.parallel() ? new Sprite(image, bodyHeight, bodyWidth) : new Sprite(image, bodyWidth, bodyHeight);
     }
 
     private void drawForkDown(double x, double y1,double y2, GraphicsContext gc) {
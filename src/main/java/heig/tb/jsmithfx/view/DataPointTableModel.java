@@ -0,0 +1,610 @@
+package heig.tb.jsmithfx.view;
+
+import heig.tb.jsmithfx.model.DataPoint;
+import heig.tb.jsmithfx.model.Element.TypicalUnit.FrequencyUnit;
+import heig.tb.jsmithfx.utilities.Complex;
+import heig.tb.jsmithfx.utilities.SmithUtilities;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Rows of the data points table, read from a columnar copy of the data points.
+ * <p>
+ * The columns follow the changes of the source list, keeping its points, and the values shown by the table
+ * are copied into primitive columns the first time a row is shown or sorted: a change of a large source
+ * only costs the copy of its references. A row object is only created when the table asks for it, which
+ * it only does for the rows on screen, and formats its values on first display. The last rows created are
+ * kept, so scrolling back and forth neither creates nor formats them again; the memory used by the rows is
+ * bounded whatever the number of points.
+ * </p>
+ * <p>
+ * Sorting reorders an index over the columns, the columns and the source are untouched. Once sorted, a
+ * change of the source only sorts the rows it changed and merges them into the order of the others, and
+ * is forwarded as the rows removed and added where they are in the table.
+ * </p>
+ * Must be used from the FX thread, like its source.
+ */
+public final class DataPointTableModel extends ObservableListBase<DataPointTableModel.Row> {
+
+    /**
+     * The columns the table can be sorted by.
+     */
+    public enum Column {
+        LABEL, IMPEDANCE, VSWR, RETURN_LOSS, FREQUENCY, QUALITY_FACTOR
+    }
+
+    // A few screens of rows, enough for scrolling back without formatting them again
+    private static final int ROW_CACHE_SIZE = 256;
+
+    private final ObservableList<? extends DataPoint> source;
+    private final Columns columns = new Columns(16);
+    // View index to source index and back, null when the rows are in the order of the source
+    private int[] order;
+    private int[] rank;
+    private Column sortColumn;
+    private boolean ascending = true;
+
+    /**
+     * A range of the source replaced by a change, in the indices of the source before and after the change.
+     *
+     * @param removedAt where its removed points are in the copy of the removed columns
+     */
+    private record Splice(int oldFrom, int removedSize, int newFrom, int addedSize, int removedAt) {
+    }
+
+    private final Map<Integer, Row> rows = new LinkedHashMap<>(ROW_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Row> eldest) {
+            return size() > ROW_CACHE_SIZE;
+        }
+    };
+
+    public DataPointTableModel(ObservableList<? extends DataPoint> source) {
+        this.source = source;
+        columns.splice(0, 0, source.size());
+        columns.set(source, 0, source.size());
+        source.addListener((ListChangeListener<DataPoint>) this::sourceChanged);
+    }
+
+    /**
+     * A row of the table, the values of a data point when the row was created.
+     */
+    public static final class Row {
+        private final int sourceIndex;
+        private final String label;
+        private final double frequency;
+        private final double resistance;
+        private final double reactance;
+        private final double vswr;
+        private final double returnLoss;
+        private final double qualityFactor;
+
+        private String frequencyText;
+        private String impedanceText;
+        private String vswrText;
+        private String returnLossText;
+        private String qualityFactorText;
+
+        private Row(Columns columns, int index) {
+            columns.load(index);
+            this.sourceIndex = index;
+            this.label = columns.labels[index];
+            this.frequency = columns.frequencies[index];
+            this.resistance = columns.resistances[index];
+            this.reactance = columns.reactances[index];
+            this.vswr = columns.vswrs[index];
+            this.returnLoss = columns.returnLosses[index];
+            this.qualityFactor = columns.qualityFactors[index];
+        }
+
+        /**
+         * The index of the data point in the source list, when the row was created.
+         */
+        public int getSourceIndex() {
+            return sourceIndex;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getFrequencyText() {
+            if (frequencyText == null) {
+                var toDisplay = SmithUtilities.getBestUnitAndFormattedValue(frequency, FrequencyUnit.values());
+                frequencyText = toDisplay.getValue() + " " + toDisplay.getKey().toString();
+            }
+            return frequencyText;
+        }
+
+        public String getImpedanceText() {
+            if (impedanceText == null) impedanceText = String.format("%.2f + j%.2f Ω", resistance, reactance);
+            return impedanceText;
+        }
+
+        public String getVswrText() {
+            if (vswrText == null) vswrText = String.format("%.2f", vswr);
+            return vswrText;
+        }
+
+        public String getReturnLossText() {
+            if (returnLossText == null) returnLossText = String.format("%.2f", returnLoss);
+            return returnLossText;
+        }
+
+        public String getQualityFactorText() {
+            if (qualityFactorText == null) qualityFactorText = String.format("%.2f", qualityFactor);
+            return qualityFactorText;
+        }
+    }
+
+    @Override
+    public Row get(int index) {
+        if (index < 0 || index >= columns.size) throw new IndexOutOfBoundsException(index);
+        int sourceIndex = getSourceIndex(index);
+        Row row = rows.get(sourceIndex);
+        if (row == null) {
+            row = new Row(columns, sourceIndex);
+            rows.put(sourceIndex, row);
+        }
+        return row;
+    }
+
+    @Override
+    public int size() {
+        return columns.size;
+    }
+
+    /**
+     * Index in the source list of the row shown at an index of the table.
+     */
+    public int getSourceIndex(int viewIndex) {
+        return order == null ? viewIndex : order[viewIndex];
+    }
+
+    /**
+     * Index in the table of the row of a data point of the source list.
+     */
+    public int getViewIndex(int sourceIndex) {
+        return rank == null ? sourceIndex : rank[sourceIndex];
+    }
+
+    /**
+     * Sorts the rows by a column, or puts them back in the order of the source.
+     *
+     * @param column    the column to sort by, null for the order of the source
+     * @param ascending whether the smallest values come first
+     */
+    public void sort(Column column, boolean ascending) {
+        if (column == sortColumn && (column == null || ascending == this.ascending)) return;
+        int[] oldOrder = order;
+        sortColumn = column;
+        this.ascending = ascending;
+        computeOrder();
+        if (columns.size == 0) return;
+
+        // Old view index to new view index
+        int[] permutation = new int[columns.size];
+        for (int i = 0; i < permutation.length; i++) {
+            int sourceIndex = oldOrder == null ? i : oldOrder[i];
+            permutation[i] = getViewIndex(sourceIndex);
+        }
+        beginChange();
+        nextPermutation(0, permutation.length, permutation);
+        endChange();
+    }
+
+    private void sourceChanged(ListChangeListener.Change<? extends DataPoint> change) {
+        rows.clear();
+        if (sortColumn == null) {
+            forwardChange(change);
+        } else {
+            mergeChange(change);
+        }
+    }
+
+    /**
+     * Applies the change of the source to the columns and merges the changed rows into the order of the others,
+     * which keep their relative order. Only the changed rows are sorted, and only they are removed from and added
+     * to the table.
+     */
+    private void mergeChange(ListChangeListener.Change<? extends DataPoint> change) {
+        int oldSize = columns.size;
+        int[] oldOrder = order;
+        List<Splice> splices = new ArrayList<>();
+        Columns removed = new Columns(0);
+        // New index minus old index of the rows after the last splice
+        int shift = 0;
+        while (change.next()) {
+            int from = change.getFrom();
+            int removedSize;
+            int addedSize;
+            if (change.wasPermutated() || change.wasUpdated()) {
+                // The rows move or change in place, they are taken out and merged again
+                removedSize = change.getTo() - from;
+                addedSize = removedSize;
+            } else {
+                removedSize = change.getRemovedSize();
+                addedSize = change.getAddedSize();
+            }
+            splices.add(new Splice(from - shift, removedSize, from, addedSize, removed.size));
+            removed.append(columns, from, from + removedSize);
+            columns.splice(from, removedSize, addedSize);
+            columns.set(source, from, from + addedSize);
+            shift += addedSize - removedSize;
+        }
+        int newSize = columns.size;
+
+        // The rows left are still in order, under their new index
+        int[] kept = new int[oldSize - removed.size];
+        int keptCount = 0;
+        for (int i = 0; i < oldSize; i++) {
+            int index = newIndexOf(splices, oldOrder[i]);
+            if (index >= 0) kept[keptCount++] = index;
+        }
+        int[] added = new int[newSize - keptCount];
+        int addedCount = 0;
+        for (Splice splice : splices) {
+            for (int i = splice.newFrom(); i < splice.newFrom() + splice.addedSize(); i++) {
+                columns.load(i);
+                added[addedCount++] = i;
+            }
+        }
+        IntBinaryOperator comparator = directedComparator();
+        mergeSort(added, new int[addedCount], comparator);
+
+        // Ties go to the first point of the source, as the stable sort of all the rows would
+        order = new int[newSize];
+        int k = 0;
+        int a = 0;
+        for (int i = 0; i < newSize; i++) {
+            if (a == addedCount || k < keptCount && compareOrFirst(comparator, kept[k], added[a]) < 0) {
+                order[i] = kept[k++];
+            } else {
+                order[i] = added[a++];
+            }
+        }
+        rank = new int[newSize];
+        for (int i = 0; i < newSize; i++) rank[order[i]] = i;
+
+        // Walks both orders together: between two rows left, the removed rows are replaced by the added ones
+        beginChange();
+        int oldIndex = 0;
+        int newIndex = 0;
+        while (oldIndex < oldSize || newIndex < newSize) {
+            int removedFrom = oldIndex;
+            while (oldIndex < oldSize && newIndexOf(splices, oldOrder[oldIndex]) < 0) oldIndex++;
+            int addedFrom = newIndex;
+            while (newIndex < newSize && isAdded(splices, order[newIndex])) newIndex++;
+
+            RemovedRows removedRows = null;
+            if (oldIndex > removedFrom) {
+                int[] positions = new int[oldIndex - removedFrom];
+                for (int i = 0; i < positions.length; i++) {
+                    positions[i] = removedPositionOf(splices, oldOrder[removedFrom + i]);
+                }
+                removedRows = new RemovedRows(removed, positions, 0, positions.length);
+            }
+            if (removedRows != null && newIndex > addedFrom) {
+                nextReplace(addedFrom, newIndex, removedRows);
+            } else if (removedRows != null) {
+                nextRemove(addedFrom, removedRows);
+            } else if (newIndex > addedFrom) {
+                nextAdd(addedFrom, newIndex);
+            }
+            // The same row left in both orders
+            oldIndex++;
+            newIndex++;
+        }
+        endChange();
+    }
+
+    private static int compareOrFirst(IntBinaryOperator comparator, int a, int b) {
+        int result = comparator.applyAsInt(a, b);
+        return result != 0 ? result : Integer.compare(a, b);
+    }
+
+    /**
+     * @return the last splice starting at or before the index, in the old or new indices, -1 if none
+     */
+    private static int spliceAt(List<Splice> splices, int index, boolean old) {
+        int lo = 0;
+        int hi = splices.size() - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            Splice splice = splices.get(mid);
+            if ((old ? splice.oldFrom() : splice.newFrom()) <= index) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the index after the change of a row of the source before it, -1 if the change removed it
+     */
+    private static int newIndexOf(List<Splice> splices, int oldIndex) {
+        int at = spliceAt(splices, oldIndex, true);
+        if (at < 0) return oldIndex;
+        Splice splice = splices.get(at);
+        int end = splice.oldFrom() + splice.removedSize();
+        if (oldIndex < end) return -1;
+        return oldIndex - end + splice.newFrom() + splice.addedSize();
+    }
+
+    private static int removedPositionOf(List<Splice> splices, int oldIndex) {
+        Splice splice = splices.get(spliceAt(splices, oldIndex, true));
+        return splice.removedAt() + oldIndex - splice.oldFrom();
+    }
+
+    private static boolean isAdded(List<Splice> splices, int newIndex) {
+        int at = spliceAt(splices, newIndex, false);
+        if (at < 0) return false;
+        Splice splice = splices.get(at);
+        return newIndex < splice.newFrom() + splice.addedSize();
+    }
+
+    /**
+     * Applies the change of the source to the columns and forwards it as is, the rows being in its order.
+     */
+    private void forwardChange(ListChangeListener.Change<? extends DataPoint> change) {
+        beginChange();
+        while (change.next()) {
+            int from = change.getFrom();
+            int to = change.getTo();
+            if (change.wasPermutated()) {
+                columns.set(source, from, to);
+                int[] permutation = new int[to - from];
+                for (int i = 0; i < permutation.length; i++) {
+                    permutation[i] = change.getPermutation(from + i);
+                }
+                nextPermutation(from, to, permutation);
+            } else if (change.wasUpdated()) {
+                columns.set(source, from, to);
+                for (int i = from; i < to; i++) {
+                    nextUpdate(i);
+                }
+            } else {
+                int removedSize = change.getRemovedSize();
+                RemovedRows removed = removedSize == 0 ? null
+                        : new RemovedRows(columns.copy(from, from + removedSize), null, 0, removedSize);
+                columns.splice(from, removedSize, change.getAddedSize());
+                columns.set(source, from, to);
+                if (removed != null && change.wasAdded()) {
+                    nextReplace(from, to, removed);
+                } else if (removed != null) {
+                    nextRemove(from, removed);
+                } else {
+                    nextAdd(from, to);
+                }
+            }
+        }
+        endChange();
+    }
+
+    private void computeOrder() {
+        int n = columns.size;
+        if (sortColumn == null) {
+            order = null;
+            rank = null;
+            return;
+        }
+
+        columns.loadAll();
+        int[] sorted = new int[n];
+        for (int i = 0; i < n; i++) sorted[i] = i;
+        mergeSort(sorted, new int[n], directedComparator());
+
+        order = sorted;
+        rank = new int[n];
+        for (int i = 0; i < n; i++) rank[sorted[i]] = i;
+    }
+
+    private IntBinaryOperator directedComparator() {
+        IntBinaryOperator comparator = comparatorOf(sortColumn);
+        return ascending ? comparator : (a, b) -> comparator.applyAsInt(b, a);
+    }
+
+    private IntBinaryOperator comparatorOf(Column column) {
+        return switch (column) {
+            case LABEL -> (a, b) -> {
+                String la = columns.labels[a];
+                String lb = columns.labels[b];
+                if (la == null || lb == null) return la == null ? (lb == null ? 0 : 1) : -1;
+                return la.compareTo(lb);
+            };
+            case IMPEDANCE -> (a, b) -> {
+                int byResistance = Double.compare(columns.resistances[a], columns.resistances[b]);
+                return byResistance != 0 ? byResistance : Double.compare(columns.reactances[a], columns.reactances[b]);
+            };
+            case VSWR -> (a, b) -> Double.compare(columns.vswrs[a], columns.vswrs[b]);
+            case RETURN_LOSS -> (a, b) -> Double.compare(columns.returnLosses[a], columns.returnLosses[b]);
+            case FREQUENCY -> (a, b) -> Double.compare(columns.frequencies[a], columns.frequencies[b]);
+            case QUALITY_FACTOR -> (a, b) -> Double.compare(columns.qualityFactors[a], columns.qualityFactors[b]);
+        };
+    }
+
+    /**
+     * Stable bottom-up merge sort of indices, without boxing them.
+     */
+    private static void mergeSort(int[] values, int[] buffer, IntBinaryOperator comparator) {
+        int n = values.length;
+        int[] from = values;
+        int[] to = buffer;
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int i = lo;
+                int j = mid;
+                for (int k = lo; k < hi; k++) {
+                    if (i < mid && (j >= hi || comparator.applyAsInt(from[i], from[j]) <= 0)) {
+                        to[k] = from[i++];
+                    } else {
+                        to[k] = from[j++];
+                    }
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != values) System.arraycopy(from, 0, values, 0, n);
+    }
+
+    /**
+     * Rows removed by a change, created from a copy of their columns only if a listener reads them.
+     * The order maps the index of a removed row to its index in the copy, null if they are the same.
+     */
+    private static final class RemovedRows extends AbstractList<Row> {
+        private final Columns columns;
+        private final int[] order;
+        private final int from;
+        private final int size;
+
+        RemovedRows(Columns columns, int[] order, int from, int size) {
+            this.columns = columns;
+            this.order = order;
+            this.from = from;
+            this.size = size;
+        }
+
+        @Override
+        public Row get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+            int i = from + index;
+            return new Row(columns, order == null ? i : order[i]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * The points, and their values in one primitive array per column, read from a point on first use.
+     */
+    private static final class Columns {
+        private int size;
+        private DataPoint[] points;
+        private boolean[] loaded;
+        private String[] labels;
+        private double[] frequencies;
+        private double[] resistances;
+        private double[] reactances;
+        private double[] vswrs;
+        private double[] returnLosses;
+        private double[] qualityFactors;
+
+        Columns(int capacity) {
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            points = points == null ? new DataPoint[capacity] : Arrays.copyOf(points, capacity);
+            loaded = loaded == null ? new boolean[capacity] : Arrays.copyOf(loaded, capacity);
+            labels = labels == null ? new String[capacity] : Arrays.copyOf(labels, capacity);
+            frequencies = frequencies == null ? new double[capacity] : Arrays.copyOf(frequencies, capacity);
+            resistances = resistances == null ? new double[capacity] : Arrays.copyOf(resistances, capacity);
+            reactances = reactances == null ? new double[capacity] : Arrays.copyOf(reactances, capacity);
+            vswrs = vswrs == null ? new double[capacity] : Arrays.copyOf(vswrs, capacity);
+            returnLosses = returnLosses == null ? new double[capacity] : Arrays.copyOf(returnLosses, capacity);
+            qualityFactors = qualityFactors == null ? new double[capacity] : Arrays.copyOf(qualityFactors, capacity);
+        }
+
+        /**
+         * Replaces a range of rows by a range of another size, the new rows are left to {@link #set}.
+         */
+        void splice(int from, int removedSize, int addedSize) {
+            int newSize = size - removedSize + addedSize;
+            if (newSize > labels.length) allocate(Math.max(newSize, labels.length * 2));
+            int tail = size - from - removedSize;
+            if (removedSize != addedSize && tail > 0) {
+                int src = from + removedSize;
+                int dst = from + addedSize;
+                System.arraycopy(points, src, points, dst, tail);
+                System.arraycopy(loaded, src, loaded, dst, tail);
+                System.arraycopy(labels, src, labels, dst, tail);
+                System.arraycopy(frequencies, src, frequencies, dst, tail);
+                System.arraycopy(resistances, src, resistances, dst, tail);
+                System.arraycopy(reactances, src, reactances, dst, tail);
+                System.arraycopy(vswrs, src, vswrs, dst, tail);
+                System.arraycopy(returnLosses, src, returnLosses, dst, tail);
+                System.arraycopy(qualityFactors, src, qualityFactors, dst, tail);
+            }
+            // Points and labels past the end would be kept alive
+            if (newSize < size) {
+                Arrays.fill(points, newSize, size, null);
+                Arrays.fill(labels, newSize, size, null);
+            }
+            size = newSize;
+        }
+
+        /**
+         * Takes the points of a range of the source, their values are read on first use.
+         */
+        void set(List<? extends DataPoint> source, int from, int to) {
+            for (int i = from; i < to; i++) {
+                points[i] = source.get(i);
+                loaded[i] = false;
+            }
+        }
+
+        void load(int index) {
+            if (loaded[index]) return;
+            DataPoint point = points[index];
+            Complex impedance = point.getImpedance();
+            labels[index] = point.getLabel();
+            frequencies[index] = point.getFrequency();
+            resistances[index] = impedance.real();
+            reactances[index] = impedance.imag();
+            vswrs[index] = point.getVswr();
+            returnLosses[index] = point.getReturnLoss();
+            qualityFactors[index] = point.getQualityFactor();
+            loaded[index] = true;
+        }
+
+        void loadAll() {
+            for (int i = 0; i < size; i++) load(i);
+        }
+
+        /**
+         * Adds a copy of a range of rows of other columns at the end. The rows are read from their points
+         * first, so the copy keeps their values as they are now.
+         */
+        void append(Columns other, int from, int to) {
+            for (int i = from; i < to; i++) other.load(i);
+            int at = size;
+            int count = to - from;
+            splice(at, 0, count);
+            System.arraycopy(other.points, from, points, at, count);
+            System.arraycopy(other.loaded, from, loaded, at, count);
+            System.arraycopy(other.labels, from, labels, at, count);
+            System.arraycopy(other.frequencies, from, frequencies, at, count);
+            System.arraycopy(other.resistances, from, resistances, at, count);
+            System.arraycopy(other.reactances, from, reactances, at, count);
+            System.arraycopy(other.vswrs, from, vswrs, at, count);
+            System.arraycopy(other.returnLosses, from, returnLosses, at, count);
+            System.arraycopy(other.qualityFactors, from, qualityFactors, at, count);
+        }
+
+        Columns copy(int from, int to) {
+            Columns copy = new Columns(to - from);
+            copy.append(this, from, to);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package heig.tb.jsmithfx.view;
+
+import heig.tb.jsmithfx.logic.SimulationResult.Series;
+import javafx.application.Platform;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 2D histogram of gamma points over the unit disk, drawn as a heatmap with a logarithmic color scale.
+ * <p>
+ * The points are counted once per published series, a series never changing, on a background thread:
+ * until the new counts are ready, the previous heatmap is drawn. Every frame blits the same image, so its
+ * cost on the FX thread depends on the number of bins and not on the number of points.
+ * </p>
+ * Must be used from the FX thread, except for {@link #countsOf}, meant for the exports.
+ */
+final class DensityHistogram {
+
+    private static final int BINS = 256;
+
+    // Color stops of the palette, from the least to the most dense bins (dark blue -> teal -> yellow)
+    private static final double[][] PALETTE = {
+            {0.27, 0.00, 0.33},
+            {0.23, 0.32, 0.55},
+            {0.13, 0.57, 0.55},
+            {0.37, 0.79, 0.38},
+            {0.99, 0.91, 0.14}
+    };
+
+    private final int[] counts = new int[BINS * BINS];
+    private final int[] pixels = new int[BINS * BINS];
+    private final WritableImage image = new WritableImage(BINS, BINS);
+
+    // Counts are made one after the other, only the last requested one is published
+    private static final ExecutorService COUNTER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "density-histogram");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicInteger generation = new AtomicInteger();
+    private Runnable onReady = () -> {};
+
+    // The series the bins were counted from and the one being counted, compared by identity
+    private Series counted;
+    private Series requested;
+
+    /**
+     * @param onReady called on the FX thread when the counts of new points are available
+     */
+    void setOnReady(Runnable onReady) {
+        this.onReady = onReady;
+    }
+
+    /**
+     * Draws the heatmap of the points over the chart, in the local coordinates of the chart. If the points
+     * were not counted yet, they are counted in the background and the previous heatmap is drawn meanwhile.
+     */
+    void draw(ChartGraphics gc, SmithChartLayout layout, Series points) {
+        if (points != counted && points != requested) {
+            requested = points;
+            int jobGeneration = generation.incrementAndGet();
+            COUNTER.execute(() -> {
+                if (generation.get() != jobGeneration) return;
+                int[] newCounts = countsOf(points);
+                Platform.runLater(() -> {
+                    if (generation.get() != jobGeneration) return;
+                    setCounts(points, newCounts);
+                    onReady.run();
+                });
+            });
+        }
+        if (counted == null) return;
+
+        double radius = layout.getRadius();
+        gc.drawImage(image, layout.getCenterX() - radius, layout.getCenterY() - radius, radius * 2, radius * 2);
+    }
+
+    /**
+     * Shows the given counts of the points, made by {@link #countsOf}, cancelling any count in flight.
+     */
+    void setCounts(Series points, int[] newCounts) {
+        generation.incrementAndGet();
+        System.arraycopy(newCounts, 0, counts, 0, counts.length);
+        recolor();
+        counted = points;
+        requested = points;
+    }
+
+    /**
+     * Counts the points in each bin, on the calling thread.
+     */
+    static int[] countsOf(Series points) {
+        int[] counts = new int[BINS * BINS];
+        for (int i = 0; i < points.size(); i++) {
+            int bin = binOf(points.gammaReal(i), points.gammaImag(i));
+            if (bin >= 0) counts[bin]++;
+        }
+        return counts;
+    }
+
+    private static int binOf(double gammaReal, double gammaImag) {
+        // A missing gamma is NaN
+        if (Double.isNaN(gammaReal) || Double.isNaN(gammaImag)) return -1;
+        // Rows go downwards, like the screen
+        int x = (int) Math.floor((gammaReal + 1) / 2 * BINS);
+        int y = (int) Math.floor((1 - gammaImag) / 2 * BINS);
+        if (x < 0 || x >= BINS || y < 0 || y >= BINS) return -1;
+        return y * BINS + x;
+    }
+
+    private void recolor() {
+        int max = 0;
+        for (int count : counts) max = Math.max(max, count);
+        double logMax = Math.log1p(max);
+
+        for (int i = 0; i < counts.length; i++) {
+            pixels[i] = counts[i] == 0 ? 0 : colorOf(Math.log1p(counts[i]) / logMax);
+        }
+        image.getPixelWriter().setPixels(0, 0, BINS, BINS, PixelFormat.getIntArgbPreInstance(), pixels, 0, BINS);
+    }
+
+    /**
+     * Maps a density in [0, 1] to an opaque ARGB color of the palette.
+     */
+    private static int colorOf(double t) {
+        double position = Math.clamp(t, 0.0, 1.0) * (PALETTE.length - 1);
+        int index = Math.min((int) position, PALETTE.length - 2);
+        double fraction = position - index;
+
+        double[] from = PALETTE[index];
+        double[] to = PALETTE[index + 1];
+        int r = (int) Math.round((from[0] + (to[0] - from[0]) * fraction) * 255);
+        int g = (int) Math.round((from[1] + (to[1] - from[1]) * fraction) * 255);
+        int b = (int) Math.round((from[2] + (to[2] - from[2]) * fraction) * 255);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+}
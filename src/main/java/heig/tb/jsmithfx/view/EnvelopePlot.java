@@ -0,0 +1,603 @@
+package heig.tb.jsmithfx.view;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Canvas based XY plot for long series sorted by x.
+ * <p>
+ * Each trace is drawn from its {@link EnvelopePyramid}: when there are more samples than pixels,
+ * every pixel column is drawn as the vertical span between the exact minimum and maximum of the
+ * samples it covers, otherwise the samples are joined directly. The drawing cost therefore depends
+ * on the width of the plot, not on the length of the series, and no extreme value is skipped.
+ * </p>
+ * <p>
+ * Scroll to zoom on the x axis around the mouse, drag to pan, double-click to reset the view.
+ * The axes follow the visible part of all the traces.
+ * </p>
+ */
+public final class EnvelopePlot extends Pane {
+
+    /**
+     * A series to draw.
+     *
+     * @param data  the samples
+     * @param color the stroke color
+     * @param width the stroke width
+     * @param fromX only the samples from this x are drawn
+     * @param toX   only the samples up to this x are drawn
+     * @param label the name shown in the legend and the cursor, null for none
+     */
+    public record Trace(EnvelopePyramid data, Color color, double width, double fromX, double toX, String label) {
+        public Trace(EnvelopePyramid data, Color color, double width) {
+            this(data, color, width, null);
+        }
+
+        public Trace(EnvelopePyramid data, Color color, double width, String label) {
+            this(data, color, width, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, label);
+        }
+
+        public Trace(EnvelopePyramid data, Color color, double width, double fromX, double toX) {
+            this(data, color, width, fromX, toX, null);
+        }
+    }
+
+    private static final double MARGIN_LEFT = 65;
+    private static final double MARGIN_RIGHT = 20;
+    private static final double MARGIN_TOP = 35;
+    private static final double MARGIN_BOTTOM = 45;
+    private static final Font AXIS_FONT = new Font("Arial", 11);
+    private static final Font TITLE_FONT = new Font("Arial", 15);
+    private static final Font CURSOR_FONT = Font.font("Monospaced", 13);
+
+    private final Canvas canvas = new Canvas();
+    private final FxChartGraphics canvasGraphics = new FxChartGraphics(canvas.getGraphicsContext2D());
+    private final Canvas overlay = new Canvas();
+
+    private List<Trace> traces = List.of();
+    private PersistenceTrail trail;
+    private String title = "";
+    private String xLabel = "";
+    private String yLabel = "";
+    private BiFunction<Double, Double, String> cursorFormatter = (x, y) -> String.format("%.4g ; %.4g", x, y);
+
+    // Visible x range, NaN when following the data
+    private double viewMinX = Double.NaN;
+    private double viewMaxX = Double.NaN;
+
+    // Axis ranges and size of the last drawn frame, used to map the mouse
+    private double minX, maxX, minY, maxY;
+    private double paintWidth, paintHeight;
+    // Pixels per unit of the frame being drawn, more than 1 when exporting at high resolution
+    private double resolution = 1;
+
+    private double markerX = Double.NaN;
+    private double markerY = Double.NaN;
+
+    private double dragStartX;
+    private RenderScheduler.Handle redrawRender;
+    private final double[] range = new double[2];
+
+    private EnvelopePlot() {
+        getChildren().addAll(canvas, overlay);
+        overlay.setMouseTransparent(true);
+        setStyle("-fx-background-color: white;");
+    }
+
+    /**
+     * Creates an empty plot, redrawn on the pulses of the scheduler until {@link #dispose()}.
+     */
+    public static EnvelopePlot create() {
+        EnvelopePlot plot = new EnvelopePlot();
+        // Registered once constructed, so the scheduler and the handlers never see a partly built plot
+        plot.redrawRender = RenderScheduler.getInstance().register(RenderScheduler.Priority.DEFERRABLE, _ -> plot.redraw());
+        plot.installHandlers();
+        return plot;
+    }
+
+    private void installHandlers() {
+        widthProperty().addListener(_ -> requestRedraw());
+        heightProperty().addListener(_ -> requestRedraw());
+
+        setOnScroll(event -> {
+            if (!hasData()) return;
+            double factor = event.getDeltaY() > 0 ? 1 / 1.2 : 1.2;
+            double anchor = toDataX(event.getX());
+            double newMin = anchor - (anchor - minX) * factor;
+            double newMax = anchor + (maxX - anchor) * factor;
+            setViewRange(newMin, newMax);
+            event.consume();
+        });
+
+        setOnMousePressed(event -> dragStartX = event.getX());
+
+        setOnMouseDragged(event -> {
+            if (!hasData()) return;
+            double shift = (dragStartX - event.getX()) / plotWidth() * (maxX - minX);
+            dragStartX = event.getX();
+            setViewRange(minX + shift, maxX + shift);
+        });
+
+        setOnMouseClicked(event -> {
+            if (event.getClickCount() == 2) resetView();
+        });
+
+        setOnMouseMoved(event -> drawCursor(event.getX(), event.getY()));
+        setOnMouseExited(_ -> clearOverlay());
+    }
+
+    @Override
+    protected void layoutChildren() {
+        super.layoutChildren();
+        for (Canvas c : List.of(canvas, overlay)) {
+            c.setWidth(getWidth());
+            c.setHeight(getHeight());
+        }
+    }
+
+    public void setTraces(List<Trace> traces) {
+        this.traces = List.copyOf(traces);
+        requestRedraw();
+    }
+
+    /**
+     * Shows a persistence trail under the traces, in the coordinates of the plot. Null to remove it.
+     */
+    void setTrail(PersistenceTrail trail) {
+        this.trail = trail;
+        requestRedraw();
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+        requestRedraw();
+    }
+
+    public void setAxisLabels(String xLabel, String yLabel) {
+        this.xLabel = xLabel;
+        this.yLabel = yLabel;
+        requestRedraw();
+    }
+
+    /**
+     * @param cursorFormatter builds the text shown next to the cursor from the (x, y) of the nearest sample
+     */
+    public void setCursorFormatter(BiFunction<Double, Double, String> cursorFormatter) {
+        this.cursorFormatter = cursorFormatter;
+    }
+
+    /**
+     * Shows a marker at the given position, NaN to hide it.
+     */
+    public void setMarker(double x, double y) {
+        this.markerX = x;
+        this.markerY = y;
+        requestRedraw();
+    }
+
+    /**
+     * Shows the whole data again.
+     */
+    public void resetView() {
+        viewMinX = Double.NaN;
+        viewMaxX = Double.NaN;
+        requestRedraw();
+    }
+
+    private void setViewRange(double min, double max) {
+        if (!(max > min)) return;
+        viewMinX = min;
+        viewMaxX = max;
+        requestRedraw();
+    }
+
+    /**
+     * Schedules a redraw, several requests in the same pulse result in a single one.
+     */
+    public void requestRedraw() {
+        redrawRender.markDirty();
+    }
+
+    /**
+     * Draws the plot, as currently shown, into a tile of a PNG export.
+     * The envelope is computed at the resolution of the export, one min/max span per exported pixel column.
+     *
+     * @see TiledPngExporter
+     */
+    public void renderTile(Canvas tile, double scale, double offsetX, double offsetY) {
+        ChartGraphics gc = new FxChartGraphics(tile.getGraphicsContext2D());
+        gc.clearRect(0, 0, tile.getWidth(), tile.getHeight());
+        gc.save();
+        gc.translate(offsetX, offsetY);
+        gc.scale(scale, scale);
+        paint(gc, getWidth(), getHeight(), scale);
+        gc.restore();
+
+        restoreScreenGeometry();
+    }
+
+    /**
+     * Writes the plot, as currently shown, as an SVG document.
+     * The envelope keeps one min/max span per pixel column of the plot, so the document stays small
+     * whatever the length of the series.
+     *
+     * @param out the destination, flushed but not closed
+     */
+    public void exportSvg(Writer out) throws IOException {
+        SvgChartGraphics svg = new SvgChartGraphics(out, getWidth(), getHeight(), Color.WHITE);
+        try {
+            paint(svg, getWidth(), getHeight(), 1);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            restoreScreenGeometry();
+        }
+        svg.finish();
+    }
+
+    // Back to the geometry of the screen after an export, used to map the mouse
+    private void restoreScreenGeometry() {
+        paintWidth = getWidth();
+        paintHeight = getHeight();
+        resolution = 1;
+    }
+
+    /**
+     * Stops the rendering of this plot, to call when its window is closed.
+     */
+    public void dispose() {
+        redrawRender.dispose();
+    }
+
+    private boolean hasData() {
+        for (Trace trace : traces) {
+            if (trace.data().size() > 0) return true;
+        }
+        return false;
+    }
+
+    private double plotWidth() {
+        return Math.max(1, paintWidth - MARGIN_LEFT - MARGIN_RIGHT);
+    }
+
+    private double plotHeight() {
+        return Math.max(1, paintHeight - MARGIN_TOP - MARGIN_BOTTOM);
+    }
+
+    private double toScreenX(double x) {
+        return MARGIN_LEFT + (x - minX) / (maxX - minX) * plotWidth();
+    }
+
+    private double toScreenY(double y) {
+        return MARGIN_TOP + (maxY - y) / (maxY - minY) * plotHeight();
+    }
+
+    private double toDataX(double screenX) {
+        return minX + (screenX - MARGIN_LEFT) / plotWidth() * (maxX - minX);
+    }
+
+    private void redraw() {
+        clearOverlay();
+        paint(canvasGraphics, getWidth(), getHeight(), 1);
+    }
+
+    /**
+     * Draws the plot laid out on the given size.
+     *
+     * @param resolution the number of device pixels per unit, sets the number of envelope columns
+     */
+    private void paint(ChartGraphics gc, double width, double height, double resolution) {
+        this.paintWidth = width;
+        this.paintHeight = height;
+        this.resolution = resolution;
+        gc.clearRect(0, 0, width, height);
+
+        gc.setFill(Color.BLACK);
+        gc.setFont(TITLE_FONT);
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.fillText(title, width / 2, 22);
+
+        if (!hasData()) return;
+
+        computeRanges();
+        drawAxes(gc);
+
+        gc.save();
+        gc.beginPath();
+        gc.rect(MARGIN_LEFT, MARGIN_TOP, plotWidth(), plotHeight());
+        gc.clip();
+
+        // The trail is a live history, it is left out of the exports
+        if (trail != null && gc == canvasGraphics) {
+            double scaleX = plotWidth() / (maxX - minX);
+            double scaleY = -plotHeight() / (maxY - minY);
+            trail.draw(gc, width, height, scaleX, MARGIN_LEFT - minX * scaleX, scaleY, MARGIN_TOP - maxY * scaleY);
+        }
+
+        for (Trace trace : traces) {
+            drawTrace(gc, trace);
+        }
+        drawLegend(gc);
+
+        if (Double.isFinite(markerX) && Double.isFinite(markerY)) {
+            double x = toScreenX(markerX);
+            double y = toScreenY(markerY);
+            gc.setFill(Color.YELLOW);
+            gc.fillOval(x - 4, y - 4, 8, 8);
+            gc.setStroke(Color.GRAY);
+            gc.setLineWidth(1);
+            gc.strokeOval(x - 4, y - 4, 8, 8);
+        }
+
+        gc.restore();
+    }
+
+    private void computeRanges() {
+        double dataMinX = Double.POSITIVE_INFINITY;
+        double dataMaxX = Double.NEGATIVE_INFINITY;
+        for (Trace trace : traces) {
+            EnvelopePyramid data = trace.data();
+            if (data.size() == 0) continue;
+            dataMinX = Math.min(dataMinX, data.x(0));
+            dataMaxX = Math.max(dataMaxX, data.x(data.size() - 1));
+        }
+        minX = Double.isNaN(viewMinX) ? dataMinX : viewMinX;
+        maxX = Double.isNaN(viewMaxX) ? dataMaxX : viewMaxX;
+        if (!(maxX > minX)) {
+            minX -= 0.5;
+            maxX += 0.5;
+        }
+
+        // Visible samples plus the neighbours leaving the view, so the y range covers the drawn lines
+        minY = Double.NaN;
+        maxY = Double.NaN;
+        for (Trace trace : traces) {
+            EnvelopePyramid data = trace.data();
+            int from = Math.max(data.lowerBound(trace.fromX()), data.lowerBound(minX) - 1);
+            int to = Math.min(data.lowerBound(Math.nextUp(trace.toX())), data.lowerBound(maxX) + 1);
+            if (to <= from) continue;
+            data.minMax(from, to, range);
+            if (Double.isNaN(range[0])) continue;
+            minY = Double.isNaN(minY) ? range[0] : Math.min(minY, range[0]);
+            maxY = Double.isNaN(maxY) ? range[1] : Math.max(maxY, range[1]);
+        }
+
+        if (Double.isNaN(minY)) {
+            minY = -1;
+            maxY = 1;
+        }
+        double padding = (maxY - minY) * 0.05;
+        if (padding == 0) padding = 1;
+        minY -= padding;
+        maxY += padding;
+    }
+
+    private void drawTrace(ChartGraphics gc, Trace trace) {
+        EnvelopePyramid data = trace.data();
+        double left = Math.max(minX, trace.fromX());
+        double right = Math.min(maxX, trace.toX());
+        if (!(right >= left) || data.size() == 0) return;
+
+        // Samples inside the trace bounds, extended by one on each side if still within them
+        int first = data.lowerBound(trace.fromX());
+        int last = data.lowerBound(Math.nextUp(trace.toX()));
+        int from = Math.max(first, data.lowerBound(left) - 1);
+        int to = Math.min(last, data.lowerBound(Math.nextUp(right)) + 1);
+        if (to - from < 1) return;
+
+        gc.setStroke(trace.color());
+        gc.setLineWidth(trace.width());
+        gc.beginPath();
+
+        double width = plotWidth() * resolution;
+        if (to - from <= width * 2) {
+            // Few enough samples, join them directly
+            boolean penDown = false;
+            for (int i = from; i < to; i++) {
+                double y = data.y(i);
+                if (Double.isNaN(y)) {
+                    penDown = false;
+                    continue;
+                }
+                double sx = toScreenX(data.x(i));
+                double sy = toScreenY(y);
+                if (penDown) gc.lineTo(sx, sy);
+                else gc.moveTo(sx, sy);
+                penDown = true;
+            }
+        } else {
+            // One min/max span per pixel column, the neighbours outside the view are joined directly
+            int inFrom = Math.max(from, data.lowerBound(left));
+            int inTo = Math.min(to, data.lowerBound(Math.nextUp(right)));
+            boolean penDown = false;
+            if (from < inFrom && !Double.isNaN(data.y(from))) {
+                gc.moveTo(toScreenX(data.x(from)), toScreenY(data.y(from)));
+                penDown = true;
+            }
+
+            int columns = (int) Math.ceil(width);
+            double step = (maxX - minX) / width;
+            int start = inFrom;
+            for (int c = 0; c < columns && start < inTo; c++) {
+                int end = (c == columns - 1) ? inTo : Math.min(inTo, data.lowerBound(minX + (c + 1) * step));
+                if (end <= start) continue;
+
+                data.minMax(start, end, range);
+                double firstY = data.y(start);
+                double lastY = data.y(end - 1);
+                start = end;
+                if (Double.isNaN(range[0])) {
+                    penDown = false;
+                    continue;
+                }
+
+                double sx = MARGIN_LEFT + (c + 0.5) / resolution;
+                if (!Double.isNaN(firstY)) {
+                    if (penDown) gc.lineTo(sx, toScreenY(firstY));
+                    else gc.moveTo(sx, toScreenY(firstY));
+                } else {
+                    gc.moveTo(sx, toScreenY(range[0]));
+                }
+                gc.lineTo(sx, toScreenY(range[0]));
+                gc.lineTo(sx, toScreenY(range[1]));
+                if (!Double.isNaN(lastY)) gc.lineTo(sx, toScreenY(lastY));
+                penDown = !Double.isNaN(lastY);
+            }
+
+            if (inTo < to && penDown && !Double.isNaN(data.y(inTo))) {
+                gc.lineTo(toScreenX(data.x(inTo)), toScreenY(data.y(inTo)));
+            }
+        }
+        gc.stroke();
+    }
+
+    private void drawAxes(ChartGraphics gc) {
+        double plotRight = MARGIN_LEFT + plotWidth();
+        double plotBottom = MARGIN_TOP + plotHeight();
+
+        gc.setLineWidth(1);
+        gc.setFont(AXIS_FONT);
+        gc.setFill(Color.BLACK);
+
+        // Vertical grid and x ticks
+        gc.setTextAlign(TextAlignment.CENTER);
+        double xStep = niceStep((maxX - minX) / Math.max(2, plotWidth() / 90));
+        for (double x = Math.ceil(minX / xStep) * xStep; x <= maxX; x += xStep) {
+            double sx = toScreenX(x);
+            gc.setStroke(Color.gray(0.9));
+            gc.strokeLine(sx, MARGIN_TOP, sx, plotBottom);
+            gc.fillText(formatTick(x, xStep), sx, plotBottom + 15);
+        }
+
+        // Horizontal grid and y ticks
+        gc.setTextAlign(TextAlignment.RIGHT);
+        double yStep = niceStep((maxY - minY) / Math.max(2, plotHeight() / 50));
+        for (double y = Math.ceil(minY / yStep) * yStep; y <= maxY; y += yStep) {
+            double sy = toScreenY(y);
+            gc.setStroke(Color.gray(0.9));
+            gc.strokeLine(MARGIN_LEFT, sy, plotRight, sy);
+            gc.fillText(formatTick(y, yStep), MARGIN_LEFT - 6, sy + 4);
+        }
+
+        gc.setStroke(Color.gray(0.4));
+        gc.strokeRect(MARGIN_LEFT, MARGIN_TOP, plotWidth(), plotHeight());
+
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.fillText(xLabel, MARGIN_LEFT + plotWidth() / 2, paintHeight - 10);
+
+        gc.save();
+        gc.translate(15, MARGIN_TOP + plotHeight() / 2);
+        gc.rotate(-90);
+        gc.fillText(yLabel, 0, 0);
+        gc.restore();
+    }
+
+    /**
+     * Draws the legend of the labeled traces, in the top right corner of the plot.
+     */
+    private void drawLegend(ChartGraphics gc) {
+        double right = MARGIN_LEFT + plotWidth() - 10;
+        double y = MARGIN_TOP + 16;
+        gc.setFont(AXIS_FONT);
+        gc.setTextAlign(TextAlignment.RIGHT);
+        for (Trace trace : traces) {
+            if (trace.label() == null) continue;
+            gc.setFill(Color.BLACK);
+            gc.fillText(trace.label(), right - 28, y + 4);
+            gc.setStroke(trace.color());
+            gc.setLineWidth(Math.max(2, trace.width()));
+            gc.strokeLine(right - 22, y, right, y);
+            y += 16;
+        }
+    }
+
+    private void drawCursor(double mouseX, double mouseY) {
+        clearOverlay();
+        if (!hasData() || mouseX < MARGIN_LEFT || mouseX > MARGIN_LEFT + plotWidth()) return;
+
+        // Sample under the mouse on the trace closest to it vertically, the first one wins a tie
+        Trace nearestTrace = null;
+        int index = -1;
+        double distance = Double.POSITIVE_INFINITY;
+        double dataX = toDataX(mouseX);
+        for (Trace trace : traces) {
+            EnvelopePyramid data = trace.data();
+            if (dataX < trace.fromX() || dataX > trace.toX()) continue;
+            int candidate = data.nearest(dataX);
+            if (candidate < 0 || Double.isNaN(data.y(candidate))) continue;
+            double candidateDistance = Math.abs(toScreenY(data.y(candidate)) - mouseY);
+            if (candidateDistance < distance) {
+                nearestTrace = trace;
+                index = candidate;
+                distance = candidateDistance;
+            }
+        }
+        if (nearestTrace == null) return;
+        EnvelopePyramid data = nearestTrace.data();
+
+        double x = toScreenX(data.x(index));
+        double y = toScreenY(data.y(index));
+
+        GraphicsContext gc = overlay.getGraphicsContext2D();
+        gc.setStroke(Color.rgb(150, 150, 150, 0.8));
+        gc.setLineWidth(1);
+        gc.setLineDashes(5, 5);
+        gc.strokeLine(x, MARGIN_TOP, x, MARGIN_TOP + plotHeight());
+        gc.strokeLine(MARGIN_LEFT, y, MARGIN_LEFT + plotWidth(), y);
+        gc.setLineDashes(null);
+
+        gc.setFill(Color.RED);
+        gc.fillOval(x - 4, y - 4, 8, 8);
+
+        String text = cursorFormatter.apply(data.x(index), data.y(index));
+        if (nearestTrace.label() != null) text = nearestTrace.label() + "\n" + text;
+        String[] lines = text.split("\n");
+        double boxWidth = 10 + 8 * Arrays.stream(lines).mapToInt(String::length).max().orElse(0);
+        double boxHeight = 8 + 16 * lines.length;
+        double boxX = x + 10;
+        double boxY = y + 10;
+        if (boxX + boxWidth > getWidth()) boxX = x - boxWidth - 10;
+        if (boxY + boxHeight > getHeight()) boxY = y - boxHeight - 10;
+
+        gc.setFill(Color.rgb(30, 30, 30, 0.8));
+        gc.fillRoundRect(boxX, boxY, boxWidth, boxHeight, 6, 6);
+        gc.setFill(Color.WHITE);
+        gc.setFont(CURSOR_FONT);
+        gc.setTextAlign(TextAlignment.LEFT);
+        for (int i = 0; i < lines.length; i++) {
+            gc.fillText(lines[i], boxX + 5, boxY + 18 + i * 16);
+        }
+    }
+
+    private void clearOverlay() {
+        overlay.getGraphicsContext2D().clearRect(0, 0, overlay.getWidth(), overlay.getHeight());
+    }
+
+    /**
+     * @return a round step (1, 2 or 5 times a power of ten) close to the given raw step
+     */
+    private static double niceStep(double rawStep) {
+        if (!(rawStep > 0) || !Double.isFinite(rawStep)) return 1;
+        double magnitude = Math.pow(10, Math.floor(Math.log10(rawStep)));
+        double normalized = rawStep / magnitude;
+        double nice = normalized < 1.5 ? 1 : normalized < 3 ? 2 : normalized < 7 ? 5 : 10;
+        return nice * magnitude;
+    }
+
+    private static String formatTick(double value, double step) {
+        int decimals = Math.max(0, (int) -Math.floor(Math.log10(step)));
+        if (Math.abs(value) < step / 2) value = 0;
+        return String.format("%." + decimals + "f", value);
+    }
+}
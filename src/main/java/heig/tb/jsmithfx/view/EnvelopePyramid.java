@@ -0,0 +1,129 @@
+package heig.tb.jsmithfx.view;
+
+/**
+ * Multi-resolution min/max pyramid over a series sorted by x.
+ * <p>
+ * Level {@code k} stores the minimum and maximum of every aligned block of {@code 2^k} samples.
+ * Any index range is covered by a logarithmic number of aligned blocks, so the exact extremes of a
+ * range (one pixel column of a plot, whatever the zoom) are found without visiting its samples.
+ * Narrow peaks and dips are therefore never lost, unlike with a fixed stride decimation.
+ * </p>
+ * Instances are immutable once built and can be shared between threads.
+ */
+public final class EnvelopePyramid {
+
+    private final double[] xs;
+    private final double[][] mins;
+    private final double[][] maxs;
+
+    /**
+     * Builds the pyramid. Both arrays are kept, they must not be modified afterward.
+     *
+     * @param xs the x values, sorted in ascending order
+     * @param ys the y values, NaN for missing samples
+     */
+    public EnvelopePyramid(double[] xs, double[] ys) {
+        if (xs.length != ys.length) throw new IllegalArgumentException("x and y must have the same length");
+        this.xs = xs;
+
+        int levels = 1;
+        while ((1 << (levels - 1)) < xs.length) levels++;
+
+        mins = new double[levels][];
+        maxs = new double[levels][];
+        mins[0] = ys;
+        maxs[0] = ys;
+
+        for (int level = 1; level < levels; level++) {
+            double[] lowerMin = mins[level - 1];
+            double[] lowerMax = maxs[level - 1];
+            int length = (lowerMin.length + 1) / 2;
+            double[] min = new double[length];
+            double[] max = new double[length];
+            for (int i = 0; i < length; i++) {
+                int a = 2 * i;
+                int b = Math.min(a + 1, lowerMin.length - 1);
+                min[i] = nanMin(lowerMin[a], lowerMin[b]);
+                max[i] = nanMax(lowerMax[a], lowerMax[b]);
+            }
+            mins[level] = min;
+            maxs[level] = max;
+        }
+    }
+
+    public int size() {
+        return xs.length;
+    }
+
+    public double x(int index) {
+        return xs[index];
+    }
+
+    public double y(int index) {
+        return mins[0][index];
+    }
+
+    /**
+     * @return the index of the first sample whose x is greater than or equal to the given value
+     */
+    public int lowerBound(double x) {
+        int low = 0;
+        int high = xs.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (xs[mid] < x) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the sample whose x is the closest to the given value, -1 if empty
+     */
+    public int nearest(double x) {
+        if (xs.length == 0) return -1;
+        int index = lowerBound(x);
+        if (index == 0) return 0;
+        if (index == xs.length) return xs.length - 1;
+        return (x - xs[index - 1] <= xs[index] - x) ? index - 1 : index;
+    }
+
+    /**
+     * Finds the exact minimum and maximum of the samples in [from, to).
+     *
+     * @param out receives {min, max}, both NaN if the range holds no valid sample
+     */
+    public void minMax(int from, int to, double[] out) {
+        double min = Double.NaN;
+        double max = Double.NaN;
+        from = Math.max(from, 0);
+        to = Math.min(to, xs.length);
+
+        while (from < to) {
+            // Largest aligned block starting at 'from' that fits in the range
+            int level = Integer.numberOfTrailingZeros(from == 0 ? Integer.MIN_VALUE : from);
+            level = Math.min(level, mins.length - 1);
+            while (level > 0 && from + (1 << level) > to) level--;
+
+            int block = from >> level;
+            min = nanMin(min, mins[level][block]);
+            max = nanMax(max, maxs[level][block]);
+            from += 1 << level;
+        }
+
+        out[0] = min;
+        out[1] = max;
+    }
+
+    private static double nanMin(double a, double b) {
+        if (Double.isNaN(a)) return b;
+        if (Double.isNaN(b)) return a;
+        return Math.min(a, b);
+    }
+
+    private static double nanMax(double a, double b) {
+        if (Double.isNaN(a)) return b;
+        if (Double.isNaN(b)) return a;
+        return Math.max(a, b);
+    }
+}
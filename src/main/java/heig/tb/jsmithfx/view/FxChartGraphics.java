@@ -0,0 +1,86 @@
+package heig.tb.jsmithfx.view;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Paint;
+import javafx.scene.shape.ArcType;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * {@link ChartGraphics} drawing on a canvas, every call is forwarded to its graphics context.
+ */
+final class FxChartGraphics implements ChartGraphics {
+
+    private final GraphicsContext gc;
+
+    FxChartGraphics(GraphicsContext gc) {
+        this.gc = gc;
+    }
+
+    GraphicsContext getContext() {
+        return gc;
+    }
+
+    @Override public void save() { gc.save(); }
+    @Override public void restore() { gc.restore(); }
+    @Override public void translate(double x, double y) { gc.translate(x, y); }
+    @Override public void scale(double x, double y) { gc.scale(x, y); }
+    @Override public void rotate(double degrees) { gc.rotate(degrees); }
+
+    @Override
+    public void setTransform(double mxx, double myx, double mxy, double myy, double mxt, double myt) {
+        gc.setTransform(mxx, myx, mxy, myy, mxt, myt);
+    }
+
+    @Override public void setStroke(Paint paint) { gc.setStroke(paint); }
+    @Override public void setFill(Paint paint) { gc.setFill(paint); }
+    @Override public Paint getFill() { return gc.getFill(); }
+    @Override public void setLineWidth(double width) { gc.setLineWidth(width); }
+    @Override public void setLineDashes(double... dashes) { gc.setLineDashes(dashes); }
+    @Override public void setFont(Font font) { gc.setFont(font); }
+    @Override public void setTextAlign(TextAlignment align) { gc.setTextAlign(align); }
+    @Override public void setImageSmoothing(boolean smoothing) { gc.setImageSmoothing(smoothing); }
+
+    @Override public void clearRect(double x, double y, double w, double h) { gc.clearRect(x, y, w, h); }
+    @Override public void beginPath() { gc.beginPath(); }
+    @Override public void moveTo(double x, double y) { gc.moveTo(x, y); }
+    @Override public void lineTo(double x, double y) { gc.lineTo(x, y); }
+
+    @Override
+    public void arc(double centerX, double centerY, double radiusX, double radiusY, double startAngle, double length) {
+        gc.arc(centerX, centerY, radiusX, radiusY, startAngle, length);
+    }
+
+    @Override public void rect(double x, double y, double w, double h) { gc.rect(x, y, w, h); }
+    @Override public void closePath() { gc.closePath(); }
+    @Override public void stroke() { gc.stroke(); }
+    @Override public void clip() { gc.clip(); }
+
+    @Override public void strokeLine(double x1, double y1, double x2, double y2) { gc.strokeLine(x1, y1, x2, y2); }
+    @Override public void strokeOval(double x, double y, double w, double h) { gc.strokeOval(x, y, w, h); }
+    @Override public void fillOval(double x, double y, double w, double h) { gc.fillOval(x, y, w, h); }
+    @Override public void strokeRect(double x, double y, double w, double h) { gc.strokeRect(x, y, w, h); }
+
+    @Override
+    public void fillRoundRect(double x, double y, double w, double h, double arcWidth, double arcHeight) {
+        gc.fillRoundRect(x, y, w, h, arcWidth, arcHeight);
+    }
+
+    @Override
+    public void strokeArc(double x, double y, double w, double h, double startAngle, double arcExtent, ArcType closure) {
+        gc.strokeArc(x, y, w, h, startAngle, arcExtent, closure);
+    }
+
+    @Override
+    public void strokePolyline(double[] xPoints, double[] yPoints, int nPoints) {
+        gc.strokePolyline(xPoints, yPoints, nPoints);
+    }
+
+    @Override public void fillText(String text, double x, double y) { gc.fillText(text, x, y); }
+
+    @Override
+    public void drawImage(Image image, double x, double y, double w, double h) {
+        gc.drawImage(image, x, y, w, h);
+    }
+}
@@ -0,0 +1,284 @@
+package heig.tb.jsmithfx.view;
+
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Fading history of a live trace: the last frames of the trace drawn as trails that fade with their age.
+ * <p>
+ * The frames are kept, decimated, in a fixed-size ring of primitive arrays. They are composited into an
+ * accumulation image that is decayed once per new frame, the new frame being drawn on top at full opacity.
+ * Showing a new frame therefore costs one pass over the image and one over the frame, whatever the number
+ * of frames kept. The ring is only replayed, each frame with the opacity of its age, when the view changes.
+ * </p>
+ * Must be used from the FX thread.
+ */
+final class PersistenceTrail {
+
+    static final int DEFAULT_FRAMES = 32;
+
+    // A trail is a hint of the history, long frames are decimated to this many points
+    private static final int MAX_POINTS_PER_FRAME = 4096;
+    // Opacity left to the oldest frame of the ring, the frames leaving it have faded to almost nothing
+    private static final double OLDEST_OPACITY = 0.03;
+    // Longer segments, in pixels, come from diverging values and are left out
+    private static final double MAX_SEGMENT_PX = 16_384;
+
+    private record ViewKey(int width, int height, double scaleX, double offsetX, double scaleY, double offsetY) {
+    }
+
+    private final int capacity;
+    private final double[] frameXs;
+    private final double[] frameYs;
+    private final int[] frameSizes;
+    // Straight color of the trail, 0-255 per channel
+    private final int alpha;
+    private final int red;
+    private final int green;
+    private final int blue;
+    // Opacity kept by the image at each new frame, in 1/256
+    private final int decay;
+
+    private int newest = -1;
+    private int count;
+    // Frames added since the image was last composited
+    private int pending;
+
+    private ViewKey viewKey;
+    private int[] pixels;
+    // Rows holding something, the decay skips the others
+    private int touchedTop;
+    private int touchedBottom;
+    private boolean imageDirty;
+    private PixelBuffer<IntBuffer> pixelBuffer;
+    private WritableImage image;
+
+    PersistenceTrail(Color color) {
+        this(DEFAULT_FRAMES, color);
+    }
+
+    /**
+     * @param capacity the number of frames kept, the oldest one being drawn almost transparent
+     * @param color    the color of the newest frame
+     */
+    PersistenceTrail(int capacity, Color color) {
+        this.capacity = Math.max(2, capacity);
+        this.frameXs = new double[this.capacity * MAX_POINTS_PER_FRAME];
+        this.frameYs = new double[this.capacity * MAX_POINTS_PER_FRAME];
+        this.frameSizes = new int[this.capacity];
+        this.alpha = (int) Math.round(color.getOpacity() * 255);
+        this.red = (int) Math.round(color.getRed() * 255);
+        this.green = (int) Math.round(color.getGreen() * 255);
+        this.blue = (int) Math.round(color.getBlue() * 255);
+        this.decay = (int) Math.round(256 * Math.pow(OLDEST_OPACITY, 1.0 / (this.capacity - 1)));
+    }
+
+    /**
+     * Forgets every frame.
+     */
+    void clear() {
+        count = 0;
+        pending = 0;
+        viewKey = null;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Adds a frame as the newest one, the oldest one leaves the ring when it is full.
+     * The points are read right away, in data coordinates, and joined in their order.
+     *
+     * @param size the number of points of the frame, nothing is added when 0
+     * @param x    the x of each point
+     * @param y    the y of each point
+     */
+    void addFrame(int size, IntToDoubleFunction x, IntToDoubleFunction y) {
+        if (size <= 0) return;
+        newest = (newest + 1) % capacity;
+        int base = newest * MAX_POINTS_PER_FRAME;
+
+        // Evenly skipped points, the last one is always kept so the trail has the length of the trace
+        int stride = Math.max(1, -Math.floorDiv(-size, MAX_POINTS_PER_FRAME - 1));
+        int n = 0;
+        for (int i = 0; i < size; i += stride) {
+            frameXs[base + n] = x.applyAsDouble(i);
+            frameYs[base + n] = y.applyAsDouble(i);
+            n++;
+        }
+        if ((size - 1) % stride != 0) {
+            frameXs[base + n] = x.applyAsDouble(size - 1);
+            frameYs[base + n] = y.applyAsDouble(size - 1);
+            n++;
+        }
+
+        frameSizes[newest] = n;
+        count = Math.min(count + 1, capacity);
+        pending++;
+    }
+
+    /**
+     * Draws the trail, a data point (x, y) being drawn at (x * scaleX + offsetX, y * scaleY + offsetY).
+     *
+     * @param gc     the graphics context, its current transform is ignored
+     * @param width  the width of the surface, in pixels
+     * @param height the height of the surface, in pixels
+     */
+    void draw(ChartGraphics gc, double width, double height, double scaleX, double offsetX, double scaleY, double offsetY) {
+        int w = (int) Math.ceil(width);
+        int h = (int) Math.ceil(height);
+        if (count == 0 || w <= 0 || h <= 0) return;
+
+        ViewKey key = new ViewKey(w, h, scaleX, offsetX, scaleY, offsetY);
+        if (!key.equals(viewKey) || pending >= count) {
+            viewKey = key;
+            replay();
+        } else {
+            // Oldest pending frame first, each new frame ages the image by one step
+            for (int age = pending - 1; age >= 0; age--) {
+                decayImage();
+                drawFrame(slotOf(age), 256);
+            }
+        }
+        pending = 0;
+
+        if (imageDirty) upload();
+
+        gc.save();
+        gc.setTransform(1, 0, 0, 1, 0, 0);
+        gc.drawImage(image, 0, 0, w, h);
+        gc.restore();
+    }
+
+    private int slotOf(int age) {
+        return Math.floorMod(newest - age, capacity);
+    }
+
+    /**
+     * Redraws the image from the ring, each frame over the older ones with the opacity of its age.
+     */
+    private void replay() {
+        int size = viewKey.width() * viewKey.height();
+        if (pixels == null || pixels.length != size) {
+            pixels = new int[size];
+        } else {
+            Arrays.fill(pixels, 0);
+        }
+        touchedTop = viewKey.height();
+        touchedBottom = 0;
+
+        double opacity = Math.pow(decay / 256.0, count - 1);
+        for (int age = count - 1; age >= 0; age--) {
+            drawFrame(slotOf(age), (int) Math.round(opacity * 256));
+            opacity /= decay / 256.0;
+        }
+        imageDirty = true;
+    }
+
+    private void decayImage() {
+        int width = viewKey.width();
+        for (int i = touchedTop * width; i < touchedBottom * width; i++) {
+            int p = pixels[i];
+            if (p == 0) continue;
+            // Premultiplied, the four channels fade together
+            int a = ((p >>> 24) * decay) >> 8;
+            int r = (((p >> 16) & 0xFF) * decay) >> 8;
+            int g = (((p >> 8) & 0xFF) * decay) >> 8;
+            int b = ((p & 0xFF) * decay) >> 8;
+            pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+        imageDirty = true;
+    }
+
+    /**
+     * Draws the segments of a frame over the image.
+     *
+     * @param opacity the opacity of the frame relative to the color, in 1/256
+     */
+    private void drawFrame(int slot, int opacity) {
+        int sa = alpha * opacity >> 8;
+        if (sa == 0) return;
+        // Premultiplied source color
+        int color = (sa << 24) | (red * sa / 255 << 16) | (green * sa / 255 << 8) | (blue * sa / 255);
+
+        int base = slot * MAX_POINTS_PER_FRAME;
+        int n = frameSizes[slot];
+        double previousX = Double.NaN;
+        double previousY = Double.NaN;
+        for (int i = 0; i < n; i++) {
+            double x = frameXs[base + i] * viewKey.scaleX() + viewKey.offsetX();
+            double y = frameYs[base + i] * viewKey.scaleY() + viewKey.offsetY();
+            if (!Double.isFinite(x) || !Double.isFinite(y)) {
+                previousX = Double.NaN;
+                continue;
+            }
+            if (Double.isNaN(previousX)) {
+                // Start of a run, its first point is drawn on its own
+                blend((int) Math.round(x), (int) Math.round(y), color, sa);
+            } else {
+                drawSegment(previousX, previousY, x, y, color, sa);
+            }
+            previousX = x;
+            previousY = y;
+        }
+        imageDirty = true;
+    }
+
+    // The first point of the segment belongs to the previous one, it isn't drawn twice
+    private void drawSegment(double x0, double y0, double x1, double y1, int color, int sa) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        int width = viewKey.width();
+        int height = viewKey.height();
+        if (Math.max(x0, x1) < 0 || Math.min(x0, x1) >= width || Math.max(y0, y1) < 0 || Math.min(y0, y1) >= height) return;
+        int steps = (int) Math.ceil(Math.max(Math.abs(dx), Math.abs(dy)));
+        if (steps == 0 || steps > MAX_SEGMENT_PX) return;
+
+        for (int s = 1; s <= steps; s++) {
+            double t = (double) s / steps;
+            blend((int) Math.round(x0 + dx * t), (int) Math.round(y0 + dy * t), color, sa);
+        }
+    }
+
+    private void blend(int x, int y, int color, int sa) {
+        if (x < 0 || y < 0 || x >= viewKey.width() || y >= viewKey.height()) return;
+        int index = y * viewKey.width() + x;
+        int d = pixels[index];
+        int keep = 255 - sa;
+        // Source over destination, premultiplied
+        int a = (color >>> 24) + (d >>> 24) * keep / 255;
+        int r = ((color >> 16) & 0xFF) + ((d >> 16) & 0xFF) * keep / 255;
+        int g = ((color >> 8) & 0xFF) + ((d >> 8) & 0xFF) * keep / 255;
+        int b = (color & 0xFF) + (d & 0xFF) * keep / 255;
+        pixels[index] = (a << 24) | (r << 16) | (g << 8) | b;
+
+        touchedTop = Math.min(touchedTop, y);
+        touchedBottom = Math.max(touchedBottom, y + 1);
+    }
+
+    private void upload() {
+        int width = viewKey.width();
+        int height = viewKey.height();
+        if (pixelBuffer == null || pixelBuffer.getWidth() != width || pixelBuffer.getHeight() != height) {
+            IntBuffer buffer = IntBuffer.allocate(width * height);
+            pixelBuffer = new PixelBuffer<>(width, height, buffer, PixelFormat.getIntArgbPreInstance());
+            image = new WritableImage(pixelBuffer);
+        }
+
+        pixelBuffer.updateBuffer(buffer -> {
+            IntBuffer target = buffer.getBuffer();
+            target.clear();
+            target.put(pixels);
+            target.rewind();
+            return null;
+        });
+        imageDirty = false;
+    }
+}
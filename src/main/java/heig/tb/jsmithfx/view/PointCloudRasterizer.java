@@ -0,0 +1,297 @@
+package heig.tb.jsmithfx.view;
+
+import heig.tb.jsmithfx.logic.SimulationResult.Series;
+import javafx.application.Platform;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Draws large sets of markers (S1P captures, long sweeps) into a bitmap on background threads.
+ * <p>
+ * The points are the columns of a published simulation result, which never change, so the jobs read them
+ * without a copy. Their colors are computed by the first job after the points or their colors change, then
+ * reused while panning and zooming. The view transform is applied by the rasterization, which splits the image
+ * in horizontal bands handled in parallel, each band only writing its own rows. The FX thread only blits the
+ * last finished image: until a new one is ready, the previous one is drawn stretched to the current zoom and
+ * offset so interaction stays fluid.
+ * </p>
+ * Must be used from the FX thread, except for the rasterization jobs it schedules itself and for
+ * {@link #rasterize}, meant for the exports.
+ */
+final class PointCloudRasterizer {
+
+    /**
+     * Number of points from which a layer is rasterized instead of drawn with vector calls.
+     */
+    static final int RASTER_THRESHOLD = 20_000;
+
+    private static final int BANDS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final int MAX_MARKER_RADIUS = 16;
+
+    // Jobs are run one after the other, the bands of a job are spread on the common pool
+    private static final ExecutorService COORDINATOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "point-cloud-rasterizer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    enum Marker {RING, DOT}
+
+    /**
+     * Points and their colors, the colors being computed by the first job that needs them.
+     * Only read by the jobs, which all run on the coordinator thread.
+     */
+    private static final class ColoredPoints {
+        private final Series points;
+        private final int styleStamp;
+        private final IntUnaryOperator colorOf;
+        private int[] colors;
+
+        private ColoredPoints(Series points, int styleStamp, IntUnaryOperator colorOf) {
+            this.points = points;
+            this.styleStamp = styleStamp;
+            this.colorOf = colorOf;
+        }
+
+        private int[] colors() {
+            if (colors == null) colors = colorsOf(points, colorOf);
+            return colors;
+        }
+    }
+
+    // The series is compared by identity, a new one is published whenever the points change
+    private record RasterKey(Series points, int styleStamp, double scale, double offsetX, double offsetY,
+                             int width, int height, double pointSize) {
+    }
+
+    private final Marker marker;
+    private final AtomicInteger generation = new AtomicInteger();
+    private final AtomicReference<int[]> sparePixels = new AtomicReference<>();
+    private Runnable onReady = () -> {};
+
+    private RasterKey requestedKey;
+    private RasterKey displayedKey;
+    private ColoredPoints coloredPoints;
+    private PixelBuffer<IntBuffer> pixelBuffer;
+    private WritableImage image;
+
+    PointCloudRasterizer(Marker marker) {
+        this.marker = marker;
+    }
+
+    /**
+     * @param onReady called on the FX thread when a new image is available
+     */
+    void setOnReady(Runnable onReady) {
+        this.onReady = onReady;
+    }
+
+    /**
+     * Draws the last rasterized image of the points and schedules a new rasterization if the
+     * points or the view changed since.
+     *
+     * @param gc         the graphics context, its current transform is ignored
+     * @param points     the points to draw
+     * @param colorOf    the ARGB color of the point at each index, called on a background thread
+     * @param styleStamp changes whenever the colors of the points change
+     * @param pointSize  the logical marker size
+     */
+    void draw(ChartGraphics gc, Series points, IntUnaryOperator colorOf, int styleStamp,
+              SmithChartLayout layout, double scale, double offsetX, double offsetY, double pointSize) {
+        int width = (int) Math.ceil(layout.getWidth());
+        int height = (int) Math.ceil(layout.getHeight());
+        if (width <= 0 || height <= 0) return;
+
+        RasterKey key = new RasterKey(points, styleStamp, scale, offsetX, offsetY, width, height, pointSize);
+        if (key.equals(displayedKey)) {
+            // Back to the displayed view, whatever is in flight is outdated
+            if (!key.equals(requestedKey)) {
+                generation.incrementAndGet();
+                requestedKey = key;
+            }
+        } else if (!key.equals(requestedKey)) {
+            requestedKey = key;
+            schedule(key, coloredPointsOf(points, colorOf, styleStamp), layout);
+        }
+
+        if (image == null || displayedKey.width() != width || displayedKey.height() != height) return;
+
+        // Stretch the previous image to the current view until the new one is ready
+        double ratio = scale / displayedKey.scale();
+        double dx = offsetX - displayedKey.offsetX() * ratio;
+        double dy = offsetY - displayedKey.offsetY() * ratio;
+
+        gc.save();
+        gc.setTransform(1, 0, 0, 1, 0, 0);
+        gc.drawImage(image, dx, dy, width * ratio, height * ratio);
+        gc.restore();
+    }
+
+    /**
+     * The points with their colors, kept as long as neither the points nor their colors change.
+     */
+    private ColoredPoints coloredPointsOf(Series points, IntUnaryOperator colorOf, int styleStamp) {
+        if (coloredPoints == null || coloredPoints.points != points || coloredPoints.styleStamp != styleStamp) {
+            coloredPoints = new ColoredPoints(points, styleStamp, colorOf);
+        }
+        return coloredPoints;
+    }
+
+    private void schedule(RasterKey key, ColoredPoints points, SmithChartLayout layout) {
+        int jobGeneration = generation.incrementAndGet();
+        int[][] mask = buildMask(marker, key.pointSize() * key.scale());
+
+        COORDINATOR.execute(() -> {
+            if (generation.get() != jobGeneration) return;
+
+            int size = key.width() * key.height();
+            int[] pixels = sparePixels.getAndSet(null);
+            if (pixels == null || pixels.length != size) pixels = new int[size];
+
+            rasterize(pixels, key.width(), key.height(), points.points, points.colors(), layout,
+                    key.scale(), key.offsetX(), key.offsetY(), mask, () -> generation.get() != jobGeneration);
+
+            if (generation.get() != jobGeneration) {
+                sparePixels.set(pixels);
+                return;
+            }
+            int[] target = pixels;
+            Platform.runLater(() -> publish(key, target, jobGeneration));
+        });
+    }
+
+    /**
+     * Rasterizes the points at once on the calling thread, for the exports.
+     *
+     * @param pixels  the premultiplied ARGB image, {@code width * height} pixels, overwritten
+     * @param colorOf the ARGB color of the point at each index
+     * @param scale   the zoom of the view, a logical point {@code p} being drawn at {@code p * scale + offset}
+     */
+    static void rasterize(int[] pixels, int width, int height, Marker marker, Series points, IntUnaryOperator colorOf,
+                          SmithChartLayout layout, double scale, double offsetX, double offsetY, double pointSize) {
+        rasterize(pixels, width, height, points, colorsOf(points, colorOf), layout, scale, offsetX, offsetY,
+                buildMask(marker, pointSize * scale), () -> false);
+    }
+
+    private static void rasterize(int[] pixels, int width, int height, Series points, int[] colors,
+                                  SmithChartLayout layout, double scale, double offsetX, double offsetY,
+                                  int[][] mask, BooleanSupplier cancelled) {
+        // Gamma to screen: x = (centerX + re * radius) * scale + offsetX, and y with -im
+        double ax = layout.getRadius() * scale;
+        double bx = layout.getCenterX() * scale + offsetX;
+        double by = layout.getCenterY() * scale + offsetY;
+
+        IntStream.range(0, BANDS).parallel().forEach(band -> {
+            int rowStart = height * band / BANDS;
+            int rowEnd = height * (band + 1) / BANDS;
+            rasterizeBand(pixels, width, rowStart, rowEnd, points, colors, ax, bx, by, mask, cancelled);
+        });
+    }
+
+    private static int[] colorsOf(Series points, IntUnaryOperator colorOf) {
+        int[] colors = new int[points.size()];
+        for (int i = 0; i < colors.length; i++) colors[i] = colorOf.applyAsInt(i);
+        return colors;
+    }
+
+    private static void rasterizeBand(int[] pixels, int width, int rowStart, int rowEnd, Series points, int[] colors,
+                                      double ax, double bx, double by, int[][] mask, BooleanSupplier cancelled) {
+        Arrays.fill(pixels, rowStart * width, rowEnd * width, 0);
+
+        int[] maskX = mask[0];
+        int[] maskY = mask[1];
+        int reach = mask[2][0];
+
+        for (int i = 0; i < points.size(); i++) {
+            // Give up early when a newer job was scheduled
+            if ((i & 0xFFFF) == 0 && cancelled.getAsBoolean()) return;
+
+            int cx = Math.round((float) (bx + points.gammaReal(i) * ax));
+            int cy = Math.round((float) (by - points.gammaImag(i) * ax));
+            if (cy + reach < rowStart || cy - reach >= rowEnd || cx + reach < 0 || cx - reach >= width) continue;
+
+            int color = colors[i];
+            for (int k = 0; k < maskX.length; k++) {
+                int x = cx + maskX[k];
+                int y = cy + maskY[k];
+                if (y >= rowStart && y < rowEnd && x >= 0 && x < width) {
+                    pixels[y * width + x] = color;
+                }
+            }
+        }
+    }
+
+    private void publish(RasterKey key, int[] pixels, int jobGeneration) {
+        if (generation.get() != jobGeneration) {
+            sparePixels.set(pixels);
+            return;
+        }
+
+        if (pixelBuffer == null || pixelBuffer.getWidth() != key.width() || pixelBuffer.getHeight() != key.height()) {
+            IntBuffer buffer = IntBuffer.allocate(key.width() * key.height());
+            pixelBuffer = new PixelBuffer<>(key.width(), key.height(), buffer, PixelFormat.getIntArgbPreInstance());
+            image = new WritableImage(pixelBuffer);
+        }
+
+        pixelBuffer.updateBuffer(buffer -> {
+            IntBuffer target = buffer.getBuffer();
+            target.clear();
+            target.put(pixels);
+            target.rewind();
+            return null;
+        });
+
+        sparePixels.set(pixels);
+        displayedKey = key;
+        onReady.run();
+    }
+
+    /**
+     * Builds the pixel offsets covered by one marker, as {dx[], dy[], {reach}}.
+     */
+    private static int[][] buildMask(Marker marker, double diameter) {
+        double radius = Math.clamp(diameter / 2, 0.5, MAX_MARKER_RADIUS);
+        double thickness = Math.max(1.0, diameter / 4);
+        int reach = (int) Math.ceil(radius + thickness / 2);
+        boolean filled = marker == Marker.DOT || radius <= 1.5;
+
+        int[] dx = new int[(2 * reach + 1) * (2 * reach + 1)];
+        int[] dy = new int[dx.length];
+        int count = 0;
+        for (int y = -reach; y <= reach; y++) {
+            for (int x = -reach; x <= reach; x++) {
+                double d = Math.sqrt(x * x + y * y);
+                boolean covered = filled ? d <= radius + 0.5 : Math.abs(d - radius) <= thickness / 2;
+                if (covered) {
+                    dx[count] = x;
+                    dy[count] = y;
+                    count++;
+                }
+            }
+        }
+        return new int[][]{Arrays.copyOf(dx, count), Arrays.copyOf(dy, count), {reach}};
+    }
+
+    /**
+     * Converts a color to the premultiplied ARGB format of the image.
+     */
+    static int toArgb(Color color) {
+        int a = (int) Math.round(color.getOpacity() * 255);
+        int r = (int) Math.round(color.getRed() * color.getOpacity() * 255);
+        int g = (int) Math.round(color.getGreen() * color.getOpacity() * 255);
+        int b = (int) Math.round(color.getBlue() * color.getOpacity() * 255);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+}
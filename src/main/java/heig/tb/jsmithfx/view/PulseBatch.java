@@ -0,0 +1,55 @@
+package heig.tb.jsmithfx.view;
+
+/**
+ * Batch of updates opened by the first input event of a frame and closed on the next pulse.
+ * <p>
+ * Input devices report faster than the screen refreshes. Joining the batch from each event lets the
+ * cheap state changes apply right away while the expensive work they trigger, deferred by the batch,
+ * runs once per displayed frame with the latest state. The batch is closed before anything is rendered.
+ * </p>
+ * Must be used from the FX thread.
+ */
+public final class PulseBatch {
+
+    private final Runnable begin;
+    private final Runnable end;
+    private final RenderScheduler.Handle closer;
+    private boolean open = false;
+
+    /**
+     * @param begin opens the batch, deferring the expensive work
+     * @param end   closes the batch, running the deferred work
+     */
+    public PulseBatch(Runnable begin, Runnable end) {
+        this.begin = begin;
+        this.end = end;
+        this.closer = RenderScheduler.getInstance().register(RenderScheduler.Priority.UPDATE, _ -> close());
+    }
+
+    /**
+     * Opens the batch if it isn't already, it is closed on the next pulse.
+     */
+    public void join() {
+        if (open) return;
+        open = true;
+        begin.run();
+        closer.markDirty();
+    }
+
+    /**
+     * Closes the batch now, for actions that need the deferred work done, like committing a value.
+     */
+    public void close() {
+        if (!open) return;
+        open = false;
+        end.run();
+    }
+
+    /**
+     * Closes the batch and unregisters it from the scheduler, for when its owner is torn down.
+     */
+    public void dispose() {
+        close();
+        closer.dispose();
+    }
+}
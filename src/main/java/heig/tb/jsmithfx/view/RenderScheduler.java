@@ -0,0 +1,147 @@
+package heig.tb.jsmithfx.view;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Central scheduler for every canvas of the application, driven by the JavaFX pulse.
+ * <p>
+ * Views register a render task and mark it dirty whenever their content changes. On each pulse,
+ * the dirty tasks are rendered once, in priority order, however many times they were marked. Each
+ * frame has a time budget: once it is spent, the deferrable tasks are kept dirty for the next pulses
+ * so input events keep being handled during heavy interactions. A deferred task is forced after a
+ * few frames so it can't starve.
+ * </p>
+ * The timer only runs while there is something to render. Must be used from the FX thread.
+ */
+public final class RenderScheduler {
+
+    public enum Priority {
+        /** Applies the state changes coalesced since the last pulse, before anything is drawn. */
+        UPDATE,
+        /** Cheap feedback following the mouse (cursor, tooltip), always rendered. */
+        INTERACTIVE,
+        /** Main content, always rendered, but may skip its expensive layers when the budget is spent. */
+        CONTENT,
+        /** Secondary views, postponed to a later frame when the budget is spent. */
+        DEFERRABLE
+    }
+
+    /**
+     * A registered render task.
+     */
+    public final class Handle {
+        private final Priority priority;
+        private final LongConsumer task;
+        private final List<Handle> followers = new ArrayList<>();
+        private boolean dirty = false;
+        private int deferredFrames = 0;
+
+        private Handle(Priority priority, LongConsumer task) {
+            this.priority = priority;
+            this.task = task;
+        }
+
+        /**
+         * Asks for this task to be rendered on the next pulse.
+         */
+        public void markDirty() {
+            dirty = true;
+            ensureRunning();
+        }
+
+        /**
+         * Marks the given task dirty every time this one is rendered, for views that mirror this one.
+         */
+        public void addFollower(Handle follower) {
+            followers.add(follower);
+        }
+
+        public void removeFollower(Handle follower) {
+            followers.remove(follower);
+        }
+
+        /**
+         * Unregisters the task, it won't be rendered anymore.
+         */
+        public void dispose() {
+            handles.remove(this);
+            handles.forEach(h -> h.followers.remove(this));
+        }
+    }
+
+    private static final long FRAME_BUDGET_NANOS = 10_000_000L;
+    private static final int MAX_DEFERRED_FRAMES = 6;
+
+    private final List<Handle> handles = new ArrayList<>();
+    private boolean running = false;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            renderFrame();
+        }
+    };
+
+    private RenderScheduler() {
+    }
+
+    private static class Holder {
+        private static final RenderScheduler INSTANCE = new RenderScheduler();
+    }
+
+    public static RenderScheduler getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Registers a render task.
+     *
+     * @param priority the priority of the task
+     * @param task     renders the view, receives the deadline ({@link System#nanoTime()}) of the current frame
+     *                 so it can leave out its expensive parts when it is already late
+     * @return the handle used to mark the task dirty
+     */
+    public Handle register(Priority priority, LongConsumer task) {
+        Handle handle = new Handle(priority, task);
+        handles.add(handle);
+        handles.sort(Comparator.comparing(h -> h.priority));
+        return handle;
+    }
+
+    private void ensureRunning() {
+        if (running) return;
+        running = true;
+        timer.start();
+    }
+
+    private void renderFrame() {
+        long frameStart = System.nanoTime();
+        long deadline = frameStart + FRAME_BUDGET_NANOS;
+
+        // Copy, tasks may register or dispose handles while rendering
+        for (Handle handle : List.copyOf(handles)) {
+            if (!handle.dirty) continue;
+
+            if (handle.priority == Priority.DEFERRABLE && System.nanoTime() > deadline
+                    && handle.deferredFrames < MAX_DEFERRED_FRAMES) {
+                handle.deferredFrames++;
+                continue;
+            }
+
+            handle.dirty = false;
+            handle.deferredFrames = 0;
+            handle.task.accept(deadline);
+            handle.followers.forEach(follower -> follower.dirty = true);
+        }
+
+        if (handles.stream().noneMatch(h -> h.dirty)) {
+            timer.stop();
+            running = false;
+        }
+    }
+}
@@ -1,370 +1,444 @@
 package heig.tb.jsmithfx.view;
 
 import heig.tb.jsmithfx.SmithChartViewModel;
-import heig.tb.jsmithfx.logic.SmithCalculator;
+import heig.tb.jsmithfx.logic.SimulationResult;
 import heig.tb.jsmithfx.model.DataPoint;
+import heig.tb.jsmithfx.model.FrequencyBand;
 import heig.tb.jsmithfx.model.Element.TypicalUnit.FrequencyUnit;
 import heig.tb.jsmithfx.utilities.Complex;
+import heig.tb.jsmithfx.utilities.DialogUtils;
 import heig.tb.jsmithfx.utilities.SmithUtilities;
+import heig.tb.jsmithfx.view.TraceSource.Quantity;
 import javafx.application.Platform;
-import javafx.beans.value.ChangeListener;
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.ReadOnlyListProperty;
 import javafx.collections.ListChangeListener;
-import javafx.geometry.Bounds;
-import javafx.geometry.Point2D;
-import javafx.scene.Node;
 import javafx.scene.Scene;
-import javafx.scene.chart.LineChart;
-import javafx.scene.chart.NumberAxis;
-import javafx.scene.chart.XYChart;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
-import javafx.scene.layout.Pane;
-import javafx.scene.layout.StackPane;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.Separator;
+import javafx.scene.control.ToolBar;
+import javafx.scene.layout.BorderPane;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Circle;
-import javafx.scene.shape.Line;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class S1PPlotterWindow {
 
-    private static S1PPlotterWindow instance;
+    // One window per view model, while it is open
+    private static final Map<SmithChartViewModel, S1PPlotterWindow> instances = new HashMap<>();
 
+    /**
+     * @return the window plotting the shared view model
+     */
     public static S1PPlotterWindow getInstance() {
-        if (instance == null) {
-            instance = new S1PPlotterWindow();
-        }
-        return instance;
+        return of(SmithChartViewModel.getInstance());
     }
 
-    private static final int MAX_RENDER_POINTS = 1500;
+    /**
+     * @return the window plotting the given view model, created if it is not open
+     */
+    public static S1PPlotterWindow of(SmithChartViewModel viewModel) {
+        return instances.computeIfAbsent(viewModel, S1PPlotterWindow::new);
+    }
 
-    // To be drawn
-    private final Stage stage;
-    private final XYChart.Series<Number, Number> baseSeries = new XYChart.Series<>();
-    private final XYChart.Series<Number, Number> f1Series = new XYChart.Series<>();
-    private final XYChart.Series<Number, Number> f2Series = new XYChart.Series<>();
-    private final XYChart.Series<Number, Number> f3Series = new XYChart.Series<>();
-    private final Circle loadPoint = new Circle(4, Color.YELLOW);
+    // Builds the envelope pyramids away from the FX thread
+    private static final ExecutorService PYRAMID_BUILDER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "s1p-plot-envelope");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    // Chart components
-    private final NumberAxis xAxis;
-    private final NumberAxis yAxis;
-    private final LineChart<Number, Number> lineChart;
+    private static final Color BASE_COLOR = Color.rgb(30, 144, 255, 0.3);
 
-    // Listeners
-    private final ListChangeListener<DataPoint> s1pListener;
-    private final ChangeListener<Boolean> redrawListener;
-    private boolean isUpdatePending = false;
+    /**
+     * What the plot shows: the y axis and the quantities drawn for each series.
+     */
+    private enum PlotView {
+        LOG_MAGNITUDE("Log magnitude", "Magnitude", "dB", Quantity.MAGNITUDE_DB),
+        GAMMA_MAGNITUDE("|Γ|", "|Γ|", "", Quantity.GAMMA_MAGNITUDE),
+        PHASE("Phase", "Phase", "°", Quantity.PHASE),
+        VSWR("VSWR", "VSWR", "", Quantity.VSWR),
+        GROUP_DELAY("Group delay", "Group delay", "ns", Quantity.GROUP_DELAY),
+        IMPEDANCE_MAGNITUDE("|Z|", "|Z|", "Ω", Quantity.IMPEDANCE_MAGNITUDE),
+        RESISTANCE_REACTANCE("R / X", "Impedance", "Ω", Quantity.RESISTANCE, Quantity.REACTANCE),
+        QUALITY_FACTOR("Q", "Q", "", Quantity.QUALITY_FACTOR);
+
+        private final String displayName;
+        private final String axisName;
+        private final String unit;
+        private final Quantity[] quantities;
+
+        PlotView(String displayName, String axisName, String unit, Quantity... quantities) {
+            this.displayName = displayName;
+            this.axisName = axisName;
+            this.unit = unit;
+            this.quantities = quantities;
+        }
 
-    // Cursor UI elements
-    private final Line vLine = new Line();
-    private final Line hLine = new Line();
-    private final Circle highlightPoint = new Circle(4, Color.RED);
-    private final Label infoBox = new Label();
+        String axisLabel() {
+            return unit.isEmpty() ? axisName : axisName + " (" + unit + ")";
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
 
     /**
-     * Private constructor for singleton pattern.
-     * Initializes the chart window and its components.
+     * The series that can be plotted, each with a color per quantity of a view. The simulated series
+     * are read from the published simulation result, the imported points from their list.
      */
-    private S1PPlotterWindow() {
-        stage = new Stage();
-        stage.setTitle("S1P LogMag");
+    private enum Series {
+        RAW_S1P("Raw S1P", SmithChartViewModel::s1pDataPointsProperty, null,
+                Color.rgb(110, 110, 110, 0.5), Color.rgb(170, 120, 40, 0.5)),
+        TRANSFORMED_S1P("S1P", SmithChartViewModel::transformedS1PPointsProperty, SimulationResult::getTransformedS1P,
+                BASE_COLOR, Color.rgb(220, 20, 60, 0.3)),
+        SWEEP("Sweep", SmithChartViewModel::sweepDataPointsProperty, SimulationResult::getSweep,
+                Color.MAGENTA, Color.DARKVIOLET);
+
+        private final String displayName;
+        private final Function<SmithChartViewModel, ReadOnlyListProperty<DataPoint>> points;
+        private final Function<SimulationResult, SimulationResult.Series> columns;
+        private final Color[] colors;
+
+        Series(String displayName, Function<SmithChartViewModel, ReadOnlyListProperty<DataPoint>> points,
+               Function<SimulationResult, SimulationResult.Series> columns, Color... colors) {
+            this.displayName = displayName;
+            this.points = points;
+            this.columns = columns;
+            this.colors = colors;
+        }
+    }
 
-        xAxis = new NumberAxis();
-        xAxis.setLabel("Frequency (Hz)");
-        xAxis.setAutoRanging(true);
-        xAxis.setAnimated(false);
+    private final SmithChartViewModel viewModel;
+    private final Stage stage;
+    private final EnvelopePlot plot = EnvelopePlot.create();
+    private final ComboBox<PlotView> viewBox = new ComboBox<>();
+    private final Map<Series, CheckBox> seriesBoxes = new EnumMap<>(Series.class);
+    // Last transformed S1P traces of the first quantity of the view
+    private final PersistenceTrail trail = new PersistenceTrail(Color.DODGERBLUE);
 
-        yAxis = new NumberAxis();
-        yAxis.setLabel("Magnitude (dB)");
-        yAxis.setAutoRanging(true);
-        yAxis.setAnimated(false);
+    // Listeners
+    private final Map<Series, ListChangeListener<DataPoint>> seriesListeners = new EnumMap<>(Series.class);
+    private final InvalidationListener trailsListener;
+    private final RenderScheduler.Handle updateRender;
+    private RenderScheduler.Handle followedChart;
+
+    // Columns of the last finished snapshot of each series, with the pyramids of the quantities already plotted
+    private final Map<Series, TraceSource> sources = new EnumMap<>(Series.class);
+    private final Set<Series> changedSeries = EnumSet.allOf(Series.class);
+    private final int[] buildGenerations = new int[Series.values().length];
+    // Sources whose missing pyramids are being built
+    private final Set<TraceSource> building = Collections.newSetFromMap(new IdentityHashMap<>());
+    private FrequencyUnit frequencyUnit = FrequencyUnit.HZ;
 
-        lineChart = new LineChart<>(xAxis, yAxis);
-        lineChart.setTitle("S1P Log Magnitude Plot");
-        lineChart.setCreateSymbols(false);
-        lineChart.setAnimated(false);
-        lineChart.setLegendVisible(false);
+    /**
+     * Private constructor, one window per view model.
+     * Initializes the chart window and its components.
+     */
+    private S1PPlotterWindow(SmithChartViewModel viewModel) {
+        this.viewModel = viewModel;
+        stage = new Stage();
+        stage.setTitle("Frequency Plot");
+
+        viewBox.getItems().setAll(PlotView.values());
+        viewBox.setValue(PlotView.LOG_MAGNITUDE);
+        viewBox.valueProperty().addListener(_ -> {
+            plot.resetView();
+            trail.clear();
+            requestUpdate();
+        });
 
-        setupSeries();
-        setupCursorOverlay();
+        ToolBar toolBar = new ToolBar(new Label("Plot"), viewBox, new Separator());
+        for (Series series : Series.values()) {
+            CheckBox box = new CheckBox(series.displayName);
+            box.setSelected(series != Series.RAW_S1P);
+            box.selectedProperty().addListener(_ -> requestUpdate());
+            seriesBoxes.put(series, box);
+            toolBar.getItems().add(box);
+        }
 
-        StackPane root = new StackPane(lineChart, createCursorLayer());
+        BorderPane root = new BorderPane(plot);
+        root.setTop(toolBar);
         Scene scene = new Scene(root, 900, 600);
         stage.setScene(scene);
-        SmithChartViewModel viewModel = SmithChartViewModel.getInstance();
 
-        setupInteractions();
+        // Secondary view, updated after the chart and postponed when the frame is already late
+        this.updateRender = RenderScheduler.getInstance().register(RenderScheduler.Priority.DEFERRABLE, _ -> performUpdate());
 
-        this.s1pListener = _ -> requestUpdate();
-        viewModel.transformedS1PPointsProperty().addListener(s1pListener);
+        for (Series series : Series.values()) {
+            ListChangeListener<DataPoint> listener = _ -> {
+                changedSeries.add(series);
+                requestUpdate();
+            };
+            seriesListeners.put(series, listener);
+            series.points.apply(viewModel).addListener(listener);
+        }
 
-        this.redrawListener = (_, oldVal, newVal) -> {
-            if (!newVal && oldVal) requestUpdate();
+        trailsListener = _ -> {
+            trail.clear();
+            plot.setTrail(viewModel.showS1PTrailsProperty().get() ? trail : null);
         };
-        viewModel.isRedrawing.addListener(redrawListener);
+        viewModel.showS1PTrailsProperty().addListener(trailsListener);
+        trailsListener.invalidated(viewModel.showS1PTrailsProperty());
+
+        MenuItem exportItem = new MenuItem("Export as PNG");
+        exportItem.setOnAction(_ -> exportPng());
+        MenuItem exportSvgItem = new MenuItem("Export as SVG");
+        exportSvgItem.setOnAction(_ -> exportSvg());
+        ContextMenu contextMenu = new ContextMenu(exportItem, exportSvgItem);
+        plot.setOnContextMenuRequested(event -> contextMenu.show(plot, event.getScreenX(), event.getScreenY()));
 
         requestUpdate();
         stage.setOnCloseRequest(_ -> cleanup());
     }
 
     /**
-     * Sets up the data series for the chart.
-     * It includes the base S1P data and up to three filter series.
+     * Exports the plot, as currently shown, to a PNG image rendered in tiles.
      */
-    private void setupSeries() {
-        baseSeries.setName("S1P Data");
-        f1Series.setName("Filter 1");
-        f2Series.setName("Filter 2");
-        f3Series.setName("Filter 3");
-
-        lineChart.getData().add(baseSeries);
-        lineChart.getData().add(f1Series);
-        lineChart.getData().add(f2Series);
-        lineChart.getData().add(f3Series);
-
-        styleSeries(baseSeries, "rgba(30, 144, 255, 0.3)", 1.0);
-        styleSeries(f1Series, "indianred", 2.0);
-        styleSeries(f2Series, "darkorange", 2.0);
-        styleSeries(f3Series, "forestgreen", 2.0);
+    private void exportPng() {
+        DialogUtils.showPngExportDialog("Export plot as PNG", 8192, stage).ifPresent(export ->
+                TiledPngExporter.export(plot.getWidth(), plot.getHeight(), export.getValue(), Color.WHITE,
+                                plot::renderTile, export.getKey())
+                        .whenComplete((_, error) -> {
+                            if (error == null) return;
+                            Logger.getLogger("Error").log(Level.SEVERE, "Error exporting the S1P plot: " + error.getMessage());
+                            Platform.runLater(() -> DialogUtils.showErrorAlert("Export failed", error.getMessage(), stage));
+                        }));
     }
 
     /**
-     * Creates the cursor overlay layer with crosshair lines, highlight point, load point, and info box.
-     * @return the cursor overlay pane
+     * Cleans up resources and listeners when the window is closed.
      */
-    private Pane createCursorLayer() {
-        Pane cursorLayer = new Pane();
-        cursorLayer.setMouseTransparent(true);
-        cursorLayer.getChildren().addAll(vLine, hLine, highlightPoint, loadPoint, infoBox);
-        return cursorLayer;
+    private void cleanup() {
+        seriesListeners.forEach((series, listener) -> series.points.apply(viewModel).removeListener(listener));
+        viewModel.showS1PTrailsProperty().removeListener(trailsListener);
+        if (followedChart != null) followedChart.removeFollower(updateRender);
+        updateRender.dispose();
+        for (int i = 0; i < buildGenerations.length; i++) buildGenerations[i]++;
+        sources.clear();
+        plot.setTraces(List.of());
+        plot.dispose();
+        instances.remove(viewModel);
+        System.out.println("S1P Window cleaned up.");
     }
 
     /**
-     * Sets up the style and initial visibility of the cursor overlay elements.
+     * Refreshes the plot (load point, filters) every time the Smith chart is rendered.
+     *
+     * @param chart the render task of the Smith chart
      */
-    private void setupCursorOverlay() {
-        String lineStyle = "-fx-stroke: rgba(200,200,200,0.8); -fx-stroke-dash-array: 5 5;";
-        vLine.setStyle(lineStyle);
-        hLine.setStyle(lineStyle);
-        vLine.setVisible(false);
-        hLine.setVisible(false);
-        highlightPoint.setVisible(false);
-
-        infoBox.setStyle("""
-            -fx-background-color: rgba(30,30,30,0.8);
-            -fx-text-fill: white;
-            -fx-padding: 5;
-            -fx-font-family: monospace;
-            -fx-font-size: 13px;
-            -fx-background-radius: 3;
-            -fx-border-color: rgba(255,255,255,0.3);
-            -fx-border-radius: 3;
-        """);
-        infoBox.setVisible(false);
+    public void followChart(RenderScheduler.Handle chart) {
+        if (followedChart == chart) return;
+        if (followedChart != null) followedChart.removeFollower(updateRender);
+        followedChart = chart;
+        chart.addFollower(updateRender);
     }
 
     /**
-     *
+     * Requests an update to the chart data.
+     * Ensures that only one update is done per frame, saves A LOT of resources.
      */
-    private void setupInteractions() {
-        Platform.runLater(() -> {
-            Node plotArea = lineChart.lookup(".chart-plot-background");
-            if (plotArea == null) return;
-
-            plotArea.layoutBoundsProperty().addListener(_ -> updateLoadPointPosition());
-
-            plotArea.setOnMouseMoved(e -> {
-                if (e.isShiftDown()) return;
-
-                double mouseX = e.getX();
+    private void requestUpdate() {
+        updateRender.markDirty();
+    }
 
-                // Convert mouse X to frequency
-                Number freqVal = xAxis.getValueForDisplay(mouseX);
-                if (freqVal == null) return;
+    private void performUpdate() {
+        // All the series share the frequency axis, a new unit means new snapshots
+        FrequencyUnit unit = frequencyUnit(viewModel);
+        if (unit != frequencyUnit) {
+            frequencyUnit = unit;
+            changedSeries.addAll(EnumSet.allOf(Series.class));
+            plot.resetView();
+            trail.clear();
+        }
+        plot.setAxisLabels("Frequency (" + frequencyUnit + ")", viewBox.getValue().axisLabel());
+
+        for (Series series : Series.values()) {
+            // Hidden series are snapshotted when shown again
+            if (!changedSeries.contains(series) || !seriesBoxes.get(series).isSelected()) continue;
+            changedSeries.remove(series);
+            double factor = frequencyUnit.getFactor();
+            if (series.columns != null) {
+                // Immutable, the columns are copied on the builder thread
+                SimulationResult result = viewModel.getSimulationResult();
+                SimulationResult.Series columns = series.columns.apply(result);
+                if (columns.isEmpty()) {
+                    clearSeries(series);
+                } else {
+                    scheduleBuild(series, () -> TraceSource.of(columns, factor, result.getZ0()));
+                }
+                continue;
+            }
 
-                var point = findNearest(freqVal.doubleValue());
-                if (point == null) return;
+            List<DataPoint> points = series.points.apply(viewModel).get();
+            if (points == null || points.isEmpty()) {
+                clearSeries(series);
+            } else {
+                // The list belongs to the FX thread, it is snapshotted before leaving it
+                TraceSource source = TraceSource.of(points, factor, viewModel.zo.get());
+                scheduleBuild(series, () -> source);
+            }
+        }
 
-                updateCursor(plotArea, point);
-            });
+        // Bands and load point are cheap, they are refreshed on every update
+        updateTraces(viewModel);
+        updateLoadPoint(viewModel);
+    }
 
-            plotArea.setOnMouseExited(_ -> {
-                vLine.setVisible(false);
-                hLine.setVisible(false);
-                highlightPoint.setVisible(false);
-                infoBox.setVisible(false);
-            });
-        });
+    private static FrequencyUnit frequencyUnit(SmithChartViewModel vm) {
+        if (!vm.s1pDataPointsProperty().isEmpty()) return vm.getProperFrequencyUnitS1P();
+        List<DataPoint> sweep = vm.sweepDataPointsProperty();
+        if (!sweep.isEmpty()) return FrequencyUnit.bestFit((sweep.getFirst().getFrequency() + sweep.getLast().getFrequency()) / 2);
+        return FrequencyUnit.HZ;
     }
 
-    private void updateCursor(Node plotArea, XYChart.Data<Number, Number> p) {
-        double xVal = xAxis.getDisplayPosition(p.getXValue());
-        double yVal = yAxis.getDisplayPosition(p.getYValue());
-
-        // Transform coordinates from plot area local space to scene, then to cursor layer local space.
-        Point2D pointInLayer = vLine.getParent().sceneToLocal(plotArea.localToScene(xVal, yVal));
-
-        double x = pointInLayer.getX();
-        double y = pointInLayer.getY();
-
-        // Calculate plot area bounds in cursor layer for lines
-        Bounds areaBounds = vLine.getParent().sceneToLocal(plotArea.localToScene(plotArea.getBoundsInLocal()));
-
-        // Vertical Line
-        vLine.setStartX(x);
-        vLine.setEndX(x);
-        vLine.setStartY(areaBounds.getMinY());
-        vLine.setEndY(areaBounds.getMaxY());
-        vLine.setVisible(true);
-
-        // Horizontal Line
-        hLine.setStartX(areaBounds.getMinX());
-        hLine.setEndX(areaBounds.getMaxX());
-        hLine.setStartY(y);
-        hLine.setEndY(y);
-        hLine.setVisible(true);
-
-        // Highlight Point
-        highlightPoint.setCenterX(x);
-        highlightPoint.setCenterY(y);
-        highlightPoint.setVisible(true);
-
-        // Info Box
-        infoBox.setText(formatInfo(p));
-        double labelOffset = 10;
-        double labelX = x + labelOffset;
-        double labelY = y + labelOffset;
-
-        // Prevent the info box from going outside the window
-        if (labelX + 150 > stage.getScene().getWidth()) labelX = x - 160;
-        if (labelY + 50 > stage.getScene().getHeight()) labelY = y - 60;
-
-        infoBox.setLayoutX(labelX);
-        infoBox.setLayoutY(labelY);
-        infoBox.setVisible(true);
+    private void clearSeries(Series series) {
+        buildGenerations[series.ordinal()]++;
+        sources.remove(series);
     }
 
     /**
-     * Formats the information string for the info box.
-     * @param p the data point to display
-     * @return the formatted info string
+     * Builds the snapshot of a series and the pyramids of the plotted quantities in the background.
+     * The quantities and pyramids are O(n) and computed away from the FX thread.
+     *
+     * @param snapshot the columns of the series, called on the builder thread
      */
-    private String formatInfo(XYChart.Data<Number, Number> p) {
-        return String.format("Freq: %s\nMag : %.2f dB",
-                SmithUtilities.displayBestUnitAndFormattedValue(p.getXValue().doubleValue(), FrequencyUnit.values()),
-                p.getYValue().doubleValue());
+    private void scheduleBuild(Series series, Supplier<TraceSource> snapshot) {
+        int generation = ++buildGenerations[series.ordinal()];
+        Quantity[] quantities = viewBox.getValue().quantities;
+
+        PYRAMID_BUILDER.execute(() -> {
+            try {
+                TraceSource source = snapshot.get();
+                for (Quantity quantity : quantities) source.pyramid(quantity);
+
+                Platform.runLater(() -> {
+                    if (generation != buildGenerations[series.ordinal()]
+                            || source.getFactor() != frequencyUnit.getFactor()) return;
+                    sources.put(series, source);
+                    if (series == Series.TRANSFORMED_S1P && viewModel.showS1PTrailsProperty().get()) addTrailFrame(source);
+                    updateTraces(viewModel);
+                    updateLoadPoint(viewModel);
+                });
+            } catch (Exception e) {
+                Logger.getLogger("Error").log(Level.SEVERE, "Error building the S1P plot data: " + e.getMessage());
+            }
+        });
     }
 
-
-    private XYChart.Data<Number, Number> findNearest(double targetX) {
-        var data = baseSeries.getData();
-        if (data.isEmpty()) return null;
-
-        // Binary search for nearest
-        int idx = Collections.binarySearch(data, new XYChart.Data<>(targetX, 0), Comparator.comparingDouble(o -> o.getXValue().doubleValue())
-        );
-
-        if (idx >= 0) return data.get(idx);
-
-        // If not exact match, binarySearch returns (-(insertion point) - 1)
-        int insertionPoint = -idx - 1;
-        if (insertionPoint == 0) return data.getFirst();
-        if (insertionPoint == data.size()) return data.getLast();
-
-        // Check which neighbor is closer
-        var p1 = data.get(insertionPoint - 1);
-        var p2 = data.get(insertionPoint);
-        double d1 = Math.abs(p1.getXValue().doubleValue() - targetX);
-        double d2 = Math.abs(p2.getXValue().doubleValue() - targetX);
-
-        return (d1 < d2) ? p1 : p2;
+    private void addTrailFrame(TraceSource source) {
+        EnvelopePyramid pyramid = source.cachedPyramid(viewBox.getValue().quantities[0]);
+        if (pyramid == null) return;
+        trail.addFrame(pyramid.size(), pyramid::x, pyramid::y);
+        plot.requestRedraw();
     }
 
     /**
-     * Styles a data series with the specified color and line width
-     * @param series the data series to style
-     * @param colorWebString the color in web string format (e.g., "rgba(255,0,0,1.0)")
-     * @param width the line width in pixels
+     * Builds the pyramids a source misses for the current view, after a change of view.
      */
-    private void styleSeries(XYChart.Series<Number, Number> series, String colorWebString, double width) {
-        String style = "-fx-stroke: " + colorWebString + "; -fx-stroke-width: " + width + "px;";
-        series.nodeProperty().addListener((_, _, node) -> {
-            if (node != null) node.setStyle(style);
+    private void buildMissingPyramids(TraceSource source) {
+        if (!building.add(source)) return;
+        Quantity[] quantities = viewBox.getValue().quantities;
+        PYRAMID_BUILDER.execute(() -> {
+            try {
+                for (Quantity quantity : quantities) source.pyramid(quantity);
+            } catch (Exception e) {
+                Logger.getLogger("Error").log(Level.SEVERE, "Error building the S1P plot data: " + e.getMessage());
+            } finally {
+                Platform.runLater(() -> {
+                    building.remove(source);
+                    requestUpdate();
+                });
+            }
         });
-        if (series.getNode() != null) series.getNode().setStyle(style);
     }
 
     /**
-     * Cleans up resources and listeners when the window is closed.
+     * Exports the plot, as currently shown, to an SVG document.
      */
-    private void cleanup() {
-        SmithChartViewModel.getInstance().transformedS1PPointsProperty().removeListener(s1pListener);
-        SmithChartViewModel.getInstance().isRedrawing.removeListener(redrawListener);
-        lineChart.getData().forEach(s -> s.getData().clear());
-        instance = null;
-        System.out.println("S1P Window cleaned up.");
-    }
-
-    /**
-     * Requests an update to the chart data.
-     * Ensures that only one update is pending at a time, saves A LOT of resources.
-     */
-    private void requestUpdate() {
-        if (isUpdatePending) return;
-        isUpdatePending = true;
-        Platform.runLater(this::performUpdate);
+    private void exportSvg() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export plot as SVG");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("SVG Images", "*.svg"));
+        File file = fileChooser.showSaveDialog(stage);
+        if (file == null) return;
+
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            plot.exportSvg(out);
+        } catch (IOException e) {
+            Logger.getLogger("Error").log(Level.SEVERE, "Error exporting the S1P plot: " + e.getMessage());
+            DialogUtils.showErrorAlert("Export failed", e.getMessage(), stage);
+        }
     }
 
-    private void performUpdate() {
-        try {
-            SmithChartViewModel vm = SmithChartViewModel.getInstance();
-            var rawList = vm.transformedS1PPointsProperty().get();
-
-            if (rawList == null || rawList.isEmpty()) {
-                lineChart.getData().forEach(s -> s.getData().clear());
-                return;
+    private void updateTraces(SmithChartViewModel vm) {
+        PlotView view = viewBox.getValue();
+        plot.setCursorFormatter((freq, value) -> String.format("Freq: %s\n%s: %.4g %s",
+                SmithUtilities.displayBestUnitAndFormattedValue(freq * frequencyUnit.getFactor(), FrequencyUnit.values()),
+                view.axisName, value, view.unit));
+
+        List<EnvelopePlot.Trace> traces = new ArrayList<>();
+        for (Series series : Series.values()) {
+            TraceSource source = sources.get(series);
+            if (source == null || !seriesBoxes.get(series).isSelected()) continue;
+
+            for (int q = 0; q < view.quantities.length; q++) {
+                Quantity quantity = view.quantities[q];
+                EnvelopePyramid pyramid = source.cachedPyramid(quantity);
+                if (pyramid == null) {
+                    buildMissingPyramids(source);
+                    continue;
+                }
+
+                String label = view.quantities.length > 1 ? series.displayName + " " + quantity.getLabel() : series.displayName;
+                traces.add(new EnvelopePlot.Trace(pyramid, series.colors[q % series.colors.length], 1.0, label));
+
+                // A band is the transformed series restricted to its frequency range, so it shares the same pyramid
+                if (series == Series.TRANSFORMED_S1P) {
+                    List<FrequencyBand> bands = vm.getFrequencyBands();
+                    for (int b = 0; b < bands.size(); b++) {
+                        FrequencyBand band = bands.get(b);
+                        traces.add(filterTrace(pyramid, BandColors.of(b), band.getMinFrequency(), band.getMaxFrequency()));
+                    }
+                }
             }
-
-            var properFreqUnit = vm.getProperFrequencyUnitS1P();
-            xAxis.setLabel("Frequency (" + properFreqUnit + ")");
-            double freqFactor = properFreqUnit.getFactor();
-
-            List<XYChart.Data<Number, Number>> baseData = new ArrayList<>();
-            List<XYChart.Data<Number, Number>> f1Data = new ArrayList<>();
-            List<XYChart.Data<Number, Number>> f2Data = new ArrayList<>();
-            List<XYChart.Data<Number, Number>> f3Data = new ArrayList<>();
-
-            int totalPoints = rawList.size();
-            int step = Math.max(1, totalPoints / MAX_RENDER_POINTS);
-
-            for (int i = 0; i < totalPoints; i += step) {
-                addDataPoint(rawList.get(i), vm, freqFactor, baseData, f1Data, f2Data, f3Data);
-            }
-            // Ensure last point
-            if ((totalPoints - 1) % step != 0) {
-                addDataPoint(rawList.getLast(), vm, freqFactor, baseData, f1Data, f2Data, f3Data);
-            }
-
-            // Update Series Data
-            baseSeries.getData().setAll(baseData);
-            updateFilterSeries(f1Series, f1Data, vm.filter1EnabledProperty().get());
-            updateFilterSeries(f2Series, f2Data, vm.filter2EnabledProperty().get());
-            updateFilterSeries(f3Series, f3Data, vm.filter3EnabledProperty().get());
-
-            // Update Load Point
-            updateLoadPoint(vm, freqFactor);
-
-        } finally {
-            isUpdatePending = false;
         }
+        plot.setTraces(traces);
+    }
+
+    private EnvelopePlot.Trace filterTrace(EnvelopePyramid pyramid, Color color, double minFreq, double maxFreq) {
+        double factor = frequencyUnit.getFactor();
+        return new EnvelopePlot.Trace(pyramid, color, 2.0, minFreq / factor, maxFreq / factor);
     }
 
-    private void updateLoadPoint(SmithChartViewModel vm, double freqFactor) {
+    private void updateLoadPoint(SmithChartViewModel vm) {
         Complex gamma;
         Complex previewGamma = vm.getPreviewElementGamma();
 
@@ -374,77 +448,14 @@ public class S1PPlotterWindow {
             gamma = vm.getCurrentInteractionStartGamma();
         }
 
-        if (!vm.isAnyUseS1PAsLoad()) {
-            loadPoint.setVisible(false);
-            return;
-        }
-
-        // Store the current values for repositioning
-        double db = SmithCalculator.calculateReflectionCoefficientDb(gamma);
-        double loadFreq = vm.frequencyProperty().get() / freqFactor;
-
-        // Store these for resize updates
-        loadPoint.setUserData(new double[]{loadFreq, db});
-
-        positionLoadPoint(loadFreq, db);
-    }
-
-
-    private void positionLoadPoint(double freq, double db) {
-        Node plotArea = lineChart.lookup(".chart-plot-background");
-        if (plotArea == null) {
-            loadPoint.setVisible(false);
-            return;
-        }
-
-        double xPos = xAxis.getDisplayPosition(freq);
-        double yPos = yAxis.getDisplayPosition(db);
-
-        if (Double.isNaN(xPos) || Double.isNaN(yPos) || !Double.isFinite(xPos) || !Double.isFinite(yPos)) {
-            loadPoint.setVisible(false);
+        if (!vm.isAnyUseS1PAsLoad() || gamma == null) {
+            plot.setMarker(Double.NaN, Double.NaN);
             return;
         }
 
-        Point2D pointInScene = plotArea.localToScene(xPos, yPos);
-        Point2D pointInLayer = loadPoint.getParent().sceneToLocal(pointInScene);
-
-        loadPoint.setCenterX(pointInLayer.getX());
-        loadPoint.setCenterY(pointInLayer.getY());
-        loadPoint.setVisible(true);
-    }
-
-    private void updateLoadPointPosition() {
-        if (!loadPoint.isVisible() && loadPoint.getUserData() == null) return;
-
-        double[] coords = (double[]) loadPoint.getUserData();
-        if (coords != null) {
-            Platform.runLater(() -> positionLoadPoint(coords[0], coords[1]));
-        }
-    }
-
-    private void addDataPoint(DataPoint dp, SmithChartViewModel vm, double freqFactor,
-                              List<XYChart.Data<Number, Number>> base,
-                              List<XYChart.Data<Number, Number>> f1,
-                              List<XYChart.Data<Number, Number>> f2,
-                              List<XYChart.Data<Number, Number>> f3) {
-
-        if (dp.gammaProperty().get() == null) return;
-
-        double freq = dp.getFrequency() / freqFactor;
-        double db = SmithCalculator.calculateReflectionCoefficientDb(dp.gammaProperty().get());
-
-        var dataNode = new XYChart.Data<Number, Number>(freq, db);
-        base.add(dataNode);
-
-        double rawFreq = dp.getFrequency();
-        if (vm.filter1EnabledProperty().get() && vm.isFrequencyInRangeF1(rawFreq)) f1.add(new XYChart.Data<>(freq, db));
-        if (vm.filter2EnabledProperty().get() && vm.isFrequencyInRangeF2(rawFreq)) f2.add(new XYChart.Data<>(freq, db));
-        if (vm.filter3EnabledProperty().get() && vm.isFrequencyInRangeF3(rawFreq)) f3.add(new XYChart.Data<>(freq, db));
-    }
-
-    private void updateFilterSeries(XYChart.Series<Number, Number> series, List<XYChart.Data<Number, Number>> data, boolean enabled) {
-        if (enabled && !data.isEmpty()) series.getData().setAll(data);
-        else series.getData().clear();
+        double value = viewBox.getValue().quantities[0].valueOf(gamma, vm.zo.get());
+        double loadFreq = vm.frequencyProperty().get() / frequencyUnit.getFactor();
+        plot.setMarker(loadFreq, value);
     }
 
     public void show() {
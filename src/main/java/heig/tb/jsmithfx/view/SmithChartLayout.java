@@ -25,6 +25,8 @@ public class SmithChartLayout {
     public double getCenterX() { return centerX; }
     public double getCenterY() { return centerY; }
     public double getRadius() { return radius; }
+    public double getWidth() { return width; }
+    public double getHeight() { return height; }
 
     /**
      * Converts a Gamma complex value to an X pixel coordinate.
@@ -41,6 +43,20 @@ public class SmithChartLayout {
         return centerY - gamma.imag() * radius;
     }
 
+    /**
+     * Converts the real part of a Gamma value to an X pixel coordinate.
+     */
+    public double toScreenX(double gammaReal) {
+        return centerX + gammaReal * radius;
+    }
+
+    /**
+     * Converts the imaginary part of a Gamma value to a Y pixel coordinate.
+     */
+    public double toScreenY(double gammaImag) {
+        return centerY - gammaImag * radius;
+    }
+
     /**
      * Returns a JavaFX Point2D for a given Gamma.
      */
@@ -1,22 +1,40 @@
 package heig.tb.jsmithfx.view;
 
 import heig.tb.jsmithfx.SmithChartViewModel;
+import heig.tb.jsmithfx.logic.FrequencyBandIndex;
+import heig.tb.jsmithfx.logic.LossyPathTessellator;
+import heig.tb.jsmithfx.logic.SimulationResult.Series;
 import heig.tb.jsmithfx.logic.SmithCalculator;
 import heig.tb.jsmithfx.model.CircuitElement;
 import heig.tb.jsmithfx.model.DataPoint;
 import heig.tb.jsmithfx.utilities.Complex;
+import heig.tb.jsmithfx.utilities.PerformanceMonitor;
+import heig.tb.jsmithfx.utilities.PerformanceMonitor.Metric;
 import heig.tb.jsmithfx.utilities.SmithUtilities;
+import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.ArcType;
 import javafx.scene.text.Font;
 import javafx.scene.text.TextAlignment;
 import javafx.scene.text.Text;
+import javafx.scene.transform.Transform;
 import javafx.util.Pair;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
 
 public class SmithChartRenderer {
 
@@ -26,13 +44,199 @@ public class SmithChartRenderer {
     private final double thickLineValue = 1;
     private final double thinLineValue = 0.4;
     private Font LABEL_FONT = new Font("Arial", 10);
+    private static final Font HUD_FONT = Font.font("Monospaced", 11);
 
     private final List<ChartPoint> activePoints = new ArrayList<>();
     private int currentSelectedIndex = -1;
 
+    // Lossy path tessellation, max distance in pixels between the drawn polyline and the real curve
+    private static final double LOSSY_PATH_TOLERANCE_PX = 0.35;
+    private final LossyPathTessellator lossyTessellator = new LossyPathTessellator();
+    private double[] lossyXPoints = new double[256];
+    private double[] lossyYPoints = new double[256];
+
+    // Path geometry of the committed elements, previews go through the scratch entry
+    private final Map<CircuitElement, ArcGeometry> arcGeometryCache = new IdentityHashMap<>();
+    private final ArcGeometry scratchGeometry = new ArcGeometry();
+
+    // Large point clouds are drawn into bitmaps on background threads
+    private final PointCloudRasterizer s1pRasterizer = new PointCloudRasterizer(PointCloudRasterizer.Marker.RING);
+    private final PointCloudRasterizer sweepRasterizer = new PointCloudRasterizer(PointCloudRasterizer.Marker.DOT);
+    private static final int SWEEP_ARGB = PointCloudRasterizer.toArgb(Color.MAGENTA);
+    private static final double SWEEP_POINT_SIZE = 2.5;
+    private final DensityHistogram s1pDensity = new DensityHistogram();
+    // Last transformed S1P traces, fading under the current one
+    private final PersistenceTrail s1pTrail = new PersistenceTrail(Color.DODGERBLUE);
+
+    // Grid circles cached per zoom bucket
+    private final Map<Integer, SmithGrid> gridCache = new HashMap<>();
+    private static final int MAX_CACHED_GRIDS = 32;
+    // Past this radius on screen, a grid arc is drawn as a polyline
+    private static final double MAX_GRID_OVAL_RADIUS_PX = 100_000;
+    private static final int LARGE_GRID_ARC_SEGMENTS = 32;
+    private final double[] gridArcXPoints = new double[LARGE_GRID_ARC_SEGMENTS + 1];
+    private final double[] gridArcYPoints = new double[LARGE_GRID_ARC_SEGMENTS + 1];
+
+    // Draft frames draw at most this many point markers per layer, the next frame refines them
+    private static final int DRAFT_MAX_MARKERS = 2_000;
+
+    // Last full frame, moved as a bitmap during a zoom or pan gesture
+    private WritableImage gestureFrame;
+    private double gestureFrameScale;
+    private double gestureFrameOffsetX;
+    private double gestureFrameOffsetY;
+
+    // Layout of the whole exported chart when rendering an export, null when rendering on screen
+    private final SmithChartLayout exportLayout;
+    private final FxChartGraphics screenGraphics;
+    // Zoom of the exported view, the tiles are drawn at a larger scale but the grid must match the view
+    private double exportGridZoom = Double.NaN;
+    // Large point clouds of the export tile, rasterized beforehand off the FX thread, null when drawn with vector calls
+    private int[] preparedS1PPixels;
+    private int[] preparedSweepPixels;
+    private WritableImage preparedImage;
+    // Size of the surface being drawn, for the culling
+    private double viewWidth;
+    private double viewHeight;
+
     public SmithChartRenderer(Canvas smithCanvas, Canvas cursorCanvas) {
+        this(smithCanvas, cursorCanvas, null);
+    }
+
+    private SmithChartRenderer(Canvas smithCanvas, Canvas cursorCanvas, SmithChartLayout exportLayout) {
         this.smithCanvas = smithCanvas;
         this.cursorCanvas = cursorCanvas;
+        this.exportLayout = exportLayout;
+        this.screenGraphics = smithCanvas != null ? new FxChartGraphics(smithCanvas.getGraphicsContext2D()) : null;
+    }
+
+    /**
+     * Creates a tile renderer for a PNG export of the chart, as seen on a canvas of the given size with the given view.
+     * The tiles are rendered by a renderer of their own, so the exported chart doesn't disturb the one on screen,
+     * from a snapshot taken now, so the chart can be edited while the export runs. The large point clouds of
+     * each tile are rasterized on the exporting thread beforehand, the FX thread only draws their images.
+     *
+     * @param width   the width of the canvas the chart is laid out on
+     * @param height  the height of the canvas the chart is laid out on
+     * @param scale   the zoom of the exported view
+     * @param offsetX the horizontal pan of the exported view
+     * @param offsetY the vertical pan of the exported view
+     */
+    public static TiledPngExporter.TileRenderer exportTiles(SmithChartViewModel viewModel, double width, double height,
+                                                            double scale, double offsetX, double offsetY) {
+        SmithChartLayout layout = new SmithChartLayout(width, height);
+        ChartState state = ChartState.snapshot(viewModel);
+        Series s1p = state.result().getTransformedS1P();
+        Series sweep = state.result().getSweep();
+        boolean rasterS1P = !state.s1pAsDensity() && s1p.size() >= PointCloudRasterizer.RASTER_THRESHOLD;
+        boolean rasterSweep = sweep.size() >= PointCloudRasterizer.RASTER_THRESHOLD;
+        boolean densityS1P = state.s1pAsDensity() && !s1p.isEmpty();
+
+        return new TiledPngExporter.TileRenderer() {
+            private SmithChartRenderer tileRenderer;
+            private int[] s1pPixels;
+            private int[] sweepPixels;
+            private int[] s1pCounts;
+
+            @Override
+            public void prepare(int tileWidth, int tileHeight, double tileScale, double tileOffsetX, double tileOffsetY) {
+                // The counts don't depend on the view, they are shared by all the tiles
+                if (densityS1P && s1pCounts == null) s1pCounts = DensityHistogram.countsOf(s1p);
+                double chartScale = scale * tileScale;
+                double chartOffsetX = offsetX * tileScale + tileOffsetX;
+                double chartOffsetY = offsetY * tileScale + tileOffsetY;
+                if (rasterS1P) {
+                    s1pPixels = pixelsFor(s1pPixels, tileWidth, tileHeight);
+                    PointCloudRasterizer.rasterize(s1pPixels, tileWidth, tileHeight, PointCloudRasterizer.Marker.RING,
+                            s1p, s1pColors(state), layout, chartScale, chartOffsetX, chartOffsetY, state.s1pPointSize());
+                }
+                if (rasterSweep) {
+                    sweepPixels = pixelsFor(sweepPixels, tileWidth, tileHeight);
+                    PointCloudRasterizer.rasterize(sweepPixels, tileWidth, tileHeight, PointCloudRasterizer.Marker.DOT,
+                            sweep, _ -> SWEEP_ARGB, layout, chartScale, chartOffsetX, chartOffsetY, SWEEP_POINT_SIZE);
+                }
+            }
+
+            @Override
+            public void render(Canvas tile, double tileScale, double tileOffsetX, double tileOffsetY) {
+                if (tileRenderer == null || tileRenderer.smithCanvas != tile) {
+                    tileRenderer = new SmithChartRenderer(tile, null, layout);
+                    tileRenderer.exportGridZoom = scale;
+                    if (s1pCounts != null) tileRenderer.s1pDensity.setCounts(s1p, s1pCounts);
+                }
+                tileRenderer.preparedS1PPixels = s1pPixels;
+                tileRenderer.preparedSweepPixels = sweepPixels;
+                tileRenderer.renderLayers(tileRenderer.screenGraphics, tile.getWidth(), tile.getHeight(), state,
+                        scale * tileScale, offsetX * tileScale + tileOffsetX, offsetY * tileScale + tileOffsetY,
+                        -1, Long.MAX_VALUE, Integer.MAX_VALUE);
+            }
+        };
+    }
+
+    private static int[] pixelsFor(int[] pixels, int width, int height) {
+        return pixels != null && pixels.length == width * height ? pixels : new int[width * height];
+    }
+
+    /**
+     * Colors of the S1P points by band. The points come sorted by frequency, the cursor walks the band bounds
+     * along with them, so the colors must be taken in order, once.
+     */
+    private static IntUnaryOperator s1pColors(ChartState state) {
+        Series points = state.result().getTransformedS1P();
+        FrequencyBandIndex.Cursor bands = state.bands().cursor();
+        return i -> BandColors.argbOf(bands.bandOf(points.frequency(i)));
+    }
+
+    /**
+     * Sets the action run when a rasterized point cloud or a density heatmap finished in the background,
+     * typically a redraw.
+     */
+    public void setOnRasterReady(Runnable onRasterReady) {
+        s1pRasterizer.setOnReady(onRasterReady);
+        sweepRasterizer.setOnReady(onRasterReady);
+        s1pDensity.setOnReady(onRasterReady);
+    }
+
+    /**
+     * Writes the chart, as seen on a canvas of the given size with the given view, as an SVG document.
+     * The drawing operations are replayed into the document as they are made, so large point sets are
+     * streamed to the output instead of being held in memory.
+     *
+     * @param width      the width of the canvas the chart is laid out on, and of the document
+     * @param height     the height of the canvas the chart is laid out on, and of the document
+     * @param scale      the zoom of the exported view
+     * @param offsetX    the horizontal pan of the exported view
+     * @param offsetY    the vertical pan of the exported view
+     * @param background painted behind the chart, null for none
+     * @param maxMarkers the maximum number of S1P and sweep markers per layer, the others are evenly skipped
+     * @param out        the destination, flushed but not closed
+     */
+    public static void exportSvg(SmithChartViewModel viewModel, double width, double height, double scale,
+                                 double offsetX, double offsetY, Color background, int maxMarkers, Writer out) throws IOException {
+        SmithChartRenderer renderer = new SmithChartRenderer(null, null, new SmithChartLayout(width, height));
+        SvgChartGraphics svg = new SvgChartGraphics(out, width, height, background);
+        try {
+            renderer.renderLayers(svg, width, height, ChartState.snapshot(viewModel), scale, offsetX, offsetY, -1,
+                    Long.MAX_VALUE, maxMarkers);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        svg.finish();
+    }
+
+    /**
+     * Adds the current transformed S1P points to the persistence trail, shown when the trails are enabled.
+     */
+    public void addS1PTrailFrame(List<DataPoint> dataPoints) {
+        s1pTrail.addFrame(dataPoints.size(), i -> dataPoints.get(i).getGamma().real(),
+                i -> dataPoints.get(i).getGamma().imag());
+    }
+
+    /**
+     * Forgets the persistence trail of the S1P points.
+     */
+    public void clearS1PTrail() {
+        s1pTrail.clear();
     }
 
     /**
@@ -40,8 +244,48 @@ public class SmithChartRenderer {
      * or the window size changes.
      */
     public void render(SmithChartViewModel viewModel, double currentScale, double offsetX, double offsetY, int selectedIndex) {
-        GraphicsContext gc = smithCanvas.getGraphicsContext2D();
-        SmithChartLayout layout = new SmithChartLayout(smithCanvas.getWidth(), smithCanvas.getHeight());
+        render(viewModel, currentScale, offsetX, offsetY, selectedIndex, Long.MAX_VALUE);
+    }
+
+    /**
+     * Clears and redraws the canvas within a frame budget. The S1P and sweep points are the expensive
+     * layers, they are left out when the deadline is already passed once the layers below are drawn.
+     *
+     * @param deadlineNanos the {@link System#nanoTime()} after which the expensive layers are skipped
+     * @return true if every layer was drawn, false if some were left out and a new frame is needed
+     */
+    public boolean render(SmithChartViewModel viewModel, double currentScale, double offsetX, double offsetY,
+                          int selectedIndex, long deadlineNanos) {
+        return render(viewModel, currentScale, offsetX, offsetY, selectedIndex, deadlineNanos, false);
+    }
+
+    /**
+     * Clears and redraws the canvas, optionally as a draft.
+     * A draft only draws a subset of the S1P and sweep markers, it is meant to be followed by a full frame.
+     *
+     * @param deadlineNanos the {@link System#nanoTime()} after which the expensive layers are skipped
+     * @param draft         true to draw the point layers at reduced detail
+     * @return true if every layer was drawn, false if some were left out and a new frame is needed
+     */
+    public boolean render(SmithChartViewModel viewModel, double currentScale, double offsetX, double offsetY,
+                          int selectedIndex, long deadlineNanos, boolean draft) {
+        return renderLayers(screenGraphics, smithCanvas.getWidth(), smithCanvas.getHeight(), ChartState.live(viewModel), currentScale,
+                offsetX, offsetY, selectedIndex, deadlineNanos, draft ? DRAFT_MAX_MARKERS : Integer.MAX_VALUE);
+    }
+
+    /**
+     * Draws every layer of the chart on the given surface.
+     *
+     * @param maxMarkers the maximum number of S1P and sweep markers per layer
+     * @return true if every layer was drawn, false if some were left out because of the deadline
+     */
+    private boolean renderLayers(ChartGraphics gc, double width, double height, ChartState state,
+                                 double currentScale, double offsetX, double offsetY, int selectedIndex,
+                                 long deadlineNanos, int maxMarkers) {
+        boolean complete = true;
+        SmithChartLayout layout = exportLayout != null ? exportLayout : new SmithChartLayout(width, height);
+        viewWidth = width;
+        viewHeight = height;
 
         activePoints.clear();
 
@@ -49,27 +293,205 @@ public class SmithChartRenderer {
 
         gc.save();
         // Clear the canvas before redrawing
-        gc.clearRect(0, 0, smithCanvas.getWidth(), smithCanvas.getHeight());
+        gc.clearRect(0, 0, width, height);
 
         gc.translate(offsetX, offsetY);
         gc.scale(currentScale, currentScale);
 
-        updateFontSize();
+        updateFontSize(layout);
+
+        PerformanceMonitor perf = state.monitor();
+        long frameStart = perf.start();
+        perf.resetPointCounts();
 
         // Draw the static parts of the chart
-        drawSmithGrid(gc, viewModel, layout);
-        drawVSWRCircles(gc, viewModel, layout);
-        drawS1PPoints(gc, viewModel, layout, currentScale, offsetX, offsetY);
-        drawImpedancePath(gc, viewModel, layout);
-        drawImpedancePoints(gc, viewModel, layout, selectedIndex, currentScale, offsetX, offsetY);
-        drawDiscreteComponentPreviews(gc, viewModel, layout);
-        drawSweepPoints(gc, viewModel, layout, currentScale, offsetX, offsetY);
+        long layerStart = perf.start();
+        drawSmithGrid(gc, state, layout, Double.isNaN(exportGridZoom) ? currentScale : exportGridZoom,
+                -offsetX / currentScale, -offsetY / currentScale,
+                (width - offsetX) / currentScale, (height - offsetY) / currentScale);
+        perf.stop(Metric.LAYER_GRID, layerStart);
+
+        layerStart = perf.start();
+        drawVSWRCircles(gc, state, layout);
+        perf.stop(Metric.LAYER_VSWR, layerStart);
+
+        if (System.nanoTime() <= deadlineNanos) {
+            layerStart = perf.start();
+            drawS1PPoints(gc, state, layout, currentScale, offsetX, offsetY, maxMarkers);
+            perf.stop(Metric.LAYER_S1P, layerStart);
+        } else {
+            complete = false;
+        }
+
+        layerStart = perf.start();
+        drawImpedancePath(gc, state, layout, currentScale);
+        perf.stop(Metric.LAYER_PATH, layerStart);
 
+        layerStart = perf.start();
+        drawImpedancePoints(gc, state, layout, selectedIndex, currentScale, offsetX, offsetY);
+        perf.stop(Metric.LAYER_POINTS, layerStart);
+
+        layerStart = perf.start();
+        drawDiscreteComponentPreviews(gc, state, layout);
+        perf.stop(Metric.LAYER_PREVIEWS, layerStart);
+
+        if (System.nanoTime() <= deadlineNanos) {
+            layerStart = perf.start();
+            drawSweepPoints(gc, state, layout, currentScale, offsetX, offsetY, maxMarkers);
+            perf.stop(Metric.LAYER_SWEEP, layerStart);
+        } else {
+            complete = false;
+        }
+
+        gc.restore();
+
+        perf.stop(Metric.RENDER_TOTAL, frameStart);
+        perf.frameRendered();
+
+        if (perf.isEnabled()) drawPerformanceHud(gc, perf);
+        return complete;
+    }
+
+    /**
+     * Keeps a copy of what the canvas currently shows, along with the view it was drawn with,
+     * so a zoom or pan gesture can move it around instead of rendering every event.
+     */
+    public void captureGestureFrame(double currentScale, double offsetX, double offsetY) {
+        int width = (int) Math.ceil(smithCanvas.getWidth());
+        int height = (int) Math.ceil(smithCanvas.getHeight());
+        if (width <= 0 || height <= 0) return;
+
+        // Capture at the resolution of the screen so the bitmap isn't blurrier than the chart itself
+        double outputScale = smithCanvas.getScene() != null && smithCanvas.getScene().getWindow() != null
+                ? smithCanvas.getScene().getWindow().getOutputScaleX() : 1.0;
+
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        parameters.setTransform(Transform.scale(outputScale, outputScale));
+
+        gestureFrame = smithCanvas.snapshot(parameters, null);
+        gestureFrameScale = currentScale;
+        gestureFrameOffsetX = offsetX;
+        gestureFrameOffsetY = offsetY;
+    }
+
+    public boolean hasGestureFrame() {
+        return gestureFrame != null;
+    }
+
+    public void releaseGestureFrame() {
+        gestureFrame = null;
+    }
+
+    /**
+     * Draws the captured frame moved to the given view. Costs a single image blit whatever the content.
+     * The points can't be hit while the chart is a bitmap, they come back with the next full frame.
+     *
+     * @return false if there is no usable captured frame (none or the canvas was resized), a full render is needed
+     */
+    public boolean renderGestureFrame(SmithChartViewModel viewModel, double currentScale, double offsetX, double offsetY) {
+        if (gestureFrame == null) return false;
+
+        double width = smithCanvas.getWidth();
+        double height = smithCanvas.getHeight();
+        double outputScale = gestureFrame.getWidth() / Math.ceil(width);
+        if (Math.abs(gestureFrame.getHeight() / Math.ceil(height) - outputScale) > 1e-6) {
+            gestureFrame = null;
+            return false;
+        }
+
+        // Same mapping as the view: a logical point p is shown at p * scale + offset
+        double ratio = currentScale / gestureFrameScale;
+        double dx = offsetX - gestureFrameOffsetX * ratio;
+        double dy = offsetY - gestureFrameOffsetY * ratio;
+
+        activePoints.clear();
+        currentSelectedIndex = -1;
+
+        GraphicsContext gc = smithCanvas.getGraphicsContext2D();
+        gc.setImageSmoothing(true);
+        gc.clearRect(0, 0, width, height);
+        gc.drawImage(gestureFrame, dx, dy,
+                gestureFrame.getWidth() / outputScale * ratio, gestureFrame.getHeight() / outputScale * ratio);
+
+        PerformanceMonitor perf = viewModel.getPerformanceMonitor();
+        perf.frameRendered();
+        if (perf.isEnabled()) drawPerformanceHud(screenGraphics, perf);
+        return true;
+    }
+
+    /**
+     * Draws the pixels of a point cloud rasterized for the current export tile, over the whole tile.
+     */
+    private void drawPreparedPixels(ChartGraphics gc, int[] pixels) {
+        int width = (int) Math.ceil(viewWidth);
+        int height = (int) Math.ceil(viewHeight);
+        if (preparedImage == null || preparedImage.getWidth() != width || preparedImage.getHeight() != height) {
+            preparedImage = new WritableImage(width, height);
+        }
+        preparedImage.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(), pixels, 0, width);
+
+        gc.save();
+        gc.setTransform(1, 0, 0, 1, 0, 0);
+        gc.drawImage(preparedImage, 0, 0, width, height);
         gc.restore();
     }
 
-    private void drawDiscreteComponentPreviews(GraphicsContext gc, SmithChartViewModel viewModel, SmithChartLayout layout) {
-        List<Complex> previews = viewModel.getDiscreteComponentGammas();
+    /**
+     * Checks whether a point, given in absolute canvas coordinates, can be seen on the canvas.
+     *
+     * @param margin half the size of the drawn marker, in pixels
+     */
+    private boolean isOnCanvas(double absoluteX, double absoluteY, double margin) {
+        return absoluteX >= -margin && absoluteX <= viewWidth + margin
+                && absoluteY >= -margin && absoluteY <= viewHeight + margin;
+    }
+
+    /**
+     * Draws the performance overlay in the top left corner of the chart, in screen coordinates.
+     */
+    private void drawPerformanceHud(ChartGraphics gc, PerformanceMonitor perf) {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("FPS %.1f", perf.getFramesPerSecond()));
+        lines.add("                 p50      p95      max (ms)");
+        for (Metric metric : Metric.values()) {
+            if (metric == Metric.RECALCULATIONS_PER_ACTION) continue;
+            if (perf.sampleCount(metric) == 0) continue;
+            lines.add(String.format("%-15s %7.2f  %7.2f  %7.2f", metric.getLabel(),
+                    perf.percentile(metric, 50) / 1e6,
+                    perf.percentile(metric, 95) / 1e6,
+                    perf.percentile(metric, 100) / 1e6));
+        }
+        if (perf.sampleCount(Metric.RECALCULATIONS_PER_ACTION) > 0) {
+            lines.add(String.format("%-15s %7.0f  %7.0f  %7.0f", Metric.RECALCULATIONS_PER_ACTION.getLabel(),
+                    perf.percentile(Metric.RECALCULATIONS_PER_ACTION, 50),
+                    perf.percentile(Metric.RECALCULATIONS_PER_ACTION, 95),
+                    perf.percentile(Metric.RECALCULATIONS_PER_ACTION, 100)));
+        }
+        lines.add(String.format("Points drawn %d, culled %d", perf.getPointsDrawn(), perf.getPointsCulled()));
+
+        double lineHeight = 13;
+        double padding = 6;
+        double boxWidth = 290;
+        double boxHeight = lines.size() * lineHeight + padding * 2;
+
+        gc.save();
+        gc.setFill(Color.rgb(0, 0, 0, 0.65));
+        gc.fillRoundRect(4, 4, boxWidth, boxHeight, 6, 6);
+
+        gc.setFont(HUD_FONT);
+        gc.setTextAlign(TextAlignment.LEFT);
+        gc.setFill(Color.LIME);
+        double y = 4 + padding + lineHeight * 0.8;
+        for (String line : lines) {
+            gc.fillText(line, 4 + padding, y);
+            y += lineHeight;
+        }
+        gc.restore();
+    }
+
+    private void drawDiscreteComponentPreviews(ChartGraphics gc, ChartState state, SmithChartLayout layout) {
+        List<Complex> previews = state.discreteGammas();
         if (previews == null || previews.isEmpty()) return;
 
         gc.setStroke(Color.AQUA);
@@ -84,11 +506,26 @@ public class SmithChartRenderer {
         }
     }
 
-    private void drawSweepPoints(GraphicsContext gc, SmithChartViewModel viewModel, SmithChartLayout layout, double currentScale, double offsetX, double offsetY) {
+    private void drawSweepPoints(ChartGraphics gc, ChartState state, SmithChartLayout layout, double currentScale,
+                                 double offsetX, double offsetY, int maxMarkers) {
 
-        List<DataPoint> sweepPoints = viewModel.sweepDataPointsProperty();
+        Series sweepPoints = state.result().getSweep();
 
-        if (sweepPoints == null || sweepPoints.isEmpty()) return;
+        if (sweepPoints.isEmpty()) return;
+
+        if (sweepPoints.size() >= PointCloudRasterizer.RASTER_THRESHOLD) {
+            // Dense enough for the dots to show the curve, the connecting line is skipped
+            if (exportLayout == null) {
+                sweepRasterizer.draw(gc, sweepPoints, _ -> SWEEP_ARGB, 0, layout, currentScale, offsetX, offsetY,
+                        SWEEP_POINT_SIZE);
+                state.monitor().addPointsDrawn(sweepPoints.size());
+                return;
+            }
+            if (preparedSweepPixels != null) {
+                drawPreparedPixels(gc, preparedSweepPixels);
+                return;
+            }
+        }
 
         // Visual styling
         gc.setStroke(Color.MAGENTA);
@@ -96,7 +533,7 @@ public class SmithChartRenderer {
 
         // Make line width and point size invariant to the zoom level
         double lineWidth = 1.0;
-        double pointSize = 2.5; // logical size
+        double pointSize = SWEEP_POINT_SIZE; // logical size
 
         gc.setLineWidth(lineWidth);
 
@@ -105,13 +542,15 @@ public class SmithChartRenderer {
 
         boolean isFirst = true;
 
-        int index = 0;
-        for (DataPoint point : sweepPoints) {
-            Complex gamma = point.getGamma();
-
+        // Keeps one point out of 'stride', always including the last one so the line spans the whole sweep
+        int stride = Math.max(1, sweepPoints.size() / maxMarkers);
+        int drawn = 0;
+        int culled = 0;
+        for (int index = 0; index < sweepPoints.size(); index++) {
+            if (index % stride != 0 && index != sweepPoints.size() - 1) continue;
             // Convert from Smith Chart math coordinates to Canvas coordinates
-            double localX = layout.toScreenX(gamma);
-            double localY = layout.toScreenY(gamma);
+            double localX = layout.toScreenX(sweepPoints.gammaReal(index));
+            double localY = layout.toScreenY(sweepPoints.gammaImag(index));
 
             if (isFirst) {
                 gc.moveTo(localX, localY);
@@ -120,24 +559,36 @@ public class SmithChartRenderer {
                 gc.lineTo(localX, localY);
             }
 
-            // Draw the dots
-            gc.fillOval(localX - pointSize / 2, localY - pointSize / 2, pointSize, pointSize);
-
             // Calculate ABSOLUTE coordinates for hit testing
             double absoluteX = (localX * currentScale) + offsetX;
             double absoluteY = (localY * currentScale) + offsetY;
 
-            String label = "SWP" + index++;
+            String label = "SWP" + index;
 
-            activePoints.add(new ChartPoint(absoluteX, absoluteY, gamma, point.getFrequency(), label, pointSize * currentScale, false));
+            // The line still goes through them, but the dots outside the visible area are skipped
+            if (!isOnCanvas(absoluteX, absoluteY, pointSize * currentScale)) {
+                ++culled;
+                continue;
+            }
+
+            // Draw the dots
+            gc.fillOval(localX - pointSize / 2, localY - pointSize / 2, pointSize, pointSize);
+            ++drawn;
+
+            Complex gamma = new Complex(sweepPoints.gammaReal(index), sweepPoints.gammaImag(index));
+            activePoints.add(new ChartPoint(absoluteX, absoluteY, gamma, sweepPoints.frequency(index), label, pointSize * currentScale, false));
         }
 
         // Draw the connected line
         gc.stroke();
+
+        PerformanceMonitor perf = state.monitor();
+        perf.addPointsDrawn(drawn);
+        perf.addPointsCulled(culled);
     }
 
-    private void drawVSWRCircles(GraphicsContext gc, SmithChartViewModel viewModel, SmithChartLayout layout) {
-        List<Double> vswrValues = viewModel.vswrCirclesProperty().get();
+    private void drawVSWRCircles(ChartGraphics gc, ChartState state, SmithChartLayout layout) {
+        List<Double> vswrValues = state.vswrCircles();
         if (vswrValues == null || vswrValues.isEmpty()) return;
 
         double centerX = layout.getCenterX();
@@ -178,17 +629,37 @@ public class SmithChartRenderer {
     /**
      * Updates the font size for the Smith chart labels based on the canvas size.
      */
-    private void updateFontSize() {
-        double newFontSize = Math.min(smithCanvas.getWidth(), smithCanvas.getHeight()) / 60;
+    private void updateFontSize(SmithChartLayout layout) {
+        double newFontSize = Math.min(layout.getWidth(), layout.getHeight()) / 60;
         LABEL_FONT = new Font("Arial", newFontSize);
     }
 
     /**
      * Draws the static background grid of the Smith Chart.
+     * The circles are chosen for the zoom level, and the ones that don't cross the visible region are skipped.
      *
-     * @param gc The GraphicsContext of the canvas.
+     * @param gc   The GraphicsContext of the canvas.
+     * @param zoom the zoom the grid density and the size of its lines and labels are chosen for
+     * @param minX left of the visible region, in layout coordinates, and so on
      */
-    private void drawSmithGrid(GraphicsContext gc, SmithChartViewModel viewModel, SmithChartLayout layout) {
+    private void drawSmithGrid(ChartGraphics gc, ChartState state, SmithChartLayout layout, double zoom,
+                               double minX, double minY, double maxX, double maxY) {
+        SmithGrid grid = gridFor(zoom);
+        double radius = layout.getRadius();
+        double zo = state.z0();
+
+        // Visible region in gamma coordinates, Y pointing up
+        double gammaMinX = (minX - layout.getCenterX()) / radius;
+        double gammaMaxX = (maxX - layout.getCenterX()) / radius;
+        double gammaMinY = (layout.getCenterY() - maxY) / radius;
+        double gammaMaxY = (layout.getCenterY() - minY) / radius;
+        boolean chartVisible = Math.hypot(Math.clamp(0, gammaMinX, gammaMaxX), Math.clamp(0, gammaMinY, gammaMaxY)) <= 1;
+
+        // The lines and labels of the grid keep their size on screen when zooming in
+        double lineScale = 1 / Math.max(1, zoom);
+        double thinLine = thinLineValue * lineScale;
+        double thickLine = thickLineValue * lineScale;
+        Font labelFont = new Font(LABEL_FONT.getName(), LABEL_FONT.getSize() * lineScale);
 
         //Save the current graphics state and apply clipping so the lines don't get out of the circle of the chart
         gc.save();
@@ -197,7 +668,7 @@ public class SmithChartRenderer {
         gc.closePath();
         gc.clip(); // Anything drawn after this will be clipped to the circle
 
-        gc.setLineWidth(1);
+        gc.setLineWidth(thickLine);
 
         // Draw the Outer Circle (r=0, g=0)
         gc.setStroke(Color.GRAY);
@@ -206,106 +677,194 @@ public class SmithChartRenderer {
         // Draw the Horizontal Line (x=0, b=0)
         gc.strokeLine(layout.getCenterX() - layout.getRadius(), layout.getCenterY(), layout.getCenterX() + layout.getRadius(), layout.getCenterY());
 
-        double[] stepValues = {0.2, 0.5, 1.0, 2.0, 4.0, 10.0};
+        SmithGrid.Circles axisCircles = grid.axisCircles();
+        SmithGrid.Circles rimCircles = grid.rimCircles();
 
-        // ADMITTANCE (Y) GRID
+        if (chartVisible) {
+            // ADMITTANCE (Y) GRID
 
-        // Draw Constant Conductance (g) Circles
-        gc.setLineWidth(thinLineValue);
-        gc.setStroke(Color.CORNFLOWERBLUE);
-        for (double g : stepValues) {
-            double circleRadius = layout.getRadius() / (g + 1);
-            double circleCenterX = layout.getCenterX() - layout.getRadius() * g / (g + 1);
-            if (g == 1) gc.setLineWidth(thickLineValue); //If it's the circle that leads to the center of the chart, making the line thicker
-            gc.strokeOval(circleCenterX - circleRadius, layout.getCenterY() - circleRadius, circleRadius * 2, circleRadius * 2);
-            if (g == 1) gc.setLineWidth(thinLineValue);
-
-            drawLabel(gc, String.format("%.1f mS", g / viewModel.zo.get() * 1000), circleCenterX, layout.getCenterY() - circleRadius, Color.CADETBLUE);
-        }
-
-        // Draw Constant Susceptance (b) Arcs
-        gc.setStroke(Color.CORNFLOWERBLUE); // New color for susceptance
-        for (double b : stepValues) {
-            double arcRadius = layout.getRadius() / b;
-            double arcCenterX = layout.getCenterX() - layout.getRadius();
+            // Draw Constant Conductance (g) Circles, the resistance circles mirrored
+            gc.setStroke(Color.CORNFLOWERBLUE);
+            for (int i = 0; i < axisCircles.size(); i++) {
+                double g = axisCircles.values[i];
+                double centerX = -axisCircles.centerX[i];
+                double circleRadius = axisCircles.radius[i];
+                if (!isCircleVisible(centerX, 0, circleRadius, gammaMinX, gammaMinY, gammaMaxX, gammaMaxY)) continue;
 
-            // Positive Susceptance Arcs (upper half)
-            double arcCenterY = layout.getCenterY() - arcRadius;
-            gc.strokeOval(arcCenterX - arcRadius, arcCenterY - arcRadius, arcRadius * 2, arcRadius * 2);
+                //If it's the circle that leads to the center of the chart, making the line thicker
+                gc.setLineWidth(g == 1 ? thickLine : thinLine);
+                strokeGridCircle(gc, layout, zoom, centerX, 0, circleRadius);
 
-            // Negative Susceptance Arcs (lower half)
-            arcCenterY = layout.getCenterY() + arcRadius;
-            gc.strokeOval(arcCenterX - arcRadius, arcCenterY - arcRadius, arcRadius * 2, arcRadius * 2);
-        }
-
-        // IMPEDANCE (X) GRID
-        // Draw Constant Resistance (r) Circles
-        gc.setStroke(Color.CORAL); // Color for resistance
-        for (double r : stepValues) {
-            double circleRadius = layout.getRadius() / (r + 1);
-            double circleCenterX = layout.getCenterX() + layout.getRadius() * r / (r + 1);
-            if (r == 1) gc.setLineWidth(thickLineValue); //Same logic than for the admittance
-            gc.strokeOval(circleCenterX - circleRadius, layout.getCenterY() - circleRadius, circleRadius * 2, circleRadius * 2);
-            if (r == 1) gc.setLineWidth(thinLineValue);
+                double labelX = layout.toScreenX(centerX);
+                double labelY = layout.getCenterY() - circleRadius * radius;
+                if (axisCircles.labeled[i] && isInRegion(labelX, labelY, minX, minY, maxX, maxY)) {
+                    drawLabel(gc, formatGridValue(g / zo * 1000, 1) + " mS", labelX, labelY, Color.CADETBLUE, labelFont);
+                }
+            }
 
-            drawLabel(gc, String.format("%.0f", r * viewModel.zo.get()), circleCenterX, layout.getCenterY() + circleRadius, Color.BROWN);
-        }
+            // Draw Constant Susceptance (b) Arcs, the reactance arcs mirrored
+            gc.setLineWidth(thinLine);
+            gc.setStroke(Color.CORNFLOWERBLUE); // New color for susceptance
+            for (int i = 0; i < rimCircles.size(); i++) {
+                double arcRadius = rimCircles.radius[i];
+                // Positive Susceptance Arcs (upper half), then Negative Susceptance Arcs (lower half)
+                for (int side = 1; side >= -1; side -= 2) {
+                    double centerY = side * rimCircles.centerY[i];
+                    if (isCircleVisible(-1, centerY, arcRadius, gammaMinX, gammaMinY, gammaMaxX, gammaMaxY)) {
+                        strokeGridCircle(gc, layout, zoom, -1, centerY, arcRadius);
+                    }
+                }
+            }
 
-        // Draw Constant Reactance (x) Arcs
-        gc.setStroke(Color.BROWN); // Color for reactance
-        for (double x : stepValues) {
-            double arcRadius = layout.getRadius() / x;
-            // Positive Reactance Arcs (upper half)
-            double arcCenterX = layout.getCenterX() + layout.getRadius();
-            double arcCenterY = layout.getCenterY() - arcRadius;
-            gc.strokeOval(arcCenterX - arcRadius, arcCenterY - arcRadius, arcRadius * 2, arcRadius * 2);
+            // IMPEDANCE (X) GRID
+            // Draw Constant Resistance (r) Circles
+            gc.setStroke(Color.CORAL); // Color for resistance
+            for (int i = 0; i < axisCircles.size(); i++) {
+                double r = axisCircles.values[i];
+                double centerX = axisCircles.centerX[i];
+                double circleRadius = axisCircles.radius[i];
+                if (!isCircleVisible(centerX, 0, circleRadius, gammaMinX, gammaMinY, gammaMaxX, gammaMaxY)) continue;
+
+                gc.setLineWidth(r == 1 ? thickLine : thinLine); //Same logic than for the admittance
+                strokeGridCircle(gc, layout, zoom, centerX, 0, circleRadius);
+
+                double labelX = layout.toScreenX(centerX);
+                double labelY = layout.getCenterY() + circleRadius * radius;
+                if (axisCircles.labeled[i] && isInRegion(labelX, labelY, minX, minY, maxX, maxY)) {
+                    drawLabel(gc, formatGridValue(r * zo, 0), labelX, labelY, Color.BROWN, labelFont);
+                }
+            }
 
-            // Negative Reactance Arcs (lower half)
-            arcCenterY = layout.getCenterY() + arcRadius;
-            gc.strokeOval(arcCenterX - arcRadius, arcCenterY - arcRadius, arcRadius * 2, arcRadius * 2);
+            // Draw Constant Reactance (x) Arcs
+            gc.setLineWidth(thinLine);
+            gc.setStroke(Color.BROWN); // Color for reactance
+            for (int i = 0; i < rimCircles.size(); i++) {
+                double arcRadius = rimCircles.radius[i];
+                // Positive Reactance Arcs (upper half), then Negative Reactance Arcs (lower half)
+                for (int side = 1; side >= -1; side -= 2) {
+                    double centerY = side * rimCircles.centerY[i];
+                    if (isCircleVisible(1, centerY, arcRadius, gammaMinX, gammaMinY, gammaMaxX, gammaMaxY)) {
+                        strokeGridCircle(gc, layout, zoom, 1, centerY, arcRadius);
+                    }
+                }
+            }
         }
 
-
         //Restore the graphics state to remove the clipping
         gc.restore();
 
         //Draw the labels on the circles representing the values
-        for (double b : stepValues) {
+        for (int i = 0; i < rimCircles.size(); i++) {
+            if (!rimCircles.labeled[i]) continue;
+            double b = rimCircles.values[i];
             double angle = 2 * Math.atan(1.0 / b);
             double labelX = layout.getCenterX() + layout.getRadius() * Math.cos(Math.PI - angle);
             double labelY = layout.getCenterY() + layout.getRadius() * Math.sin(Math.PI - angle);
-            double valInSiemens = b / viewModel.zo.get();
-            String label = String.format("%.1f mS", valInSiemens * 1000);
-            drawLabel(gc, label, labelX, labelY, Color.CADETBLUE);
+            if (!isInRegion(labelX, labelY, minX, minY, maxX, maxY)) continue;
+            double valInSiemens = b / zo;
+            String label = formatGridValue(valInSiemens * 1000, 1) + " mS";
+            drawLabel(gc, label, labelX, labelY, Color.CADETBLUE, labelFont);
 
         }
 
-        for (double x : stepValues) {
+        for (int i = 0; i < rimCircles.size(); i++) {
+            if (!rimCircles.labeled[i]) continue;
+            double x = rimCircles.values[i];
             double angle = 2 * Math.atan(1.0 / x);
             double labelX = layout.getCenterX() + layout.getRadius() * Math.cos(-angle);
             double labelY = layout.getCenterY() + layout.getRadius() * Math.sin(-angle);
-            String label = String.format("%.0f", x * viewModel.zo.get());
-            drawLabel(gc, label, labelX, labelY, Color.BROWN);
+            if (!isInRegion(labelX, labelY, minX, minY, maxX, maxY)) continue;
+            String label = formatGridValue(x * zo, 0);
+            drawLabel(gc, label, labelX, labelY, Color.BROWN, labelFont);
         }
     }
 
+    private SmithGrid gridFor(double zoom) {
+        int bucket = SmithGrid.bucketOf(zoom);
+        // Only a handful of buckets are visited in practice, this bounds the cache if the zoom wanders far
+        if (gridCache.size() > MAX_CACHED_GRIDS && !gridCache.containsKey(bucket)) gridCache.clear();
+        return gridCache.computeIfAbsent(bucket, SmithGrid::forBucket);
+    }
+
+    /**
+     * Checks whether the outline of a circle crosses a rectangle, all in gamma coordinates.
+     * A circle that contains the whole rectangle doesn't.
+     */
+    private static boolean isCircleVisible(double centerX, double centerY, double radius,
+                                           double minX, double minY, double maxX, double maxY) {
+        double nearest = Math.hypot(Math.clamp(centerX, minX, maxX) - centerX, Math.clamp(centerY, minY, maxY) - centerY);
+        double farthest = Math.hypot(Math.max(Math.abs(centerX - minX), Math.abs(centerX - maxX)),
+                Math.max(Math.abs(centerY - minY), Math.abs(centerY - maxY)));
+        return nearest <= radius && farthest >= radius;
+    }
+
+    // The label anchors are tested with a margin, so a label straddling the border isn't cut
+    private boolean isInRegion(double x, double y, double minX, double minY, double maxX, double maxY) {
+        double margin = LABEL_FONT.getSize() * 4;
+        return x >= minX - margin && x <= maxX + margin && y >= minY - margin && y <= maxY + margin;
+    }
+
+    /**
+     * Strokes a grid circle given in gamma coordinates. The arcs of very small reactances and
+     * susceptances have huge radii, past a certain size only their part inside the chart is drawn,
+     * as a polyline, which the rasterizer handles far better than an enormous oval.
+     */
+    private void strokeGridCircle(ChartGraphics gc, SmithChartLayout layout, double zoom,
+                                  double centerX, double centerY, double radius) {
+        double pixelRadius = radius * layout.getRadius();
+        if (pixelRadius * zoom <= MAX_GRID_OVAL_RADIUS_PX) {
+            gc.strokeOval(layout.toScreenX(centerX) - pixelRadius, layout.toScreenY(centerY) - pixelRadius,
+                    pixelRadius * 2, pixelRadius * 2);
+            return;
+        }
+
+        // Intersections with the unit circle, on the line through both centers
+        double distance = Math.hypot(centerX, centerY);
+        double along = (1 - radius * radius + distance * distance) / (2 * distance);
+        double across = Math.sqrt(Math.max(0, 1 - along * along));
+        double ux = centerX / distance;
+        double uy = centerY / distance;
+        double startAngle = Math.atan2(uy * along - ux * across - centerY, ux * along + uy * across - centerX);
+        double endAngle = Math.atan2(uy * along + ux * across - centerY, ux * along - uy * across - centerX);
+        // The part inside the chart is the short way between them
+        double sweep = Math.IEEEremainder(endAngle - startAngle, 2 * Math.PI);
+
+        for (int i = 0; i <= LARGE_GRID_ARC_SEGMENTS; i++) {
+            double angle = startAngle + sweep * i / LARGE_GRID_ARC_SEGMENTS;
+            gridArcXPoints[i] = layout.toScreenX(centerX + radius * Math.cos(angle));
+            gridArcYPoints[i] = layout.toScreenY(centerY + radius * Math.sin(angle));
+        }
+        gc.strokePolyline(gridArcXPoints, gridArcYPoints, LARGE_GRID_ARC_SEGMENTS + 1);
+    }
+
+    /**
+     * Formats a grid value with as many decimals as it needs, and at least the given number.
+     */
+    private static String formatGridValue(double value, int minDecimals) {
+        int decimals = minDecimals;
+        while (decimals < 4 && Math.abs(value * Math.pow(10, decimals) - Math.rint(value * Math.pow(10, decimals))) > 1e-6) {
+            decimals++;
+        }
+        return String.format("%." + decimals + "f", value);
+    }
+
     /**
      * Draw impedance points based on the gammas calculated in the viewModel
      *
      * @param gc the graphic context on which we'll draw the points
      */
-    private void drawImpedancePoints(GraphicsContext gc, SmithChartViewModel viewModel, SmithChartLayout layout,
+    private void drawImpedancePoints(ChartGraphics gc, ChartState state, SmithChartLayout layout,
                                      int selectedItemIndex, double scale, double offX, double offY) {
 
         List<Complex> pointsToDraw = new ArrayList<>();
 
         // Determine which points to draw
-        CircuitElement previewElement = viewModel.previewElementProperty().get();
-        boolean isPreviewing = previewElement != null && !viewModel.isModifyingComponent.get();
+        CircuitElement previewElement = state.previewElement();
+        boolean isPreviewing = previewElement != null && !state.modifyingComponent();
 
         if (isPreviewing) {
-            List<Complex> committedGammas = viewModel.measuresGammaProperty().get();
-            int insertionIndex = viewModel.getSelectedInsertionIndexProperty().get();
+            List<Complex> committedGammas = state.gammas();
+            int insertionIndex = state.insertionIndex();
 
             if (insertionIndex < 0 || insertionIndex >= committedGammas.size()) {
                 insertionIndex = committedGammas.size() - 1;
@@ -317,23 +876,23 @@ public class SmithChartRenderer {
             }
 
             // Add the PREVIEW point
-            Complex previewGamma = viewModel.getPreviewElementGamma();
+            Complex previewGamma = state.previewGamma();
             if (previewGamma != null) {
                 pointsToDraw.add(previewGamma);
             }
 
             // Add the PROJECTED points
-            List<Complex> projectedGammas = viewModel.getProjectedGammas();
+            List<Complex> projectedGammas = state.projectedGammas();
             pointsToDraw.addAll(projectedGammas);
 
         } else {
-            pointsToDraw.addAll(viewModel.measuresGammaProperty().get());
+            pointsToDraw.addAll(state.gammas());
         }
 
         // Draw the points
         if (!pointsToDraw.isEmpty()) {
             int index = 0;
-            int selectedInsertionPoint = viewModel.getSelectedInsertionIndexProperty().get();
+            int selectedInsertionPoint = state.insertionIndex();
 
             for (Complex gamma : pointsToDraw) {
                 String labelText = (index == 0) ? "LD" : "DP" + index;
@@ -347,7 +906,7 @@ public class SmithChartRenderer {
 
                 double pointSize = 5; // logical size
 
-                activePoints.add(new ChartPoint(absoluteX, absoluteY, gamma, viewModel.frequencyProperty().get(), labelText, pointSize * scale, false));
+                activePoints.add(new ChartPoint(absoluteX, absoluteY, gamma, state.frequency(), labelText, pointSize * scale, false));
 
                 if (index == selectedInsertionPoint) {
                     // Draw a green circle around the insertion point
@@ -357,7 +916,7 @@ public class SmithChartRenderer {
                 }
 
                 // Color Logic
-                if (isPreviewing && index == viewModel.getSelectedInsertionIndexProperty().get() + 1) {
+                if (isPreviewing && index == selectedInsertionPoint + 1) {
                     gc.setStroke(Color.ORANGE);
                     gc.setFill(Color.ORANGE);
                 } else if (selectedItemIndex == index) {
@@ -375,6 +934,7 @@ public class SmithChartRenderer {
 
                 ++index;
             }
+            state.monitor().addPointsDrawn(pointsToDraw.size());
         }
     }
 
@@ -383,57 +943,80 @@ public class SmithChartRenderer {
      *
      * @param gc the graphic context on which we'll draw the points
      */
-    private void drawS1PPoints(GraphicsContext gc, SmithChartViewModel viewModel, SmithChartLayout layout,
-                               double scale, double offX, double offY) {
-        List<DataPoint> dataPoints = viewModel.transformedS1PPointsProperty().get();
+    private void drawS1PPoints(ChartGraphics gc, ChartState state, SmithChartLayout layout,
+                               double scale, double offX, double offY, int maxMarkers) {
+        Series dataPoints = state.result().getTransformedS1P();
+
+        if (state.s1pTrails()) {
+            s1pTrail.draw(gc, layout.getWidth(), layout.getHeight(),
+                    layout.getRadius() * scale, layout.getCenterX() * scale + offX,
+                    -layout.getRadius() * scale, layout.getCenterY() * scale + offY);
+        }
 
-        if (dataPoints != null && !dataPoints.isEmpty()) {
-            double pointSize = viewModel.s1pPointSizeProperty().get(); // logical size
-            double strokeWidth = viewModel.s1pPointSizeProperty().get() / 4.0;
+        if (state.s1pAsDensity()) {
+            // Heatmap of the points, no individual markers nor hit-testing
+            if (!dataPoints.isEmpty()) s1pDensity.draw(gc, layout, dataPoints);
+            return;
+        }
 
-            int index = 0;
-            for (DataPoint dataPoint : dataPoints) {
-                Complex gamma = dataPoint.getGamma();
+        if (dataPoints.size() >= PointCloudRasterizer.RASTER_THRESHOLD) {
+            // Too many points to draw one by one, no hit-testing in this mode
+            if (exportLayout == null) {
+                s1pRasterizer.draw(gc, dataPoints, s1pColors(state), state.bandsHash(), layout, scale, offX, offY,
+                        state.s1pPointSize());
+                state.monitor().addPointsDrawn(dataPoints.size());
+                return;
+            }
+            if (preparedS1PPixels != null) {
+                drawPreparedPixels(gc, preparedS1PPixels);
+                return;
+            }
+        }
+
+        if (!dataPoints.isEmpty()) {
+            double pointSize = state.s1pPointSize(); // logical size
+            double strokeWidth = state.s1pPointSize() / 4.0;
+
+            // Only one point out of 'stride' is drawn when there are more than allowed
+            int stride = Math.max(1, dataPoints.size() / maxMarkers);
+            int drawn = 0;
+            int culled = 0;
+            FrequencyBandIndex.Cursor bands = state.bands().cursor();
+            for (int index = 0; index < dataPoints.size(); index += stride) {
+                double frequency = dataPoints.frequency(index);
 
                 // Local coordinates (relative to the transformed canvas)
-                double localX = layout.toScreenX(gamma);
-                double localY = layout.toScreenY(gamma);
+                double localX = layout.toScreenX(dataPoints.gammaReal(index));
+                double localY = layout.toScreenY(dataPoints.gammaImag(index));
 
                 // Calculate ABSOLUTE coordinates for hit testing
                 // Formula: (Local * Scale) + Translate
                 double absoluteX = (localX * scale) + offX;
                 double absoluteY = (localY * scale) + offY;
 
-                // Create and store the ChartPoint
-                String label = "S1P" + index++;
-                activePoints.add(new ChartPoint(absoluteX, absoluteY, gamma, dataPoint.getFrequency(), label, pointSize * scale, true));
-
-                // Drawing logic
-                switch (viewModel.whichFrequencyRange(dataPoint.getFrequency())){
-                    case 1 -> {
-                        gc.setStroke(Color.INDIANRED);
-                        gc.setLineWidth(strokeWidth);
-                        gc.strokeOval(localX - pointSize / 2, localY - pointSize / 2, pointSize, pointSize);
-                    }
-                    case 2 -> {
-                        gc.setStroke(Color.DARKORANGE);
-                        gc.setLineWidth(strokeWidth);
-                        gc.strokeOval(localX - pointSize / 2, localY - pointSize / 2, pointSize, pointSize);
-                    }
-                    case 3 -> {
-                        gc.setStroke(Color.FORESTGREEN);
-                        gc.setLineWidth(strokeWidth);
-                        gc.strokeOval(localX - pointSize / 2, localY - pointSize / 2, pointSize, pointSize);
-                    }
-                    case -1 -> {
-                        gc.setStroke(Color.DODGERBLUE);
-                        strokeWidth /= 2;
-                        gc.setLineWidth(strokeWidth);
-                        gc.strokeOval(localX - pointSize / 2, localY - pointSize / 2, pointSize, pointSize);
-                        strokeWidth *= 2;
-                    }
+                String label = "S1P" + index;
+
+                // Skip the points outside the visible area
+                if (!isOnCanvas(absoluteX, absoluteY, pointSize * scale)) {
+                    ++culled;
+                    continue;
                 }
+
+                // Create and store the ChartPoint
+                Complex gamma = new Complex(dataPoints.gammaReal(index), dataPoints.gammaImag(index));
+                activePoints.add(new ChartPoint(absoluteX, absoluteY, gamma, frequency, label, pointSize * scale, true));
+                ++drawn;
+
+                // Drawing logic, the points outside of every band are drawn thinner
+                int band = bands.bandOf(frequency);
+                gc.setStroke(BandColors.of(band));
+                gc.setLineWidth(band < 0 ? strokeWidth / 2 : strokeWidth);
+                gc.strokeOval(localX - pointSize / 2, localY - pointSize / 2, pointSize, pointSize);
             }
+
+            PerformanceMonitor perf = state.monitor();
+            perf.addPointsDrawn(drawn);
+            perf.addPointsCulled(culled);
         }
     }
 
@@ -447,12 +1030,16 @@ public class SmithChartRenderer {
      * @param y     The center y-coordinate for the text.
      * @param color The color of the text.
      */
-    private void drawLabel(GraphicsContext gc, String text, double x, double y, Color color) {
-        gc.setFont(LABEL_FONT);
+    private void drawLabel(ChartGraphics gc, String text, double x, double y, Color color) {
+        drawLabel(gc, text, x, y, color, LABEL_FONT);
+    }
+
+    private void drawLabel(ChartGraphics gc, String text, double x, double y, Color color, Font font) {
+        gc.setFont(font);
         gc.setTextAlign(TextAlignment.CENTER);
 
         // Calculate the rectangle size based on the font size
-        double fontSize = LABEL_FONT.getSize();
+        double fontSize = font.getSize();
         double rectWidth = text.length() * fontSize * 0.6; // Approximate width per character
         double rectHeight = fontSize * 1.2; // Slightly larger than the font size for padding
 
@@ -487,12 +1074,15 @@ public class SmithChartRenderer {
     /**
      * Draws the impedance path on the chart based on the circuit elements.
      *
-     * @param gc   The GraphicsContext of the canvas.
+     * @param gc    The GraphicsContext of the canvas.
+     * @param scale The current zoom level, used to choose the tessellation of lossy paths.
      */
-    private void drawImpedancePath(GraphicsContext gc, SmithChartViewModel viewModel, SmithChartLayout layout) {
-        List<Complex> committedGammas = List.copyOf(viewModel.measuresGammaProperty().get());
-        CircuitElement previewElement = viewModel.previewElementProperty().get();
-        Complex previewGamma = viewModel.getPreviewElementGamma();
+    private void drawImpedancePath(ChartGraphics gc, ChartState state, SmithChartLayout layout, double scale) {
+        List<Complex> committedGammas = state.gammas();
+        CircuitElement previewElement = state.previewElement();
+        Complex previewGamma = state.previewGamma();
+
+        pruneArcGeometryCache(state.elements());
 
         // If empty and no preview, nothing to draw
         if (committedGammas.isEmpty() && previewElement == null) return;
@@ -511,7 +1101,7 @@ public class SmithChartRenderer {
         gc.setLineWidth(2);
 
         // Determine where we stop drawing the pre-existing path
-        int insertionIndex = viewModel.getSelectedInsertionIndexProperty().get();
+        int insertionIndex = state.insertionIndex();
 
         // Safety clamp
         if (insertionIndex > committedGammas.size() - 1) insertionIndex = committedGammas.size() - 1;
@@ -520,23 +1110,23 @@ public class SmithChartRenderer {
         Complex previousGamma = committedGammas.getFirst(); // Start at Load
 
         // Draw the circuit up to the insertion point
-        previousGamma = drawPath(committedGammas, viewModel, layout, gc, mainRadius, 1, insertionIndex + 1, previousGamma);
+        previousGamma = drawPath(committedGammas, state, layout, gc, scale, 1, insertionIndex + 1, previousGamma);
 
         // Draw the preview
-        if (previewElement != null && previewGamma != null && !viewModel.isModifyingComponent.get()) {
+        if (previewElement != null && previewGamma != null && !state.modifyingComponent()) {
 
             // Draw as dotted orange line
             gc.setStroke(Color.ORANGE);
             gc.setLineDashes(5, 5);
 
             // previousGamma is currently at the insertion point
-            drawArcSegment(gc, viewModel, layout, mainRadius, previousGamma, previewGamma, previewElement);
+            drawArcSegment(gc, state, layout, scale, previousGamma, previewGamma, previewElement);
 
             gc.setLineDashes(0,0); // Reset dashes
 
             // Draw the projected path after the preview
-            List<Complex> projectedGammas = viewModel.getProjectedGammas();
-            List<CircuitElement> allElements = viewModel.circuitElements.get();
+            List<Complex> projectedGammas = state.projectedGammas();
+            List<CircuitElement> allElements = state.elements();
 
             if (!projectedGammas.isEmpty()) {
                 gc.setStroke(Color.RED);
@@ -551,39 +1141,86 @@ public class SmithChartRenderer {
 
                     if (elementIndex < allElements.size()) {
                         CircuitElement element = allElements.get(elementIndex);
-                        drawArcSegment(gc, viewModel, layout, mainRadius, tailStartGamma, tailEndGamma, element);
+                        drawArcSegment(gc, state, layout, scale, tailStartGamma, tailEndGamma, element);
                     }
 
                     tailStartGamma = tailEndGamma;
                 }
             }
         } else { // No preview, just draw the rest of the committed path
-            drawPath(committedGammas, viewModel, layout, gc, mainRadius, insertionIndex + 1, committedGammas.size(), previousGamma);
+            drawPath(committedGammas, state, layout, gc, scale, insertionIndex + 1, committedGammas.size(), previousGamma);
         }
 
         gc.restore();
     }
 
-    private Complex drawPath(List<Complex> committedGammas, SmithChartViewModel viewModel, SmithChartLayout layout,
-                             GraphicsContext gc, double mainRadius, int startIndex, int endIndex, Complex startingGamma) {
+    private Complex drawPath(List<Complex> committedGammas, ChartState state, SmithChartLayout layout,
+                             ChartGraphics gc, double scale, int startIndex, int endIndex, Complex startingGamma) {
         Complex current = startingGamma;
         for (int i = startIndex; i < endIndex; i++) {
             Complex currGamma = committedGammas.get(i);
-            if (viewModel.circuitElements.size() < i) break; // Safety check
-            CircuitElement element = viewModel.circuitElements.get(i - 1);
+            if (state.elements().size() < i) break; // Safety check
+            CircuitElement element = state.elements().get(i - 1);
 
-            if (viewModel.selectedElementProperty().isNotNull().get() && viewModel.selectedElementProperty().get().equals(element)) {
+            if (element == state.selectedElement()) {
                 gc.setStroke(Color.LIME);
             } else  gc.setStroke(Color.RED);
 
-            drawArcSegment(gc, viewModel, layout, mainRadius, current, currGamma, element);
+            drawCommittedArcSegment(gc, state, layout, scale, current, currGamma, element);
             current = currGamma;
         }
         return current;
     }
 
-    private void drawArcSegment(GraphicsContext gc, SmithChartViewModel viewModel, SmithChartLayout layout,
-                                double mainRadius, Complex startGamma, Complex endGamma, CircuitElement element) {
+    /**
+     * Draws the path of an element that is not part of the committed circuit (preview or projected tail).
+     * Its geometry changes on every frame, so it is computed without going through the cache.
+     */
+    private void drawArcSegment(ChartGraphics gc, ChartState state, SmithChartLayout layout,
+                                double scale, Complex startGamma, Complex endGamma, CircuitElement element) {
+        computeArcGeometry(scratchGeometry, state, lossyTolerance(layout, scale), startGamma, endGamma, element);
+        strokeArcGeometry(gc, layout, scratchGeometry);
+    }
+
+    /**
+     * Draws the path of a committed element, reusing its cached geometry when the element and the
+     * impedance upstream of it haven't changed since the last frame.
+     */
+    private void drawCommittedArcSegment(ChartGraphics gc, ChartState state, SmithChartLayout layout,
+                                         double scale, Complex startGamma, Complex endGamma, CircuitElement element) {
+        double tolerance = lossyTolerance(layout, scale);
+        ArcGeometry geometry = arcGeometryCache.computeIfAbsent(element, _ -> new ArcGeometry());
+
+        if (!geometry.matches(element, startGamma, endGamma, state.z0(), state.frequency(), tolerance)) {
+            computeArcGeometry(geometry, state, tolerance, startGamma, endGamma, element);
+        }
+        strokeArcGeometry(gc, layout, geometry);
+    }
+
+    /**
+     * Forgets the geometry of the elements that left the circuit. A modified element needs no eviction,
+     * its version no longer matches the cached one.
+     */
+    private void pruneArcGeometryCache(List<CircuitElement> elements) {
+        if (arcGeometryCache.size() <= elements.size()) return;
+        Set<CircuitElement> live = Collections.newSetFromMap(new IdentityHashMap<>());
+        live.addAll(elements);
+        arcGeometryCache.keySet().retainAll(live);
+    }
+
+    // Convert the on-screen tolerance to gamma units for the current zoom
+    private static double lossyTolerance(SmithChartLayout layout, double scale) {
+        return LOSSY_PATH_TOLERANCE_PX / (layout.getRadius() * scale);
+    }
+
+    /**
+     * Computes the path of an element in gamma coordinates and stores it in the given geometry.
+     */
+    private void computeArcGeometry(ArcGeometry geometry, ChartState state, double tolerance,
+                                    Complex startGamma, Complex endGamma, CircuitElement element) {
+        double z0 = state.z0();
+        double frequency = state.frequency();
+        geometry.setKey(element, startGamma, endGamma, z0, frequency);
 
         boolean hasQ = element.getQualityFactor().isPresent()
                 && Double.isFinite(element.getQualityFactor().get())
@@ -593,18 +1230,14 @@ public class SmithChartRenderer {
                 element.getType() == CircuitElement.ElementType.INDUCTOR ||
                 element.getType() == CircuitElement.ElementType.LINE)) {
 
-            drawLossyPath(gc, viewModel, layout, startGamma, element);
+            int count = lossyTessellator.tessellate(startGamma, element, z0, frequency, tolerance);
+            geometry.setPolyline(lossyTessellator.getXs(), lossyTessellator.getYs(), count, tolerance);
 
         } else {
-            Complex startImpedance = SmithCalculator.gammaToImpedance(startGamma, viewModel.zo.get());
-            Pair<Complex, Double> arcParams = SmithCalculator.getArcParameters(startImpedance, element, viewModel.zo.get());
+            Complex startImpedance = SmithCalculator.gammaToImpedance(startGamma, z0);
+            Pair<Complex, Double> arcParams = SmithCalculator.getArcParameters(startImpedance, element, z0);
 
             Complex arcCenter = arcParams.getKey();
-            double arcRadius = arcParams.getValue() * mainRadius;
-
-            // Convert arc center to canvas coordinates
-            double arcCenterX = layout.toScreenX(arcCenter);
-            double arcCenterY = layout.toScreenY(arcCenter);
 
             // Calculate start and end angles
             double startAngle = Math.toDegrees(Math.atan2(
@@ -634,41 +1267,53 @@ public class SmithChartRenderer {
                 arcExtent = (arcExtent > 0) ? arcExtent - 360 : arcExtent + 360;
             }
 
+            geometry.lossy = false;
+            geometry.centerRe = arcCenter.real();
+            geometry.centerIm = arcCenter.imag();
+            geometry.radius = arcParams.getValue();
+            geometry.startAngle = startAngle;
+            geometry.arcExtent = arcExtent;
+        }
+    }
+
+    /**
+     * Strokes a path geometry with the current stroke settings of the graphics context.
+     */
+    private void strokeArcGeometry(ChartGraphics gc, SmithChartLayout layout, ArcGeometry geometry) {
+        if (geometry.lossy) {
+            int count = geometry.count;
+            if (count < 2) return;
+
+            if (lossyXPoints.length < count) {
+                lossyXPoints = new double[count * 2];
+                lossyYPoints = new double[count * 2];
+            }
+
+            for (int i = 0; i < count; i++) {
+                lossyXPoints[i] = layout.toScreenX(geometry.xs[i]);
+                lossyYPoints[i] = layout.toScreenY(geometry.ys[i]);
+            }
+
+            gc.strokePolyline(lossyXPoints, lossyYPoints, count);
+        } else {
+            // Convert arc center to canvas coordinates
+            double arcCenterX = layout.toScreenX(geometry.centerRe);
+            double arcCenterY = layout.toScreenY(geometry.centerIm);
+            double arcRadius = geometry.radius * layout.getRadius();
+
             // Draw the arc
             gc.strokeArc(
                     arcCenterX - arcRadius,
                     arcCenterY - arcRadius,
                     arcRadius * 2,
                     arcRadius * 2,
-                    startAngle,
-                    arcExtent,
+                    geometry.startAngle,
+                    geometry.arcExtent,
                     ArcType.OPEN
             );
         }
     }
 
-    private void drawLossyPath(GraphicsContext gc, SmithChartViewModel viewModel, SmithChartLayout layout,
-                               Complex startGamma, CircuitElement element) {
-        List<Complex> points = SmithCalculator.getLossyComponentPath(
-                startGamma,
-                element,
-                viewModel.zo.get(),
-                viewModel.frequencyProperty().get()
-        );
-
-        if (points.size() < 2) return;
-
-        double[] xPoints = new double[points.size()];
-        double[] yPoints = new double[points.size()];
-
-        for (int i = 0; i < points.size(); i++) {
-            xPoints[i] = layout.toScreenX(points.get(i));
-            yPoints[i] = layout.toScreenY(points.get(i));
-        }
-
-        gc.strokePolyline(xPoints, yPoints, points.size());
-    }
-
     /**
      * Clears the cursor canvas.
      *
@@ -0,0 +1,193 @@
+package heig.tb.jsmithfx.view;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Values of the circles of the Smith chart grid, chosen for a zoom level.
+ * <p>
+ * The major values are always part of the grid. Between two of them, intermediate values are added
+ * with the finest round step that keeps neighbouring circles apart where they are the closest, so
+ * zooming in reveals more circles and the full view stays as light as a printed chart. The resistance
+ * and conductance circles are spaced along the real axis, the reactance and susceptance arcs along
+ * the rim, and each family is the mirror image of the other so one set of values serves both.
+ * </p>
+ * <p>
+ * The geometry is in gamma coordinates, for the impedance side, so a set stays valid when the canvas
+ * is resized. Sets are immutable and meant to be cached per zoom bucket, see {@link #bucketOf(double)}.
+ * </p>
+ */
+final class SmithGrid {
+
+    // Drawn at any zoom, finer values are added between them
+    private static final double[] MAJOR_VALUES = {0.2, 0.5, 1, 2, 5, 10};
+    // Ranges the finer values are added to, the last one goes towards the open circuit
+    private static final double[] RANGE_BOUNDS = {0, 0.2, 0.5, 1, 2, 5, 10, 50};
+    // Each step divides the coarser ones and the bounds of the ranges it fits in, so a finer step keeps
+    // every value of a coarser one and zooming in only ever adds circles and labels
+    private static final double[] ROUND_STEPS = {0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10};
+
+    // Minimum distance between two circles at zoom 1, in gamma units. Arcs meet the rim about
+    // half as densely as circles meet the axis, hence the larger distance for them.
+    private static final double MIN_AXIS_SPACING = 0.15;
+    private static final double MIN_RIM_SPACING = 0.25;
+    // Same for the labels, which keep their size on screen whatever the zoom
+    private static final double MIN_AXIS_LABEL_SPACING = 0.3;
+    private static final double MIN_RIM_LABEL_SPACING = 0.5;
+
+    // Bounds the size of a set at extreme zooms, where the culling keeps only a few circles anyway
+    private static final int MAX_VALUES_PER_RANGE = 100;
+
+    private static final int BUCKETS_PER_OCTAVE = 4;
+
+    /**
+     * One family of circles, sorted by value.
+     */
+    static final class Circles {
+        final double[] values;
+        final boolean[] labeled;
+        // Center and radius in gamma coordinates, for the impedance side
+        final double[] centerX;
+        final double[] centerY;
+        final double[] radius;
+
+        private Circles(double[] values, boolean[] labeled, boolean onAxis) {
+            this.values = values;
+            this.labeled = labeled;
+            this.centerX = new double[values.length];
+            this.centerY = new double[values.length];
+            this.radius = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                double v = values[i];
+                if (onAxis) {
+                    // Constant resistance, centered on the real axis and touching the open circuit
+                    centerX[i] = v / (v + 1);
+                    radius[i] = 1 / (v + 1);
+                } else {
+                    // Constant reactance, upper half, tangent to the real axis at the open circuit
+                    centerX[i] = 1;
+                    centerY[i] = 1 / v;
+                    radius[i] = 1 / v;
+                }
+            }
+        }
+
+        int size() {
+            return values.length;
+        }
+    }
+
+    private final Circles axisCircles;
+    private final Circles rimCircles;
+
+    private SmithGrid(Circles axisCircles, Circles rimCircles) {
+        this.axisCircles = axisCircles;
+        this.rimCircles = rimCircles;
+    }
+
+    /**
+     * Constant resistance circles, and mirrored on the imaginary axis, constant conductance circles.
+     */
+    Circles axisCircles() {
+        return axisCircles;
+    }
+
+    /**
+     * Constant positive reactance arcs. Mirrored on the real axis they give the negative reactances,
+     * mirrored on the imaginary axis the susceptances.
+     */
+    Circles rimCircles() {
+        return rimCircles;
+    }
+
+    /**
+     * Zoom bucket a scale falls in, sets are computed for the lowest zoom of their bucket.
+     */
+    static int bucketOf(double zoom) {
+        return (int) Math.floor(Math.log(Math.max(zoom, 1e-3)) / Math.log(2) * BUCKETS_PER_OCTAVE);
+    }
+
+    /**
+     * Computes the grid for a zoom bucket.
+     */
+    static SmithGrid forBucket(int bucket) {
+        double zoom = Math.pow(2, (double) bucket / BUCKETS_PER_OCTAVE);
+        // Where a circle crosses the real axis, and where an arc meets the rim
+        DoubleUnaryOperator axisPosition = v -> (v - 1) / (v + 1);
+        DoubleUnaryOperator rimPosition = v -> 2 * Math.atan(1 / v);
+        return new SmithGrid(
+                select(axisPosition, MIN_AXIS_SPACING / zoom, MIN_AXIS_LABEL_SPACING / zoom, true),
+                select(rimPosition, MIN_RIM_SPACING / zoom, MIN_RIM_LABEL_SPACING / zoom, false));
+    }
+
+    private static Circles select(DoubleUnaryOperator position, double minSpacing, double minLabelSpacing, boolean onAxis) {
+        List<Double> values = new ArrayList<>();
+        List<Boolean> labeled = new ArrayList<>();
+
+        for (int r = 0; r + 1 < RANGE_BOUNDS.length; r++) {
+            double low = RANGE_BOUNDS[r];
+            double high = RANGE_BOUNDS[r + 1];
+            if (isMajor(low)) {
+                values.add(low);
+                labeled.add(true);
+            }
+
+            double step = finestStep(position, low, high, minSpacing);
+            if (Double.isNaN(step)) continue;
+            double labelStep = finestStep(position, low, high, minLabelSpacing);
+
+            for (long k = (long) Math.floor(low / step + 1e-9) + 1; ; k++) {
+                double value = roundValue(k * step);
+                if (value >= high - 1e-9) break;
+                if (value <= low + 1e-9) continue;
+                values.add(value);
+                labeled.add(!Double.isNaN(labelStep) && isMultiple(value, labelStep));
+            }
+        }
+        if (isMajor(RANGE_BOUNDS[RANGE_BOUNDS.length - 1])) {
+            values.add(RANGE_BOUNDS[RANGE_BOUNDS.length - 1]);
+            labeled.add(true);
+        }
+
+        double[] valueArray = new double[values.size()];
+        boolean[] labeledArray = new boolean[values.size()];
+        for (int i = 0; i < valueArray.length; i++) {
+            valueArray[i] = values.get(i);
+            labeledArray[i] = labeled.get(i);
+        }
+        return new Circles(valueArray, labeledArray, onAxis);
+    }
+
+    /**
+     * Finest round step that keeps two values at least the given distance apart across the range,
+     * or NaN when the range can't be divided. The spacing shrinks as the values grow on both
+     * families, so checking the top of the range is enough.
+     */
+    private static double finestStep(DoubleUnaryOperator position, double low, double high, double minSpacing) {
+        for (double step : ROUND_STEPS) {
+            if (step * MAX_VALUES_PER_RANGE < high - low) continue;
+            if (step >= high - low) return Double.NaN;
+            double spacing = Math.abs(position.applyAsDouble(high) - position.applyAsDouble(high - step));
+            if (spacing >= minSpacing) return step;
+        }
+        return Double.NaN;
+    }
+
+    private static boolean isMajor(double value) {
+        for (double major : MAJOR_VALUES) {
+            if (major == value) return true;
+        }
+        return false;
+    }
+
+    private static boolean isMultiple(double value, double step) {
+        double quotient = value / step;
+        return Math.abs(quotient - Math.rint(quotient)) < 1e-6;
+    }
+
+    // Removes the floating point noise of k * step, the values are shown in labels
+    private static double roundValue(double value) {
+        return Math.rint(value * 1e6) / 1e6;
+    }
+}
@@ -0,0 +1,690 @@
+package heig.tb.jsmithfx.view;
+
+import heig.tb.jsmithfx.utilities.PngStreamWriter;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.CycleMethod;
+import javafx.scene.paint.LinearGradient;
+import javafx.scene.paint.Paint;
+import javafx.scene.paint.RadialGradient;
+import javafx.scene.paint.Stop;
+import javafx.scene.shape.ArcType;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * {@link ChartGraphics} writing an SVG document.
+ * <p>
+ * Every drawing operation is written to the output as soon as it is made, nothing is kept but the
+ * current state and path, so documents of any size are produced in constant memory. The elements
+ * sharing the same transform and clip are grouped, and coordinates are rounded to a hundredth of
+ * a unit of the document to keep the file compact: with as many more decimals as the transform
+ * scales them up.
+ * </p>
+ * Colors and linear or radial gradients are supported, other paints are rejected with an
+ * {@link IllegalArgumentException}. I/O errors are thrown as {@link UncheckedIOException}, since the
+ * drawing methods can't throw.
+ */
+final class SvgChartGraphics implements ChartGraphics {
+
+    private static final class State {
+        // Affine transform, x' = mxx * x + mxy * y + mxt and y' = myx * x + myy * y + myt
+        double mxx = 1, myx = 0, mxy = 0, myy = 1, mxt = 0, myt = 0;
+        String transform;
+        // Decimals of the coordinates under the transform, -1 until computed
+        int digits = -1;
+        Paint stroke = Color.BLACK;
+        Paint fill = Color.BLACK;
+        double lineWidth = 1;
+        double[] dashes = null;
+        Font font = Font.getDefault();
+        TextAlignment textAlign = TextAlignment.LEFT;
+        List<Integer> clips = new ArrayList<>();
+
+        State copy() {
+            State copy = new State();
+            copy.mxx = mxx;
+            copy.myx = myx;
+            copy.mxy = mxy;
+            copy.myy = myy;
+            copy.mxt = mxt;
+            copy.myt = myt;
+            copy.transform = transform;
+            copy.digits = digits;
+            copy.stroke = stroke;
+            copy.fill = fill;
+            copy.lineWidth = lineWidth;
+            copy.dashes = dashes;
+            copy.font = font;
+            copy.textAlign = textAlign;
+            copy.clips = new ArrayList<>(clips);
+            return copy;
+        }
+    }
+
+    // Decimals of the numbers in units of the document
+    private static final int DOCUMENT_DIGITS = 2;
+    private static final int MAX_DIGITS = 9;
+    private static final long[] POWERS_OF_TEN = {
+            1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000
+    };
+
+    private final Writer out;
+    private final Color background;
+    private final StringBuilder element = new StringBuilder(256);
+    private final StringBuilder path = new StringBuilder(1024);
+    private final Deque<State> stack = new ArrayDeque<>();
+    private State state = new State();
+    // Start of the current element in the buffer, where the gradients it refers to are defined
+    private int elementStart = 0;
+    private int nextGradientId = 0;
+
+    // Current point of the path, to join the arcs to it
+    private boolean hasCurrentPoint = false;
+
+    // Transform and clips of the open groups
+    private String openTransform = null;
+    private List<Integer> openClips = List.of();
+    private int nextClipId = 0;
+
+    /**
+     * Writes the start of the document.
+     *
+     * @param out        the destination, not closed by {@link #finish()}
+     * @param width      the width of the document
+     * @param height     the height of the document
+     * @param background painted behind the drawing and used for {@link #clearRect}, null for none
+     */
+    SvgChartGraphics(Writer out, double width, double height, Color background) throws IOException {
+        this.out = out;
+        this.background = background;
+
+        element.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\"");
+        number(width).append("\" height=\"");
+        number(height).append("\" viewBox=\"0 0 ");
+        number(width).append(' ');
+        number(height).append("\">\n");
+        if (background != null && background.getOpacity() > 0) {
+            element.append("<rect width=\"100%\" height=\"100%\"");
+            paint("fill", background);
+            element.append("/>\n");
+        }
+        out.append(element);
+        element.setLength(0);
+    }
+
+    /**
+     * Closes the open groups and writes the end of the document.
+     */
+    void finish() throws IOException {
+        closeGroups();
+        out.write("</svg>\n");
+        out.flush();
+    }
+
+    // ===== State =====
+
+    @Override
+    public void save() {
+        stack.push(state.copy());
+    }
+
+    @Override
+    public void restore() {
+        if (!stack.isEmpty()) state = stack.pop();
+    }
+
+    @Override
+    public void translate(double x, double y) {
+        concatenate(1, 0, 0, 1, x, y);
+    }
+
+    @Override
+    public void scale(double x, double y) {
+        concatenate(x, 0, 0, y, 0, 0);
+    }
+
+    @Override
+    public void rotate(double degrees) {
+        double radians = Math.toRadians(degrees);
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        concatenate(cos, sin, -sin, cos, 0, 0);
+    }
+
+    @Override
+    public void setTransform(double mxx, double myx, double mxy, double myy, double mxt, double myt) {
+        state.mxx = mxx;
+        state.myx = myx;
+        state.mxy = mxy;
+        state.myy = myy;
+        state.mxt = mxt;
+        state.myt = myt;
+        state.transform = null;
+        state.digits = -1;
+    }
+
+    // Applies the given transform before the current one
+    private void concatenate(double mxx, double myx, double mxy, double myy, double mxt, double myt) {
+        State s = state;
+        double nxx = s.mxx * mxx + s.mxy * myx;
+        double nyx = s.myx * mxx + s.myy * myx;
+        double nxy = s.mxx * mxy + s.mxy * myy;
+        double nyy = s.myx * mxy + s.myy * myy;
+        double nxt = s.mxx * mxt + s.mxy * myt + s.mxt;
+        double nyt = s.myx * mxt + s.myy * myt + s.myt;
+        setTransform(nxx, nyx, nxy, nyy, nxt, nyt);
+    }
+
+    @Override
+    public void setStroke(Paint paint) {
+        state.stroke = paint;
+    }
+
+    @Override
+    public void setFill(Paint paint) {
+        state.fill = paint;
+    }
+
+    @Override
+    public Paint getFill() {
+        return state.fill;
+    }
+
+    @Override
+    public void setLineWidth(double width) {
+        state.lineWidth = width;
+    }
+
+    @Override
+    public void setLineDashes(double... dashes) {
+        state.dashes = dashes == null || dashes.length == 0 ? null : dashes.clone();
+    }
+
+    @Override
+    public void setFont(Font font) {
+        state.font = font;
+    }
+
+    @Override
+    public void setTextAlign(TextAlignment align) {
+        state.textAlign = align;
+    }
+
+    @Override
+    public void setImageSmoothing(boolean smoothing) {
+        // Left to the viewer
+    }
+
+    // ===== Path =====
+
+    @Override
+    public void beginPath() {
+        path.setLength(0);
+        hasCurrentPoint = false;
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        path.append('M');
+        pathPoint(x, y);
+        hasCurrentPoint = true;
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        path.append(hasCurrentPoint ? 'L' : 'M');
+        pathPoint(x, y);
+        hasCurrentPoint = true;
+    }
+
+    @Override
+    public void arc(double centerX, double centerY, double radiusX, double radiusY, double startAngle, double length) {
+        appendArc(path, centerX, centerY, radiusX, radiusY, startAngle, length, hasCurrentPoint, digits());
+        hasCurrentPoint = true;
+    }
+
+    @Override
+    public void rect(double x, double y, double w, double h) {
+        moveTo(x, y);
+        lineTo(x + w, y);
+        lineTo(x + w, y + h);
+        lineTo(x, y + h);
+        closePath();
+    }
+
+    @Override
+    public void closePath() {
+        path.append('Z');
+    }
+
+    @Override
+    public void stroke() {
+        if (path.isEmpty()) return;
+        begin("path");
+        element.append(" d=\"").append(path).append('"');
+        strokeAttributes();
+        end();
+    }
+
+    @Override
+    public void clip() {
+        if (path.isEmpty()) return;
+        // Clip paths are written in the coordinates of the document, the groups using them have no transform
+        int id = nextClipId++;
+        element.append("<clipPath id=\"c").append(id).append("\" clipPathUnits=\"userSpaceOnUse\"><path transform=\"")
+                .append(transform()).append("\" d=\"").append(path).append("\"/></clipPath>\n");
+        flush();
+        state.clips.add(id);
+    }
+
+    // ===== Shapes =====
+
+    @Override
+    public void clearRect(double x, double y, double w, double h) {
+        // Nothing to erase in a document, but the cleared area still hides what is under it
+        if (background == null || background.getOpacity() == 0) return;
+        begin("rect");
+        attribute("x", x).attribute("y", y).attribute("width", w).attribute("height", h);
+        paint("fill", background);
+        end();
+    }
+
+    @Override
+    public void strokeLine(double x1, double y1, double x2, double y2) {
+        begin("line");
+        attribute("x1", x1).attribute("y1", y1).attribute("x2", x2).attribute("y2", y2);
+        strokeAttributes();
+        end();
+    }
+
+    @Override
+    public void strokeOval(double x, double y, double w, double h) {
+        oval(x, y, w, h);
+        strokeAttributes();
+        end();
+    }
+
+    @Override
+    public void fillOval(double x, double y, double w, double h) {
+        oval(x, y, w, h);
+        paint("fill", state.fill);
+        end();
+    }
+
+    private void oval(double x, double y, double w, double h) {
+        if (w == h) {
+            begin("circle");
+            attribute("cx", x + w / 2).attribute("cy", y + h / 2).attribute("r", w / 2);
+        } else {
+            begin("ellipse");
+            attribute("cx", x + w / 2).attribute("cy", y + h / 2).attribute("rx", w / 2).attribute("ry", h / 2);
+        }
+    }
+
+    @Override
+    public void strokeRect(double x, double y, double w, double h) {
+        begin("rect");
+        attribute("x", x).attribute("y", y).attribute("width", w).attribute("height", h);
+        strokeAttributes();
+        end();
+    }
+
+    @Override
+    public void fillRoundRect(double x, double y, double w, double h, double arcWidth, double arcHeight) {
+        begin("rect");
+        attribute("x", x).attribute("y", y).attribute("width", w).attribute("height", h)
+                .attribute("rx", arcWidth / 2).attribute("ry", arcHeight / 2);
+        paint("fill", state.fill);
+        end();
+    }
+
+    @Override
+    public void strokeArc(double x, double y, double w, double h, double startAngle, double arcExtent, ArcType closure) {
+        StringBuilder d = new StringBuilder();
+        double centerX = x + w / 2;
+        double centerY = y + h / 2;
+        int digits = digits();
+        appendArc(d, centerX, centerY, w / 2, h / 2, startAngle, arcExtent, false, digits);
+        if (closure == ArcType.ROUND) {
+            d.append('L');
+            appendPoint(d, centerX, centerY, digits);
+        }
+        if (closure != ArcType.OPEN) d.append('Z');
+
+        begin("path");
+        element.append(" d=\"").append(d).append('"');
+        strokeAttributes();
+        end();
+    }
+
+    @Override
+    public void strokePolyline(double[] xPoints, double[] yPoints, int nPoints) {
+        if (nPoints < 2) return;
+        begin("polyline");
+        // Before the points, which may already be written when the paint defines a gradient
+        strokeAttributes();
+        element.append(" points=\"");
+        for (int i = 0; i < nPoints; i++) {
+            if (i > 0) element.append(' ');
+            number(xPoints[i]).append(',');
+            number(yPoints[i]);
+            // Long polylines are written as they go
+            if (element.length() > 8192) flush();
+        }
+        element.append('"');
+        end();
+    }
+
+    @Override
+    public void fillText(String text, double x, double y) {
+        begin("text");
+        attribute("x", x).attribute("y", y);
+        Font font = state.font;
+        element.append(" font-family=\"").append(escape(font.getFamily())).append('"');
+        attribute("font-size", font.getSize());
+        if (font.getStyle().contains("Bold")) element.append(" font-weight=\"bold\"");
+        switch (state.textAlign) {
+            case CENTER -> element.append(" text-anchor=\"middle\"");
+            case RIGHT -> element.append(" text-anchor=\"end\"");
+            default -> {
+            }
+        }
+        paint("fill", state.fill);
+        element.append('>').append(escape(text)).append("</text>\n");
+        flush();
+    }
+
+    @Override
+    public void drawImage(Image image, double x, double y, double w, double h) {
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        PixelReader reader = image.getPixelReader();
+        if (reader == null || width <= 0 || height <= 0) return;
+
+        // Embedded as a PNG, encoded one row at a time
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        int[] row = new int[width];
+        try (PngStreamWriter writer = new PngStreamWriter(png, width, height, true)) {
+            for (int line = 0; line < height; line++) {
+                reader.getPixels(0, line, width, 1, PixelFormat.getIntArgbInstance(), row, 0, width);
+                writer.writeRows(row, 0, 1);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        begin("image");
+        attribute("x", x).attribute("y", y).attribute("width", w).attribute("height", h);
+        element.append(" preserveAspectRatio=\"none\" xlink:href=\"data:image/png;base64,")
+                .append(Base64.getEncoder().encodeToString(png.toByteArray()))
+                .append('"');
+        end();
+    }
+
+    // ===== Output =====
+
+    /**
+     * Starts an element, opening the groups of the current transform and clips if needed.
+     */
+    private void begin(String name) {
+        String transform = transform();
+        if (!transform.equals(openTransform) || !state.clips.equals(openClips)) {
+            closeGroups();
+            for (int clip : state.clips) {
+                element.append("<g clip-path=\"url(#c").append(clip).append(")\">\n");
+            }
+            element.append("<g transform=\"").append(transform).append("\">\n");
+            openTransform = transform;
+            openClips = List.copyOf(state.clips);
+        }
+        elementStart = element.length();
+        element.append('<').append(name);
+    }
+
+    private void end() {
+        element.append("/>\n");
+        flush();
+    }
+
+    private void closeGroups() {
+        if (openTransform == null) return;
+        element.append("</g>\n".repeat(openClips.size() + 1));
+        openTransform = null;
+        openClips = List.of();
+    }
+
+    private void flush() {
+        try {
+            out.append(element);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        element.setLength(0);
+        elementStart = 0;
+    }
+
+    private String transform() {
+        State s = state;
+        if (s.transform == null) {
+            // The scale is kept more precise than the coordinates, it multiplies them
+            StringBuilder matrix = new StringBuilder("matrix(");
+            matrix.append((float) s.mxx).append(' ').append((float) s.myx).append(' ')
+                    .append((float) s.mxy).append(' ').append((float) s.myy).append(' ');
+            appendNumber(matrix, s.mxt, DOCUMENT_DIGITS).append(' ');
+            appendNumber(matrix, s.myt, DOCUMENT_DIGITS).append(')');
+            s.transform = matrix.toString();
+        }
+        return s.transform;
+    }
+
+    /**
+     * Decimals of the coordinates under the current transform, so they are precise to a hundredth of a unit
+     * of the document once scaled.
+     */
+    private int digits() {
+        State s = state;
+        if (s.digits < 0) {
+            double scale = Math.max(Math.hypot(s.mxx, s.myx), Math.hypot(s.mxy, s.myy));
+            s.digits = scale > 1 ? Math.clamp((long) Math.ceil(Math.log10(scale * 100)), DOCUMENT_DIGITS, MAX_DIGITS)
+                    : DOCUMENT_DIGITS;
+        }
+        return s.digits;
+    }
+
+    private void strokeAttributes() {
+        element.append(" fill=\"none\"");
+        paint("stroke", state.stroke);
+        attribute("stroke-width", state.lineWidth);
+        if (state.dashes != null) {
+            element.append(" stroke-dasharray=\"");
+            for (int i = 0; i < state.dashes.length; i++) {
+                if (i > 0) element.append(' ');
+                number(state.dashes[i]);
+            }
+            element.append('"');
+        }
+    }
+
+    /**
+     * Appends the paint attribute of the current element. A gradient is defined just before the element.
+     *
+     * @throws IllegalArgumentException if the paint is neither a color nor a gradient
+     */
+    private void paint(String name, Paint paint) {
+        if (paint instanceof Color color) {
+            color(element, name, color);
+            return;
+        }
+
+        String id = "g" + nextGradientId++;
+        StringBuilder definition = new StringBuilder(256);
+        List<Stop> stops;
+        CycleMethod cycle;
+        boolean proportional;
+        if (paint instanceof LinearGradient linear) {
+            int digits = linear.isProportional() ? 4 : digits();
+            definition.append("<linearGradient id=\"").append(id).append("\" x1=\"");
+            appendNumber(definition, linear.getStartX(), digits).append("\" y1=\"");
+            appendNumber(definition, linear.getStartY(), digits).append("\" x2=\"");
+            appendNumber(definition, linear.getEndX(), digits).append("\" y2=\"");
+            appendNumber(definition, linear.getEndY(), digits).append('"');
+            stops = linear.getStops();
+            cycle = linear.getCycleMethod();
+            proportional = linear.isProportional();
+        } else if (paint instanceof RadialGradient radial) {
+            int digits = radial.isProportional() ? 4 : digits();
+            // The focus is given by its angle and its distance from the center, in fractions of the radius
+            double focusAngle = Math.toRadians(radial.getFocusAngle());
+            double focusDistance = radial.getFocusDistance() * radial.getRadius();
+            definition.append("<radialGradient id=\"").append(id).append("\" cx=\"");
+            appendNumber(definition, radial.getCenterX(), digits).append("\" cy=\"");
+            appendNumber(definition, radial.getCenterY(), digits).append("\" r=\"");
+            appendNumber(definition, radial.getRadius(), digits).append("\" fx=\"");
+            appendNumber(definition, radial.getCenterX() + focusDistance * Math.cos(focusAngle), digits).append("\" fy=\"");
+            appendNumber(definition, radial.getCenterY() + focusDistance * Math.sin(focusAngle), digits).append('"');
+            stops = radial.getStops();
+            cycle = radial.getCycleMethod();
+            proportional = radial.isProportional();
+        } else {
+            throw new IllegalArgumentException("Paint not supported in SVG: " + paint);
+        }
+
+        definition.append(" gradientUnits=\"").append(proportional ? "objectBoundingBox" : "userSpaceOnUse").append('"');
+        switch (cycle) {
+            case REFLECT -> definition.append(" spreadMethod=\"reflect\"");
+            case REPEAT -> definition.append(" spreadMethod=\"repeat\"");
+            default -> {
+            }
+        }
+        definition.append('>');
+        for (Stop stop : stops) {
+            definition.append("<stop offset=\"");
+            appendNumber(definition, stop.getOffset(), 4).append('"');
+            color(definition, "stop-color", stop.getColor());
+            definition.append("/>");
+        }
+        definition.append(paint instanceof LinearGradient ? "</linearGradient>\n" : "</radialGradient>\n");
+
+        element.insert(elementStart, definition);
+        elementStart += definition.length();
+        element.append(' ').append(name).append("=\"url(#").append(id).append(")\"");
+    }
+
+    /**
+     * Appends a color attribute, with its opacity attribute when it isn't opaque.
+     */
+    private static void color(StringBuilder target, String name, Color color) {
+        int r = (int) Math.round(color.getRed() * 255);
+        int g = (int) Math.round(color.getGreen() * 255);
+        int b = (int) Math.round(color.getBlue() * 255);
+        int rgb = (r << 16) | (g << 8) | b;
+        target.append(' ').append(name).append("=\"#");
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            target.append(Character.forDigit((rgb >> shift) & 0xF, 16));
+        }
+        target.append('"');
+        if (color.getOpacity() < 1) {
+            // The stop-color of a gradient has a stop-opacity
+            target.append(' ').append(name.equals("stop-color") ? "stop" : name).append("-opacity");
+            target.append("=\"");
+            appendNumber(target, color.getOpacity(), DOCUMENT_DIGITS).append('"');
+        }
+    }
+
+    private SvgChartGraphics attribute(String name, double value) {
+        element.append(' ').append(name).append("=\"");
+        number(value).append('"');
+        return this;
+    }
+
+    private StringBuilder number(double value) {
+        return appendNumber(element, value, digits());
+    }
+
+    private void pathPoint(double x, double y) {
+        appendPoint(path, x, y, digits());
+    }
+
+    private static void appendPoint(StringBuilder target, double x, double y, int digits) {
+        appendNumber(target, x, digits).append(',');
+        appendNumber(target, y, digits);
+    }
+
+    /**
+     * Appends an arc with the Euclidean angles of the canvas (counterclockwise on screen, in degrees),
+     * as SVG arc commands of at most a half turn each.
+     */
+    private static void appendArc(StringBuilder target, double centerX, double centerY, double radiusX, double radiusY,
+                                  double startAngle, double length, boolean joinToCurrent, int digits) {
+        double angle = Math.toRadians(startAngle);
+        target.append(joinToCurrent ? 'L' : 'M');
+        appendPoint(target, centerX + radiusX * Math.cos(angle), centerY - radiusY * Math.sin(angle), digits);
+
+        int pieces = Math.max(1, (int) Math.ceil(Math.abs(length) / 180.0));
+        double step = Math.toRadians(length / pieces);
+        // A positive extent turns counterclockwise on screen, the negative direction of SVG
+        char sweep = length > 0 ? '0' : '1';
+        for (int i = 0; i < pieces; i++) {
+            angle += step;
+            target.append('A');
+            appendNumber(target, radiusX, digits).append(',');
+            appendNumber(target, radiusY, digits).append(" 0 0 ").append(sweep).append(' ');
+            appendPoint(target, centerX + radiusX * Math.cos(angle), centerY - radiusY * Math.sin(angle), digits);
+        }
+    }
+
+    /**
+     * Appends a number rounded to the given decimals, without the trailing zeros.
+     */
+    private static StringBuilder appendNumber(StringBuilder target, double value, int digits) {
+        if (!Double.isFinite(value)) return target.append('0');
+        long unit = POWERS_OF_TEN[digits];
+        long scaled = Math.round(value * unit);
+        if (scaled < 0) {
+            target.append('-');
+            scaled = -scaled;
+        }
+        target.append(scaled / unit);
+        long fraction = scaled % unit;
+        if (fraction != 0) {
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            target.append('.');
+            // Leading zeros of the fraction
+            for (long power = POWERS_OF_TEN[digits - 1]; power > fraction; power /= 10) target.append('0');
+            target.append(fraction);
+        }
+        return target;
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&' -> escaped.append("&amp;");
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '"' -> escaped.append("&quot;");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
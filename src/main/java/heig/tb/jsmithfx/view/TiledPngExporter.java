@@ -0,0 +1,194 @@
+package heig.tb.jsmithfx.view;
+
+import heig.tb.jsmithfx.utilities.PngStreamWriter;
+import javafx.application.Platform;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Exports a view to a PNG image of any resolution by rendering it in tiles.
+ * <p>
+ * The image is produced one strip of tiles at a time: each tile is prepared on a background thread, drawn
+ * on a small canvas with the scale and offset of its place in the image, then copied into the strip, and
+ * the finished strip is compressed on the background thread. The FX thread gets back to the UI between
+ * tiles. Only one tile canvas and one strip are ever allocated, so the memory and texture use don't depend
+ * on the size of the image.
+ * </p>
+ */
+public final class TiledPngExporter {
+
+    /**
+     * Draws a view into a tile.
+     */
+    @FunctionalInterface
+    public interface TileRenderer {
+        /**
+         * Clears the tile and draws the view on it, a logical point {@code p} of the view being drawn at
+         * {@code p * scale + offset} on the tile.
+         */
+        void render(Canvas tile, double scale, double offsetX, double offsetY);
+
+        /**
+         * Does the work of a tile that doesn't need the FX thread, like rasterizing large point sets.
+         * Called on a background thread before each {@link #render} with the same view, never at the same time.
+         *
+         * @param width  the width of the tile canvas
+         * @param height the height of the tile canvas
+         */
+        default void prepare(int width, int height, double scale, double offsetX, double offsetY) {
+        }
+    }
+
+    // Far below the texture limits of any graphics card
+    public static final int TILE_SIZE = 1024;
+    // Bounds the strip of very wide images (64 MB), its tiles get flatter instead
+    private static final int MAX_STRIP_PIXELS = 16 * 1024 * 1024;
+
+    private static final ExecutorService ENCODER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "png-export");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final TileRenderer renderer;
+    private final File destination;
+    private final int width;
+    private final int height;
+    private final double scale;
+    private final Color background;
+    private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    private Canvas tile;
+    private WritableImage tileImage;
+    private int[] strip;
+    private PngStreamWriter writer;
+
+    private TiledPngExporter(TileRenderer renderer, File destination, int width, int height, double scale, Color background) {
+        this.renderer = renderer;
+        this.destination = destination;
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        this.background = background;
+    }
+
+    /**
+     * Starts the export of a view. Must be called from the FX thread.
+     *
+     * @param logicalWidth  the width of the view, in its own units
+     * @param logicalHeight the height of the view, in its own units
+     * @param width         the width of the image in pixels, the height follows the aspect of the view
+     * @param background    the color behind the view, null or transparent for an image with an alpha channel
+     * @param renderer      draws the view into the tiles
+     * @param destination   the PNG file to write
+     * @return completed once the file is written, or exceptionally if the export failed
+     */
+    public static CompletableFuture<Void> export(double logicalWidth, double logicalHeight, int width, Color background,
+                                                 TileRenderer renderer, File destination) {
+        if (logicalWidth <= 0 || logicalHeight <= 0 || width <= 0) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Nothing to export"));
+        }
+        double scale = width / logicalWidth;
+        int height = Math.max(1, (int) Math.round(logicalHeight * scale));
+
+        TiledPngExporter exporter = new TiledPngExporter(renderer, destination, width, height, scale, background);
+        exporter.start();
+        return exporter.result;
+    }
+
+    private void start() {
+        int tileWidth = Math.min(TILE_SIZE, width);
+        int tileHeight = Math.min(Math.min(TILE_SIZE, height), Math.max(1, MAX_STRIP_PIXELS / width));
+        tile = new Canvas(tileWidth, tileHeight);
+        tileImage = new WritableImage(tileWidth, tileHeight);
+        strip = new int[width * tileHeight];
+
+        boolean alpha = background == null || !background.isOpaque();
+        ENCODER.execute(() -> {
+            try {
+                writer = new PngStreamWriter(new BufferedOutputStream(new FileOutputStream(destination)), width, height, alpha);
+                prepareTile(0, 0);
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+    }
+
+    /**
+     * Prepares a tile on the encoder thread, then has it rendered on the FX thread.
+     */
+    private void prepareTile(int top, int left) {
+        try {
+            renderer.prepare((int) tile.getWidth(), (int) tile.getHeight(), scale, -left, -top);
+        } catch (RuntimeException e) {
+            fail(e);
+            return;
+        }
+        Platform.runLater(() -> renderTile(top, left));
+    }
+
+    /**
+     * Renders a tile into the strip on the FX thread, then hands the next step to the encoder:
+     * the next tile of the strip, or the encoding of the finished strip.
+     */
+    private void renderTile(int top, int left) {
+        int rows = Math.min((int) tile.getHeight(), height - top);
+        int columns = Math.min((int) tile.getWidth(), width - left);
+        try {
+            SnapshotParameters parameters = new SnapshotParameters();
+            parameters.setFill(background == null ? Color.TRANSPARENT : background);
+
+            renderer.render(tile, scale, -left, -top);
+            tile.snapshot(parameters, tileImage);
+            tileImage.getPixelReader().getPixels(0, 0, columns, rows, PixelFormat.getIntArgbInstance(),
+                    strip, left, width);
+        } catch (RuntimeException e) {
+            // The writer belongs to the encoder thread
+            ENCODER.execute(() -> fail(e));
+            return;
+        }
+
+        ENCODER.execute(() -> {
+            if (left + columns < width) {
+                prepareTile(top, left + columns);
+                return;
+            }
+            try {
+                writer.writeRows(strip, 0, rows);
+                if (top + rows < height) {
+                    prepareTile(top + rows, 0);
+                } else {
+                    writer.close();
+                    writer = null;
+                    result.complete(null);
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+    }
+
+    private void fail(Exception e) {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException | IllegalStateException _) {
+                // The file is incomplete anyway
+            }
+            writer = null;
+        }
+        destination.delete();
+        result.completeExceptionally(e);
+    }
+}
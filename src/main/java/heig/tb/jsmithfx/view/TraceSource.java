@@ -0,0 +1,205 @@
+package heig.tb.jsmithfx.view;
+
+import heig.tb.jsmithfx.logic.SimulationResult;
+import heig.tb.jsmithfx.model.DataPoint;
+import heig.tb.jsmithfx.utilities.Complex;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar snapshot of a series of measures against frequency, shared by every trace plotted from it.
+ * <p>
+ * The frequencies and reflection coefficients are copied once into primitive columns. Each quantity is
+ * derived from them on first use, in one pass, and kept with its envelope pyramid; all the pyramids share
+ * the frequency column. Plotting another quantity of the same series therefore costs one pass, and a
+ * trace restricted to a frequency range costs nothing.
+ * </p>
+ * The columns are immutable. The pyramids can be built from a background thread while the FX thread reads
+ * the ones already built.
+ */
+public final class TraceSource {
+
+    /**
+     * The quantities that can be plotted against frequency.
+     */
+    public enum Quantity {
+        MAGNITUDE_DB("|Γ|", "dB"),
+        GAMMA_MAGNITUDE("|Γ|", ""),
+        PHASE("Phase", "°"),
+        VSWR("VSWR", ""),
+        GROUP_DELAY("Group delay", "ns"),
+        IMPEDANCE_MAGNITUDE("|Z|", "Ω"),
+        RESISTANCE("R", "Ω"),
+        REACTANCE("X", "Ω"),
+        QUALITY_FACTOR("Q", "");
+
+        private final String label;
+        private final String unit;
+
+        Quantity(String label, String unit) {
+            this.label = label;
+            this.unit = unit;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        /**
+         * Value of the quantity for a single reflection coefficient.
+         *
+         * @return the value, NaN when it isn't defined for a single point (group delay) or for this coefficient
+         */
+        public double valueOf(Complex gamma, double z0) {
+            if (this == GROUP_DELAY) return Double.NaN;
+            return compute(this, gamma.real(), gamma.imag(), z0);
+        }
+    }
+
+    private final double[] freqs;
+    private final double factor;
+    private final double[] gammaRe;
+    private final double[] gammaIm;
+    private final double z0;
+    private final Map<Quantity, EnvelopePyramid> pyramids = new EnumMap<>(Quantity.class);
+
+    private TraceSource(double[] freqs, double factor, double[] gammaRe, double[] gammaIm, double z0) {
+        this.freqs = freqs;
+        this.factor = factor;
+        this.gammaRe = gammaRe;
+        this.gammaIm = gammaIm;
+        this.z0 = z0;
+    }
+
+    /**
+     * Copies the frequencies and reflection coefficients of the points, which must be sorted by frequency.
+     *
+     * @param factor the frequency unit of the plot, the frequencies are divided by it
+     * @param z0     the reference impedance of the coefficients
+     */
+    public static TraceSource of(List<DataPoint> points, double factor, double z0) {
+        int n = points.size();
+        double[] freqs = new double[n];
+        double[] gammaRe = new double[n];
+        double[] gammaIm = new double[n];
+        for (int i = 0; i < n; i++) {
+            DataPoint dp = points.get(i);
+            Complex gamma = dp.gammaProperty().get();
+            freqs[i] = dp.getFrequency() / factor;
+            gammaRe[i] = gamma == null ? Double.NaN : gamma.real();
+            gammaIm[i] = gamma == null ? Double.NaN : gamma.imag();
+        }
+        return new TraceSource(freqs, factor, gammaRe, gammaIm, z0);
+    }
+
+    /**
+     * Copies the frequencies and reflection coefficients of a published series, which must be sorted by frequency.
+     * The series is immutable, so the copy can be made from any thread.
+     *
+     * @param factor the frequency unit of the plot, the frequencies are divided by it
+     * @param z0     the reference impedance of the coefficients
+     */
+    public static TraceSource of(SimulationResult.Series series, double factor, double z0) {
+        int n = series.size();
+        double[] freqs = new double[n];
+        double[] gammaRe = new double[n];
+        double[] gammaIm = new double[n];
+        for (int i = 0; i < n; i++) {
+            freqs[i] = series.frequency(i) / factor;
+            gammaRe[i] = series.gammaReal(i);
+            gammaIm[i] = series.gammaImag(i);
+        }
+        return new TraceSource(freqs, factor, gammaRe, gammaIm, z0);
+    }
+
+    public int size() {
+        return freqs.length;
+    }
+
+    public double getFactor() {
+        return factor;
+    }
+
+    public double getZ0() {
+        return z0;
+    }
+
+    /**
+     * Returns the pyramid of a quantity, computing it if needed. Can be slow, call it from a background thread.
+     */
+    public synchronized EnvelopePyramid pyramid(Quantity quantity) {
+        return pyramids.computeIfAbsent(quantity, this::build);
+    }
+
+    /**
+     * Returns the pyramid of a quantity if it is already computed, null otherwise.
+     */
+    public synchronized EnvelopePyramid cachedPyramid(Quantity quantity) {
+        return pyramids.get(quantity);
+    }
+
+    private EnvelopePyramid build(Quantity quantity) {
+        int n = freqs.length;
+        double[] values = new double[n];
+        if (quantity == Quantity.GROUP_DELAY) {
+            computeGroupDelay(values);
+        } else {
+            for (int i = 0; i < n; i++) {
+                values[i] = compute(quantity, gammaRe[i], gammaIm[i], z0);
+            }
+        }
+        return new EnvelopePyramid(freqs, values);
+    }
+
+    /**
+     * Group delay, minus the derivative of the phase against the angular frequency, by central differences.
+     */
+    private void computeGroupDelay(double[] values) {
+        int n = freqs.length;
+        if (n < 2) {
+            Arrays.fill(values, Double.NaN);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            int before = Math.max(0, i - 1);
+            int after = Math.min(n - 1, i + 1);
+            double deltaPhase = Math.atan2(gammaIm[after], gammaRe[after]) - Math.atan2(gammaIm[before], gammaRe[before]);
+            // Unwrapped, the phase never jumps by more than half a turn between neighbours
+            deltaPhase = Math.IEEEremainder(deltaPhase, 2 * Math.PI);
+            double deltaOmega = 2 * Math.PI * (freqs[after] - freqs[before]) * factor;
+            values[i] = deltaOmega > 0 ? -deltaPhase / deltaOmega * 1e9 : Double.NaN;
+        }
+    }
+
+    private static double compute(Quantity quantity, double re, double im, double z0) {
+        double magnitude = Math.hypot(re, im);
+        double value = switch (quantity) {
+            case MAGNITUDE_DB -> 20 * Math.log10(magnitude);
+            case GAMMA_MAGNITUDE -> magnitude;
+            case PHASE -> Math.toDegrees(Math.atan2(im, re));
+            case VSWR -> magnitude < 1 ? (1 + magnitude) / (1 - magnitude) : Double.NaN;
+            case GROUP_DELAY -> Double.NaN;
+            default -> {
+                // Z = z0 (1 + gamma) / (1 - gamma)
+                double denominator = (1 - re) * (1 - re) + im * im;
+                double r = z0 * (1 - re * re - im * im) / denominator;
+                double x = z0 * 2 * im / denominator;
+                yield switch (quantity) {
+                    case IMPEDANCE_MAGNITUDE -> Math.hypot(r, x);
+                    case RESISTANCE -> r;
+                    case REACTANCE -> x;
+                    default -> r > 0 ? Math.abs(x) / r : Double.NaN;
+                };
+            }
+        };
+        // Infinite values would flatten the axis, they are left out like missing samples
+        return Double.isFinite(value) ? value : Double.NaN;
+    }
+}
@@ -0,0 +1,91 @@
+package heig.tb.jsmithfx;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import heig.tb.jsmithfx.logic.SimulationResult;
+import heig.tb.jsmithfx.model.CircuitElement;
+import heig.tb.jsmithfx.model.DataPoint;
+import heig.tb.jsmithfx.utilities.Complex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class SmithChartViewModelTest {
+
+    private static double[] gammaReals(SimulationResult.Series series) {
+        double[] values = new double[series.size()];
+        for (int i = 0; i < values.length; i++) values[i] = series.gammaReal(i);
+        return values;
+    }
+
+    @Test
+    public void eachPublishedResultHasTheNextGeneration() {
+        SmithChartViewModel viewModel = new SmithChartViewModel();
+        long generation = viewModel.getSimulationResult().getGeneration();
+
+        viewModel.setFrequency(2e9);
+        assertEquals(generation + 1, viewModel.getSimulationResult().getGeneration());
+
+        viewModel.addComponent(CircuitElement.ElementType.CAPACITOR, 1e-12, CircuitElement.ElementPosition.SERIES, Optional.empty());
+        assertEquals(generation + 2, viewModel.getSimulationResult().getGeneration());
+
+        // A batch publishes a single result, whatever the number of changes
+        viewModel.runBatched(() -> {
+            viewModel.setFrequency(3e9);
+            viewModel.loadImpedance.set(new Complex(20, -10));
+            viewModel.performFrequencySweep(new ArrayList<>(List.of(1e8, 2e8, 3e8)));
+        });
+        assertEquals(generation + 3, viewModel.getSimulationResult().getGeneration());
+    }
+
+    @Test
+    public void publishedResultDoesNotChangeAfterLaterEdits() {
+        SmithChartViewModel viewModel = new SmithChartViewModel();
+        viewModel.performFrequencySweep(new ArrayList<>(List.of(1e8, 2e8, 3e8)));
+        viewModel.addComponent(CircuitElement.ElementType.INDUCTOR, 5e-9, CircuitElement.ElementPosition.SERIES, Optional.empty());
+
+        SimulationResult result = viewModel.getSimulationResult();
+        double[] chain = gammaReals(result.getChain());
+        double[] sweep = gammaReals(result.getSweep());
+
+        viewModel.addComponent(CircuitElement.ElementType.CAPACITOR, 2e-12, CircuitElement.ElementPosition.PARALLEL, Optional.empty());
+        viewModel.setFrequency(5e8);
+        viewModel.loadImpedance.set(new Complex(75, 30));
+
+        assertEquals(2, result.getChain().size());
+        assertArrayEquals(chain, gammaReals(result.getChain()));
+        assertArrayEquals(sweep, gammaReals(result.getSweep()));
+
+        SimulationResult latest = viewModel.getSimulationResult();
+        assertEquals(3, latest.getChain().size());
+        assertNotEquals(sweep[0], latest.getSweep().gammaReal(0));
+    }
+
+    @Test
+    public void resultMatchesThePointsAndSharesTheSeriesNotComputedAgain() {
+        SmithChartViewModel viewModel = new SmithChartViewModel();
+        viewModel.performFrequencySweep(new ArrayList<>(List.of(1e8, 2e8, 3e8)));
+        viewModel.addComponent(CircuitElement.ElementType.RESISTOR, 10, CircuitElement.ElementPosition.SERIES, Optional.empty());
+
+        SimulationResult before = viewModel.getSimulationResult();
+        List<DataPoint> sweepPoints = viewModel.sweepDataPointsProperty();
+        assertEquals(sweepPoints.size(), before.getSweep().size());
+        for (int i = 0; i < sweepPoints.size(); i++) {
+            assertEquals(sweepPoints.get(i).getFrequency(), before.getSweep().frequency(i));
+            assertEquals(sweepPoints.get(i).getGamma().real(), before.getSweep().gammaReal(i));
+            assertEquals(sweepPoints.get(i).getImpedance().imag(), before.getSweep().reactance(i));
+        }
+
+        // The sweep has its own frequencies, changing the frequency of the circuit doesn't compute it again
+        viewModel.setFrequency(2e9);
+        SimulationResult after = viewModel.getSimulationResult();
+        assertSame(before.getSweep(), after.getSweep());
+        assertSame(before.getTransformedS1P(), after.getTransformedS1P());
+    }
+}
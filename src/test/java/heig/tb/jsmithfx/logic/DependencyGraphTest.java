@@ -0,0 +1,141 @@
+package heig.tb.jsmithfx.logic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+public class DependencyGraphTest {
+
+    @Test
+    public void diamondIsComputedOnceInputsFirst() {
+        DependencyGraph graph = new DependencyGraph();
+        List<String> computed = new ArrayList<>();
+        DependencyGraph.Node source = graph.source("source");
+        DependencyGraph.Node left = graph.derived("left", () -> computed.add("left"), source);
+        DependencyGraph.Node right = graph.derived("right", () -> computed.add("right"), source);
+        graph.derived("bottom", () -> computed.add("bottom"), left, right);
+
+        graph.flush();
+        assertEquals(List.of("left", "right", "bottom"), computed);
+
+        computed.clear();
+        graph.changed(source);
+        assertEquals(List.of("left", "right", "bottom"), computed);
+
+        // Nothing changed, nothing to compute
+        computed.clear();
+        graph.flush();
+        assertTrue(computed.isEmpty());
+    }
+
+    @Test
+    public void onlyTheDependentsOfTheChangedSourceAreComputed() {
+        DependencyGraph graph = new DependencyGraph();
+        List<String> computed = new ArrayList<>();
+        DependencyGraph.Node first = graph.source("first");
+        DependencyGraph.Node second = graph.source("second");
+        graph.derived("fromFirst", () -> computed.add("fromFirst"), first);
+        graph.derived("fromSecond", () -> computed.add("fromSecond"), second);
+        graph.derived("fromBoth", () -> computed.add("fromBoth"), first, second);
+        graph.flush();
+
+        computed.clear();
+        graph.changed(second);
+        assertEquals(List.of("fromSecond", "fromBoth"), computed);
+    }
+
+    @Test
+    public void nestedHoldsFlushOnceOnTheOutermostRelease() {
+        DependencyGraph graph = new DependencyGraph();
+        int[] computed = {0};
+        DependencyGraph.Node source = graph.source("source");
+        graph.derived("derived", () -> computed[0]++, source);
+        graph.flush();
+
+        computed[0] = 0;
+        graph.hold();
+        graph.changed(source);
+        graph.hold();
+        graph.changed(source);
+        graph.flush();
+        graph.release();
+        assertEquals(0, computed[0]);
+
+        graph.changed(source);
+        graph.release();
+        assertEquals(1, computed[0]);
+
+        assertThrows(IllegalStateException.class, graph::release);
+    }
+
+    @Test
+    public void changesMadeWhileComputingAreComputedByTheSameFlush() {
+        DependencyGraph graph = new DependencyGraph();
+        int[] computed = {0};
+        DependencyGraph.Node source = graph.source("source");
+        // Settles after changing its own source twice
+        graph.derived("settling", () -> {
+            if (++computed[0] < 3) graph.changed(source);
+        }, source);
+
+        graph.flush();
+        assertEquals(3, computed[0]);
+    }
+
+    @Test
+    public void nodeChangingItsOwnSourceGivesUpAfterTheMaximumPasses() {
+        DependencyGraph graph = new DependencyGraph();
+        int[] computed = {0};
+        DependencyGraph.Node source = graph.source("source");
+        graph.derived("unstable", () -> {
+            computed[0]++;
+            graph.changed(source);
+        }, source);
+
+        List<LogRecord> records = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger("Error");
+        logger.addHandler(handler);
+        try {
+            graph.flush();
+        } finally {
+            logger.removeHandler(handler);
+        }
+
+        assertEquals(8, computed[0]);
+        assertEquals(1, records.size());
+        assertEquals(Level.SEVERE, records.getFirst().getLevel());
+
+        // The graph isn't left flushing, a later change is computed again
+        computed[0] = 0;
+        logger.addHandler(handler);
+        try {
+            graph.changed(source);
+        } finally {
+            logger.removeHandler(handler);
+        }
+        assertEquals(8, computed[0]);
+    }
+}
@@ -0,0 +1,69 @@
+package heig.tb.jsmithfx.logic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import heig.tb.jsmithfx.model.FrequencyBand;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class FrequencyBandIndexTest {
+
+    private static int scan(List<FrequencyBand> bands, double frequency) {
+        for (int i = 0; i < bands.size(); i++) {
+            if (bands.get(i).contains(frequency)) return i;
+        }
+        return -1;
+    }
+
+    // Bounds and frequencies on a coarse grid, so they often fall on each other, with signed zeros
+    private static double gridValue(Random random) {
+        int step = random.nextInt(21) - 5;
+        if (step == 0) return random.nextBoolean() ? 0.0 : -0.0;
+        return step * 1e6;
+    }
+
+    private static double frequency(Random random) {
+        return switch (random.nextInt(4)) {
+            case 0 -> (random.nextDouble() * 20 - 5) * 1e6;
+            case 1 -> Double.NaN;
+            default -> gridValue(random);
+        };
+    }
+
+    @Test
+    public void bandsMatchALinearScan() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            List<FrequencyBand> bands = new ArrayList<>();
+            int count = random.nextInt(6);
+            for (int i = 0; i < count; i++) {
+                // Some bands have their bounds reversed and cover nothing
+                bands.add(new FrequencyBand("B" + i, gridValue(random), gridValue(random)));
+            }
+            FrequencyBandIndex index = FrequencyBandIndex.of(bands);
+
+            double[] frequencies = new double[40];
+            for (int i = 0; i < frequencies.length; i++) frequencies[i] = frequency(random);
+
+            // Unsorted, the cursor has to restart on the way down
+            FrequencyBandIndex.Cursor unsorted = index.cursor();
+            for (double frequency : frequencies) {
+                int expected = scan(bands, frequency);
+                assertEquals(expected, index.bandOf(frequency), "bandOf(" + frequency + ") in " + bands);
+                assertEquals(expected, unsorted.bandOf(frequency), "cursor at " + frequency + " in " + bands);
+            }
+
+            double[] sorted = frequencies.clone();
+            Arrays.sort(sorted);
+            FrequencyBandIndex.Cursor cursor = index.cursor();
+            for (double frequency : sorted) {
+                assertEquals(scan(bands, frequency), cursor.bandOf(frequency), "cursor at " + frequency + " in " + bands);
+            }
+        }
+    }
+}
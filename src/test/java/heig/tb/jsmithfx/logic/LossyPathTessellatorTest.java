@@ -0,0 +1,120 @@
+package heig.tb.jsmithfx.logic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import heig.tb.jsmithfx.model.CircuitElement;
+import heig.tb.jsmithfx.model.CircuitElement.ElementPosition;
+import heig.tb.jsmithfx.model.CircuitElement.ElementType;
+import heig.tb.jsmithfx.model.Element.Capacitor;
+import heig.tb.jsmithfx.model.Element.Inductor;
+import heig.tb.jsmithfx.model.Element.Line;
+import heig.tb.jsmithfx.model.Element.Resistor;
+import heig.tb.jsmithfx.utilities.Complex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class LossyPathTessellatorTest {
+
+    private static final double Z0 = 50;
+    private static final double FREQUENCY = 1e9;
+    private static final Complex START = new Complex(0.3, 0.2);
+    private static final int REFERENCE_INTERVALS = 20000;
+
+    private static CircuitElement withQ(CircuitElement element, double q) {
+        element.setQualityFactor(q);
+        return element;
+    }
+
+    private static List<CircuitElement> elements() {
+        Line lossyLine = new Line(0.4, 75, 2.2);
+        lossyLine.setQualityFactor(2.0);
+        Line shortStub = new Line(0.05, 50, 1.0, Line.StubType.SHORT);
+        shortStub.setQualityFactor(5.0);
+        Line openStub = new Line(0.03, 60, 4.0, Line.StubType.OPEN);
+        openStub.setQualityFactor(1.0);
+        return List.of(
+                withQ(new Capacitor(2e-12, ElementPosition.SERIES, ElementType.CAPACITOR), 20),
+                withQ(new Capacitor(5e-12, ElementPosition.PARALLEL, ElementType.CAPACITOR), 10),
+                withQ(new Inductor(20e-9, ElementPosition.SERIES, ElementType.INDUCTOR), 30),
+                withQ(new Inductor(8e-9, ElementPosition.PARALLEL, ElementType.INDUCTOR), 5),
+                new Resistor(120, ElementPosition.SERIES, ElementType.RESISTOR),
+                new Resistor(40, ElementPosition.PARALLEL, ElementType.RESISTOR),
+                lossyLine, shortStub, openStub);
+    }
+
+    /**
+     * Largest distance from a dense uniform sampling of the path to the tessellated polyline.
+     */
+    private static double maxDeviation(LossyPathTessellator polyline, LossyPathTessellator reference) {
+        double[] xs = polyline.getXs();
+        double[] ys = polyline.getYs();
+        double worst = 0;
+        for (int i = 0; i < reference.size(); i++) {
+            double px = reference.getXs()[i];
+            double py = reference.getYs()[i];
+            double nearest = Double.POSITIVE_INFINITY;
+            for (int j = 1; j < polyline.size(); j++) {
+                nearest = Math.min(nearest, distanceToSegment(px, py, xs[j - 1], ys[j - 1], xs[j], ys[j]));
+            }
+            worst = Math.max(worst, nearest);
+        }
+        return worst;
+    }
+
+    private static double distanceToSegment(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double len2 = dx * dx + dy * dy;
+        double u = len2 == 0 ? 0 : Math.clamp(((px - ax) * dx + (py - ay) * dy) / len2, 0.0, 1.0);
+        return Math.hypot(ax + u * dx - px, ay + u * dy - py);
+    }
+
+    @Test
+    public void deviationStaysWithinTolerance() {
+        LossyPathTessellator polyline = new LossyPathTessellator();
+        LossyPathTessellator reference = new LossyPathTessellator();
+        for (double tolerance : new double[]{1e-2, 1e-3, 1e-4}) {
+            for (CircuitElement element : elements()) {
+                int points = polyline.tessellate(START, element, Z0, FREQUENCY, tolerance);
+                reference.sampleUniform(START, element, Z0, FREQUENCY, REFERENCE_INTERVALS);
+                assertTrue(points >= 2, element + " gave " + points + " points");
+
+                // The midpoint test can miss the farthest point of a segment by a little, hence the margin
+                double deviation = maxDeviation(polyline, reference);
+                assertTrue(deviation <= 1.5 * tolerance,
+                        element + " deviates by " + deviation + " for a tolerance of " + tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void pathStartsAndEndsLikeTheUniformSampling() {
+        LossyPathTessellator polyline = new LossyPathTessellator();
+        LossyPathTessellator reference = new LossyPathTessellator();
+        for (CircuitElement element : elements()) {
+            int points = polyline.tessellate(START, element, Z0, FREQUENCY, 1e-3);
+            int samples = reference.sampleUniform(START, element, Z0, FREQUENCY, 8);
+
+            assertEquals(reference.getXs()[0], polyline.getXs()[0], 1e-12);
+            assertEquals(reference.getYs()[0], polyline.getYs()[0], 1e-12);
+            assertEquals(reference.getXs()[samples - 1], polyline.getXs()[points - 1], 1e-12);
+            assertEquals(reference.getYs()[samples - 1], polyline.getYs()[points - 1], 1e-12);
+        }
+    }
+
+    @Test
+    public void tighterToleranceNeverGivesFewerPoints() {
+        LossyPathTessellator tessellator = new LossyPathTessellator();
+        for (CircuitElement element : elements()) {
+            int previous = 0;
+            for (double tolerance : new double[]{1e-1, 1e-2, 1e-3, 1e-4}) {
+                int points = tessellator.tessellate(START, element, Z0, FREQUENCY, tolerance);
+                assertTrue(points >= previous, element + " lost points at a tolerance of " + tolerance);
+                previous = points;
+            }
+        }
+    }
+}
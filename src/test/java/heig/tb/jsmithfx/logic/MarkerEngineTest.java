@@ -0,0 +1,105 @@
+package heig.tb.jsmithfx.logic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import heig.tb.jsmithfx.model.DataPoint;
+import heig.tb.jsmithfx.utilities.Complex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+public class MarkerEngineTest {
+
+    private static final double Z0 = 50;
+
+    private static DataPoint point(double frequency, double gammaMagnitude, double gammaAngle) {
+        Complex gamma = new Complex(gammaMagnitude * Math.cos(gammaAngle), gammaMagnitude * Math.sin(gammaAngle));
+        Complex impedance = SmithCalculator.gammaToImpedance(gamma, Z0);
+        return new DataPoint(frequency, "P", impedance, gamma,
+                SmithCalculator.calculateVswr(gamma), SmithCalculator.calculateReturnLoss(gamma));
+    }
+
+    private static double vswr(DataPoint point) {
+        double magnitude = point.getGamma().magnitude();
+        return (1 + magnitude) / (1 - magnitude);
+    }
+
+    @Test
+    public void extremesMatchAScanOfTheRange() {
+        Random random = new Random(42);
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            points.add(point(1e6 * i, 0.05 + 0.9 * random.nextDouble(), 2 * Math.PI * random.nextDouble()));
+        }
+        MarkerEngine markers = MarkerEngine.of(points);
+
+        for (int query = 0; query < 200; query++) {
+            int a = random.nextInt(points.size());
+            int b = random.nextInt(points.size());
+            double min = 1e6 * Math.min(a, b);
+            double max = 1e6 * Math.max(a, b);
+
+            DataPoint worst = null;
+            DataPoint best = null;
+            for (DataPoint p : points) {
+                if (p.getFrequency() < min || p.getFrequency() > max) continue;
+                if (worst == null || vswr(p) > vswr(worst)) worst = p;
+                if (best == null || p.getGamma().magnitude() < best.getGamma().magnitude()) best = p;
+            }
+
+            assertEquals(worst.getFrequency(), markers.worstVswr(min, max).orElseThrow().frequency());
+            assertEquals(vswr(worst), markers.worstVswr(min, max).orElseThrow().value(), 1e-9);
+            assertEquals(best.getFrequency(), markers.bestReturnLoss(min, max).orElseThrow().frequency());
+            assertEquals(best.getFrequency(), markers.min(MarkerEngine.Quantity.VSWR, min, max).orElseThrow().frequency());
+        }
+    }
+
+    @Test
+    public void bandwidthEndsWhereTheVswrReachesTheThreshold() {
+        // VSWR under 2 from 4 to 8 MHz, the best match at 6 MHz
+        double[] magnitudes = {0.6, 0.5, 0.4, 0.35, 0.3, 0.2, 0.1, 0.2, 0.3, 0.34, 0.5, 0.6};
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < magnitudes.length; i++) {
+            points.add(point(1e6 * i, magnitudes[i], 0));
+        }
+        MarkerEngine markers = MarkerEngine.of(points);
+
+        Optional<MarkerEngine.Band> band = markers.bandwidth(5e6, 7e6, 2.0);
+        assertTrue(band.isPresent());
+        assertEquals(4e6, band.get().lowFrequency());
+        assertEquals(8e6, band.get().highFrequency());
+        assertEquals(4e6, band.get().width());
+
+        // Even the best match of this range is above the threshold
+        assertFalse(markers.bandwidth(0, 1e6, 2.0).isPresent());
+    }
+
+    @Test
+    public void unsortedPointsAndDeltaMarkers() {
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            points.add(point(1e6 * i, 0.05 * (i + 1), 0));
+        }
+        Collections.shuffle(points, new Random(7));
+        MarkerEngine markers = MarkerEngine.of(points);
+
+        MarkerEngine.Marker best = markers.bestReturnLoss(0, 1e7).orElseThrow();
+        MarkerEngine.Marker worst = markers.worstVswr(2e6, 4e6).orElseThrow();
+        assertEquals(0, best.frequency());
+        assertEquals(4e6, worst.frequency());
+
+        MarkerEngine.Delta delta = best.deltaTo(markers.bestReturnLoss(3e6, 3e6).orElseThrow());
+        assertEquals(3e6, delta.frequency());
+        assertEquals(20 * Math.log10(0.05 / 0.2), delta.value(), 1e-9);
+
+        assertFalse(markers.bestReturnLoss(2.5e6, 2.6e6).isPresent());
+        assertTrue(MarkerEngine.of(List.of()).worstVswr(0, 1).isEmpty());
+    }
+}
@@ -0,0 +1,112 @@
+package heig.tb.jsmithfx.utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConcatenatedObservableListTest {
+
+    private final ObservableList<String> first = FXCollections.observableArrayList("a1", "a2");
+    private final ObservableList<String> second = FXCollections.observableArrayList("b1", "b2", "b3");
+    private final ObservableList<String> third = FXCollections.observableArrayList();
+    private final ConcatenatedObservableList<String> view =
+            new ConcatenatedObservableList<>(List.of(first, second, third));
+    // One entry per sub-change forwarded by the view
+    private final List<String> changes = new ArrayList<>();
+
+    public ConcatenatedObservableListTest() {
+        view.addListener((ListChangeListener<String>) change -> {
+            while (change.next()) {
+                if (change.wasPermutated()) {
+                    List<Integer> permutation = new ArrayList<>();
+                    for (int i = change.getFrom(); i < change.getTo(); i++) permutation.add(change.getPermutation(i));
+                    changes.add("permutated " + change.getFrom() + ".." + change.getTo() + " " + permutation);
+                } else if (change.wasReplaced()) {
+                    changes.add("replaced " + change.getFrom() + ".." + change.getTo() + " " + change.getRemoved()
+                            + " -> " + change.getAddedSubList());
+                } else if (change.wasRemoved()) {
+                    changes.add("removed " + change.getFrom() + " " + change.getRemoved());
+                } else if (change.wasAdded()) {
+                    changes.add("added " + change.getFrom() + ".." + change.getTo() + " " + change.getAddedSubList());
+                }
+            }
+        });
+    }
+
+    private List<String> visibleContent() {
+        List<String> content = new ArrayList<>();
+        if (view.isVisible(0)) content.addAll(first);
+        if (view.isVisible(1)) content.addAll(second);
+        if (view.isVisible(2)) content.addAll(third);
+        return content;
+    }
+
+    @Test
+    public void additionsAreShiftedByTheSourcesBefore() {
+        second.add("b4");
+        first.add(0, "a0");
+        third.addAll("c1", "c2");
+
+        assertEquals(List.of("added 5..6 [b4]", "added 0..1 [a0]", "added 7..9 [c1, c2]"), changes);
+        assertEquals(visibleContent(), view);
+    }
+
+    @Test
+    public void removalsAreShiftedByTheSourcesBefore() {
+        second.remove("b2");
+        first.clear();
+        second.setAll("x");
+
+        assertEquals(List.of("removed 3 [b2]", "removed 0 [a1, a2]", "replaced 0..1 [b1, b3] -> [x]"), changes);
+        assertEquals(visibleContent(), view);
+    }
+
+    @Test
+    public void permutationsAreShiftedByTheSourcesBefore() {
+        second.setAll("b3", "b1", "b2");
+        third.setAll("c2", "c1");
+        changes.clear();
+
+        FXCollections.sort(second);
+        FXCollections.sort(third);
+
+        // b3 moves from 2 to 4, b1 from 3 to 2 and b2 from 4 to 3
+        assertEquals(List.of("permutated 2..5 [4, 2, 3]", "permutated 5..7 [6, 5]"), changes);
+        assertEquals(List.of("a1", "a2", "b1", "b2", "b3", "c1", "c2"), view);
+    }
+
+    @Test
+    public void hidingAndShowingASourceIsASingleChangeOfItsRange() {
+        view.setVisible(1, false);
+        assertFalse(view.isVisible(1));
+        assertEquals(List.of("a1", "a2"), view);
+
+        // Changes of a hidden source aren't forwarded, the sources after it move up
+        second.add("b4");
+        third.add("c1");
+        view.setVisible(1, true);
+
+        assertEquals(List.of("removed 2 [b1, b2, b3]", "added 2..3 [c1]", "added 2..6 [b1, b2, b3, b4]"), changes);
+        assertEquals(List.of("a1", "a2", "b1", "b2", "b3", "b4", "c1"), view);
+    }
+
+    @Test
+    public void hidingAnEmptySourceOrAgainChangesNothing() {
+        view.setVisible(2, false);
+        view.setVisible(2, false);
+        view.setVisible(0, true);
+        view.setVisible(2, true);
+
+        assertTrue(changes.isEmpty());
+        assertEquals(visibleContent(), view);
+    }
+}
@@ -0,0 +1,69 @@
+package heig.tb.jsmithfx.utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+public class PngStreamWriterTest {
+
+    // Flat runs, gradients and noise, so every filter gets picked
+    private static int[] pixels(Random random, int width, int height) {
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                argb[y * width + x] = switch ((x / 7 + y / 5) % 3) {
+                    case 0 -> 0xFF204060;
+                    case 1 -> (x * 3) << 24 | (y & 0xFF) << 16 | (x & 0xFF) << 8 | (x + y) & 0xFF;
+                    default -> random.nextInt();
+                };
+            }
+        }
+        return argb;
+    }
+
+    private static void assertRoundTrip(int width, int height, boolean alpha) throws IOException {
+        Random random = new Random(42);
+        int[] argb = pixels(random, width, height);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PngStreamWriter writer = new PngStreamWriter(bytes, width, height, alpha)) {
+            // Uneven batches of rows, as the tiled export writes them
+            int row = 0;
+            while (row < height) {
+                int rows = Math.min(1 + random.nextInt(7), height - row);
+                writer.writeRows(argb, row * width, rows);
+                row += rows;
+            }
+        }
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertNotNull(image, "unreadable PNG");
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int expected = alpha ? argb[y * width + x] : argb[y * width + x] | 0xFF000000;
+                assertEquals(expected, image.getRGB(x, y),
+                        "pixel (" + x + ", " + y + ") of " + width + "x" + height + (alpha ? " RGBA" : " RGB"));
+            }
+        }
+    }
+
+    @Test
+    public void imagesReadBackIdentical() throws IOException {
+        // Odd sizes, the largest spanning several data chunks
+        int[][] sizes = {{1, 1}, {3, 5}, {17, 2}, {1, 31}, {257, 33}, {301, 299}};
+        for (int[] size : sizes) {
+            assertRoundTrip(size[0], size[1], false);
+            assertRoundTrip(size[0], size[1], true);
+        }
+    }
+}
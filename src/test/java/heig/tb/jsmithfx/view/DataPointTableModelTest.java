@@ -0,0 +1,169 @@
+package heig.tb.jsmithfx.view;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import heig.tb.jsmithfx.model.DataPoint;
+import heig.tb.jsmithfx.utilities.Complex;
+import heig.tb.jsmithfx.utilities.ConcatenatedObservableList;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class DataPointTableModelTest {
+
+    private int nextLabel = 0;
+
+    // Few distinct values, so many rows tie
+    private DataPoint point(Random random) {
+        double resistance = 10 * (1 + random.nextInt(5));
+        double reactance = 10 * (random.nextInt(5) - 2);
+        return new DataPoint(1e6 * (1 + random.nextInt(8)), "P" + nextLabel++, new Complex(resistance, reactance),
+                new Complex(0, 0), 1 + random.nextInt(4), random.nextInt(3));
+    }
+
+    private List<DataPoint> points(Random random, int count) {
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < count; i++) points.add(point(random));
+        return points;
+    }
+
+    private static List<String> labels(List<? extends DataPointTableModel.Row> rows) {
+        List<String> labels = new ArrayList<>();
+        for (DataPointTableModel.Row row : rows) labels.add(row.getLabel());
+        return labels;
+    }
+
+    /**
+     * The labels of the source in the order of a stable sort by the column.
+     */
+    private static List<String> sortedLabels(List<DataPoint> source, DataPointTableModel.Column column, boolean ascending) {
+        Comparator<DataPoint> comparator = switch (column) {
+            case LABEL -> Comparator.comparing(DataPoint::getLabel);
+            case IMPEDANCE -> Comparator.<DataPoint>comparingDouble(p -> p.getImpedance().real())
+                    .thenComparingDouble(p -> p.getImpedance().imag());
+            case VSWR -> Comparator.comparingDouble(DataPoint::getVswr);
+            case RETURN_LOSS -> Comparator.comparingDouble(DataPoint::getReturnLoss);
+            case FREQUENCY -> Comparator.comparingDouble(DataPoint::getFrequency);
+            case QUALITY_FACTOR -> Comparator.comparingDouble(DataPoint::getQualityFactor);
+        };
+        List<DataPoint> sorted = new ArrayList<>(source);
+        sorted.sort(ascending ? comparator : comparator.reversed());
+        List<String> labels = new ArrayList<>();
+        for (DataPoint point : sorted) labels.add(point.getLabel());
+        return labels;
+    }
+
+    @Test
+    public void forwardedChangesKeepTheTableSorted() {
+        Random random = new Random(42);
+        ObservableList<DataPoint> chain = FXCollections.observableArrayList(points(random, 5));
+        ObservableList<DataPoint> s1p = FXCollections.observableArrayList(points(random, 40));
+        ObservableList<DataPoint> sweep = FXCollections.observableArrayList();
+        List<ObservableList<DataPoint>> segments = List.of(chain, s1p, sweep);
+        ConcatenatedObservableList<DataPoint> source = new ConcatenatedObservableList<>(List.of(chain, s1p, sweep));
+        DataPointTableModel model = new DataPointTableModel(source);
+
+        // The table as seen by a listener, only updated from the changes
+        List<String> mirror = new ArrayList<>(labels(model));
+        int[] changedRows = {0};
+        model.addListener((ListChangeListener<DataPointTableModel.Row>) change -> {
+            while (change.next()) {
+                int from = change.getFrom();
+                if (change.wasPermutated()) {
+                    List<String> before = new ArrayList<>(mirror);
+                    for (int i = from; i < change.getTo(); i++) mirror.set(change.getPermutation(i), before.get(i));
+                    continue;
+                }
+                List<String> removed = mirror.subList(from, from + change.getRemovedSize());
+                assertEquals(removed, labels(change.getRemoved()));
+                removed.clear();
+                mirror.addAll(from, labels(change.getAddedSubList()));
+                changedRows[0] += change.getRemovedSize() + change.getAddedSize();
+            }
+        });
+
+        DataPointTableModel.Column[] columns = DataPointTableModel.Column.values();
+        DataPointTableModel.Column column = DataPointTableModel.Column.FREQUENCY;
+        boolean ascending = true;
+        model.sort(column, ascending);
+        for (int step = 0; step < 400; step++) {
+            ObservableList<DataPoint> segment = segments.get(random.nextInt(segments.size()));
+            changedRows[0] = 0;
+            int expectedMaximum;
+            switch (random.nextInt(7)) {
+                case 0 -> {
+                    // Recomputed, as the view model does
+                    int count = random.nextInt(30);
+                    expectedMaximum = segment.size() + count;
+                    segment.setAll(points(random, count));
+                }
+                case 1 -> {
+                    expectedMaximum = 1;
+                    segment.add(random.nextInt(segment.size() + 1), point(random));
+                }
+                case 2 -> {
+                    expectedMaximum = 1;
+                    if (!segment.isEmpty()) segment.remove(random.nextInt(segment.size()));
+                }
+                case 3 -> {
+                    expectedMaximum = segment.size();
+                    FXCollections.reverse(segment);
+                }
+                case 4 -> {
+                    int index = segments.indexOf(segment);
+                    expectedMaximum = segment.size();
+                    source.setVisible(index, !source.isVisible(index));
+                }
+                case 5 -> {
+                    // Two changes in one
+                    expectedMaximum = 2 * segment.size();
+                    if (segment.size() >= 4) segment.removeAll(segment.get(1), segment.get(segment.size() - 2));
+                }
+                default -> {
+                    column = columns[random.nextInt(columns.length)];
+                    ascending = random.nextBoolean();
+                    expectedMaximum = Integer.MAX_VALUE;
+                    model.sort(column, ascending);
+                }
+            }
+
+            assertEquals(sortedLabels(source, column, ascending), labels(model), "step " + step);
+            assertEquals(labels(model), mirror, "step " + step);
+            // Only the rows of the change are removed or added, never the whole table
+            assertTrue(changedRows[0] <= 2L * expectedMaximum, "step " + step + ": " + changedRows[0] + " rows changed");
+            for (int i = 0; i < model.size(); i++) {
+                assertEquals(i, model.getViewIndex(model.getSourceIndex(i)));
+                assertEquals(source.get(model.getSourceIndex(i)).getLabel(), model.get(i).getLabel());
+            }
+        }
+    }
+
+    @Test
+    public void unsortedTableFollowsTheSource() {
+        Random random = new Random(42);
+        ObservableList<DataPoint> source = FXCollections.observableArrayList(points(random, 20));
+        DataPointTableModel model = new DataPointTableModel(source);
+
+        source.setAll(points(random, 10));
+        source.add(3, point(random));
+        source.remove(0, 2);
+        FXCollections.reverse(source);
+
+        List<String> expected = new ArrayList<>();
+        for (DataPoint point : source) expected.add(point.getLabel());
+        assertEquals(expected, labels(model));
+
+        model.sort(DataPointTableModel.Column.VSWR, false);
+        model.sort(null, true);
+        assertEquals(expected, labels(model));
+    }
+}
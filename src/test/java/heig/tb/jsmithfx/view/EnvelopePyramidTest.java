@@ -0,0 +1,64 @@
+package heig.tb.jsmithfx.view;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class EnvelopePyramidTest {
+
+    private static EnvelopePyramid pyramid(Random random, int size) {
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        for (int i = 0; i < size; i++) {
+            xs[i] = i;
+            // Some missing samples, and runs of them
+            ys[i] = random.nextInt(8) == 0 ? Double.NaN : random.nextGaussian();
+        }
+        return new EnvelopePyramid(xs, ys);
+    }
+
+    @Test
+    public void extremesMatchAScanOfTheRange() {
+        Random random = new Random(42);
+        double[] out = new double[2];
+        // Sizes around powers of two, where the last blocks of a level are incomplete
+        for (int size : new int[]{1, 2, 3, 7, 8, 9, 100, 255, 256, 257, 1000}) {
+            EnvelopePyramid pyramid = pyramid(random, size);
+            for (int query = 0; query < 300; query++) {
+                int a = random.nextInt(size + 1);
+                int b = random.nextInt(size + 1);
+                int from = Math.min(a, b);
+                int to = Math.max(a, b);
+
+                double min = Double.NaN;
+                double max = Double.NaN;
+                for (int i = from; i < to; i++) {
+                    double y = pyramid.y(i);
+                    if (Double.isNaN(y)) continue;
+                    if (Double.isNaN(min) || y < min) min = y;
+                    if (Double.isNaN(max) || y > max) max = y;
+                }
+
+                pyramid.minMax(from, to, out);
+                assertEquals(min, out[0], "min of [" + from + ", " + to + ") over " + size);
+                assertEquals(max, out[1], "max of [" + from + ", " + to + ") over " + size);
+            }
+        }
+    }
+
+    @Test
+    public void rangesAreClampedToTheSamples() {
+        EnvelopePyramid pyramid = new EnvelopePyramid(new double[]{0, 1, 2}, new double[]{4, -1, 2});
+        double[] out = new double[2];
+
+        pyramid.minMax(-5, 10, out);
+        assertEquals(-1, out[0]);
+        assertEquals(4, out[1]);
+
+        pyramid.minMax(2, 2, out);
+        assertEquals(Double.NaN, out[0]);
+        assertEquals(Double.NaN, out[1]);
+    }
+}
@@ -0,0 +1,291 @@
+package heig.tb.jsmithfx.view;
+
+import heig.tb.jsmithfx.SmithChartViewModel;
+import heig.tb.jsmithfx.model.CircuitElement;
+import heig.tb.jsmithfx.model.DataPoint;
+import heig.tb.jsmithfx.utilities.Complex;
+import heig.tb.jsmithfx.utilities.PerformanceMonitor;
+import heig.tb.jsmithfx.utilities.PerformanceMonitor.Metric;
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.image.WritableImage;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Benchmark of the Smith chart and circuit renderers on offscreen canvases.
+ * <p>
+ * Run it with {@code ./gradlew renderBenchmark}, which starts JavaFX on the headless platform with the
+ * software pipeline, so the numbers don't depend on a graphics card and the harness runs on a build machine.
+ * An argument only keeps the scenarios whose name contains it, e.g. {@code --args="s1p"}.
+ * </p>
+ * <p>
+ * Each scenario puts the shared view model in a synthetic state, draws warm-up frames, then measures:
+ * <ul>
+ *     <li>the time to issue the drawing commands of a frame, and of each layer through the performance monitor;</li>
+ *     <li>the time to rasterize them, by taking a snapshot of the canvas;</li>
+ *     <li>the bytes allocated on the FX thread while issuing the commands;</li>
+ *     <li>for the point clouds drawn in the background, the time until their bitmap is ready.</li>
+ * </ul>
+ * The performance overlay is drawn during the measures, like when the monitor is enabled in the application.
+ * </p>
+ */
+public final class RenderBenchmark {
+
+    private static final double WIDTH = 1200;
+    private static final double HEIGHT = 900;
+    private static final double CIRCUIT_HEIGHT = 200;
+    private static final int WARMUP_FRAMES = 30;
+    // Below the capacity of the monitor rings, so the layer percentiles cover all the measured frames
+    private static final int MEASURED_FRAMES = 120;
+    private static final long RASTER_TIMEOUT_SECONDS = 60;
+
+    private static final Metric[] LAYERS = {
+            Metric.LAYER_GRID, Metric.LAYER_VSWR, Metric.LAYER_S1P, Metric.LAYER_PATH,
+            Metric.LAYER_POINTS, Metric.LAYER_PREVIEWS, Metric.LAYER_SWEEP
+    };
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private record Scenario(String name, Consumer<SmithChartViewModel> setUp, double scale) {
+    }
+
+    /**
+     * Measures of one frame, in nanoseconds and bytes.
+     */
+    private record Frame(long drawNanos, long rasterNanos, long allocatedBytes) {
+    }
+
+    private RenderBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        Platform.startup(started::countDown);
+        started.await();
+
+        String filter = args.length > 0 ? args[0] : "";
+        System.out.printf("%-22s %9s %9s %9s %10s %9s | %s%n", "scenario", "draw p50", "draw p95", "raster", "alloc/fr",
+                "bitmap", "layers p50 (ms): grid vswr s1p path points previews sweep");
+        for (Scenario scenario : scenarios()) {
+            if (scenario.name().contains(filter)) runChart(scenario);
+        }
+
+        System.out.printf("%n%-22s %9s %9s %9s %10s%n", "circuit", "draw p50", "draw p95", "raster", "alloc/fr");
+        for (int elements : new int[]{10, 100, 1000}) {
+            if (("circuit " + elements).contains(filter)) runCircuit(elements);
+        }
+
+        Platform.exit();
+    }
+
+    private static List<Scenario> scenarios() {
+        List<Scenario> scenarios = new ArrayList<>();
+        scenarios.add(new Scenario("empty", _ -> { }, 1));
+        scenarios.add(new Scenario("elements 10", vm -> addElements(vm, 10), 1));
+        scenarios.add(new Scenario("elements 100", vm -> addElements(vm, 100), 1));
+        scenarios.add(new Scenario("elements 10 zoom 20x", vm -> addElements(vm, 10), 20));
+        scenarios.add(new Scenario("s1p 10k", vm -> vm.addS1PDatapoints(syntheticS1P(vm, 10_000)), 1));
+        scenarios.add(new Scenario("s1p 1M", vm -> vm.addS1PDatapoints(syntheticS1P(vm, 1_000_000)), 1));
+        scenarios.add(new Scenario("s1p 1M density", vm -> {
+            vm.addS1PDatapoints(syntheticS1P(vm, 1_000_000));
+            vm.showS1PAsDensityProperty().set(true);
+        }, 1));
+        scenarios.add(new Scenario("sweep 1k", vm -> {
+            addElements(vm, 10);
+            vm.updateSweepConfiguration(1e6, 1e9, 1_000);
+        }, 1));
+        scenarios.add(new Scenario("sweep 100k", vm -> {
+            addElements(vm, 10);
+            vm.updateSweepConfiguration(1e6, 1e9, 100_000);
+        }, 1));
+        scenarios.add(new Scenario("preview", vm -> {
+            addElements(vm, 10);
+            vm.addLiveComponentPreview(CircuitElement.ElementType.CAPACITOR, 4.7e-12,
+                    CircuitElement.ElementPosition.SERIES, Optional.empty());
+        }, 1));
+        return scenarios;
+    }
+
+    private static void runChart(Scenario scenario) throws Exception {
+        SmithChartViewModel viewModel = SmithChartViewModel.getInstance();
+        Canvas canvas = new Canvas(WIDTH, HEIGHT);
+        SmithChartRenderer renderer = new SmithChartRenderer(canvas, new Canvas(WIDTH, HEIGHT));
+        WritableImage image = new WritableImage((int) WIDTH, (int) HEIGHT);
+        // Zoom on the center of the chart
+        double offsetX = WIDTH / 2 * (1 - scenario.scale());
+        double offsetY = HEIGHT / 2 * (1 - scenario.scale());
+
+        onFxThread(() -> {
+            reset(viewModel);
+            scenario.setUp().accept(viewModel);
+            return null;
+        });
+
+        // First frame, and the background bitmaps of the large point clouds
+        CountDownLatch rasterReady = new CountDownLatch(1);
+        renderer.setOnRasterReady(rasterReady::countDown);
+        boolean rasterized = onFxThread(() -> viewModel.transformedS1PPointsProperty().size() >= PointCloudRasterizer.RASTER_THRESHOLD
+                || viewModel.sweepDataPointsProperty().size() >= PointCloudRasterizer.RASTER_THRESHOLD);
+        long rasterStart = System.nanoTime();
+        onFxThread(() -> frame(renderer, viewModel, canvas, image, scenario.scale(), offsetX, offsetY));
+        String bitmap = "-";
+        if (rasterized) {
+            bitmap = rasterReady.await(RASTER_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    ? millis(System.nanoTime() - rasterStart) : "timeout";
+        }
+
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            onFxThread(() -> frame(renderer, viewModel, canvas, image, scenario.scale(), offsetX, offsetY));
+        }
+
+        PerformanceMonitor monitor = viewModel.getPerformanceMonitor();
+        onFxThread(() -> {
+            monitor.setEnabled(true);
+            monitor.reset();
+            return null;
+        });
+        Frame[] frames = new Frame[MEASURED_FRAMES];
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            frames[i] = onFxThread(() -> frame(renderer, viewModel, canvas, image, scenario.scale(), offsetX, offsetY));
+        }
+        String layers = onFxThread(() -> {
+            StringBuilder builder = new StringBuilder();
+            for (Metric layer : LAYERS) {
+                builder.append(' ').append(millis((long) monitor.percentile(layer, 50)));
+            }
+            monitor.setEnabled(false);
+            return builder.toString();
+        });
+
+        report(scenario.name(), frames, bitmap, layers);
+    }
+
+    private static void runCircuit(int elements) throws Exception {
+        SmithChartViewModel viewModel = SmithChartViewModel.getInstance();
+        Canvas canvas = new Canvas(WIDTH, CIRCUIT_HEIGHT);
+        CircuitRenderer renderer = onFxThread(() -> CircuitRenderer.of(canvas, viewModel));
+        WritableImage image = new WritableImage((int) WIDTH, (int) CIRCUIT_HEIGHT);
+
+        onFxThread(() -> {
+            reset(viewModel);
+            addElements(viewModel, elements);
+            return null;
+        });
+
+        Callable<Frame> frame = () -> {
+            long allocated = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            renderer.render();
+            long drawn = System.nanoTime();
+            long allocatedBytes = THREADS.getCurrentThreadAllocatedBytes() - allocated;
+            canvas.snapshot(null, image);
+            return new Frame(drawn - start, System.nanoTime() - drawn, allocatedBytes);
+        };
+        for (int i = 0; i < WARMUP_FRAMES; i++) onFxThread(frame);
+        Frame[] frames = new Frame[MEASURED_FRAMES];
+        for (int i = 0; i < MEASURED_FRAMES; i++) frames[i] = onFxThread(frame);
+
+        onFxThread(() -> {
+            renderer.dispose();
+            return null;
+        });
+        report("circuit " + elements, frames, null, null);
+    }
+
+    private static Frame frame(SmithChartRenderer renderer, SmithChartViewModel viewModel, Canvas canvas,
+                               WritableImage image, double scale, double offsetX, double offsetY) {
+        long allocated = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        renderer.render(viewModel, scale, offsetX, offsetY, -1);
+        long drawn = System.nanoTime();
+        long allocatedBytes = THREADS.getCurrentThreadAllocatedBytes() - allocated;
+        // The drawing commands are only executed when the canvas is rendered
+        canvas.snapshot(null, image);
+        return new Frame(drawn - start, System.nanoTime() - drawn, allocatedBytes);
+    }
+
+    private static void report(String name, Frame[] frames, String bitmap, String layers) {
+        long[] draw = Arrays.stream(frames).mapToLong(Frame::drawNanos).sorted().toArray();
+        long[] raster = Arrays.stream(frames).mapToLong(Frame::rasterNanos).sorted().toArray();
+        double allocated = Arrays.stream(frames).mapToLong(Frame::allocatedBytes).average().orElse(0);
+
+        String line = String.format("%-22s %9s %9s %9s %8.1fKB", name, millis(percentile(draw, 50)),
+                millis(percentile(draw, 95)), millis(percentile(raster, 50)), allocated / 1024);
+        if (bitmap != null) line += String.format(" %9s |%s", bitmap, layers);
+        System.out.println(line);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.clamp(index, 0, sorted.length - 1)];
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+
+    // =============================================================================================
+    // Synthetic states
+    // =============================================================================================
+
+    private static void reset(SmithChartViewModel viewModel) {
+        viewModel.cancelTuningAdjustments();
+        viewModel.clearLiveComponentPreview();
+        viewModel.circuitElements.get().clear();
+        viewModel.clearS1PDatapoints();
+        viewModel.clearSweepPoints();
+        viewModel.showS1PAsDensityProperty().set(false);
+    }
+
+    /**
+     * Adds a ladder of series and parallel components, with values keeping the path on the chart.
+     */
+    private static void addElements(SmithChartViewModel viewModel, int count) {
+        for (int i = 0; i < count; i++) {
+            CircuitElement.ElementPosition position = i % 2 == 0
+                    ? CircuitElement.ElementPosition.SERIES : CircuitElement.ElementPosition.PARALLEL;
+            switch (i % 3) {
+                case 0 -> viewModel.addComponent(CircuitElement.ElementType.CAPACITOR, 10e-12, position, Optional.empty());
+                case 1 -> viewModel.addComponent(CircuitElement.ElementType.INDUCTOR, 5e-9, position, Optional.empty());
+                default -> viewModel.addComponent(CircuitElement.ElementType.RESISTOR, 5, position, Optional.of(50.0));
+            }
+        }
+    }
+
+    /**
+     * Measurement of a resonant load, spiraling around the chart as the frequency goes up.
+     */
+    private static List<DataPoint> syntheticS1P(SmithChartViewModel viewModel, int count) {
+        double zo = viewModel.zo.get();
+        Complex one = new Complex(1, 0);
+        List<DataPoint> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double t = (double) i / (count - 1);
+            double magnitude = 0.2 + 0.7 * t;
+            double angle = 40 * Math.PI * t;
+            Complex gamma = new Complex(magnitude * Math.cos(angle), magnitude * Math.sin(angle));
+            Complex impedance = one.add(gamma).dividedBy(one.subtract(gamma)).multiply(zo);
+            double vswr = (1 + magnitude) / (1 - magnitude);
+            double returnLoss = -20 * Math.log10(magnitude);
+            points.add(new DataPoint(1e6 + t * 1e9, "", impedance, gamma, vswr, returnLoss));
+        }
+        return points;
+    }
+
+    private static <T> T onFxThread(Callable<T> callable) throws Exception {
+        FutureTask<T> task = new FutureTask<>(callable);
+        Platform.runLater(task);
+        return task.get();
+    }
+}
@@ -0,0 +1,122 @@
+package heig.tb.jsmithfx.view;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+public class SmithGridTest {
+
+    private static final double[] MAJOR_VALUES = {0.2, 0.5, 1, 2, 5, 10};
+    // Minimum distances of the grid at zoom 1, in gamma units
+    private static final double MIN_AXIS_SPACING = 0.15;
+    private static final double MIN_RIM_SPACING = 0.25;
+    private static final double MIN_AXIS_LABEL_SPACING = 0.3;
+    private static final double MIN_RIM_LABEL_SPACING = 0.5;
+    private static final int FIRST_BUCKET = -8;
+    private static final int LAST_BUCKET = 48;
+
+    private static final DoubleUnaryOperator AXIS_POSITION = v -> (v - 1) / (v + 1);
+    private static final DoubleUnaryOperator RIM_POSITION = v -> 2 * Math.atan(1 / v);
+
+    private static double zoomOf(int bucket) {
+        return Math.pow(2, bucket / 4.0);
+    }
+
+    private static boolean isMajor(double value) {
+        for (double major : MAJOR_VALUES) {
+            if (major == value) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks that every value of the coarser set is in the finer one, and still labeled if it was.
+     */
+    private static void assertContains(SmithGrid.Circles finer, SmithGrid.Circles coarser, String family, int bucket) {
+        for (int i = 0; i < coarser.size(); i++) {
+            int index = Arrays.binarySearch(finer.values, coarser.values[i]);
+            assertTrue(index >= 0, family + " value " + coarser.values[i] + " is gone in bucket " + bucket);
+            assertTrue(finer.labeled[index] || !coarser.labeled[i],
+                    family + " label " + coarser.values[i] + " is gone in bucket " + bucket);
+        }
+    }
+
+    /**
+     * Checks that two neighbouring values are at least the given distance apart, or only labels when asked.
+     * Two major values are exempt, they are drawn whatever the zoom.
+     */
+    private static void assertSpaced(SmithGrid.Circles circles, DoubleUnaryOperator position, double minSpacing,
+                                     boolean labelsOnly, String family, int bucket) {
+        int previous = -1;
+        for (int i = 0; i < circles.size(); i++) {
+            if (labelsOnly && !circles.labeled[i]) continue;
+            if (previous >= 0 && !(isMajor(circles.values[previous]) && isMajor(circles.values[i]))) {
+                double spacing = Math.abs(position.applyAsDouble(circles.values[i])
+                        - position.applyAsDouble(circles.values[previous]));
+                assertTrue(spacing >= minSpacing - 1e-12, family + " values " + circles.values[previous] + " and "
+                        + circles.values[i] + " are " + spacing + " apart in bucket " + bucket);
+            }
+            previous = i;
+        }
+    }
+
+    @Test
+    public void majorValuesAreAlwaysDrawnAndLabeled() {
+        for (int bucket = FIRST_BUCKET; bucket <= LAST_BUCKET; bucket++) {
+            SmithGrid grid = SmithGrid.forBucket(bucket);
+            for (SmithGrid.Circles circles : new SmithGrid.Circles[]{grid.axisCircles(), grid.rimCircles()}) {
+                for (double major : MAJOR_VALUES) {
+                    int index = Arrays.binarySearch(circles.values, major);
+                    assertTrue(index >= 0, major + " is missing in bucket " + bucket);
+                    assertTrue(circles.labeled[index], major + " isn't labeled in bucket " + bucket);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void valuesAreSortedAndKeepTheirSpacing() {
+        for (int bucket = FIRST_BUCKET; bucket <= LAST_BUCKET; bucket++) {
+            SmithGrid grid = SmithGrid.forBucket(bucket);
+            double zoom = zoomOf(bucket);
+            for (SmithGrid.Circles circles : new SmithGrid.Circles[]{grid.axisCircles(), grid.rimCircles()}) {
+                for (int i = 1; i < circles.size(); i++) {
+                    assertTrue(circles.values[i - 1] < circles.values[i], "values aren't sorted in bucket " + bucket);
+                }
+            }
+            assertSpaced(grid.axisCircles(), AXIS_POSITION, MIN_AXIS_SPACING / zoom, false, "axis", bucket);
+            assertSpaced(grid.rimCircles(), RIM_POSITION, MIN_RIM_SPACING / zoom, false, "rim", bucket);
+            assertSpaced(grid.axisCircles(), AXIS_POSITION, MIN_AXIS_LABEL_SPACING / zoom, true, "axis label", bucket);
+            assertSpaced(grid.rimCircles(), RIM_POSITION, MIN_RIM_LABEL_SPACING / zoom, true, "rim label", bucket);
+        }
+    }
+
+    @Test
+    public void zoomingInNeverRemovesCirclesOrLabels() {
+        SmithGrid previous = SmithGrid.forBucket(FIRST_BUCKET);
+        for (int bucket = FIRST_BUCKET + 1; bucket <= LAST_BUCKET; bucket++) {
+            SmithGrid grid = SmithGrid.forBucket(bucket);
+            assertContains(grid.axisCircles(), previous.axisCircles(), "axis", bucket);
+            assertContains(grid.rimCircles(), previous.rimCircles(), "rim", bucket);
+            previous = grid;
+        }
+    }
+
+    @Test
+    public void bucketsFollowTheZoom() {
+        int previous = SmithGrid.bucketOf(0.25);
+        for (double zoom = 0.25; zoom < 4096; zoom *= 1.01) {
+            int bucket = SmithGrid.bucketOf(zoom);
+            assertTrue(bucket >= previous, "bucket went down at zoom " + zoom);
+            assertTrue(zoomOf(bucket) <= zoom * (1 + 1e-9) && zoom < zoomOf(bucket + 1) * (1 + 1e-9),
+                    "zoom " + zoom + " is outside of its bucket " + bucket);
+            previous = bucket;
+        }
+        assertEquals(0, SmithGrid.bucketOf(1.0));
+        assertEquals(4, SmithGrid.bucketOf(2.0));
+    }
+}